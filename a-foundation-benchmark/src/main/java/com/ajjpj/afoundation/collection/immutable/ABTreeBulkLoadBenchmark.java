@@ -0,0 +1,81 @@
+package com.ajjpj.afoundation.collection.immutable;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+
+/**
+ * Compares building an ABTreeMap from sorted data by bulk loading with building it by repeated calls to updated().
+ *
+ * @author arno
+ */
+@Fork(1)
+@Threads (1)
+@Warmup (iterations = 3, time = 1)
+@Measurement (iterations = 3, time = 5)
+@State (Scope.Benchmark)
+public class ABTreeBulkLoadBenchmark {
+    @Param ({"100",
+            "10000",
+            "1000000"})
+    private int size;
+
+    @Param ({"16", "64"})
+    private int maxNumEntries;
+
+    private ABTreeSpec spec;
+    private List<AMapEntry<Long, Long>> entries;
+    private ForkJoinPool pool;
+
+    @Setup
+    public void setUp() {
+        spec = new ABTreeSpec (maxNumEntries, new Comparator<Long> () {
+            @Override public int compare (Long o1, Long o2) {
+                return o1.compareTo (o2);
+            }
+        });
+
+        entries = new ArrayList<> ();
+        for (long i=0; i<size; i++) {
+            final Long key = i;
+            entries.add (new AMapEntry<Long, Long> () {
+                @Override public Long getKey () {
+                    return key;
+                }
+                @Override public Long getValue () {
+                    return key;
+                }
+            });
+        }
+
+        pool = new ForkJoinPool ();
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown ();
+    }
+
+    @Benchmark
+    public ABTreeMap<Long, Long> testRepeatedUpdated() {
+        ABTreeMap<Long, Long> result = ABTreeMap.empty (spec);
+        for (AMapEntry<Long, Long> e: entries) {
+            result = result.updated (e.getKey (), e.getValue ());
+        }
+        return result;
+    }
+
+    @Benchmark
+    public ABTreeMap<Long, Long> testFromSorted() {
+        return ABTreeMap.fromSorted (spec, entries.iterator ());
+    }
+
+    @Benchmark
+    public ABTreeMap<Long, Long> testFromSortedParallel() {
+        return ABTreeMap.fromSortedParallel (spec, entries, 1.0, pool);
+    }
+}
@@ -0,0 +1,135 @@
+package com.ajjpj.afoundation.collection.immutable;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+
+/**
+ * Compares applying a batch of clustered updates or removals to sorted maps with updatedAll() / removedAll() against
+ *  calling updated() / removed() once per key.
+ *
+ * @author arno
+ */
+@Fork(1)
+@Threads (1)
+@Warmup (iterations = 3, time = 1)
+@Measurement (iterations = 3, time = 5)
+@State (Scope.Benchmark)
+public class ABatchUpdateBenchmark {
+    private static final Comparator<Long> NATURAL_ORDER = new Comparator<Long> () {
+        @Override public int compare (Long o1, Long o2) {
+            return o1.compareTo (o2);
+        }
+    };
+
+    @Param ({"100",
+            "10000",
+            "1000000"})
+    private int size;
+
+    @Param ({"1000"})
+    private int batchSize;
+
+    private ABTreeMap<Long, Long> bTree;
+    private ARedBlackTreeMap<Long, Long> redBlackTree;
+
+    private List<AMapEntry<Long, Long>> batch;
+    private List<Long> batchKeys;
+
+    @Setup
+    public void setUp() {
+        final List<AMapEntry<Long, Long>> entries = new ArrayList<> ();
+        for (long i=0; i<size; i++) {
+            entries.add (entry (2*i, i));
+        }
+        bTree = ABTreeMap.fromSorted (new ABTreeSpec (16, NATURAL_ORDER), entries.iterator ());
+        redBlackTree = ARedBlackTreeMap.<Long, Long>empty (NATURAL_ORDER).updatedAll (entries);
+
+        // a batch of keys that are clustered around a random position, half of them new and half of them existing
+        final Random rand = new Random (12345);
+        final long center = rand.nextInt (2*size);
+        final TreeMap<Long, Long> batchMap = new TreeMap<> ();
+        while (batchMap.size () < batchSize) {
+            final long key = center + rand.nextInt (4*batchSize);
+            batchMap.put (key, -key);
+        }
+
+        batch = new ArrayList<> ();
+        for (Long key: batchMap.keySet ()) {
+            batch.add (entry (key, -key));
+        }
+        batchKeys = new ArrayList<> (batchMap.keySet ());
+    }
+
+    private static AMapEntry<Long, Long> entry (final Long key, final Long value) {
+        return new AMapEntry<Long, Long> () {
+            @Override public Long getKey () {
+                return key;
+            }
+            @Override public Long getValue () {
+                return value;
+            }
+        };
+    }
+
+    @Benchmark
+    public ABTreeMap<Long, Long> testBTreeRepeatedUpdated() {
+        ABTreeMap<Long, Long> result = bTree;
+        for (AMapEntry<Long, Long> e: batch) {
+            result = result.updated (e.getKey (), e.getValue ());
+        }
+        return result;
+    }
+
+    @Benchmark
+    public ABTreeMap<Long, Long> testBTreeUpdatedAll() {
+        return bTree.updatedAll (batch);
+    }
+
+    @Benchmark
+    public ABTreeMap<Long, Long> testBTreeRepeatedRemoved() {
+        ABTreeMap<Long, Long> result = bTree;
+        for (Long key: batchKeys) {
+            result = result.removed (key);
+        }
+        return result;
+    }
+
+    @Benchmark
+    public ABTreeMap<Long, Long> testBTreeRemovedAll() {
+        return bTree.removedAll (batchKeys);
+    }
+
+    @Benchmark
+    public ARedBlackTreeMap<Long, Long> testRedBlackTreeRepeatedUpdated() {
+        ARedBlackTreeMap<Long, Long> result = redBlackTree;
+        for (AMapEntry<Long, Long> e: batch) {
+            result = result.updated (e.getKey (), e.getValue ());
+        }
+        return result;
+    }
+
+    @Benchmark
+    public ARedBlackTreeMap<Long, Long> testRedBlackTreeUpdatedAll() {
+        return redBlackTree.updatedAll (batch);
+    }
+
+    @Benchmark
+    public ARedBlackTreeMap<Long, Long> testRedBlackTreeRepeatedRemoved() {
+        ARedBlackTreeMap<Long, Long> result = redBlackTree;
+        for (Long key: batchKeys) {
+            result = result.removed (key);
+        }
+        return result;
+    }
+
+    @Benchmark
+    public ARedBlackTreeMap<Long, Long> testRedBlackTreeRemovedAll() {
+        return redBlackTree.removedAll (batchKeys);
+    }
+}
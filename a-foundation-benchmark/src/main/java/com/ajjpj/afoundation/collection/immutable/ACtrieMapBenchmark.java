@@ -0,0 +1,81 @@
+package com.ajjpj.afoundation.collection.immutable;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+
+
+/**
+ * Compares concurrent updates of an ACtrieMap with the 'copy on write' approach of holding an AHashMap in an
+ *  AtomicReference and replacing it in a CAS loop. The latter repeats the entire update whenever another thread
+ *  modified the map in the meantime, so it degrades under contention, while ACtrieMap threads interfere only if
+ *  they modify the same trie node.<p>
+ *
+ * testSnapshot measures taking a snapshot of the ACtrieMap while other threads keep modifying it.
+ *
+ * @author arno
+ */
+@Fork(1)
+@Threads (32)
+@Warmup (iterations = 3, time = 1)
+@Measurement (iterations = 3, time = 5)
+@State (Scope.Benchmark)
+public class ACtrieMapBenchmark {
+    @Param ({"100",
+            "10000",
+            "1000000"})
+    private int size;
+
+    private ACtrieMap<Integer, Integer> ctrieMap;
+    private AtomicReference<AHashMap<Integer, Integer>> hashMapRef;
+
+    @Setup
+    public void setUp() {
+        ctrieMap = new ACtrieMap<> ();
+        final AHashMap.Builder<Integer, Integer> builder = AHashMap.builder ();
+        for (int i=0; i<size; i++) {
+            ctrieMap.put (i, i);
+            builder.add (i, i);
+        }
+        hashMapRef = new AtomicReference<> (builder.build ());
+    }
+
+    @Benchmark
+    public AOption<Integer> testCtrieMapPut() {
+        final int key = ThreadLocalRandom.current ().nextInt (size);
+        return ctrieMap.put (key, key);
+    }
+
+    @Benchmark
+    public AHashMap<Integer, Integer> testAtomicHashMapUpdated() {
+        final int key = ThreadLocalRandom.current ().nextInt (size);
+        while (true) {
+            final AHashMap<Integer, Integer> before = hashMapRef.get ();
+            final AHashMap<Integer, Integer> after = before.updated (key, key);
+            if (hashMapRef.compareAndSet (before, after)) {
+                return after;
+            }
+        }
+    }
+
+    @Benchmark
+    public Integer testCtrieMapGet() {
+        return ctrieMap.getOrNull (ThreadLocalRandom.current ().nextInt (size));
+    }
+
+    @Benchmark
+    public Integer testAtomicHashMapGet() {
+        return hashMapRef.get ().getOrNull (ThreadLocalRandom.current ().nextInt (size));
+    }
+
+    @Benchmark
+    public Object testSnapshot() {
+        final ThreadLocalRandom rand = ThreadLocalRandom.current ();
+        if (rand.nextInt (4) == 0) {
+            return ctrieMap.snapshot ();
+        }
+        final int key = rand.nextInt (size);
+        return ctrieMap.put (key, key);
+    }
+}
@@ -0,0 +1,53 @@
+package com.ajjpj.afoundation.collection.immutable;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+
+
+/**
+ * Compares building an AHashMap through its Builder with building it by repeated calls to updated().
+ *
+ * @author arno
+ */
+@Fork(1)
+@Threads (1)
+@Warmup (iterations = 3, time = 1)
+@Measurement (iterations = 3, time = 5)
+@State (Scope.Benchmark)
+public class AHashMapBuilderBenchmark {
+    @Param ({"100",
+            "10000",
+            "1000000"})
+    private int size;
+
+    private Long[] keys;
+
+    @Setup
+    public void setUp() {
+        final Random rand = new Random (12345);
+
+        keys = new Long[size];
+        for (int i=0; i<size; i++) {
+            keys[i] = rand.nextLong ();
+        }
+    }
+
+    @Benchmark
+    public AHashMap<Long, Long> testRepeatedUpdated() {
+        AHashMap<Long, Long> result = AHashMap.empty ();
+        for (Long key: keys) {
+            result = result.updated (key, key);
+        }
+        return result;
+    }
+
+    @Benchmark
+    public AHashMap<Long, Long> testBuilder() {
+        final AHashMap.Builder<Long, Long> builder = AHashMap.builder ();
+        for (Long key: keys) {
+            builder.add (key, key);
+        }
+        return builder.build ();
+    }
+}
@@ -0,0 +1,70 @@
+package com.ajjpj.afoundation.collection.immutable;
+
+import com.ajjpj.afoundation.function.AFunction3;
+import com.ajjpj.afoundation.function.AStatement2;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+
+
+/**
+ * Compares external iteration over an AHashMap, which allocates an AMapEntry per entry, with the internal iteration
+ *  of forEach() and foldLeft(), which walk the trie recursively.
+ *
+ * @author arno
+ */
+@Fork(1)
+@Threads (1)
+@Warmup (iterations = 3, time = 1)
+@Measurement (iterations = 3, time = 5)
+@State (Scope.Benchmark)
+public class AHashMapIterationBenchmark {
+    private static final AFunction3<Long, Long, Long, Long, RuntimeException> SUM = new AFunction3<Long, Long, Long, Long, RuntimeException> () {
+        @Override public Long apply (Long acc, Long key, Long value) {
+            return acc + value;
+        }
+    };
+
+    @Param ({"100",
+            "10000",
+            "1000000"})
+    private int size;
+
+    private AHashMap<Long, Long> map;
+
+    @Setup
+    public void setUp() {
+        final Random rand = new Random (12345);
+        final AHashMap.Builder<Long, Long> builder = AHashMap.builder ();
+        for (int i=0; i<size; i++) {
+            final long key = rand.nextLong ();
+            builder.add (key, key);
+        }
+        map = builder.build ();
+    }
+
+    @Benchmark
+    public long testIterate() {
+        long result = 0;
+        for (AMapEntry<Long, Long> e: map) {
+            result += e.getValue ();
+        }
+        return result;
+    }
+
+    @Benchmark
+    public long testForEach() {
+        final long[] result = new long[1];
+        map.forEach (new AStatement2<Long, Long, RuntimeException> () {
+            @Override public void apply (Long key, Long value) {
+                result[0] += value;
+            }
+        });
+        return result[0];
+    }
+
+    @Benchmark
+    public long testFoldLeft() {
+        return map.foldLeft (0L, SUM);
+    }
+}
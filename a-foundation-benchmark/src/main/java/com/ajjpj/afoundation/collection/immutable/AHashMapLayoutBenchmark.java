@@ -0,0 +1,116 @@
+package com.ajjpj.afoundation.collection.immutable;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+
+/**
+ * Compares the CHAMP node layout of AHashMap, which stores entries inline in its trie nodes, with ALongHashMap (which
+ *  still has the older layout with a separate leaf object per entry) and java.util.HashMap.<p>
+ *
+ * The memory footprint of each map is measured during setup as the difference in used heap after garbage collection,
+ *  and printed to stdout as bytes per entry. Boxed keys and values are created before that measurement, so the numbers
+ *  contain only the map's own structure.
+ *
+ * @author arno
+ */
+@Fork(1)
+@Threads (1)
+@Warmup (iterations = 3, time = 1)
+@Measurement (iterations = 3, time = 5)
+@State (Scope.Benchmark)
+public class AHashMapLayoutBenchmark {
+    @Param ({"100",
+            "10000",
+            "1000000"})
+    private int size;
+
+    @Param ({
+            "AHashMap",
+            "ALongHashMap",
+            "JavaUtilHashMap",
+    })
+    private String mapType;
+
+    private Long[] keys;
+    private AMap<Long, Long> map;
+    private Map<Long, Long> javaUtilMap;
+
+    @Setup
+    public void setUp() {
+        final Random rand = new Random (12345);
+        keys = new Long[size];
+        for (int i=0; i<size; i++) {
+            keys[i] = rand.nextLong ();
+        }
+
+        final long usedBefore = usedHeapAfterGc ();
+        switch (mapType) {
+            case "AHashMap": {
+                final AHashMap.Builder<Long, Long> builder = AHashMap.builder ();
+                for (Long key: keys) {
+                    builder.add (key, key);
+                }
+                map = builder.build ();
+                break;
+            }
+            case "ALongHashMap": {
+                ALongHashMap<Long> m = ALongHashMap.empty ();
+                for (Long key: keys) {
+                    m = m.updated (key.longValue (), key);
+                }
+                map = m;
+                break;
+            }
+            case "JavaUtilHashMap": {
+                javaUtilMap = new HashMap<> ();
+                for (Long key: keys) {
+                    javaUtilMap.put (key, key);
+                }
+                break;
+            }
+            default: throw new IllegalArgumentException (mapType);
+        }
+        final long usedAfter = usedHeapAfterGc ();
+
+        System.out.printf ("%n%s with %d entries: %.1f bytes per entry%n", mapType, size, (usedAfter - usedBefore) / (double) size);
+    }
+
+    private static long usedHeapAfterGc () {
+        final Runtime runtime = Runtime.getRuntime ();
+        for (int i=0; i<5; i++) {
+            System.gc ();
+        }
+        return runtime.totalMemory () - runtime.freeMemory ();
+    }
+
+    @Benchmark
+    public long testIterate() {
+        long result = 0;
+        if (javaUtilMap != null) {
+            for (Map.Entry<Long, Long> e: javaUtilMap.entrySet ()) {
+                result += e.getValue ();
+            }
+        }
+        else {
+            for (AMapEntry<Long, Long> e: map) {
+                result += e.getValue ();
+            }
+        }
+        return result;
+    }
+
+    @Benchmark
+    public long testRandomRead() {
+        final Random rand = new Random (12345);
+        long result = 0;
+        for (int i=0; i<1000; i++) {
+            final Long key = keys[rand.nextInt (size)];
+            result += (javaUtilMap != null) ? javaUtilMap.get (key) : map.getOrDefault (key, 0L);
+        }
+        return result;
+    }
+}
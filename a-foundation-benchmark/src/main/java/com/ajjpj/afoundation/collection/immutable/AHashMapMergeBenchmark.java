@@ -0,0 +1,60 @@
+package com.ajjpj.afoundation.collection.immutable;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+
+
+/**
+ * Compares overlaying one AHashMap onto another through merged() with doing it by repeated calls to updated().
+ *
+ * @author arno
+ */
+@Fork(1)
+@Threads (1)
+@Warmup (iterations = 3, time = 1)
+@Measurement (iterations = 3, time = 5)
+@State (Scope.Benchmark)
+public class AHashMapMergeBenchmark {
+    @Param ({"10000",
+            "1000000"})
+    private int size;
+
+    @Param ({"10",
+            "1000"})
+    private int overlaySize;
+
+    private AHashMap<Long, Long> base;
+    private AHashMap<Long, Long> overlay;
+
+    @Setup
+    public void setUp() {
+        final Random rand = new Random (12345);
+
+        final AHashMap.Builder<Long, Long> builder = AHashMap.builder ();
+        for (int i=0; i<size; i++) {
+            builder.add (rand.nextLong (), (long) i);
+        }
+        base = builder.build ();
+
+        // the overlay shares most of its structure with the base map, as is typical for a modified copy
+        overlay = base;
+        for (int i=0; i<overlaySize; i++) {
+            overlay = overlay.updated (rand.nextLong (), (long) i);
+        }
+    }
+
+    @Benchmark
+    public AHashMap<Long, Long> testRepeatedUpdated() {
+        AHashMap<Long, Long> result = base;
+        for (AMapEntry<Long, Long> entry: overlay) {
+            result = result.updated (entry.getKey (), entry.getValue ());
+        }
+        return result;
+    }
+
+    @Benchmark
+    public AHashMap<Long, Long> testMerged() {
+        return base.merged (overlay);
+    }
+}
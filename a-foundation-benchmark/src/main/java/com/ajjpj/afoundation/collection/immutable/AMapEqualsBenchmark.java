@@ -0,0 +1,80 @@
+package com.ajjpj.afoundation.collection.immutable;
+
+import org.openjdk.jmh.annotations.*;
+
+
+/**
+ * Measures equals() and hashCode() for large hash maps. Maps of different size are rejected by equals() after a
+ *  single call to size(), so testEqualsDifferentSize shows whether size() is O(1).<p>
+ *
+ * hashCode() is cached per map instance, so it is measured on a map that was just modified.
+ *
+ * @author arno
+ */
+@Fork(1)
+@Threads (1)
+@Warmup (iterations = 3, time = 1)
+@Measurement (iterations = 3, time = 5)
+@State (Scope.Benchmark)
+public class AMapEqualsBenchmark {
+    @Param ({"100",
+            "10000",
+            "1000000"})
+    private int size;
+
+    @Param ({
+            "AHashMap",
+            "ALongHashMap",
+            "AListMap",
+    })
+    private String mapType;
+
+    private AMap<Long, Integer> map;
+    private AMap<Long, Integer> equalMap;
+    private AMap<Long, Integer> smallerMap;
+
+    @Setup
+    public void setUp() {
+        map = createEmpty ();
+        equalMap = createEmpty ();
+
+        // AListMap is O(n) per update, so it is kept small enough to be set up in reasonable time
+        final int effectiveSize = mapType.equals ("AListMap") ? Math.min (size, 10_000) : size;
+        for (int i=0; i<effectiveSize; i++) {
+            map = map.updated ((long) i, i);
+        }
+        for (int i=effectiveSize-1; i>=0; i--) {
+            equalMap = equalMap.updated ((long) i, i);
+        }
+        smallerMap = equalMap.removed (0L);
+    }
+
+    private AMap<Long, Integer> createEmpty() {
+        switch (mapType) {
+            case "AHashMap": return AHashMap.empty ();
+            case "ALongHashMap": return ALongHashMap.empty ();
+            case "AListMap": return AListMap.empty ();
+            default: throw new IllegalArgumentException (mapType);
+        }
+    }
+
+    @Benchmark
+    public int testSize() {
+        return map.size ();
+    }
+
+    @Benchmark
+    public boolean testEquals() {
+        return map.equals (equalMap);
+    }
+
+    @Benchmark
+    public boolean testEqualsDifferentSize() {
+        return map.equals (smallerMap);
+    }
+
+    @Benchmark
+    public int testHashCodeAfterUpdate() {
+        return map.updated (0L, -1).hashCode ();
+    }
+}
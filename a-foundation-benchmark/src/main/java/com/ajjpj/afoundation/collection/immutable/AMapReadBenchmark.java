@@ -27,7 +27,9 @@ public class AMapReadBenchmark {
             "ALongRedBlackTree",
 //            "ABTree4",
 //            "ABTree8",
-//            "ABTree16"
+//            "ABTree16",
+            "ALongBTree16",
+            "ALongBTree32",
     })
     private String mapType;
 
@@ -48,6 +50,8 @@ public class AMapReadBenchmark {
             case "ABTree4":  map = ABTreeMap.empty (new ABTreeSpec (4, NATURAL_ORDER)); break;
             case "ABTree8":  map = ABTreeMap.empty (new ABTreeSpec (8, NATURAL_ORDER)); break;
             case "ABTree16": map = ABTreeMap.empty (new ABTreeSpec (16, NATURAL_ORDER)); break;
+            case "ALongBTree16": map = ALongBTreeMap.empty (16); break;
+            case "ALongBTree32": map = ALongBTreeMap.empty (32); break;
             default: throw new IllegalArgumentException (mapType);
         }
 
@@ -69,6 +73,22 @@ public class AMapReadBenchmark {
         }
     }
 
+    /**
+     * compare to testRandomRead to see the effect of not wrapping the result in an AOption
+     */
+    @Benchmark
+    public long testRandomReadGetOrDefault() {
+        final Random rand = new Random (12345);
+
+        final int numIters = 1_000_000;
+
+        long result = 0;
+        for (int i=0; i<numIters; i++) {
+            result += map.getOrDefault ((long) rand.nextInt (size), 0);
+        }
+        return result;
+    }
+
 //    @Benchmark
     public void testIterate() {
         for (int i=0; i<1_000_000/size; i++) {
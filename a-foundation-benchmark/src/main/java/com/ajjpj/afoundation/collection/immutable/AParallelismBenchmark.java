@@ -0,0 +1,130 @@
+package com.ajjpj.afoundation.collection.immutable;
+
+import com.ajjpj.afoundation.function.AFunction1;
+import com.ajjpj.afoundation.function.AFunction2;
+import com.ajjpj.afoundation.function.APredicate;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+
+/**
+ * Compares the sequential bulk operations foldLeft(), filter() and map() with their parallel counterparts in a
+ *  ForkJoinPool. The work per element is CPU heavy so that the cost of splitting and combining the results shows
+ *  against the gain from parallelism.
+ *
+ * @author arno
+ */
+@Fork(1)
+@Threads (1)
+@Warmup (iterations = 3, time = 1)
+@Measurement (iterations = 3, time = 5)
+@State (Scope.Benchmark)
+public class AParallelismBenchmark {
+    private static final Comparator<Long> NATURAL_ORDER = new Comparator<Long> () {
+        @Override public int compare (Long o1, Long o2) {
+            return o1.compareTo (o2);
+        }
+    };
+
+    private static final AFunction2<Long, Long, Long, RuntimeException> SUM_WORK = new AFunction2<Long, Long, Long, RuntimeException> () {
+        @Override public Long apply (Long acc, Long el) {
+            return acc + work (el);
+        }
+    };
+    private static final AFunction2<Long, Long, Long, RuntimeException> PLUS = new AFunction2<Long, Long, Long, RuntimeException> () {
+        @Override public Long apply (Long a, Long b) {
+            return a + b;
+        }
+    };
+    private static final AFunction1<Long, Long, RuntimeException> WORK = new AFunction1<Long, Long, RuntimeException> () {
+        @Override public Long apply (Long param) {
+            return work (param);
+        }
+    };
+    private static final APredicate<Long, RuntimeException> WORK_FILTER = new APredicate<Long, RuntimeException> () {
+        @Override public boolean apply (Long o) {
+            return (work (o) & 1) == 0;
+        }
+    };
+
+    @Param ({"100",
+            "10000",
+            "1000000"})
+    private int size;
+
+    @Param ({
+            "AList",
+            "AHashSet",
+            "ARedBlackTreeSet",
+    })
+    private String collectionType;
+
+    private ACollection<Long> collection;
+    private ForkJoinPool pool;
+    private AParallelism parallelism;
+
+    @Setup
+    public void setUp() {
+        final Random rand = new Random (12345);
+        AList<Long> elements = AList.nil ();
+        for (int i=0; i<size; i++) {
+            elements = elements.cons (rand.nextLong ());
+        }
+
+        switch (collectionType) {
+            case "AList": collection = elements; break;
+            case "AHashSet": collection = AHashSet.create (elements); break;
+            case "ARedBlackTreeSet": collection = ARedBlackTreeSet.create (NATURAL_ORDER, elements); break;
+            default: throw new IllegalArgumentException (collectionType);
+        }
+
+        pool = new ForkJoinPool ();
+        parallelism = AParallelism.forkJoin (pool);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown ();
+    }
+
+    private static long work (long value) {
+        long result = value;
+        for (int i=0; i<100; i++) {
+            result = result * 6364136223846793005L + 1442695040888963407L;
+        }
+        return result;
+    }
+
+    @Benchmark
+    public long testFoldSequential() {
+        return collection.foldLeft (0L, SUM_WORK);
+    }
+
+    @Benchmark
+    public long testFoldParallel() {
+        return collection.parFold (parallelism, 0L, SUM_WORK, PLUS);
+    }
+
+    @Benchmark
+    public int testFilterSequential() {
+        return collection.filter (WORK_FILTER).size ();
+    }
+
+    @Benchmark
+    public int testFilterParallel() {
+        return collection.parFilter (parallelism, WORK_FILTER).size ();
+    }
+
+    @Benchmark
+    public int testMapSequential() {
+        return collection.map (WORK).size ();
+    }
+
+    @Benchmark
+    public int testMapParallel() {
+        return collection.parMap (parallelism, WORK).size ();
+    }
+}
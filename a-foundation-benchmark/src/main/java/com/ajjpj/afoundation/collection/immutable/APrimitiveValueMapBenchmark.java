@@ -0,0 +1,116 @@
+package com.ajjpj.afoundation.collection.immutable;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+
+
+/**
+ * Compares the maps with primitive values to their generic counterparts with boxed values.
+ *
+ * @author arno
+ */
+@Fork(1)
+@Threads (1)
+@Warmup (iterations = 3, time = 1)
+@Measurement (iterations = 3, time = 5)
+@State (Scope.Benchmark)
+public class APrimitiveValueMapBenchmark {
+    @Param ({"100",
+            "10000",
+            "1000000"})
+    private int size;
+
+    private long[] keys;
+
+    private ALongHashMap<Long> longHashMap;
+    private ALongLongHashMap longLongHashMap;
+    private ALongIntHashMap longIntHashMap;
+    private ALongRedBlackTreeMap<Long> longRedBlackTreeMap;
+    private ALongLongRedBlackTreeMap longLongRedBlackTreeMap;
+
+    @Setup
+    public void setUp() {
+        final Random rand = new Random (12345);
+
+        keys = new long[size];
+        longHashMap = ALongHashMap.empty ();
+        longLongHashMap = ALongLongHashMap.empty ();
+        longIntHashMap = ALongIntHashMap.empty ();
+        longRedBlackTreeMap = ALongRedBlackTreeMap.empty ();
+        longLongRedBlackTreeMap = ALongLongRedBlackTreeMap.empty ();
+
+        for (int i=0; i<size; i++) {
+            keys[i] = rand.nextLong ();
+
+            longHashMap = longHashMap.updated (keys[i], Long.valueOf (i));
+            longLongHashMap = longLongHashMap.updated (keys[i], i);
+            longIntHashMap = longIntHashMap.updated (keys[i], i);
+            longRedBlackTreeMap = longRedBlackTreeMap.updated (keys[i], Long.valueOf (i));
+            longLongRedBlackTreeMap = longLongRedBlackTreeMap.updated (keys[i], i);
+        }
+    }
+
+    @Benchmark
+    public long testReadLongHashMap() {
+        long result = 0;
+        for (long key: keys) {
+            result += longHashMap.get (key).get ();
+        }
+        return result;
+    }
+
+    @Benchmark
+    public long testReadLongLongHashMap() {
+        long result = 0;
+        for (long key: keys) {
+            result += longLongHashMap.get (key, 0L);
+        }
+        return result;
+    }
+
+    @Benchmark
+    public long testReadLongIntHashMap() {
+        long result = 0;
+        for (long key: keys) {
+            result += longIntHashMap.get (key, 0);
+        }
+        return result;
+    }
+
+    @Benchmark
+    public long testReadLongRedBlackTreeMap() {
+        long result = 0;
+        for (long key: keys) {
+            result += longRedBlackTreeMap.get (key).get ();
+        }
+        return result;
+    }
+
+    @Benchmark
+    public long testReadLongLongRedBlackTreeMap() {
+        long result = 0;
+        for (long key: keys) {
+            result += longLongRedBlackTreeMap.get (key, 0L);
+        }
+        return result;
+    }
+
+    @Benchmark
+    public ALongHashMap<Long> testUpdateLongHashMap() {
+        ALongHashMap<Long> result = ALongHashMap.empty ();
+        for (int i=0; i<keys.length; i++) {
+            result = result.updated (keys[i], Long.valueOf (i));
+        }
+        return result;
+    }
+
+    @Benchmark
+    public ALongLongHashMap testUpdateLongLongHashMap() {
+        ALongLongHashMap result = ALongLongHashMap.empty ();
+        for (int i=0; i<keys.length; i++) {
+            result = result.updated (keys[i], i);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,103 @@
+package com.ajjpj.afoundation.collection.immutable;
+
+import com.ajjpj.afoundation.collection.tuples.ATuple2;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+
+/**
+ * Compares the join based set operations of ARedBlackTreeMap, sequentially and in a ForkJoinPool, with adding the
+ *  entries of one map to the other one by one. It also measures splitting a map and concatenating the parts.
+ *
+ * @author arno
+ */
+@Fork(1)
+@Threads (1)
+@Warmup (iterations = 3, time = 1)
+@Measurement (iterations = 3, time = 5)
+@State (Scope.Benchmark)
+public class ARedBlackTreeSetOperationBenchmark {
+    private static final Comparator<Long> NATURAL_ORDER = new Comparator<Long> () {
+        @Override public int compare (Long o1, Long o2) {
+            return o1.compareTo (o2);
+        }
+    };
+
+    @Param ({"100",
+            "10000",
+            "1000000"})
+    private int size;
+
+    private ARedBlackTreeMap<Long, Long> map1;
+    private ARedBlackTreeMap<Long, Long> map2;
+    private ForkJoinPool pool;
+
+    @Setup
+    public void setUp() {
+        final Random rand = new Random (12345);
+
+        map1 = ARedBlackTreeMap.empty (NATURAL_ORDER);
+        map2 = ARedBlackTreeMap.empty (NATURAL_ORDER);
+        for (int i=0; i<size; i++) {
+            final long key1 = rand.nextInt (2*size);
+            final long key2 = rand.nextInt (2*size);
+            map1 = map1.updated (key1, key1);
+            map2 = map2.updated (key2, key2);
+        }
+
+        pool = new ForkJoinPool ();
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown ();
+    }
+
+    @Benchmark
+    public ARedBlackTreeMap<Long, Long> testRepeatedUpdated() {
+        ARedBlackTreeMap<Long, Long> result = map1;
+        for (AMapEntry<Long, Long> e: map2) {
+            result = result.updated (e.getKey (), e.getValue ());
+        }
+        return result;
+    }
+
+    @Benchmark
+    public ARedBlackTreeMap<Long, Long> testUnion() {
+        return map1.union (map2);
+    }
+
+    @Benchmark
+    public ARedBlackTreeMap<Long, Long> testUnionParallel() {
+        return map1.union (map2, pool);
+    }
+
+    @Benchmark
+    public ARedBlackTreeMap<Long, Long> testIntersection() {
+        return map1.intersection (map2);
+    }
+
+    @Benchmark
+    public ARedBlackTreeMap<Long, Long> testIntersectionParallel() {
+        return map1.intersection (map2, pool);
+    }
+
+    @Benchmark
+    public ARedBlackTreeMap<Long, Long> testDifference() {
+        return map1.difference (map2);
+    }
+
+    @Benchmark
+    public ARedBlackTreeMap<Long, Long> testDifferenceParallel() {
+        return map1.difference (map2, pool);
+    }
+
+    @Benchmark
+    public ARedBlackTreeMap<Long, Long> testSplitAndConcat() {
+        final ATuple2<ARedBlackTreeMap<Long, Long>, ARedBlackTreeMap<Long, Long>> split = map1.split ((long) size);
+        return ARedBlackTreeMap.concat (split._1, split._2);
+    }
+}
@@ -0,0 +1,129 @@
+package com.ajjpj.afoundation.collection.immutable;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+
+/**
+ * Compares a sequential loop over a map with processing it in a ForkJoinPool, split recursively with the map's
+ *  ASpliterator. The work per entry is deliberately CPU heavy so that the scalability of splitting shows.
+ *
+ * @author arno
+ */
+@Fork(1)
+@Threads (1)
+@Warmup (iterations = 3, time = 1)
+@Measurement (iterations = 3, time = 5)
+@State (Scope.Benchmark)
+public class ASpliteratorBenchmark {
+    private static final Comparator<Long> NATURAL_ORDER = new Comparator<Long> () {
+        @Override public int compare (Long o1, Long o2) {
+            return o1.compareTo (o2);
+        }
+    };
+
+    @Param ({"100",
+            "10000",
+            "1000000"})
+    private int size;
+
+    @Param ({
+            "AHashMap",
+            "ARedBlackTreeMap",
+            "ABTreeMap",
+            "AList",
+    })
+    private String collectionType;
+
+    private ACollection<Long> collection;
+    private ForkJoinPool pool;
+
+    @Setup
+    public void setUp() {
+        final Random rand = new Random (12345);
+        final AMap<Long, Long> map;
+        switch (collectionType) {
+            case "AHashMap": map = AHashMap.empty (); break;
+            case "ARedBlackTreeMap": map = ARedBlackTreeMap.empty (NATURAL_ORDER); break;
+            case "ABTreeMap": map = ABTreeMap.empty (new ABTreeSpec (16, NATURAL_ORDER)); break;
+            case "AList": map = null; break;
+            default: throw new IllegalArgumentException (collectionType);
+        }
+
+        if (map != null) {
+            AMap<Long, Long> m = map;
+            for (int i=0; i<size; i++) {
+                final long key = rand.nextLong ();
+                m = m.updated (key, key);
+            }
+            collection = m.values ();
+        }
+        else {
+            AList<Long> l = AList.nil ();
+            for (int i=0; i<size; i++) {
+                l = l.cons (rand.nextLong ());
+            }
+            collection = l;
+        }
+
+        pool = new ForkJoinPool ();
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown ();
+    }
+
+    private static long work (long value) {
+        long result = value;
+        for (int i=0; i<100; i++) {
+            result = result * 6364136223846793005L + 1442695040888963407L;
+        }
+        return result;
+    }
+
+    @Benchmark
+    public long testSequential() {
+        long result = 0;
+        for (Long value: collection) {
+            result += work (value);
+        }
+        return result;
+    }
+
+    @Benchmark
+    public long testParallel() {
+        return pool.invoke (new SumTask (collection.aSpliterator ()));
+    }
+
+    static class SumTask extends RecursiveTask<Long> {
+        private final ASpliterator<Long> spliterator;
+
+        SumTask (ASpliterator<Long> spliterator) {
+            this.spliterator = spliterator;
+        }
+
+        @Override protected Long compute () {
+            if (spliterator.size () > 1000) {
+                final ASpliterator<Long> prefix = spliterator.trySplit ();
+                if (prefix != null) {
+                    final SumTask prefixTask = new SumTask (prefix);
+                    prefixTask.fork ();
+                    final long rest = compute ();
+                    return prefixTask.join () + rest;
+                }
+            }
+
+            long result = 0;
+            for (Iterator<Long> it = spliterator.iterator (); it.hasNext (); ) {
+                result += work (it.next ());
+            }
+            return result;
+        }
+    }
+}
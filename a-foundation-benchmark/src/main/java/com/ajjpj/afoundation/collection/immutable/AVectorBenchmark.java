@@ -0,0 +1,129 @@
+package com.ajjpj.afoundation.collection.immutable;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+
+/**
+ * Compares AVector with AList and ArrayList for indexed access, appending and iteration. AList is built with cons()
+ *  because appending at the end is O(n) for a linked list.
+ *
+ * @author arno
+ */
+@Fork(1)
+@Threads (1)
+@Warmup (iterations = 3, time = 1)
+@Measurement (iterations = 3, time = 5)
+@State (Scope.Benchmark)
+public class AVectorBenchmark {
+    @Param ({"100",
+            "10000",
+            "1000000"})
+    private int size;
+
+    private AVector<Integer> vector;
+    private AList<Integer> list;
+    private List<Integer> arrayList;
+    private List<Integer> listView;
+
+    private Random rand;
+
+    @Setup
+    public void setUp() {
+        final List<Integer> elements = new ArrayList<> ();
+        for (int i=0; i<size; i++) {
+            elements.add (i);
+        }
+        vector = AVector.create (elements);
+        list = AList.create (elements);
+        arrayList = elements;
+        listView = list.asJavaUtilList ();
+        rand = new Random (12345);
+    }
+
+    @Benchmark
+    public int testGetAVector() {
+        return vector.get (rand.nextInt (size));
+    }
+
+    @Benchmark
+    public int testGetAList() {
+        return listView.get (rand.nextInt (size));
+    }
+
+    @Benchmark
+    public int testGetArrayList() {
+        return arrayList.get (rand.nextInt (size));
+    }
+
+    @Benchmark
+    public AVector<Integer> testUpdateAVector() {
+        return vector.updated (rand.nextInt (size), 0);
+    }
+
+    @Benchmark
+    public int testAppendAVector() {
+        AVector<Integer> result = AVector.empty ();
+        for (int i=0; i<size; i++) {
+            result = result.appended (i);
+        }
+        return result.size ();
+    }
+
+    @Benchmark
+    public int testBuildAVector() {
+        final AVector.Builder<Integer> builder = AVector.builder ();
+        for (int i=0; i<size; i++) {
+            builder.add (i);
+        }
+        return builder.build ().size ();
+    }
+
+    @Benchmark
+    public int testConsAList() {
+        AList<Integer> result = AList.nil ();
+        for (int i=0; i<size; i++) {
+            result = result.cons (i);
+        }
+        return result.size ();
+    }
+
+    @Benchmark
+    public int testAppendArrayList() {
+        final List<Integer> result = new ArrayList<> ();
+        for (int i=0; i<size; i++) {
+            result.add (i);
+        }
+        return result.size ();
+    }
+
+    @Benchmark
+    public long testIterateAVector() {
+        long result = 0;
+        for (Integer i: vector) {
+            result += i;
+        }
+        return result;
+    }
+
+    @Benchmark
+    public long testIterateAList() {
+        long result = 0;
+        for (Integer i: list) {
+            result += i;
+        }
+        return result;
+    }
+
+    @Benchmark
+    public long testIterateArrayList() {
+        long result = 0;
+        for (Integer i: arrayList) {
+            result += i;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,101 @@
+package com.ajjpj.afoundation.collection.immutable;
+
+import com.ajjpj.afoundation.function.AFunction1;
+import com.ajjpj.afoundation.function.AFunction2;
+import com.ajjpj.afoundation.function.APredicate;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+
+
+/**
+ * Compares chains of eager transformations, which create an intermediate collection per step, with the same chains
+ *  on a lazy AView, which fuses them into a single pass. Running with '-prof gc' shows the difference in allocation.
+ *
+ * @author arno
+ */
+@Fork(1)
+@Threads (1)
+@Warmup (iterations = 3, time = 1)
+@Measurement (iterations = 3, time = 5)
+@State (Scope.Benchmark)
+public class AViewBenchmark {
+    private static final APredicate<Long, RuntimeException> EVEN = new APredicate<Long, RuntimeException> () {
+        @Override public boolean apply (Long o) {
+            return (o & 1) == 0;
+        }
+    };
+    private static final AFunction1<Long, Long, RuntimeException> HALF = new AFunction1<Long, Long, RuntimeException> () {
+        @Override public Long apply (Long param) {
+            return param / 2;
+        }
+    };
+    private static final APredicate<Long, RuntimeException> NEGATIVE = new APredicate<Long, RuntimeException> () {
+        @Override public boolean apply (Long o) {
+            return o < 0;
+        }
+    };
+    private static final AFunction2<Long, Long, Long, RuntimeException> SUM = new AFunction2<Long, Long, Long, RuntimeException> () {
+        @Override public Long apply (Long acc, Long el) {
+            return acc + el;
+        }
+    };
+
+    @Param ({"100",
+            "10000",
+            "1000000"})
+    private int size;
+
+    @Param ({
+            "AList",
+            "AHashSet",
+    })
+    private String collectionType;
+
+    private ACollection<Long> collection;
+
+    @Setup
+    public void setUp() {
+        final Random rand = new Random (12345);
+        AList<Long> elements = AList.nil ();
+        for (int i=0; i<size; i++) {
+            elements = elements.cons (rand.nextLong ());
+        }
+
+        switch (collectionType) {
+            case "AList": collection = elements; break;
+            case "AHashSet": collection = AHashSet.create (elements); break;
+            default: throw new IllegalArgumentException (collectionType);
+        }
+    }
+
+    @Benchmark
+    public long testFoldEager() {
+        return collection.filter (EVEN).map (HALF).foldLeft (0L, SUM);
+    }
+
+    @Benchmark
+    public long testFoldView() {
+        return collection.view ().filter (EVEN).map (HALF).foldLeft (0L, SUM);
+    }
+
+    @Benchmark
+    public AOption<Long> testFindEager() {
+        return collection.filter (EVEN).map (HALF).find (NEGATIVE);
+    }
+
+    @Benchmark
+    public AOption<Long> testFindView() {
+        return collection.view ().filter (EVEN).map (HALF).find (NEGATIVE);
+    }
+
+    @Benchmark
+    public int testToListEager() {
+        return collection.filter (EVEN).map (HALF).toList ().size ();
+    }
+
+    @Benchmark
+    public int testToListView() {
+        return collection.view ().filter (EVEN).map (HALF).toList ().size ();
+    }
+}
@@ -0,0 +1,78 @@
+package com.ajjpj.afoundation.concurrent;
+
+import com.ajjpj.afoundation.collection.immutable.AHashMap;
+import com.ajjpj.afoundation.collection.immutable.AMap;
+import com.ajjpj.afoundation.function.AFunction1NoThrow;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+
+
+/**
+ * Compares updates of shared AHashMap state through an AAtom with the hand-written CAS loop around an AtomicReference.
+ *  Many threads update the same map, so the CAS loop keeps recomputing updates that are invalidated by other
+ *  threads, while AAtom combines queued updates into batches.<p>
+ *
+ * The atom's contention metrics are printed at the end of each trial.
+ *
+ * @author arno
+ */
+@Fork(1)
+@Threads (32)
+@Warmup (iterations = 3, time = 1)
+@Measurement (iterations = 3, time = 5)
+@State (Scope.Benchmark)
+public class AAtomBenchmark {
+    @Param ({"100",
+            "10000",
+            "1000000"})
+    private int size;
+
+    private AtomicReference<AMap<Integer, Integer>> ref;
+    private AAtom<AMap<Integer, Integer>> atom;
+
+    @Setup
+    public void setUp() {
+        final AHashMap.Builder<Integer, Integer> builder = AHashMap.builder ();
+        for (int i=0; i<size; i++) {
+            builder.add (i, i);
+        }
+        final AMap<Integer, Integer> initial = builder.build ();
+
+        ref = new AtomicReference<> (initial);
+        atom = new AAtom<> (initial);
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.out.printf ("%nAAtom: %d updates, %d retries, %d batches, average batch size %.1f, max batch size %d%n",
+                atom.getNumUpdates (), atom.getNumRetries (), atom.getNumBatches (), atom.getAverageBatchSize (), atom.getMaxBatchSize ());
+    }
+
+    private AFunction1NoThrow<AMap<Integer, Integer>, AMap<Integer, Integer>> randomUpdate () {
+        final int key = ThreadLocalRandom.current ().nextInt (size);
+        return new AFunction1NoThrow<AMap<Integer, Integer>, AMap<Integer, Integer>> () {
+            @Override public AMap<Integer, Integer> apply (AMap<Integer, Integer> param) {
+                return param.updated (key, param.getOrDefault (key, 0) + 1);
+            }
+        };
+    }
+
+    @Benchmark
+    public AMap<Integer, Integer> testAtomicReference() {
+        final AFunction1NoThrow<AMap<Integer, Integer>, AMap<Integer, Integer>> f = randomUpdate ();
+        while (true) {
+            final AMap<Integer, Integer> before = ref.get ();
+            final AMap<Integer, Integer> after = f.apply (before);
+            if (ref.compareAndSet (before, after)) {
+                return after;
+            }
+        }
+    }
+
+    @Benchmark
+    public AMap<Integer, Integer> testAtom() {
+        return atom.update (randomUpdate ());
+    }
+}
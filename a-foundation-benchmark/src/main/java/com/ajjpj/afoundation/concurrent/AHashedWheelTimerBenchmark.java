@@ -0,0 +1,58 @@
+package com.ajjpj.afoundation.concurrent;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Compares scheduling and cancelling a timeout with AHashedWheelTimer and with a ScheduledThreadPoolExecutor, which is
+ *  what AThreadPoolImpl used before. This is the pattern of task timeouts: nearly every timeout is cancelled because its
+ *  task finishes in time. Many threads schedule concurrently, contending for the executor's delay queue lock.<p>
+ *
+ * The timer's metrics are printed at the end of each trial.
+ *
+ * @author arno
+ */
+@Fork(1)
+@Threads (8)
+@Warmup (iterations = 3, time = 1)
+@Measurement (iterations = 3, time = 5)
+@State (Scope.Benchmark)
+public class AHashedWheelTimerBenchmark {
+    private static final Runnable NOP = new Runnable () {
+        @Override public void run () {
+        }
+    };
+
+    private AHashedWheelTimer timer;
+    private ScheduledThreadPoolExecutor executor;
+
+    @Setup
+    public void setUp() {
+        timer = new AHashedWheelTimer ("benchmark");
+        executor = new ScheduledThreadPoolExecutor (1);
+        executor.setRemoveOnCancelPolicy (true);
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.out.printf ("%nAHashedWheelTimer: %d scheduled, %d cancelled, %d expired, %d pending%n",
+                timer.getNumScheduled (), timer.getNumCancelled (), timer.getNumExpired (), timer.getNumPendingTimeouts ());
+        timer.shutdown ();
+        executor.shutdownNow ();
+    }
+
+    @Benchmark
+    public boolean testScheduleAndCancelHashedWheel() {
+        return timer.schedule (NOP, 1, TimeUnit.MINUTES).cancel ();
+    }
+
+    @Benchmark
+    public boolean testScheduleAndCancelScheduledExecutor() {
+        final ScheduledFuture<?> f = executor.schedule (NOP, 1, TimeUnit.MINUTES);
+        return f.cancel (false);
+    }
+}
@@ -0,0 +1,87 @@
+package com.ajjpj.afoundation.concurrent;
+
+import com.ajjpj.afoundation.function.AFunction1;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+
+
+/**
+ * Measures the overhead of the future plumbing in a fan-out: a number of promises is created, each of them gets a
+ *  mapSync() transformation, they are completed and then combined with AFutureHelper.lift(). CompletableFuture with
+ *  thenApply() and allOf() is the reference.
+ *
+ * @author arno
+ */
+@Fork(1)
+@Threads (1)
+@Warmup (iterations = 3, time = 1)
+@Measurement (iterations = 3, time = 5)
+@State (Scope.Benchmark)
+public class APromiseBenchmark {
+    private static final AFunction1<Integer, Integer, RuntimeException> INC = new AFunction1<Integer, Integer, RuntimeException> () {
+        @Override public Integer apply (Integer param) {
+            return param + 1;
+        }
+    };
+    private static final Function<Integer, Integer> INC_JAVA = new Function<Integer, Integer> () {
+        @Override public Integer apply (Integer param) {
+            return param + 1;
+        }
+    };
+
+    @Param ({"100",
+            "10000",
+            "1000000"})
+    private int size;
+
+    @Benchmark
+    public int testFanOutAPromise() throws ExecutionException, InterruptedException {
+        final List<APromise<Integer>> promises = new ArrayList<> (size);
+        final List<AFuture<Integer>> mapped = new ArrayList<> (size);
+        for (int i=0; i<size; i++) {
+            final APromise<Integer> p = new APromise<> ();
+            promises.add (p);
+            mapped.add (p.mapSync (INC));
+        }
+        final AFuture<List<Integer>> all = AFutureHelper.lift (mapped);
+
+        for (int i=0; i<size; i++) {
+            promises.get (i).trySuccess (i);
+        }
+        return all.get ().size ();
+    }
+
+    @Benchmark
+    public int testFanOutCompletableFuture() throws ExecutionException, InterruptedException {
+        final List<CompletableFuture<Integer>> promises = new ArrayList<> (size);
+        final CompletableFuture<?>[] mapped = new CompletableFuture<?>[size];
+        for (int i=0; i<size; i++) {
+            final CompletableFuture<Integer> p = new CompletableFuture<> ();
+            promises.add (p);
+            mapped[i] = p.thenApply (INC_JAVA);
+        }
+        final CompletableFuture<Void> all = CompletableFuture.allOf (mapped);
+
+        for (int i=0; i<size; i++) {
+            promises.get (i).complete (i);
+        }
+        all.get ();
+        return mapped.length;
+    }
+
+    @Benchmark
+    public int testCompleteThenListenAPromise() {
+        int result = 0;
+        for (int i=0; i<size; i++) {
+            final APromise<Integer> p = new APromise<> ();
+            p.trySuccess (i);
+            result += p.mapSync (INC).isFinished () ? 1 : 0;
+        }
+        return result;
+    }
+}
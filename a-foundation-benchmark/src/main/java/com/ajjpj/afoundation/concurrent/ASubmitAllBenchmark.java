@@ -0,0 +1,84 @@
+package com.ajjpj.afoundation.concurrent;
+
+import com.ajjpj.afoundation.function.AFunction1;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Scatter-gather with many small parameters: compares batched submitAll() for several grain sizes with submitting a task per
+ *  parameter, which costs a queue insertion, a task future and a timeout for every parameter.
+ *
+ * @author arno
+ */
+@Fork(1)
+@Threads (1)
+@Warmup (iterations = 3, time = 1)
+@Measurement (iterations = 3, time = 5)
+@State (Scope.Benchmark)
+public class ASubmitAllBenchmark {
+    private static final AFunction1<Integer, Integer, RuntimeException> SQUARE = new AFunction1<Integer, Integer, RuntimeException> () {
+        @Override public Integer apply (Integer param) {
+            return param * param;
+        }
+    };
+
+    @Param ({"100",
+            "10000",
+            "1000000"})
+    private int size;
+
+    @Param ({"1",
+            "16",
+            "256"})
+    private int grainSize;
+
+    private AThreadPool pool;
+    private List<Integer> params;
+
+    @Setup
+    public void setUp() {
+        pool = new AThreadPoolBuilder ().setSubmitAllGrainSize (grainSize).buildFixedSize (Runtime.getRuntime ().availableProcessors ());
+
+        params = new ArrayList<> (size);
+        for (int i=0; i<size; i++) {
+            params.add (i);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown ();
+    }
+
+    @Benchmark
+    public long testSubmitAll() throws ExecutionException, InterruptedException {
+        return sum (pool.submitAll (params, SQUARE, 1, TimeUnit.MINUTES));
+    }
+
+    @Benchmark
+    public long testSubmitIndividually() throws ExecutionException, InterruptedException {
+        final List<AFuture<Integer>> futures = new ArrayList<> (size);
+        for (final Integer param: params) {
+            futures.add (pool.submit (new Callable<Integer> () {
+                @Override public Integer call () {
+                    return SQUARE.apply (param);
+                }
+            }, 1, TimeUnit.MINUTES));
+        }
+        return sum (futures);
+    }
+
+    private static long sum (List<AFuture<Integer>> futures) throws ExecutionException, InterruptedException {
+        long result = 0;
+        for (AFuture<Integer> f: futures) {
+            result += f.get ();
+        }
+        return result;
+    }
+}
@@ -0,0 +1,101 @@
+package com.ajjpj.afoundation.concurrent;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Compares the throughput of the fixed size thread pool, which has a single shared queue, with the work-stealing thread pool
+ *  for large numbers of tiny tasks. Several threads submit concurrently, and in the 'nested' variant the tasks are submitted
+ *  from within the pool, which the work-stealing pool handles with worker-local queues.
+ *
+ * @author arno
+ */
+@Fork(1)
+@Threads (4)
+@Warmup (iterations = 3, time = 1)
+@Measurement (iterations = 3, time = 5)
+@State (Scope.Benchmark)
+public class AThreadPoolBenchmark {
+    private static final int POOL_SIZE = Runtime.getRuntime ().availableProcessors ();
+    private static final int FAN_OUT = 16;
+
+    @Param ({"100",
+            "10000",
+            "1000000"})
+    private int size;
+
+    @Param ({
+            "fixedSize",
+            "forkJoin",
+    })
+    private String poolType;
+
+    private AThreadPool pool;
+
+    @Setup
+    public void setUp() {
+        switch (poolType) {
+            case "fixedSize": pool = new AThreadPoolBuilder ().buildFixedSize (POOL_SIZE); break;
+            case "forkJoin":  pool = new AThreadPoolBuilder ().buildForkJoin (POOL_SIZE); break;
+            default: throw new IllegalArgumentException (poolType);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown ();
+    }
+
+    @Benchmark
+    public long testSubmitFromOutside() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch (size);
+        final AtomicLong sum = new AtomicLong ();
+
+        for (int i=0; i<size; i++) {
+            final int num = i;
+            pool.submit (new Runnable () {
+                @Override public void run () {
+                    sum.addAndGet (num);
+                    latch.countDown ();
+                }
+            }, null, 1, TimeUnit.MINUTES);
+        }
+
+        latch.await ();
+        return sum.get ();
+    }
+
+    @Benchmark
+    public long testSubmitNested() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch (size);
+        final AtomicLong sum = new AtomicLong ();
+
+        // a few 'root' tasks, each of which submits its share of the tiny tasks from inside the pool
+        for (int i=0; i<FAN_OUT; i++) {
+            final int from = i * size / FAN_OUT;
+            final int to = (i+1) * size / FAN_OUT;
+            pool.submit (new Callable<Object> () {
+                @Override public Object call () {
+                    for (int j=from; j<to; j++) {
+                        final int num = j;
+                        pool.submit (new Runnable () {
+                            @Override public void run () {
+                                sum.addAndGet (num);
+                                latch.countDown ();
+                            }
+                        }, null, 1, TimeUnit.MINUTES);
+                    }
+                    return null;
+                }
+            }, 1, TimeUnit.MINUTES);
+        }
+
+        latch.await ();
+        return sum.get ();
+    }
+}
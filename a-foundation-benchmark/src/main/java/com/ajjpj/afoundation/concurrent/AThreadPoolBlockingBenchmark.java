@@ -0,0 +1,78 @@
+package com.ajjpj.afoundation.concurrent;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Simulates blocking I/O: a number of tasks that sleep for 10 milliseconds each is submitted at once, and the benchmark
+ *  measures the time until all of them are finished. A fixed size pool of 200 threads needs size/200 rounds, while the virtual
+ *  thread pool runs all tasks concurrently. Running with '-prof gc' shows the memory cost of the threads.<p>
+ *
+ * With a JVM that does not support virtual threads, 'virtualThreads' measures the platform thread fallback.
+ *
+ * @author arno
+ */
+@Fork(1)
+@Threads (1)
+@Warmup (iterations = 3, time = 1)
+@Measurement (iterations = 3, time = 5)
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.MILLISECONDS)
+@State (Scope.Benchmark)
+public class AThreadPoolBlockingBenchmark {
+    private static final Callable<Integer> SLEEPER = new Callable<Integer> () {
+        @Override public Integer call () throws Exception {
+            Thread.sleep (10);
+            return 1;
+        }
+    };
+
+    @Param ({"100",
+            "1000",
+            "10000"})
+    private int size;
+
+    @Param ({
+            "fixedSize",
+            "virtualThreads",
+            "virtualThreadsLimited",
+    })
+    private String poolType;
+
+    private AThreadPool pool;
+
+    @Setup
+    public void setUp() {
+        switch (poolType) {
+            case "fixedSize":             pool = new AThreadPoolBuilder ().buildFixedSize (200); break;
+            case "virtualThreads":        pool = new AThreadPoolBuilder ().buildVirtualThreads (); break;
+            case "virtualThreadsLimited": pool = new AThreadPoolBuilder ().buildVirtualThreads (1000); break;
+            default: throw new IllegalArgumentException (poolType);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown ();
+    }
+
+    @Benchmark
+    public int testSleepingTasks() throws ExecutionException, InterruptedException {
+        final List<AFuture<Integer>> futures = new ArrayList<> (size);
+        for (int i=0; i<size; i++) {
+            futures.add (pool.submit (SLEEPER, 1, TimeUnit.MINUTES));
+        }
+
+        int result = 0;
+        for (AFuture<Integer> f: futures) {
+            result += f.get ();
+        }
+        return result;
+    }
+}
@@ -2,7 +2,9 @@ package com.ajjpj.afoundation.collection;
 
 import com.ajjpj.afoundation.collection.immutable.ACollection;
 import com.ajjpj.afoundation.collection.immutable.AOption;
+import com.ajjpj.afoundation.collection.immutable.AParallelism;
 import com.ajjpj.afoundation.collection.immutable.ASet;
+import com.ajjpj.afoundation.collection.immutable.ASpliterator;
 import com.ajjpj.afoundation.collection.immutable.AbstractACollection;
 import com.ajjpj.afoundation.function.AFunction1;
 import com.ajjpj.afoundation.function.AFunction2;
@@ -510,6 +512,68 @@ public class ACollectionHelper {
         return result;
     }
 
+    /**
+     * Folds the parts of a collection in parallel, starting each part with {@code startValue}, and combines the parts'
+     *  results in iteration order. {@code startValue} must therefore be a neutral element of {@code combiner}, e.g. 0 for
+     *  addition, and {@code combiner} must be associative.
+     */
+    public static <T, R, E extends Exception> R parFold (ACollection<T> coll, AParallelism parallelism, final R startValue, final AFunction2<R, ? super T, R, E> f, AFunction2<R, R, R, E> combiner) throws E {
+        return parallelism.process (coll.aSpliterator (), new AFunction1<ASpliterator<T>, R, E> () {
+            @Override public R apply (ASpliterator<T> part) throws E {
+                R result = startValue;
+                for (Iterator<T> it = part.iterator (); it.hasNext (); ) {
+                    result = f.apply (result, it.next ());
+                }
+                return result;
+            }
+        }, combiner);
+    }
+
+    /**
+     * Applies a function to a collection's elements in parallel, returning the results in the collection's iteration order.
+     */
+    public static <T, X, E extends Exception> List<X> parMap (ACollection<T> coll, AParallelism parallelism, final AFunction1<? super T, ? extends X, E> f) throws E {
+        return parallelism.process (coll.aSpliterator (), new AFunction1<ASpliterator<T>, List<X>, E> () {
+            @Override public List<X> apply (ASpliterator<T> part) throws E {
+                final List<X> result = new ArrayList<> (part.size ());
+                for (Iterator<T> it = part.iterator (); it.hasNext (); ) {
+                    result.add (f.apply (it.next ()));
+                }
+                return result;
+            }
+        }, ACollectionHelper.<X, E>concatLists ());
+    }
+
+    /**
+     * Filters a collection's elements in parallel, returning the matching elements in the collection's iteration order.
+     */
+    public static <T, E extends Exception> List<T> parFilter (ACollection<T> coll, AParallelism parallelism, final APredicate<? super T, E> pred) throws E {
+        return parallelism.process (coll.aSpliterator (), new AFunction1<ASpliterator<T>, List<T>, E> () {
+            @Override public List<T> apply (ASpliterator<T> part) throws E {
+                final List<T> result = new ArrayList<> ();
+                for (Iterator<T> it = part.iterator (); it.hasNext (); ) {
+                    final T el = it.next ();
+                    if (pred.apply (el)) {
+                        result.add (el);
+                    }
+                }
+                return result;
+            }
+        }, ACollectionHelper.<T, E>concatLists ());
+    }
+
+    /**
+     * appends to the left list, which is safe because the partial results are not shared
+     */
+    private static <T, E extends Exception> AFunction2<List<T>, List<T>, List<T>, E> concatLists () {
+        return new AFunction2<List<T>, List<T>, List<T>, E> () {
+            @Override public List<T> apply (List<T> left, List<T> right) {
+                left.addAll (right);
+                return left;
+            }
+        };
+    }
+
     /**
      * Applies a binary operator to a start value and all elements of this list, going left to right.
      *
@@ -631,6 +695,10 @@ public class ACollectionHelper {
             return new ACollectionWrapper<>(ACollectionHelper.map(inner, f));
         }
 
+        @Override public <X, E extends Exception> ACollection<X> parMap (AParallelism parallelism, AFunction1<? super T, ? extends X, E> f) throws E {
+            return new ACollectionWrapper<> (ACollectionHelper.parMap (this, parallelism, f));
+        }
+
         @Override public <X, E extends Exception> ACollection<X> flatMap(AFunction1<? super T, ? extends Iterable<X>, E> f) throws E {
             return new ACollectionWrapper<>(ACollectionHelper.flatMap (inner, f));
         }
@@ -696,6 +764,10 @@ public class ACollectionHelper {
             return new ASetWrapper<> (ACollectionHelper.map (inner, f));
         }
 
+        @Override public <X, E extends Exception> ASet<X> parMap (AParallelism parallelism, AFunction1<? super T, ? extends X, E> f) throws E {
+            return new ASetWrapper<> (new HashSet<> (ACollectionHelper.parMap (this, parallelism, f)));
+        }
+
         @Override public <X, E extends Exception> ASet<X> flatMap (AFunction1<? super T, ? extends Iterable<X>, E> f) throws E {
             return new ASetWrapper<> (new HashSet<> (ACollectionHelper.flatMap (inner, f)));
         }
@@ -768,6 +840,14 @@ public class ACollectionHelper {
             return new ACollectionWrapper<>(ACollectionHelper.map (Arrays.asList (inner), f));
         }
 
+        /**
+         * Returns ACollectionWrapper instead of AArrayWrapper because Java can not instantiate an array for a component type that is available only as a generic parameter.
+         */
+        @Override
+        public <X, E extends Exception> ACollectionWrapper<X> parMap (AParallelism parallelism, AFunction1<? super T, ? extends X, E> f) throws E {
+            return new ACollectionWrapper<> (ACollectionHelper.parMap (this, parallelism, f));
+        }
+
         /**
          * Returns ACollectionWrapper instead of AArrayWrapper because Java can not instantiate an array for a component type that is available only as a generic parameter.
          */
@@ -0,0 +1,346 @@
+package com.ajjpj.afoundation.collection.immutable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * This class applies a batch of updates or removals with sorted keys to an {@link ABTreeMap}. The batch is
+ *  partitioned along the separators of each index node, so every node is visited at most once and every leaf is
+ *  rebuilt at most once, no matter how many of the batch's keys it contains. Subtrees that are not affected by the
+ *  batch are shared with the original tree.<p>
+ *
+ * Processing a node yields a sequence of nodes of the same height: a leaf may turn into several leaves if a lot of
+ *  keys are added to it, or disappear completely if all of its keys are removed. Each index node then rebalances the
+ *  sequence of its new children, merging nodes that have too few entries with a neighbour, and groups them into as
+ *  many index nodes as necessary.
+ *
+ * @author arno
+ */
+class ABTreeBatchUpdate {
+    private final ABTreeSpec spec;
+    private final Object[] keys;
+    /**
+     * {@code null} for a batch of removals
+     */
+    private final Object[] values;
+
+    private ABTreeBatchUpdate (ABTreeSpec spec, Object[] keys, Object[] values) {
+        this.spec = spec;
+        this.keys = keys;
+        this.values = values;
+    }
+
+    static ABTreeBatchUpdate forUpdates (ABTreeSpec spec, Iterable<? extends AMapEntry<?,?>> sortedEntries) {
+        final List<Object> keys = new ArrayList<> ();
+        final List<Object> values = new ArrayList<> ();
+        for (AMapEntry<?,?> entry: sortedEntries) {
+            if (! keys.isEmpty ()) {
+                checkOrder (spec, keys.get (keys.size () - 1), entry.getKey ());
+            }
+            keys.add (entry.getKey ());
+            values.add (entry.getValue ());
+        }
+        return new ABTreeBatchUpdate (spec, keys.toArray (), values.toArray ());
+    }
+
+    static ABTreeBatchUpdate forRemovals (ABTreeSpec spec, Iterable<?> sortedKeys) {
+        final List<Object> keys = new ArrayList<> ();
+        for (Object key: sortedKeys) {
+            if (! keys.isEmpty ()) {
+                checkOrder (spec, keys.get (keys.size () - 1), key);
+            }
+            keys.add (key);
+        }
+        return new ABTreeBatchUpdate (spec, keys.toArray (), null);
+    }
+
+    @SuppressWarnings ("unchecked")
+    private static void checkOrder (ABTreeSpec spec, Object prevKey, Object key) {
+        if (spec.comparator.compare (prevKey, key) >= 0) {
+            throw new IllegalArgumentException ("keys are not sorted in strictly ascending order: " + prevKey + " is followed by " + key);
+        }
+    }
+
+    ABTreeMap applyTo (ABTreeMap root) {
+        if (keys.length == 0) {
+            return root;
+        }
+
+        Level level = new Level ();
+        apply (root, null, 0, keys.length, level);
+        fixUnderflows (level);
+
+        // This is where the tree depth can grow: if the root was split, index levels are added on top of it. The
+        //  'minimum number of children' constraint does not apply to the root node.
+        while (level.size () > 1) {
+            level = group (level);
+        }
+
+        if (level.size () == 0) {
+            return ABTreeMap.empty (spec);
+        }
+
+        // ... and this is where it can shrink
+        ABTreeMap result = level.nodes.get (0);
+        while (result instanceof IndexNode && ((IndexNode) result).children.length == 1) {
+            result = ((IndexNode) result).children[0];
+        }
+        return result;
+    }
+
+    /**
+     * Applies the part of the batch between {@code from} (inclusive) and {@code to} (exclusive) to a node, adding the
+     *  resulting nodes to {@code out}.
+     *
+     * @param minKey a valid separator to the left of the node, or {@code null} for the leftmost node of a level
+     */
+    private void apply (ABTreeMap node, Object minKey, int from, int to, Level out) {
+        if (from == to) {
+            out.add (node, minKey);
+        }
+        else if (node instanceof LeafNode) {
+            applyToLeaf ((LeafNode) node, minKey, from, to, out);
+        }
+        else {
+            applyToIndex ((IndexNode) node, minKey, from, to, out);
+        }
+    }
+
+    @SuppressWarnings ("unchecked")
+    private void applyToLeaf (LeafNode leaf, Object minKey, int from, int to, Level out) {
+        // merge the leaf's sorted entries with the sorted batch
+        final int maxLen = leaf.keys.length + (values == null ? 0 : to - from);
+        final Object[] newKeys = new Object[maxLen];
+        final Object[] newValues = new Object[maxLen];
+
+        int len = 0;
+        int leafIdx = 0;
+        int batchIdx = from;
+        while (leafIdx < leaf.keys.length || batchIdx < to) {
+            final int cmp;
+            if (leafIdx == leaf.keys.length) cmp = 1;
+            else if (batchIdx == to) cmp = -1;
+            else cmp = spec.comparator.compare (leaf.keys[leafIdx], keys[batchIdx]);
+
+            if (cmp < 0) {
+                newKeys[len] = leaf.keys[leafIdx];
+                newValues[len] = leaf.values[leafIdx];
+                len += 1;
+                leafIdx += 1;
+            }
+            else {
+                if (values != null) {
+                    newKeys[len] = keys[batchIdx];
+                    newValues[len] = values[batchIdx];
+                    len += 1;
+                }
+                if (cmp == 0) {
+                    leafIdx += 1;
+                }
+                batchIdx += 1;
+            }
+        }
+
+        if (values == null && len == leaf.keys.length) {
+            // none of the keys to be removed was present
+            out.add (leaf, minKey);
+            return;
+        }
+
+        final int[] boundaries = boundaries (len);
+        for (int i=0; i<boundaries.length-1; i++) {
+            out.add (new LeafNode (spec, Arrays.copyOfRange (newKeys, boundaries[i], boundaries[i+1]), Arrays.copyOfRange (newValues, boundaries[i], boundaries[i+1])),
+                    i == 0 ? minKey : newKeys[boundaries[i]]);
+        }
+    }
+
+    private void applyToIndex (IndexNode index, Object minKey, int from, int to, Level out) {
+        final Level newChildren = new Level ();
+
+        int childFrom = from;
+        for (int i=0; i<index.children.length; i++) {
+            final int childTo = (i < index.separators.length) ? firstNotSmaller (index.separators[i], childFrom, to) : to;
+            apply (index.children[i], i == 0 ? minKey : index.separators[i-1], childFrom, childTo, newChildren);
+            childFrom = childTo;
+        }
+
+        if (newChildren.isSameAs (index.children)) {
+            // this can happen for a batch of removals if none of the keys is present
+            out.add (index, minKey);
+            return;
+        }
+
+        fixUnderflows (newChildren);
+        out.addAll (group (newChildren));
+    }
+
+    /**
+     * groups a level of nodes into as few index nodes as possible, balancing their number of children
+     */
+    private Level group (Level level) {
+        final Level result = new Level ();
+
+        final int[] boundaries = boundaries (level.size ());
+        for (int i=0; i<boundaries.length-1; i++) {
+            final int from = boundaries[i];
+            final int to = boundaries[i+1];
+            final ABTreeMap[] children = level.nodes.subList (from, to).toArray (new ABTreeMap[to - from]);
+            result.add (new IndexNode (spec, level.minKeys.subList (from + 1, to).toArray (), children), level.minKeys.get (from));
+        }
+        return result;
+    }
+
+    /**
+     * merges every node that has too few entries or children with one of its neighbours, re-splitting the merged node
+     *  if it becomes too big
+     */
+    private void fixUnderflows (Level level) {
+        int idx = 0;
+        while (idx < level.size () && level.size () > 1) {
+            if (! isUnderflowed (level.nodes.get (idx))) {
+                idx += 1;
+                continue;
+            }
+
+            final int leftIdx = (idx + 1 < level.size ()) ? idx : idx - 1;
+            final Level merged = merge (level.nodes.get (leftIdx), level.minKeys.get (leftIdx), level.nodes.get (leftIdx + 1), level.minKeys.get (leftIdx + 1));
+            level.replace (leftIdx, merged);
+
+            if (merged.size () == 1 && isUnderflowed (merged.nodes.get (0))) {
+                // the merged node is still too small --> merge it with the next node
+                idx = leftIdx;
+            }
+            else {
+                idx = leftIdx + merged.size ();
+            }
+        }
+    }
+
+    private Level merge (ABTreeMap left, Object leftMinKey, ABTreeMap right, Object rightMinKey) {
+        final Level result = new Level ();
+
+        if (left instanceof LeafNode) {
+            final Object[] allKeys = concat (((LeafNode) left).keys, ((LeafNode) right).keys);
+            final Object[] allValues = concat (((LeafNode) left).values, ((LeafNode) right).values);
+
+            final int[] boundaries = boundaries (allKeys.length);
+            for (int i=0; i<boundaries.length-1; i++) {
+                result.add (new LeafNode (spec, Arrays.copyOfRange (allKeys, boundaries[i], boundaries[i+1]), Arrays.copyOfRange (allValues, boundaries[i], boundaries[i+1])),
+                        i == 0 ? leftMinKey : allKeys[boundaries[i]]);
+            }
+        }
+        else {
+            // Concatenate the children of both nodes. The separator between the two nodes becomes a regular
+            //  separator. A node can only underflow if it has a single child, and that child may have underflowed
+            //  itself, so the children are rebalanced before they are grouped.
+            final Level children = new Level ();
+            addChildren ((IndexNode) left, leftMinKey, children);
+            addChildren ((IndexNode) right, rightMinKey, children);
+
+            fixUnderflows (children);
+            result.addAll (group (children));
+        }
+        return result;
+    }
+
+    private static void addChildren (IndexNode index, Object minKey, Level level) {
+        for (int i=0; i<index.children.length; i++) {
+            level.add (index.children[i], i == 0 ? minKey : index.separators[i-1]);
+        }
+    }
+
+    private boolean isUnderflowed (ABTreeMap node) {
+        if (node instanceof LeafNode) {
+            return ((LeafNode) node).keys.length < spec.minNumEntries;
+        }
+        return ((IndexNode) node).children.length < Math.max (spec.minNumEntries, 2);
+    }
+
+    /**
+     * @return the index of the first key in the batch between {@code from} (inclusive) and {@code to} (exclusive) that
+     *         is not smaller than {@code separator}, or {@code to} if there is no such key
+     */
+    @SuppressWarnings ("unchecked")
+    private int firstNotSmaller (Object separator, int from, int to) {
+        int lo = from;
+        int hi = to;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (spec.comparator.compare (keys[mid], separator) < 0) {
+                lo = mid + 1;
+            }
+            else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Splits {@code n} elements into the smallest number of groups that do not exceed the maximum node size, making
+     *  the groups as equal in size as possible. If there is more than one group, each group is therefore at least
+     *  half full.
+     *
+     * @return the start index of each group, followed by {@code n}
+     */
+    private int[] boundaries (int n) {
+        final int numGroups = (n + spec.maxNumEntries - 1) / spec.maxNumEntries;
+        final int[] result = new int[numGroups + 1];
+        for (int i=1; i<=numGroups; i++) {
+            result[i] = (int) ((long) n * i / numGroups);
+        }
+        return result;
+    }
+
+    private static Object[] concat (Object[] a, Object[] b) {
+        final Object[] result = Arrays.copyOf (a, a.length + b.length);
+        System.arraycopy (b, 0, result, a.length, b.length);
+        return result;
+    }
+
+    /**
+     * a sequence of nodes of the same height, together with a valid separator to the left of each node
+     */
+    private static class Level {
+        final List<ABTreeMap> nodes = new ArrayList<> ();
+        final List<Object> minKeys = new ArrayList<> ();
+
+        int size () {
+            return nodes.size ();
+        }
+
+        void add (ABTreeMap node, Object minKey) {
+            nodes.add (node);
+            minKeys.add (minKey);
+        }
+
+        void addAll (Level other) {
+            nodes.addAll (other.nodes);
+            minKeys.addAll (other.minKeys);
+        }
+
+        /**
+         * replaces the nodes at {@code idx} and {@code idx+1} with the nodes of another level
+         */
+        void replace (int idx, Level other) {
+            nodes.subList (idx, idx + 2).clear ();
+            minKeys.subList (idx, idx + 2).clear ();
+            nodes.addAll (idx, other.nodes);
+            minKeys.addAll (idx, other.minKeys);
+        }
+
+        boolean isSameAs (ABTreeMap[] original) {
+            if (nodes.size () != original.length) {
+                return false;
+            }
+            for (int i=0; i<original.length; i++) {
+                if (nodes.get (i) != original[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.ajjpj.afoundation.collection.immutable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+
+/**
+ * This class builds an {@link ABTreeMap} from entries that are already sorted by key. It fills the leaves from left
+ *  to right and then builds the index levels bottom-up, so every node is created exactly once and there is no
+ *  splitting or copying of nodes.<p>
+ *
+ * Nodes are packed to a given fill factor, except that the last two nodes of each level are balanced so that every
+ *  non-root node has at least {@link ABTreeSpec#minNumEntries} entries or children.
+ *
+ * @author arno
+ */
+class ABTreeBulkLoader {
+    /**
+     * the number of leaves that are built in a single task by the parallel variant
+     */
+    private static final int LEAVES_PER_TASK = 64;
+
+    private final ABTreeSpec spec;
+    private final int nodeSize;
+    private final int minNodeSize;
+
+    ABTreeBulkLoader (ABTreeSpec spec, double fillFactor) {
+        if (fillFactor <= 0 || fillFactor > 1) {
+            throw new IllegalArgumentException ("fill factor must be in (0, 1]: " + fillFactor);
+        }
+
+        this.spec = spec;
+        this.minNodeSize = Math.max (spec.minNumEntries, 2);
+        this.nodeSize = Math.max (minNodeSize, Math.min (spec.maxNumEntries, (int) Math.round (spec.maxNumEntries * fillFactor)));
+    }
+
+    @SuppressWarnings ("unchecked")
+    <K,V> ABTreeMap<K,V> build (Iterator<? extends AMapEntry<K,V>> entries) {
+        final List<ABTreeMap> leaves = new ArrayList<> ();
+        final List<Object> minKeys = new ArrayList<> ();
+
+        Object[] keys = new Object[nodeSize];
+        Object[] values = new Object[nodeSize];
+        int numInLeaf = 0;
+        Object prevKey = null;
+        boolean isFirst = true;
+
+        while (entries.hasNext ()) {
+            final AMapEntry<K,V> entry = entries.next ();
+            if (! isFirst) {
+                checkOrder (prevKey, entry.getKey ());
+            }
+            isFirst = false;
+            prevKey = entry.getKey ();
+
+            if (numInLeaf == nodeSize) {
+                leaves.add (new LeafNode (spec, keys, values));
+                minKeys.add (keys[0]);
+                keys = new Object[nodeSize];
+                values = new Object[nodeSize];
+                numInLeaf = 0;
+            }
+            keys[numInLeaf] = entry.getKey ();
+            values[numInLeaf] = entry.getValue ();
+            numInLeaf += 1;
+        }
+
+        if (isFirst) {
+            return ABTreeMap.empty (spec);
+        }
+
+        keys = Arrays.copyOf (keys, numInLeaf);
+        values = Arrays.copyOf (values, numInLeaf);
+
+        if (numInLeaf < minNodeSize && ! leaves.isEmpty ()) {
+            // balance the underfull last leaf with its left neighbour
+            final LeafNode prev = (LeafNode) leaves.remove (leaves.size () - 1);
+            minKeys.remove (minKeys.size () - 1);
+
+            final Object[] allKeys = concat (prev.keys, keys);
+            final Object[] allValues = concat (prev.values, values);
+            final int[] boundaries = split (allKeys.length);
+            for (int i=0; i<boundaries.length-1; i++) {
+                leaves.add (new LeafNode (spec, Arrays.copyOfRange (allKeys, boundaries[i], boundaries[i+1]), Arrays.copyOfRange (allValues, boundaries[i], boundaries[i+1])));
+                minKeys.add (allKeys[boundaries[i]]);
+            }
+        }
+        else {
+            leaves.add (new LeafNode (spec, keys, values));
+            minKeys.add (keys[0]);
+        }
+
+        return buildIndexLevels (leaves.toArray (new ABTreeMap[leaves.size ()]), minKeys.toArray ());
+    }
+
+    @SuppressWarnings ("unchecked")
+    <K,V> ABTreeMap<K,V> buildParallel (final List<? extends AMapEntry<K,V>> entries, ForkJoinPool pool) {
+        if (entries.isEmpty ()) {
+            return ABTreeMap.empty (spec);
+        }
+
+        final int[] boundaries = boundaries (entries.size ());
+        final ABTreeMap[] leaves = new ABTreeMap[boundaries.length - 1];
+        final Object[] minKeys = new Object[leaves.length];
+
+        pool.invoke (new LeafTask (entries, boundaries, leaves, minKeys, 0, leaves.length));
+        return buildIndexLevels (leaves, minKeys);
+    }
+
+    private class LeafTask extends RecursiveAction {
+        private final List<? extends AMapEntry<?,?>> entries;
+        private final int[] boundaries;
+        private final ABTreeMap[] leaves;
+        private final Object[] minKeys;
+        private final int fromLeaf;
+        private final int toLeaf;
+
+        LeafTask (List<? extends AMapEntry<?,?>> entries, int[] boundaries, ABTreeMap[] leaves, Object[] minKeys, int fromLeaf, int toLeaf) {
+            this.entries = entries;
+            this.boundaries = boundaries;
+            this.leaves = leaves;
+            this.minKeys = minKeys;
+            this.fromLeaf = fromLeaf;
+            this.toLeaf = toLeaf;
+        }
+
+        @Override protected void compute () {
+            if (toLeaf - fromLeaf > LEAVES_PER_TASK) {
+                final int mid = (fromLeaf + toLeaf) >>> 1;
+                invokeAll (new LeafTask (entries, boundaries, leaves, minKeys, fromLeaf, mid),
+                           new LeafTask (entries, boundaries, leaves, minKeys, mid, toLeaf));
+                return;
+            }
+
+            for (int leafIdx=fromLeaf; leafIdx<toLeaf; leafIdx++) {
+                final int from = boundaries[leafIdx];
+                final int len = boundaries[leafIdx+1] - from;
+
+                final Object[] keys = new Object[len];
+                final Object[] values = new Object[len];
+                for (int i=0; i<len; i++) {
+                    final AMapEntry<?,?> entry = entries.get (from + i);
+                    keys[i] = entry.getKey ();
+                    values[i] = entry.getValue ();
+                    if (from + i > 0) {
+                        // this includes the first entry of every leaf, so the order is checked across leaves
+                        checkOrder (i > 0 ? keys[i-1] : entries.get (from - 1).getKey (), keys[i]);
+                    }
+                }
+                leaves[leafIdx] = new LeafNode (spec, keys, values);
+                minKeys[leafIdx] = keys[0];
+            }
+        }
+    }
+
+    /**
+     * builds index levels on top of a given level of nodes until there is a single root node
+     *
+     * @param minKeys the smallest key in each node's subtree, i.e. the separator to the node's left
+     */
+    private ABTreeMap buildIndexLevels (ABTreeMap[] level, Object[] minKeys) {
+        while (level.length > 1) {
+            final int[] boundaries = boundaries (level.length);
+            final ABTreeMap[] parents = new ABTreeMap[boundaries.length - 1];
+            final Object[] parentMinKeys = new Object[parents.length];
+
+            for (int i=0; i<parents.length; i++) {
+                final int from = boundaries[i];
+                final int to = boundaries[i+1];
+                parents[i] = new IndexNode (spec, Arrays.copyOfRange (minKeys, from + 1, to), Arrays.copyOfRange (level, from, to));
+                parentMinKeys[i] = minKeys[from];
+            }
+
+            level = parents;
+            minKeys = parentMinKeys;
+        }
+        return level[0];
+    }
+
+    /**
+     * Splits {@code n} elements into groups of {@link #nodeSize}. If the last group would have fewer than the minimum
+     *  number of elements, the last two groups are balanced.
+     *
+     * @return the start index of each group, followed by {@code n}
+     */
+    private int[] boundaries (int n) {
+        final int numFull = n / nodeSize;
+        final int remainder = n % nodeSize;
+
+        if (remainder == 0 || remainder >= minNodeSize || numFull == 0) {
+            final int[] result = new int[numFull + (remainder > 0 ? 1 : 0) + 1];
+            for (int i=0; i<result.length-1; i++) {
+                result[i] = i * nodeSize;
+            }
+            result[result.length-1] = n;
+            return result;
+        }
+
+        final int lastStart = (numFull - 1) * nodeSize;
+        final int[] lastTwo = split (n - lastStart);
+        final int[] result = new int[numFull + lastTwo.length - 1];
+        for (int i=0; i<numFull-1; i++) {
+            result[i] = i * nodeSize;
+        }
+        for (int i=0; i<lastTwo.length; i++) {
+            result[numFull - 1 + i] = lastStart + lastTwo[i];
+        }
+        return result;
+    }
+
+    /**
+     * @return boundaries for either a single node or two nodes of equal size, whichever fits
+     */
+    private int[] split (int n) {
+        if (n <= spec.maxNumEntries) {
+            return new int[] {0, n};
+        }
+        return new int[] {0, n/2, n};
+    }
+
+    @SuppressWarnings ("unchecked")
+    private void checkOrder (Object prevKey, Object key) {
+        if (spec.comparator.compare (prevKey, key) >= 0) {
+            throw new IllegalArgumentException ("keys are not sorted in strictly ascending order: " + prevKey + " is followed by " + key);
+        }
+    }
+
+    private static Object[] concat (Object[] a, Object[] b) {
+        final Object[] result = Arrays.copyOf (a, a.length + b.length);
+        System.arraycopy (b, 0, result, a.length, b.length);
+        return result;
+    }
+}
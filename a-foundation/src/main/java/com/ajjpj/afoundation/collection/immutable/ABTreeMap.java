@@ -4,6 +4,7 @@ import com.ajjpj.afoundation.collection.AEquality;
 import com.ajjpj.afoundation.function.AFunction1;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 
 /**
@@ -11,7 +12,12 @@ import java.util.*;
  *
  * @author arno
  */
-public abstract class ABTreeMap<K, V> extends AbstractAMap<K,V> {
+public abstract class ABTreeMap<K, V> extends AbstractAMap<K,V> implements ASortedMap<K,V> {
+    /**
+     * marks an unbounded end of a range
+     */
+    private static final Object NO_BOUND = new Object ();
+
     public final ABTreeSpec spec;
     transient private Integer cachedHashcode = null; // intentionally not volatile: This class is immutable, so recalculating per thread works
 
@@ -20,15 +26,45 @@ public abstract class ABTreeMap<K, V> extends AbstractAMap<K,V> {
         return new LeafNode (spec, new Object[0], new Object[0]);
     }
 
+    /**
+     * Builds an ABTreeMap from entries that are sorted in strictly ascending key order with regard to the spec's
+     *  comparator, packing all nodes completely. This takes O(n) time and creates every node exactly once, which is
+     *  a lot cheaper than calling {@link #updated(Object, Object)} for every entry.
+     *
+     * @throws IllegalArgumentException if the entries are not sorted
+     */
+    public static <K, V> ABTreeMap<K, V> fromSorted (ABTreeSpec spec, Iterator<? extends AMapEntry<K,V>> sortedEntries) {
+        return fromSorted (spec, sortedEntries, 1.0);
+    }
+
+    /**
+     * Builds an ABTreeMap from entries that are sorted in strictly ascending key order, filling nodes to a given
+     *  fraction of their maximum size. A fill factor below 1 leaves room for later updates without immediately
+     *  splitting nodes.
+     *
+     * @param fillFactor the fraction of {@link ABTreeSpec#maxNumEntries} to fill each node to, in the range (0, 1]
+     * @throws IllegalArgumentException if the entries are not sorted
+     */
+    public static <K, V> ABTreeMap<K, V> fromSorted (ABTreeSpec spec, Iterator<? extends AMapEntry<K,V>> sortedEntries, double fillFactor) {
+        return new ABTreeBulkLoader (spec, fillFactor).build (sortedEntries);
+    }
+
+    /**
+     * This is a variant of {@link #fromSorted(ABTreeSpec, Iterator, double)} that builds runs of leaves in parallel
+     *  in a given ForkJoinPool. It requires random access to the entries, so they are passed as a {@link List}.
+     *
+     * @throws IllegalArgumentException if the entries are not sorted
+     */
+    public static <K, V> ABTreeMap<K, V> fromSortedParallel (ABTreeSpec spec, List<? extends AMapEntry<K,V>> sortedEntries, double fillFactor, ForkJoinPool pool) {
+        return new ABTreeBulkLoader (spec, fillFactor).buildParallel (sortedEntries, pool);
+    }
+
     ABTreeMap (ABTreeSpec spec) {
         this.spec = spec;
     }
 
     public abstract AOption<V> get (K key);
-//    public Iterable<K> keys ();
-//    public Iterable<V> values ();
-//    public Iterable<K> keys (K keyMin, K keyMax);
-//    public Iterable<V> values (K keyMin, K keyMax);
+    @Override public abstract V getOrDefault (K key, V defaultValue);
 
     @SuppressWarnings ("unchecked")
     public ABTreeMap<K,V> updated (K key, V value) {
@@ -54,6 +90,30 @@ public abstract class ABTreeMap<K, V> extends AbstractAMap<K,V> {
         return _removed (key, null).newNode;
     }
 
+    /**
+     * Adds or replaces a batch of entries whose keys are sorted in strictly ascending order with regard to the spec's
+     *  comparator. This has the same result as calling {@link #updated(Object, Object)} for every entry, but every
+     *  node that is affected by the batch is copied only once rather than once per entry, which is a lot cheaper if
+     *  many of the keys are close to each other.
+     *
+     * @throws IllegalArgumentException if the entries are not sorted
+     */
+    @SuppressWarnings ("unchecked")
+    public ABTreeMap<K,V> updatedAll (Iterable<? extends AMapEntry<K,V>> sortedEntries) {
+        return ABTreeBatchUpdate.forUpdates (spec, sortedEntries).applyTo (this);
+    }
+
+    /**
+     * Removes a batch of keys that are sorted in strictly ascending order with regard to the spec's comparator. This
+     *  has the same result as calling {@link #removed(Object)} for every key, copying every affected node only once.
+     *
+     * @throws IllegalArgumentException if the keys are not sorted
+     */
+    @SuppressWarnings ("unchecked")
+    public ABTreeMap<K,V> removedAll (Iterable<? extends K> sortedKeys) {
+        return ABTreeBatchUpdate.forRemovals (spec, sortedKeys).applyTo (this);
+    }
+
     abstract UpdateResult _updated (Object key, Object value);
     abstract RemoveResult _removed (Object key, Object leftSeparator);
     abstract UpdateResult merge (ABTreeMap rightNeighbour, Object separator);
@@ -70,58 +130,362 @@ public abstract class ABTreeMap<K, V> extends AbstractAMap<K,V> {
     }
 
     @Override public Iterator<AMapEntry<K, V>> iterator () {
-        return new BTreeIterator<> (this);
+        return new BTreeIterator<> (this, NO_BOUND, true, NO_BOUND, true);
+    }
+
+    /**
+     * The spliterator splits index nodes into their children, and leaves into their entries.
+     */
+    @Override public ASpliterator<AMapEntry<K, V>> aSpliterator () {
+        return new BTreeSpliterator<> (this, size ());
+    }
+
+    private static class BTreeSpliterator<K,V> extends AbstractASpliterator.TreeSpliterator<AMapEntry<K,V>> {
+        BTreeSpliterator (ABTreeMap<K,V> root, int size) {
+            super (root, size);
+        }
+
+        private BTreeSpliterator (List<Object> parts, int size) {
+            super (parts, size);
+        }
+
+        @Override int sizeOf (Object node) {
+            return ((ABTreeMap<?,?>) node).size ();
+        }
+
+        @Override void expand (Object node, List<Object> target) {
+            if (node instanceof IndexNode) {
+                target.addAll (Arrays.asList (((IndexNode) node).children));
+            }
+            else {
+                final LeafNode leaf = (LeafNode) node;
+                for (int i=0; i<leaf.keys.length; i++) {
+                    target.add (single (new LeafEntry<> (leaf.keys[i], leaf.values[i])));
+                }
+            }
+        }
+
+        @SuppressWarnings ("unchecked")
+        @Override Iterator<AMapEntry<K, V>> iteratorOf (Object node) {
+            return ((ABTreeMap<K,V>) node).iterator ();
+        }
+
+        @Override AbstractASpliterator.TreeSpliterator<AMapEntry<K, V>> create (List<Object> parts, int size) {
+            return new BTreeSpliterator<> (parts, size);
+        }
+    }
+
+    @Override public AOption<AMapEntry<K, V>> first () {
+        return firstOf (new BTreeIterator<K,V> (this, NO_BOUND, true, NO_BOUND, true));
+    }
+    @Override public AOption<AMapEntry<K, V>> last () {
+        return AOption.fromNullable (lastOf (this, NO_BOUND, true));
     }
 
-    private static class BTreeIterator<K,V> implements Iterator<AMapEntry<K,V>>, AMapEntry<K,V> {
-        private final Deque<Object> stack = new ArrayDeque<> ();
+    @Override public AOption<AMapEntry<K, V>> firstGreaterThan (K key) {
+        return firstOf (new BTreeIterator<K,V> (this, key, false, NO_BOUND, true));
+    }
+    @Override public AOption<AMapEntry<K, V>> firstGreaterOrEquals (K key) {
+        return firstOf (new BTreeIterator<K,V> (this, key, true, NO_BOUND, true));
+    }
+    @Override public AOption<AMapEntry<K, V>> lastSmallerThan (K key) {
+        return AOption.fromNullable (lastOf (this, key, false));
+    }
+    @Override public AOption<AMapEntry<K, V>> lastSmallerOrEquals (K key) {
+        return AOption.fromNullable (lastOf (this, key, true));
+    }
 
-        private K curKey;
-        private V curValue;
+    @Override public Iterable<AMapEntry<K, V>> rangeII (K fromKey, K toKey) {
+        return range (fromKey, true, toKey, true);
+    }
+    @Override public Iterable<AMapEntry<K, V>> rangeIE (K fromKey, K toKey) {
+        return range (fromKey, true, toKey, false);
+    }
+    @Override public Iterable<AMapEntry<K, V>> rangeEI (K fromKey, K toKey) {
+        return range (fromKey, false, toKey, true);
+    }
+    @Override public Iterable<AMapEntry<K, V>> rangeEE (K fromKey, K toKey) {
+        return range (fromKey, false, toKey, false);
+    }
+    @Override public Iterable<AMapEntry<K, V>> fromI (K fromKey) {
+        return range (fromKey, true, NO_BOUND, true);
+    }
+    @Override public Iterable<AMapEntry<K, V>> fromE (K fromKey) {
+        return range (fromKey, false, NO_BOUND, true);
+    }
+    @Override public Iterable<AMapEntry<K, V>> toI (K toKey) {
+        return range (NO_BOUND, true, toKey, true);
+    }
+    @Override public Iterable<AMapEntry<K, V>> toE (K toKey) {
+        return range (NO_BOUND, true, toKey, false);
+    }
 
-        public BTreeIterator (ABTreeMap root) {
-            if (! root.isEmpty ()) {
-                stack.push (root);
+    /**
+     * Index nodes cache the size of their subtrees, so this descends along the key's search path, adding up the
+     *  sizes of the children to the left of the path.
+     */
+    @Override public int rank (K key) {
+        return rank (key, false);
+    }
+
+    @SuppressWarnings ("unchecked")
+    @Override public AMapEntry<K, V> select (int index) {
+        if (index < 0 || index >= size ()) {
+            throw new IndexOutOfBoundsException ("index " + index + " for a map of size " + size ());
+        }
+
+        ABTreeMap node = this;
+        while (node instanceof IndexNode) {
+            final ABTreeMap[] children = ((IndexNode) node).children;
+            int childIdx = 0;
+            while (index >= children[childIdx].size ()) {
+                index -= children[childIdx].size ();
+                childIdx += 1;
             }
+            node = children[childIdx];
+        }
+
+        final LeafNode leaf = (LeafNode) node;
+        return new LeafEntry<> ((K) leaf.keys[index], (V) leaf.values[index]);
+    }
+
+    @Override public int countInRange (K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+        return Math.max (0, rank (toKey, toInclusive) - rank (fromKey, ! fromInclusive));
+    }
+
+    /**
+     * @return the number of keys that are smaller than (or, if {@code inclusive} is true, equal to) a given key
+     */
+    private int rank (Object key, boolean inclusive) {
+        int result = 0;
+
+        ABTreeMap node = this;
+        while (node instanceof IndexNode) {
+            final IndexNode index = (IndexNode) node;
+            final int childIdx = bound (index.separators, key, false, spec.comparator);
+            for (int i=0; i<childIdx; i++) {
+                result += index.children[i].size ();
+            }
+            node = index.children[childIdx];
+        }
+
+        return result + bound (((LeafNode) node).keys, key, ! inclusive, spec.comparator);
+    }
+
+    private Iterable<AMapEntry<K, V>> range (final Object fromKey, final boolean fromInclusive, final Object toKey, final boolean toInclusive) {
+        return new Iterable<AMapEntry<K, V>> () {
+            @Override public Iterator<AMapEntry<K, V>> iterator () {
+                return new BTreeIterator<> (ABTreeMap.this, fromKey, fromInclusive, toKey, toInclusive);
+            }
+        };
+    }
+
+    private static <K,V> AOption<AMapEntry<K,V>> firstOf (Iterator<AMapEntry<K,V>> it) {
+        if (it.hasNext ()) {
+            return AOption.some (it.next ());
+        }
+        return AOption.none ();
+    }
+
+    /**
+     * @return the biggest entry that is smaller than (or, if {@code inclusive} is true, equal to) {@code key}, or
+     *         {@code null} if there is none
+     */
+    @SuppressWarnings ("unchecked")
+    private AMapEntry<K,V> lastOf (ABTreeMap node, Object key, boolean inclusive) {
+        if (node instanceof LeafNode) {
+            final LeafNode leaf = (LeafNode) node;
+            final int idx = (key == NO_BOUND ? leaf.keys.length : bound (leaf.keys, key, ! inclusive, spec.comparator)) - 1;
+            return idx >= 0 ? new LeafEntry<> ((K) leaf.keys[idx], (V) leaf.values[idx]) : null;
+        }
+
+        // All keys in children left of the one that 'key' belongs in are smaller than key, so at most one step
+        //  to the left is necessary
+        final IndexNode index = (IndexNode) node;
+        final int childIdx = key == NO_BOUND ? index.children.length - 1 : bound (index.separators, key, false, spec.comparator);
+        for (int i=childIdx; i>=0; i--) {
+            final AMapEntry<K,V> result = lastOf (index.children[i], key, inclusive);
+            if (result != null) {
+                return result;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * binary search in a sorted array
+     *
+     * @param lower if true, this returns the index of the first element greater than or equal to {@code key}, if
+     *              false the index of the first element greater than {@code key}. If there is no such element, the
+     *              result is {@code arr.length}.
+     */
+    @SuppressWarnings ("unchecked")
+    static int bound (Object[] arr, Object key, boolean lower, Comparator comparator) {
+        int lo = 0;
+        int hi = arr.length;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            final int cmp = comparator.compare (arr[mid], key);
+            if (cmp < 0 || (cmp == 0 && ! lower)) {
+                lo = mid + 1;
+            }
+            else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * If {@code other} is an ABTreeMap with the same comparator, this traverses both trees simultaneously and skips
+     *  all nodes that are shared by both maps.
+     */
+    @SuppressWarnings ("unchecked")
+    @Override public Iterable<AMapChange<K, V>> diff (AMap<K, V> other) {
+        if (! (other instanceof ABTreeMap) || ! ((ABTreeMap) other).spec.comparator.equals (spec.comparator)) {
+            return super.diff (other);
+        }
+
+        final ABTreeMap<K,V> otherRoot = (ABTreeMap<K, V>) other;
+        return new Iterable<AMapChange<K, V>> () {
+            @Override public Iterator<AMapChange<K, V>> iterator () {
+                return new SortedMapDiffIterator<K, V> (spec.comparator, ABTreeMap.this, otherRoot) {
+                    @Override int weight (Object node) {
+                        return height ((ABTreeMap) node);
+                    }
+
+                    @Override void expand (Object node, ArrayDeque<Object> items, ArrayDeque<Boolean> isEntry) {
+                        if (node instanceof IndexNode) {
+                            final ABTreeMap[] children = ((IndexNode) node).children;
+                            for (int i=children.length-1; i>=0; i--) {
+                                pushNode (children[i], items, isEntry);
+                            }
+                        }
+                        else {
+                            final LeafNode leaf = (LeafNode) node;
+                            for (int i=leaf.keys.length-1; i>=0; i--) {
+                                pushEntry (new LeafEntry<> (leaf.keys[i], leaf.values[i]), items, isEntry);
+                            }
+                        }
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * @return the number of index levels below (and including) a given node. All leaves of a BTree have the same depth.
+     */
+    private static int height (ABTreeMap node) {
+        int result = 0;
+        while (node instanceof IndexNode) {
+            node = ((IndexNode) node).children[0];
+            result += 1;
+        }
+        return result;
+    }
+
+    private static class LeafEntry<K,V> implements AMapEntry<K,V> {
+        private final K key;
+        private final V value;
+
+        LeafEntry (K key, V value) {
+            this.key = key;
+            this.value = value;
         }
 
         @Override public K getKey () {
-            return curKey;
+            return key;
         }
         @Override public V getValue () {
-            return curValue;
+            return value;
+        }
+    }
+
+    /**
+     * This iterator descends the tree once to find the first entry of the range, and then scans the leaves in key
+     *  order. It keeps the path from the root to the current leaf, so moving to the next leaf does not require a
+     *  lookup from the root.
+     */
+    private static class BTreeIterator<K,V> implements Iterator<AMapEntry<K,V>> {
+        private final Comparator comparator;
+        private final Object toKey;
+        private final boolean toInclusive;
+
+        private final IndexNode[] path;
+        private final int[] pathIdx;
+
+        private LeafNode leaf;
+        private int leafIdx;
+
+        BTreeIterator (ABTreeMap root, Object fromKey, boolean fromInclusive, Object toKey, boolean toInclusive) {
+            this.comparator = root.spec.comparator;
+            this.toKey = toKey;
+            this.toInclusive = toInclusive;
+
+            final int height = height (root);
+            path = new IndexNode[height];
+            pathIdx = new int[height];
+
+            ABTreeMap node = root;
+            for (int i=0; i<height; i++) {
+                path[i] = (IndexNode) node;
+                pathIdx[i] = fromKey == NO_BOUND ? 0 : bound (path[i].separators, fromKey, false, comparator);
+                node = path[i].children[pathIdx[i]];
+            }
+            leaf = (LeafNode) node;
+            leafIdx = fromKey == NO_BOUND ? 0 : bound (leaf.keys, fromKey, fromInclusive, comparator);
+
+            if (leafIdx == leaf.keys.length) {
+                nextLeaf ();
+            }
+        }
+
+        private void nextLeaf () {
+            int level = path.length - 1;
+            while (level >= 0 && pathIdx[level] == path[level].children.length - 1) {
+                level -= 1;
+            }
+            if (level < 0) {
+                leaf = null;
+                return;
+            }
+
+            pathIdx[level] += 1;
+            ABTreeMap node = path[level].children[pathIdx[level]];
+            for (int i=level+1; i<path.length; i++) {
+                path[i] = (IndexNode) node;
+                pathIdx[i] = 0;
+                node = path[i].children[0];
+            }
+            leaf = (LeafNode) node;
+            leafIdx = 0;
         }
 
+        @SuppressWarnings ("unchecked")
         @Override public boolean hasNext () {
-            return !stack.isEmpty ();
+            if (leaf == null) {
+                return false;
+            }
+            if (toKey == NO_BOUND) {
+                return true;
+            }
+            final int cmp = comparator.compare (leaf.keys[leafIdx], toKey);
+            return cmp < 0 || (cmp == 0 && toInclusive);
         }
 
         @SuppressWarnings ("unchecked")
         @Override public AMapEntry<K, V> next () {
-            Object next;
-
-            while (true) {
-                next = stack.pop ();
+            if (! hasNext ()) {
+                throw new NoSuchElementException ();
+            }
 
-                if (next instanceof LeafNode) {
-                    final LeafNode leafNode = (LeafNode) next;
-                    for (int i=0; i<leafNode.size (); i++) {
-                        stack.push (leafNode.values[i]); // push key and value separately to avoid creating temporary object
-                        stack.push (leafNode.keys[i]);
-                    }
-                }
-                else if (next instanceof IndexNode) {
-                    final IndexNode indexNode = (IndexNode) next;
-                    for (ABTreeMap child: indexNode.children) {
-                        stack.push (child);
-                    }
-                }
-                else {
-                    curKey = (K) next;
-                    curValue = (V) stack.pop ();
-                    return this;
-                }
+            final AMapEntry<K,V> result = new LeafEntry<> ((K) leaf.keys[leafIdx], (V) leaf.values[leafIdx]);
+            leafIdx += 1;
+            if (leafIdx == leaf.keys.length) {
+                nextLeaf ();
             }
+            return result;
         }
 
         @Override public void remove () {
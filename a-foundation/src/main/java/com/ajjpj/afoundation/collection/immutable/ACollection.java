@@ -2,6 +2,7 @@ package com.ajjpj.afoundation.collection.immutable;
 
 import com.ajjpj.afoundation.collection.AEquality;
 import com.ajjpj.afoundation.function.AFunction1;
+import com.ajjpj.afoundation.function.AFunction2;
 import com.ajjpj.afoundation.function.APartialFunction;
 import com.ajjpj.afoundation.function.APredicate;
 
@@ -45,6 +46,20 @@ public interface ACollection<T> extends ATraversable<T>, Iterable<T> {
      */
     boolean contains (T el);
 
+    /**
+     * Returns an {@link ASpliterator} with this collection's elements, e.g. for processing them in parallel. The name avoids a
+     *  clash with <code>Iterable.spliterator ()</code> on Java 8 and later.
+     */
+    ASpliterator<T> aSpliterator();
+
+    /**
+     * Returns a lazy view of this collection. Transformations on the view are not applied right away but combined into
+     *  a single pass over this collection's elements that is performed only when a result is requested, e.g. by
+     *  {@link AView#toList()}, {@link AView#foldLeft(Object, com.ajjpj.afoundation.function.AFunction2)} or
+     *  {@link AView#find(APredicate)}. This avoids creating intermediate collections for chains of transformations.
+     */
+    AView<T> view();
+
     /**
      * Filters this collection's elements, this method returns a new collection comprised of only those elements that match
      *  a given predicate.
@@ -61,6 +76,25 @@ public interface ACollection<T> extends ATraversable<T>, Iterable<T> {
 
     @Override <X, E extends Exception> ACollection<X> collect (APartialFunction<? super T, ? extends X, E> pf) throws E;
 
+    /**
+     * This is a parallel counterpart to {@link #foldLeft(Object, AFunction2)}: the collection is split into parts that
+     *  are folded concurrently, each of them starting with {@code startValue}, and the parts' results are combined
+     *  in iteration order. {@code startValue} must therefore be a neutral element of {@code combiner} (e.g. 0 for
+     *  addition), and {@code combiner} must be associative.
+     */
+    <R, E extends Exception> R parFold (AParallelism parallelism, R startValue, AFunction2<R, ? super T, R, E> f, AFunction2<R, R, R, E> combiner) throws E;
+
+    /**
+     * This is a parallel counterpart to {@link #map(AFunction1)}, applying {@code f} to the collection's elements
+     *  concurrently. The function should therefore be free of side effects.
+     */
+    <X, E extends Exception> ACollection<X> parMap (AParallelism parallelism, AFunction1<? super T, ? extends X, E> f) throws E;
+
+    /**
+     * This is a parallel counterpart to {@link #filter(APredicate)}, evaluating the predicate concurrently.
+     */
+    <E extends Exception> ACollection<T> parFilter (AParallelism parallelism, APredicate<? super T, E> pred) throws E;
+
     /**
      * Creates a map from this collection, applying a function to every element in order to determine that element's key. All
      *  elements with the same key (more precisely, with equal keys) are stored in a collection, and the resulting map
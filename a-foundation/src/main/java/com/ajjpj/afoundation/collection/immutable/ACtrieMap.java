@@ -0,0 +1,889 @@
+package com.ajjpj.afoundation.collection.immutable;
+
+import com.ajjpj.afoundation.collection.AEquality;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+
+/**
+ * This is a mutable, thread safe hash map based on a concurrent hash trie ('Ctrie'). Unlike the other maps in this
+ *  package it is modified in place, but it is meant to be used together with them: {@link #snapshot()} returns an
+ *  immutable {@link AMap} with the map's current contents in constant time, no matter how big the map is.<p>
+ *
+ * Writers do not replace the whole map with a single CAS operation, which is what holding an {@link AHashMap} in an
+ *  {@link java.util.concurrent.atomic.AtomicReference} amounts to. Every level of the trie has indirection nodes
+ *  ('I-nodes') instead, and an update is a CAS on the I-node closest to the modified entry. Concurrent updates of
+ *  different parts of the map therefore do not invalidate each other, and a failed CAS repeats only a single level.<p>
+ *
+ * Taking a snapshot starts a new 'generation' of I-nodes for the map. The old ones become part of the snapshot, and
+ *  writers copy them lazily as they encounter them. This is done with a 'generation compare-and-swap' (GCAS) that
+ *  fails if a snapshot was taken concurrently.<p>
+ *
+ * This is an implementation of the algorithm described by Prokopec, Bronson, Bagwell and Odersky in "Concurrent
+ *  Tries with Efficient Non-Blocking Snapshots", and it borrows heavily from the TrieMap class in the Scala standard
+ *  library.
+ *
+ * @author arno
+ */
+public class ACtrieMap<K,V> implements Iterable<AMapEntry<K,V>> {
+    private static final int LEVEL_INCREMENT = 5;
+
+    /**
+     * the level at which all bits of the hash are used up, so entries are stored in lists instead of deeper trie nodes
+     */
+    private static final int MAX_LEVEL = 35;
+
+    /**
+     * returned by lookup operations if a concurrent modification requires them to start again at the root
+     */
+    private static final Object RESTART = new Object ();
+    private static final Object NOT_FOUND = new Object ();
+
+    @SuppressWarnings ("unchecked")
+    private static final AtomicReferenceFieldUpdater<ACtrieMap, Object> ROOT_UPDATER = AtomicReferenceFieldUpdater.newUpdater (ACtrieMap.class, Object.class, "root");
+
+    final AEquality equality;
+    private final boolean readOnly;
+
+    /**
+     * This is either an {@link INode} or, while the root is replaced when a snapshot is taken, an {@link RdcssDescriptor}.
+     */
+    private volatile Object root;
+
+    /**
+     * Creates an empty map with default (i.e. equals-based) equality.
+     */
+    public ACtrieMap () {
+        this (AEquality.EQUALS);
+    }
+
+    public ACtrieMap (AEquality equality) {
+        this (ACtrieMap.<K,V>newRootNode (), equality, false);
+    }
+
+    private ACtrieMap (INode<K,V> root, AEquality equality, boolean readOnly) {
+        this.root = root;
+        this.equality = equality;
+        this.readOnly = readOnly;
+    }
+
+    private static <K,V> INode<K,V> newRootNode () {
+        final Gen gen = new Gen ();
+        return new INode<> (new CNode<K,V> (0, new Object[0], gen), gen);
+    }
+
+    public AEquality keyEquality () {
+        return equality;
+    }
+
+    @SuppressWarnings ("unchecked")
+    public AOption<V> get (K key) {
+        final Object result = lookup (key);
+        return result == NOT_FOUND ? AOption.<V>none () : AOption.some ((V) result);
+    }
+
+    @SuppressWarnings ("unchecked")
+    public V getOrDefault (K key, V defaultValue) {
+        final Object result = lookup (key);
+        return result == NOT_FOUND ? defaultValue : (V) result;
+    }
+
+    public V getOrNull (K key) {
+        return getOrDefault (key, null);
+    }
+
+    public boolean containsKey (K key) {
+        return lookup (key) != NOT_FOUND;
+    }
+
+    /**
+     * Stores a value for a given key, replacing an existing value for the key if there is one.
+     *
+     * @return the previous value for the key, or {@link AOption#none()} if there was none
+     */
+    public AOption<V> put (K key, V value) {
+        return insert (key, value, false);
+    }
+
+    /**
+     * Stores a value for a given key unless there is a value for the key already.
+     *
+     * @return the existing value for the key, or {@link AOption#none()} if there was none and the new value was stored
+     */
+    public AOption<V> putIfAbsent (K key, V value) {
+        return insert (key, value, true);
+    }
+
+    /**
+     * @return the value that was stored for the key, or {@link AOption#none()} if there was none
+     */
+    public AOption<V> remove (K key) {
+        final int hash = computeHash (key, equality);
+        while (true) {
+            final INode<K,V> r = readRoot (false);
+            final AOption<V> result = r.recRemove (key, hash, 0, null, r.gen, this);
+            if (result != null) {
+                return result;
+            }
+        }
+    }
+
+    public void clear () {
+        while (true) {
+            final INode<K,V> r = readRoot (false);
+            if (rdcssRoot (r, r.gcasRead (this), ACtrieMap.<K,V>newRootNode ())) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns an immutable map with this map's current contents. This takes constant time, and subsequent changes
+     *  to this map are not visible in the snapshot.<p>
+     *
+     * Lookups and iteration work directly on the snapshot's trie. Calling {@link AMap#updated(Object, Object)} or
+     *  {@link AMap#removed(Object)} on the snapshot copies its contents to an {@link AHashMap} once and continues
+     *  from there.
+     */
+    public AMap<K,V> snapshot () {
+        while (true) {
+            final INode<K,V> r = readRoot (false);
+            final MainNode<K,V> expectedMain = r.gcasRead (this);
+            if (rdcssRoot (r, expectedMain, r.copyToGen (new Gen (), this))) {
+                return new Snapshot<> (new ACtrieMap<> (r, equality, true));
+            }
+        }
+    }
+
+    /**
+     * This takes a snapshot and counts its entries, so it takes time proportional to the map's size.
+     */
+    public int size () {
+        return snapshot ().size ();
+    }
+
+    public boolean isEmpty () {
+        return ! iterator ().hasNext ();
+    }
+
+    /**
+     * Iterates over a snapshot of the map, i.e. changes made while iterating are never visible to the iterator.
+     */
+    @Override public Iterator<AMapEntry<K,V>> iterator () {
+        return snapshot ().iterator ();
+    }
+
+    @Override public String toString () {
+        return snapshot ().toString ();
+    }
+
+    private Object lookup (K key) {
+        final int hash = computeHash (key, equality);
+        while (true) {
+            final INode<K,V> r = readRoot (false);
+            final Object result = r.recLookup (key, hash, 0, null, r.gen, this);
+            if (result != RESTART) {
+                return result;
+            }
+        }
+    }
+
+    private AOption<V> insert (K key, V value, boolean onlyIfAbsent) {
+        final int hash = computeHash (key, equality);
+        while (true) {
+            final INode<K,V> r = readRoot (false);
+            final AOption<V> result = r.recInsert (key, value, hash, 0, null, r.gen, this, onlyIfAbsent);
+            if (result != null) {
+                return result;
+            }
+        }
+    }
+
+    /**
+     * This is the same hash function as in {@link AHashMap}.
+     */
+    private static int computeHash (Object key, AEquality equality) {
+        int h = equality.hashCode (key);
+        h = h + ~(h << 9);
+        h = h ^ (h >>> 14);
+        h = h + (h << 4);
+        return h ^ (h >>> 10);
+    }
+
+    //---------------------------------------- RDCSS on the root node
+
+    @SuppressWarnings ("unchecked")
+    INode<K,V> readRoot (boolean abort) {
+        final Object r = root;
+        if (r instanceof INode) {
+            return (INode<K,V>) r;
+        }
+        return rdcssComplete (abort);
+    }
+
+    private boolean casRoot (Object expected, Object value) {
+        return ROOT_UPDATER.compareAndSet (this, expected, value);
+    }
+
+    /**
+     * replaces the root node if its main node is still {@code expectedMain}, i.e. a 'restricted double compare
+     *  single swap' (RDCSS)
+     */
+    private boolean rdcssRoot (INode<K,V> oldRoot, MainNode<K,V> expectedMain, INode<K,V> newRoot) {
+        final RdcssDescriptor<K,V> desc = new RdcssDescriptor<> (oldRoot, expectedMain, newRoot);
+        if (casRoot (oldRoot, desc)) {
+            rdcssComplete (false);
+            return desc.committed;
+        }
+        return false;
+    }
+
+    @SuppressWarnings ("unchecked")
+    private INode<K,V> rdcssComplete (boolean abort) {
+        while (true) {
+            final Object r = root;
+            if (r instanceof INode) {
+                return (INode<K,V>) r;
+            }
+
+            final RdcssDescriptor<K,V> desc = (RdcssDescriptor<K,V>) r;
+            if (abort) {
+                if (casRoot (desc, desc.oldRoot)) {
+                    return desc.oldRoot;
+                }
+            }
+            else if (desc.oldRoot.gcasRead (this) == desc.expectedMain) {
+                if (casRoot (desc, desc.newRoot)) {
+                    desc.committed = true;
+                    return desc.newRoot;
+                }
+            }
+            else if (casRoot (desc, desc.oldRoot)) {
+                return desc.oldRoot;
+            }
+        }
+    }
+
+    static class RdcssDescriptor<K,V> {
+        final INode<K,V> oldRoot;
+        final MainNode<K,V> expectedMain;
+        final INode<K,V> newRoot;
+        volatile boolean committed = false;
+
+        RdcssDescriptor (INode<K,V> oldRoot, MainNode<K,V> expectedMain, INode<K,V> newRoot) {
+            this.oldRoot = oldRoot;
+            this.expectedMain = expectedMain;
+            this.newRoot = newRoot;
+        }
+    }
+
+    //---------------------------------------- trie nodes
+
+    /**
+     * Every I-node belongs to a generation. Taking a snapshot starts a new generation, and I-nodes of an older
+     *  generation are copied before they are modified.
+     */
+    static class Gen {
+    }
+
+    /**
+     * This is the indirection node at every level of the trie, i.e. the place where CAS operations modify the trie.
+     */
+    static class INode<K,V> {
+        @SuppressWarnings ("unchecked")
+        private static final AtomicReferenceFieldUpdater<INode, MainNode> MAIN_UPDATER = AtomicReferenceFieldUpdater.newUpdater (INode.class, MainNode.class, "main");
+
+        final Gen gen;
+        volatile MainNode<K,V> main;
+
+        INode (MainNode<K,V> main, Gen gen) {
+            this.main = main;
+            this.gen = gen;
+        }
+
+        private boolean casMain (MainNode<K,V> expected, MainNode<K,V> value) {
+            return MAIN_UPDATER.compareAndSet (this, expected, value);
+        }
+
+        MainNode<K,V> gcasRead (ACtrieMap<K,V> ct) {
+            final MainNode<K,V> m = main;
+            if (m.prev == null) {
+                return m;
+            }
+            return gcasComplete (m, ct);
+        }
+
+        /**
+         * Replaces the main node if it is {@code old}, and if no snapshot was taken since the operation started.
+         *  The new main node is written with a reference to the old one first, and that reference is removed only if
+         *  the root still has this node's generation. Otherwise the old main node is restored.
+         */
+        boolean gcas (MainNode<K,V> old, MainNode<K,V> n, ACtrieMap<K,V> ct) {
+            n.prev = old;
+            if (casMain (old, n)) {
+                gcasComplete (n, ct);
+                return n.prev == null;
+            }
+            return false;
+        }
+
+        @SuppressWarnings ("unchecked")
+        private MainNode<K,V> gcasComplete (MainNode<K,V> m, ACtrieMap<K,V> ct) {
+            while (m != null) {
+                final MainNode<K,V> prev = m.prev;
+                final INode<K,V> ctRoot = ct.readRoot (true);
+
+                if (prev == null) {
+                    return m;
+                }
+
+                if (prev instanceof FailedNode) {
+                    // try to commit to the previous value
+                    final MainNode<K,V> restored = ((FailedNode<K,V>) prev).restored;
+                    if (casMain (m, restored)) {
+                        return restored;
+                    }
+                    m = main;
+                }
+                else if (ctRoot.gen == gen && ! ct.readOnly) {
+                    // try to commit
+                    if (m.casPrev (prev, null)) {
+                        return m;
+                    }
+                }
+                else {
+                    // a snapshot was taken concurrently --> try to abort
+                    m.casPrev (prev, new FailedNode<> (prev));
+                    m = main;
+                }
+            }
+            return null;
+        }
+
+        INode<K,V> copyToGen (Gen newGen, ACtrieMap<K,V> ct) {
+            return new INode<> (gcasRead (ct), newGen);
+        }
+
+        /**
+         * @return the previous value for the key, or null if the operation must be restarted at the root
+         */
+        @SuppressWarnings ("unchecked")
+        AOption<V> recInsert (K key, V value, int hash, int level, INode<K,V> parent, Gen startGen, ACtrieMap<K,V> ct, boolean onlyIfAbsent) {
+            while (true) {
+                final MainNode<K,V> m = gcasRead (ct);
+
+                if (m instanceof CNode) {
+                    final CNode<K,V> cn = (CNode<K,V>) m;
+                    final int flag = 1 << ((hash >>> level) & 0x1f);
+                    final int pos = Integer.bitCount (cn.bitmap & (flag - 1));
+
+                    if ((cn.bitmap & flag) == 0) {
+                        final CNode<K,V> renewed = (cn.gen == gen) ? cn : cn.renewed (gen, ct);
+                        return gcas (cn, renewed.insertedAt (pos, flag, new SNode<> (key, value, hash), gen), ct) ? AOption.<V>none () : null;
+                    }
+
+                    final Object sub = cn.array[pos];
+                    if (sub instanceof INode) {
+                        final INode<K,V> in = (INode<K,V>) sub;
+                        if (in.gen == startGen) {
+                            return in.recInsert (key, value, hash, level + LEVEL_INCREMENT, this, startGen, ct, onlyIfAbsent);
+                        }
+                        if (gcas (cn, cn.renewed (startGen, ct), ct)) {
+                            continue;
+                        }
+                        return null;
+                    }
+
+                    final SNode<K,V> sn = (SNode<K,V>) sub;
+                    if (sn.hash == hash && ct.equality.equals (sn.key, key)) {
+                        if (onlyIfAbsent) {
+                            return AOption.some (sn.value);
+                        }
+                        return gcas (cn, cn.updatedAt (pos, new SNode<> (key, value, hash), gen), ct) ? AOption.some (sn.value) : null;
+                    }
+
+                    // two different keys at the same position --> move both to a new trie level
+                    final CNode<K,V> renewed = (cn.gen == gen) ? cn : cn.renewed (gen, ct);
+                    final MainNode<K,V> dual = CNode.dual (sn, new SNode<> (key, value, hash), level + LEVEL_INCREMENT, gen, ct.equality);
+                    return gcas (cn, renewed.updatedAt (pos, new INode<> (dual, gen), gen), ct) ? AOption.<V>none () : null;
+                }
+
+                if (m instanceof TNode) {
+                    clean (parent, ct, level - LEVEL_INCREMENT);
+                    return null;
+                }
+
+                final LNode<K,V> ln = (LNode<K,V>) m;
+                final AOption<V> existing = ln.entries.get (key);
+                if (onlyIfAbsent && existing.isDefined ()) {
+                    return existing;
+                }
+                return gcas (ln, new LNode<> (ln.entries.updated (key, value)), ct) ? existing : null;
+            }
+        }
+
+        /**
+         * @return the value for the key, {@link #NOT_FOUND} or {@link #RESTART}
+         */
+        @SuppressWarnings ("unchecked")
+        Object recLookup (K key, int hash, int level, INode<K,V> parent, Gen startGen, ACtrieMap<K,V> ct) {
+            while (true) {
+                final MainNode<K,V> m = gcasRead (ct);
+
+                if (m instanceof CNode) {
+                    final CNode<K,V> cn = (CNode<K,V>) m;
+                    final int flag = 1 << ((hash >>> level) & 0x1f);
+                    if ((cn.bitmap & flag) == 0) {
+                        return NOT_FOUND;
+                    }
+
+                    final Object sub = cn.array[Integer.bitCount (cn.bitmap & (flag - 1))];
+                    if (sub instanceof INode) {
+                        final INode<K,V> in = (INode<K,V>) sub;
+                        if (ct.readOnly || in.gen == startGen) {
+                            return in.recLookup (key, hash, level + LEVEL_INCREMENT, this, startGen, ct);
+                        }
+                        if (gcas (cn, cn.renewed (startGen, ct), ct)) {
+                            continue;
+                        }
+                        return RESTART;
+                    }
+
+                    final SNode<K,V> sn = (SNode<K,V>) sub;
+                    return (sn.hash == hash && ct.equality.equals (sn.key, key)) ? sn.value : NOT_FOUND;
+                }
+
+                if (m instanceof TNode) {
+                    if (! ct.readOnly) {
+                        clean (parent, ct, level - LEVEL_INCREMENT);
+                        return RESTART;
+                    }
+                    final SNode<K,V> sn = ((TNode<K,V>) m).sn;
+                    return (sn.hash == hash && ct.equality.equals (sn.key, key)) ? sn.value : NOT_FOUND;
+                }
+
+                return ((LNode<K,V>) m).entries.getOrDefault (key, (V) NOT_FOUND);
+            }
+        }
+
+        /**
+         * @return the value that was removed, or null if the operation must be restarted at the root
+         */
+        @SuppressWarnings ("unchecked")
+        AOption<V> recRemove (K key, int hash, int level, INode<K,V> parent, Gen startGen, ACtrieMap<K,V> ct) {
+            final MainNode<K,V> m = gcasRead (ct);
+
+            if (m instanceof CNode) {
+                final CNode<K,V> cn = (CNode<K,V>) m;
+                final int flag = 1 << ((hash >>> level) & 0x1f);
+                if ((cn.bitmap & flag) == 0) {
+                    return AOption.none ();
+                }
+
+                final int pos = Integer.bitCount (cn.bitmap & (flag - 1));
+                final Object sub = cn.array[pos];
+
+                final AOption<V> result;
+                if (sub instanceof INode) {
+                    final INode<K,V> in = (INode<K,V>) sub;
+                    if (in.gen == startGen) {
+                        result = in.recRemove (key, hash, level + LEVEL_INCREMENT, this, startGen, ct);
+                    }
+                    else if (gcas (cn, cn.renewed (startGen, ct), ct)) {
+                        result = recRemove (key, hash, level, parent, startGen, ct);
+                    }
+                    else {
+                        result = null;
+                    }
+                }
+                else {
+                    final SNode<K,V> sn = (SNode<K,V>) sub;
+                    if (sn.hash == hash && ct.equality.equals (sn.key, key)) {
+                        final MainNode<K,V> contracted = cn.removedAt (pos, flag, gen).toContracted (level);
+                        result = gcas (cn, contracted, ct) ? AOption.some (sn.value) : null;
+                    }
+                    else {
+                        result = AOption.none ();
+                    }
+                }
+
+                if (result != null && result.isDefined () && parent != null) {
+                    // this node may have been reduced to a single tombed entry, which is moved up into the parent
+                    final MainNode<K,V> n = gcasRead (ct);
+                    if (n instanceof TNode) {
+                        cleanParent ((TNode<K,V>) n, parent, hash, level, startGen, ct);
+                    }
+                }
+                return result;
+            }
+
+            if (m instanceof TNode) {
+                clean (parent, ct, level - LEVEL_INCREMENT);
+                return null;
+            }
+
+            final LNode<K,V> ln = (LNode<K,V>) m;
+            final AOption<V> existing = ln.entries.get (key);
+            if (existing.isEmpty ()) {
+                return existing;
+            }
+            return gcas (ln, ln.removed (key, ct.equality), ct) ? existing : null;
+        }
+
+        private void cleanParent (TNode<K,V> tombed, INode<K,V> parent, int hash, int level, Gen startGen, ACtrieMap<K,V> ct) {
+            while (true) {
+                final MainNode<K,V> pm = parent.gcasRead (ct);
+                if (! (pm instanceof CNode)) {
+                    return;
+                }
+
+                final CNode<K,V> cn = (CNode<K,V>) pm;
+                final int flag = 1 << ((hash >>> (level - LEVEL_INCREMENT)) & 0x1f);
+                if ((cn.bitmap & flag) == 0) {
+                    return;
+                }
+                final int pos = Integer.bitCount (cn.bitmap & (flag - 1));
+                if (cn.array[pos] != this) {
+                    // somebody else already removed or replaced this node
+                    return;
+                }
+
+                final MainNode<K,V> contracted = cn.updatedAt (pos, tombed.sn, gen).toContracted (level - LEVEL_INCREMENT);
+                if (parent.gcas (cn, contracted, ct) || ct.readRoot (false).gen != startGen) {
+                    return;
+                }
+            }
+        }
+
+        private void clean (INode<K,V> node, ACtrieMap<K,V> ct, int level) {
+            final MainNode<K,V> m = node.gcasRead (ct);
+            if (m instanceof CNode) {
+                node.gcas (m, ((CNode<K,V>) m).toCompressed (ct, level, gen), ct);
+            }
+        }
+    }
+
+    /**
+     * The content of an I-node. The {@link #prev} field is non-null while a GCAS operation is in progress.
+     */
+    static abstract class MainNode<K,V> {
+        @SuppressWarnings ("unchecked")
+        private static final AtomicReferenceFieldUpdater<MainNode, MainNode> PREV_UPDATER = AtomicReferenceFieldUpdater.newUpdater (MainNode.class, MainNode.class, "prev");
+
+        volatile MainNode<K,V> prev;
+
+        boolean casPrev (MainNode<K,V> expected, MainNode<K,V> value) {
+            return PREV_UPDATER.compareAndSet (this, expected, value);
+        }
+    }
+
+    /**
+     * marks a GCAS operation that was aborted, holding the main node that must be restored
+     */
+    static class FailedNode<K,V> extends MainNode<K,V> {
+        final MainNode<K,V> restored;
+
+        FailedNode (MainNode<K,V> restored) {
+            this.restored = restored;
+        }
+    }
+
+    /**
+     * an entry in the trie
+     */
+    static class SNode<K,V> implements AMapEntry<K,V> {
+        final K key;
+        final V value;
+        final int hash;
+
+        SNode (K key, V value, int hash) {
+            this.key = key;
+            this.value = value;
+            this.hash = hash;
+        }
+
+        @Override public K getKey () {
+            return key;
+        }
+        @Override public V getValue () {
+            return value;
+        }
+    }
+
+    /**
+     * A 'tombed' entry, i.e. the only remaining entry of a trie node. It is moved up into the parent node by the
+     *  next operation that encounters it.
+     */
+    static class TNode<K,V> extends MainNode<K,V> {
+        final SNode<K,V> sn;
+
+        TNode (SNode<K,V> sn) {
+            this.sn = sn;
+        }
+    }
+
+    /**
+     * a list of entries whose keys have the same hash
+     */
+    static class LNode<K,V> extends MainNode<K,V> {
+        final AListMap<K,V> entries;
+
+        LNode (AListMap<K,V> entries) {
+            this.entries = entries;
+        }
+
+        MainNode<K,V> removed (K key, AEquality equality) {
+            final AListMap<K,V> remaining = entries.removed (key);
+            if (remaining.size () > 1) {
+                return new LNode<> (remaining);
+            }
+            // a single remaining entry is tombed so that it is moved up into the parent node
+            return new TNode<> (new SNode<> (remaining.getKey (), remaining.getValue (), computeHash (remaining.getKey (), equality)));
+        }
+    }
+
+    /**
+     * A trie node, with an array that contains an {@link INode} or an {@link SNode} for every bit in the bitmap.
+     *  CNodes are immutable, they are replaced rather than modified.
+     */
+    static class CNode<K,V> extends MainNode<K,V> {
+        final int bitmap;
+        final Object[] array;
+        final Gen gen;
+
+        CNode (int bitmap, Object[] array, Gen gen) {
+            this.bitmap = bitmap;
+            this.array = array;
+            this.gen = gen;
+        }
+
+        CNode<K,V> updatedAt (int pos, Object node, Gen gen) {
+            final Object[] arrayNew = array.clone ();
+            arrayNew[pos] = node;
+            return new CNode<> (bitmap, arrayNew, gen);
+        }
+
+        CNode<K,V> removedAt (int pos, int flag, Gen gen) {
+            final Object[] arrayNew = new Object[array.length - 1];
+            System.arraycopy (array, 0, arrayNew, 0, pos);
+            System.arraycopy (array, pos + 1, arrayNew, pos, array.length - pos - 1);
+            return new CNode<> (bitmap ^ flag, arrayNew, gen);
+        }
+
+        CNode<K,V> insertedAt (int pos, int flag, Object node, Gen gen) {
+            final Object[] arrayNew = new Object[array.length + 1];
+            System.arraycopy (array, 0, arrayNew, 0, pos);
+            arrayNew[pos] = node;
+            System.arraycopy (array, pos, arrayNew, pos + 1, array.length - pos);
+            return new CNode<> (bitmap | flag, arrayNew, gen);
+        }
+
+        /**
+         * @return a copy of this node with all its I-nodes copied to a new generation
+         */
+        @SuppressWarnings ("unchecked")
+        CNode<K,V> renewed (Gen newGen, ACtrieMap<K,V> ct) {
+            final Object[] arrayNew = new Object[array.length];
+            for (int i=0; i<array.length; i++) {
+                arrayNew[i] = (array[i] instanceof INode) ? ((INode<K,V>) array[i]).copyToGen (newGen, ct) : array[i];
+            }
+            return new CNode<> (bitmap, arrayNew, newGen);
+        }
+
+        /**
+         * @return a tombed entry if this node below the root contains nothing but a single entry, and this node otherwise
+         */
+        @SuppressWarnings ("unchecked")
+        MainNode<K,V> toContracted (int level) {
+            if (array.length == 1 && level > 0 && array[0] instanceof SNode) {
+                return new TNode<> ((SNode<K,V>) array[0]);
+            }
+            return this;
+        }
+
+        /**
+         * @return a copy of this node with tombed entries of child nodes moved up into this node
+         */
+        @SuppressWarnings ("unchecked")
+        MainNode<K,V> toCompressed (ACtrieMap<K,V> ct, int level, Gen gen) {
+            final Object[] arrayNew = new Object[array.length];
+            for (int i=0; i<array.length; i++) {
+                final Object sub = array[i];
+                if (sub instanceof INode) {
+                    final MainNode<K,V> subMain = ((INode<K,V>) sub).gcasRead (ct);
+                    arrayNew[i] = (subMain instanceof TNode) ? ((TNode<K,V>) subMain).sn : sub;
+                }
+                else {
+                    arrayNew[i] = sub;
+                }
+            }
+            return new CNode<K,V> (bitmap, arrayNew, gen).toContracted (level);
+        }
+
+        static <K,V> MainNode<K,V> dual (SNode<K,V> x, SNode<K,V> y, int level, Gen gen, AEquality equality) {
+            if (level >= MAX_LEVEL) {
+                return new LNode<> (AListMap.<K,V>empty (equality).updated (x.key, x.value).updated (y.key, y.value));
+            }
+
+            final int xIdx = (x.hash >>> level) & 0x1f;
+            final int yIdx = (y.hash >>> level) & 0x1f;
+            final int bitmap = (1 << xIdx) | (1 << yIdx);
+
+            if (xIdx == yIdx) {
+                final INode<K,V> sub = new INode<> (dual (x, y, level + LEVEL_INCREMENT, gen, equality), gen);
+                return new CNode<> (bitmap, new Object[] {sub}, gen);
+            }
+            if (xIdx < yIdx) {
+                return new CNode<> (bitmap, new Object[] {x, y}, gen);
+            }
+            return new CNode<> (bitmap, new Object[] {y, x}, gen);
+        }
+    }
+
+    //---------------------------------------- read-only snapshots
+
+    /**
+     * iterates over a read-only trie
+     */
+    static class SnapshotIterator<K,V> implements Iterator<AMapEntry<K,V>> {
+        private final ACtrieMap<K,V> ct;
+        private final Deque<Object> stack = new ArrayDeque<> ();
+        private AMapEntry<K,V> next;
+
+        SnapshotIterator (ACtrieMap<K,V> ct) {
+            this.ct = ct;
+            stack.push (ct.readRoot (false));
+            advance ();
+        }
+
+        @SuppressWarnings ("unchecked")
+        private void advance () {
+            next = null;
+            while (next == null && ! stack.isEmpty ()) {
+                final Object node = stack.pop ();
+                if (node instanceof INode) {
+                    stack.push (((INode<K,V>) node).gcasRead (ct));
+                }
+                else if (node instanceof CNode) {
+                    final Object[] array = ((CNode<K,V>) node).array;
+                    for (int i=array.length-1; i>=0; i--) {
+                        stack.push (array[i]);
+                    }
+                }
+                else if (node instanceof SNode) {
+                    next = (SNode<K,V>) node;
+                }
+                else if (node instanceof TNode) {
+                    next = ((TNode<K,V>) node).sn;
+                }
+                else if (node instanceof LNode) {
+                    for (AMapEntry<K,V> e: ((LNode<K,V>) node).entries) {
+                        stack.push (e);
+                    }
+                }
+                else {
+                    // an entry of an LNode
+                    next = (AMapEntry<K,V>) node;
+                }
+            }
+        }
+
+        @Override public boolean hasNext () {
+            return next != null;
+        }
+
+        @Override public AMapEntry<K, V> next () {
+            if (next == null) {
+                throw new NoSuchElementException ();
+            }
+            final AMapEntry<K,V> result = next;
+            advance ();
+            return result;
+        }
+
+        @Override public void remove () {
+            throw new UnsupportedOperationException ();
+        }
+    }
+
+    /**
+     * This is the immutable AMap returned by {@link #snapshot()}. It wraps a read-only trie and copies its contents
+     *  to an {@link AHashMap} if it is modified.
+     */
+    static class Snapshot<K,V> extends AbstractAMap<K,V> {
+        private final transient ACtrieMap<K,V> trie;
+
+        // volatile so that the cached map is published safely to other threads; a race only means calculating it twice
+        private transient volatile int cachedSize = -1;
+        private transient volatile AHashMap<K,V> cachedHashMap;
+
+        Snapshot (ACtrieMap<K,V> trie) {
+            this.trie = trie;
+        }
+
+        AHashMap<K,V> toHashMap () {
+            AHashMap<K,V> result = cachedHashMap;
+            if (result == null) {
+                final AHashMap.Builder<K,V> builder = AHashMap.builder (trie.equality);
+                for (AMapEntry<K,V> e: this) {
+                    builder.add (e.getKey (), e.getValue ());
+                }
+                result = builder.build ();
+                cachedHashMap = result;
+            }
+            return result;
+        }
+
+        @Override public AEquality keyEquality () {
+            return trie.equality;
+        }
+
+        @Override public AMap<K,V> clear () {
+            return AHashMap.empty (trie.equality);
+        }
+
+        @Override public int size () {
+            int result = cachedSize;
+            if (result < 0) {
+                result = 0;
+                for (Iterator<AMapEntry<K,V>> it = iterator (); it.hasNext (); it.next ()) {
+                    result += 1;
+                }
+                cachedSize = result;
+            }
+            return result;
+        }
+
+        @Override public AOption<V> get (K key) {
+            return trie.get (key);
+        }
+
+        @Override public V getOrDefault (K key, V defaultValue) {
+            return trie.getOrDefault (key, defaultValue);
+        }
+
+        @Override public AMap<K,V> updated (K key, V value) {
+            return toHashMap ().updated (key, value);
+        }
+
+        @Override public AMap<K,V> removed (K key) {
+            return toHashMap ().removed (key);
+        }
+
+        @Override public Iterator<AMapEntry<K,V>> iterator () {
+            return new SnapshotIterator<> (trie);
+        }
+
+        @Override public ASet<K> keys () {
+            return toHashMap ().keys ();
+        }
+
+        private Object writeReplace () {
+            return toHashMap ();
+        }
+    }
+}
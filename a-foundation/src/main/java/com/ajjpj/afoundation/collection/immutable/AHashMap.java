@@ -2,19 +2,27 @@ package com.ajjpj.afoundation.collection.immutable;
 
 import com.ajjpj.afoundation.collection.AEquality;
 import com.ajjpj.afoundation.function.AFunction1;
+import com.ajjpj.afoundation.function.AFunction3;
+import com.ajjpj.afoundation.function.AStatement2;
 
 import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.Deque;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
 
 
 /**
  * This is an immutable hash map based on 32-way hash tries. Its implementation is optimized to minimize copying when
  *  the map is modified.<p>
  *
- * The code in this class is essentially a port of the HashMap class from the Scala standard library. Thank you for
- *  the excellent code, Scala team!
+ * The trie nodes use the 'compressed hash-array mapped prefix tree' (CHAMP) layout described by Steindorfer and Vinju:
+ *  entries are stored inline in the nodes rather than in leaf objects of their own, which saves memory and makes
+ *  both lookup and iteration more cache friendly. The original version of this class was a port of the HashMap
+ *  class from the Scala standard library. Thank you for the excellent code, Scala team!
  *
  * @author arno
  */
@@ -59,13 +67,13 @@ public class AHashMap<K, V> extends AbstractAMap<K,V> {
      *  <code>java.util.Map</code>.
      */
     public static <K,V> AHashMap<K,V> fromJavaUtilMap(AEquality equality, Map<K,V> map) {
-        AHashMap<K,V> result = empty(equality);
+        final Builder<K,V> builder = builder (equality);
 
         for(Map.Entry<K,V> entry: map.entrySet()) {
-            result = result.updated(entry.getKey(), entry.getValue());
+            builder.add (entry.getKey (), entry.getValue ());
         }
 
-        return result;
+        return builder.build ();
     }
 
     /**
@@ -83,15 +91,15 @@ public class AHashMap<K, V> extends AbstractAMap<K,V> {
         final Iterator<K> ki = keys.iterator();
         final Iterator<V> vi = values.iterator();
 
-        AHashMap<K,V> result = empty(equality);
+        final Builder<K,V> builder = builder (equality);
 
         while(ki.hasNext()) {
             final K key = ki.next();
             final V value = vi.next();
 
-            result = result.updated(key, value);
+            builder.add (key, value);
         }
-        return result;
+        return builder.build ();
     }
 
     /**
@@ -111,15 +119,66 @@ public class AHashMap<K, V> extends AbstractAMap<K,V> {
     public static <K,V, E extends Exception> AHashMap<K,V> fromKeysAndFunction(AEquality equality, Iterable<K> keys, AFunction1<? super K, ? extends V, E> f) throws E {
         final Iterator<K> ki = keys.iterator();
 
-        AHashMap<K,V> result = AHashMap.empty(equality);
+        final Builder<K,V> builder = builder (equality);
 
         while(ki.hasNext()) {
             final K key = ki.next();
             final V value = f.apply(key);
 
-            result = result.updated(key, value);
+            builder.add (key, value);
+        }
+        return builder.build ();
+    }
+
+    /**
+     * Returns a {@link Builder} for AHashMap instances with default (i.e. equals-based) equalityForEquals.
+     */
+    public static <K,V> Builder<K,V> builder() {
+        return builder (DEFAULT_EQUALITY);
+    }
+    /**
+     * Returns a {@link Builder} for AHashMap instances with a given equalityForEquals.
+     */
+    public static <K,V> Builder<K,V> builder(AEquality equality) {
+        return new Builder<> (AHashMap.<K,V>empty (equality));
+    }
+
+    /**
+     * A Builder creates an AHashMap by modifying its internal trie nodes in place rather than copying a path of nodes
+     *  for every added entry, which makes it a lot faster than repeated calls to {@link #updated(Object, Object)} for
+     *  building large maps.<p>
+     *
+     * This works along the lines of Clojure's 'transient' collections: The builder copies the trie nodes it modifies
+     *  into {@link TransientNode}s of its own, which it then modifies in place. {@link #build()} turns them into regular
+     *  trie nodes with final fields, so the returned map is safe to share between threads like any other AHashMap.
+     *  Nodes that are part of a returned map are never modified afterwards, and the builder can safely be used to
+     *  build further maps.<p>
+     *
+     * Builder instances are <em>not</em> thread safe.
+     */
+    public static class Builder<K,V> {
+        private final AEquality equality;
+
+        /**
+         * either an AHashMap or a TransientNode
+         */
+        private Object root;
+
+        Builder (AHashMap<K,V> root) {
+            this.equality = root.equality;
+            this.root = root;
+        }
+
+        public Builder<K,V> add (K key, V value) {
+            root = TransientNode.updated (root, key, computeHash (key, equality), 0, value, equality);
+            return this;
+        }
+
+        public AHashMap<K,V> build () {
+            final AHashMap<K,V> result = TransientNode.freeze (root, equality);
+            root = result;
+            return result;
         }
-        return result;
     }
 
     private AHashMap(AEquality equality) {
@@ -142,6 +201,10 @@ public class AHashMap<K, V> extends AbstractAMap<K,V> {
         return doGet (key, computeHash (key, equality), 0);
     }
 
+    @Override public V getOrDefault (K key, V defaultValue) {
+        return doGetOrDefault (key, computeHash (key, equality), 0, defaultValue);
+    }
+
     @Override public AHashMap<K,V> updated(K key, V value) {
         return doUpdated(key, computeHash(key, equality), 0, value);
     }
@@ -150,54 +213,331 @@ public class AHashMap<K, V> extends AbstractAMap<K,V> {
         return doRemoved(key, computeHash(key, equality), 0);
     }
 
+    /**
+     * Returns a map that contains all entries of this map and of {@code other}. If both maps contain an entry for a
+     *  given key, the entry from {@code other} wins, making this a natural way to 'overlay' one map onto another.<p>
+     *
+     * If both maps use the same equality, this walks both hash tries simultaneously and reuses unchanged subtrees
+     *  by reference, so the cost is roughly proportional to the differences between the maps rather than to their size.
+     */
+    public AHashMap<K,V> merged (AHashMap<K,V> other) {
+        return merged (other, (AFunction3<K,V,V,V,RuntimeException>) null);
+    }
+
+    /**
+     * Returns a map that contains all entries of this map and of {@code other}. If both maps contain an entry for a
+     *  given key, {@code conflictFn} is called with the key, the value from this map and the value from {@code other}
+     *  (in that order) to determine the value in the resulting map. Passing {@code null} as {@code conflictFn} means
+     *  that values from {@code other} win.<p>
+     *
+     * If both maps use the same equality, this walks both hash tries simultaneously and reuses unchanged subtrees
+     *  by reference, so the cost is roughly proportional to the differences between the maps rather than to their size.
+     */
+    public <E extends Exception> AHashMap<K,V> merged (AHashMap<K,V> other, AFunction3<? super K, ? super V, ? super V, ? extends V, E> conflictFn) throws E {
+        if (other.equality.equals (equality)) {
+            return doMerged (other, 0, conflictFn);
+        }
+
+        // the tries are based on different hash codes, so there is no common structure to exploit
+        AHashMap<K,V> result = this;
+        for (AMapEntry<K,V> entry: other) {
+            final AOption<V> existing = result.get (entry.getKey ());
+            final V value = (conflictFn != null && existing.isDefined ()) ? conflictFn.apply (entry.getKey (), existing.get (), entry.getValue ()) : entry.getValue ();
+            result = result.updated (entry.getKey (), value);
+        }
+        return result;
+    }
+
+    /**
+     * Returns a map with all entries from this map whose keys are contained in {@code other}. Both maps are expected
+     *  to share the same equality.
+     */
+    AHashMap<K,V> retainedKeys (AHashMap<K,?> other) {
+        return doRetainedKeys (other, 0);
+    }
+
+    /**
+     * Returns a map with all entries from this map whose keys are <em>not</em> contained in {@code other}. Both maps
+     *  are expected to share the same equality.
+     */
+    AHashMap<K,V> removedKeys (AHashMap<K,?> other) {
+        return doRemovedKeys (other, 0);
+    }
+
     @Override public Iterator<AMapEntry<K, V>> iterator() {
         return new HashMapIterator<> (this);
     }
 
+    /**
+     * The spliterator splits on the children of trie nodes. Entries that are stored inline in a trie node become parts
+     *  of their own when the node is split.
+     */
+    @Override public ASpliterator<AMapEntry<K, V>> aSpliterator () {
+        return new HashMapSpliterator<> (this, size ());
+    }
+
+    /**
+     * Calls {@code f} for every entry of this map. This walks the trie recursively, so unlike iterating over the map
+     *  it allocates neither an Iterator nor an AMapEntry per entry.
+     */
+    public <E extends Exception> void forEach (AStatement2<? super K, ? super V, E> f) throws E {
+        doForEach (f);
+    }
+
+    /**
+     * Combines all entries of this map into a single value, e.g. to sum up all values. Like {@link #forEach(AStatement2)},
+     *  this walks the trie recursively without allocating an Iterator or an AMapEntry per entry. The order in which
+     *  entries are visited is the same as for iteration, i.e. it is determined by the keys' hash codes.
+     */
+    public <R, E extends Exception> R foldLeft (R startValue, AFunction3<R, ? super K, ? super V, R, E> f) throws E {
+        return doFoldLeft (startValue, f);
+    }
+
+    /**
+     * Every trie node stores its entries inline in its {@code content} array, followed by its child nodes, so the
+     *  iterator needs a single cursor per level. The current level's cursor is held in fields, and the fixed size
+     *  stack arrays are touched only when the iterator moves to a different level.
+     */
     static class HashMapIterator<K,V> implements Iterator<AMapEntry<K,V>> {
-        private final Deque<Object> stack = new ArrayDeque<> ();
+        // 32 bit hashes allow at most 7 levels of trie nodes, and there may be a collision node below them
+        private final Object[][] contentStack = new Object[8][];
+        private final int[] dataEndStack = new int[8];
+        private final int[] posStack = new int[8];
+        private int depth = -1;
+
+        /**
+         * the current level's node content, or null if there are no more entries
+         */
+        private Object[] content;
+        private int dataEnd;
+        private int pos;
+
+        HashMapIterator (AHashMap<K,V> root) {
+            if (root.nonEmpty ()) {
+                descendInto (root);
+                advanceToData ();
+            }
+        }
 
-        public HashMapIterator (AHashMap<K,V> root) {
-            if (! root.isEmpty ()) {
-                if (root instanceof HashMapCollision1) {
-                    pushCollision ((HashMapCollision1<K, V>) root);
-                }
-                else {
-                    stack.push (root);
-                }
+        private void descendInto (AHashMap<?,?> node) {
+            if (depth >= 0) {
+                contentStack[depth] = content;
+                dataEndStack[depth] = dataEnd;
+                posStack[depth] = pos;
             }
+            depth += 1;
+
+            if (node instanceof HashTrieMap) {
+                final HashTrieMap<?,?> trie = (HashTrieMap<?,?>) node;
+                content = trie.content;
+                dataEnd = 2 * Integer.bitCount (trie.dataMap);
+            }
+            else {
+                content = ((HashCollisionMap<?,?>) node).content;
+                dataEnd = content.length;
+            }
+            pos = 0;
         }
 
-        private void pushCollision (HashMapCollision1<K,V> collision) {
-            for (AMapEntry entry: collision.kvs) {
-                stack.push (entry);
+        /**
+         * moves to the next unvisited entry, or sets content to null if there is none
+         */
+        private void advanceToData () {
+            while (pos >= dataEnd) {
+                if (pos < content.length) {
+                    final AHashMap<?,?> child = (AHashMap<?,?>) content[pos];
+                    pos += 1;
+                    descendInto (child);
+                }
+                else if (depth == 0) {
+                    content = null;
+                    depth = -1;
+                    return;
+                }
+                else {
+                    depth -= 1;
+                    content = contentStack[depth];
+                    dataEnd = dataEndStack[depth];
+                    pos = posStack[depth];
+                    contentStack[depth] = null;
+                }
             }
         }
 
         @Override public boolean hasNext () {
-            return ! stack.isEmpty ();
+            return content != null;
         }
 
         @SuppressWarnings ("unchecked")
         @Override public AMapEntry<K, V> next () {
-            Object next;
+            if (content == null) {
+                throw new NoSuchElementException ();
+            }
+
+            final AMapEntry<K,V> result = new HashMapEntry<> ((K) content[pos], (V) content[pos+1]);
+            pos += 2;
+            if (pos >= dataEnd) {
+                advanceToData ();
+            }
+            return result;
+        }
+
+        @Override public void remove () {
+            throw new UnsupportedOperationException ();
+        }
+    }
+
+    static class HashMapSpliterator<K,V> extends AbstractASpliterator.TreeSpliterator<AMapEntry<K,V>> {
+        HashMapSpliterator (AHashMap<K,V> root, int size) {
+            super (root, size);
+        }
+
+        private HashMapSpliterator (List<Object> parts, int size) {
+            super (parts, size);
+        }
 
-            while (true) {
-                next = stack.pop ();
+        @Override int sizeOf (Object node) {
+            return ((AHashMap<?,?>) node).size ();
+        }
 
-                if (next.getClass () == HashMap1.class || next.getClass () == AListMap.Node.class) {
-                    return (AMapEntry<K, V>) next;
+        @Override void expand (Object node, List<Object> target) {
+            if (node instanceof HashTrieMap) {
+                final HashTrieMap<?,?> trie = (HashTrieMap<?,?>) node;
+                final int dataEnd = 2 * Integer.bitCount (trie.dataMap);
+                for (int i=0; i<dataEnd; i+=2) {
+                    target.add (single (new HashMapEntry<> (trie.content[i], trie.content[i+1])));
                 }
-                if (next.getClass () == HashTrieMap.class) {
-                    final HashTrieMap trie = (HashTrieMap) next;
+                target.addAll (Arrays.asList (trie.content).subList (dataEnd, trie.content.length));
+            }
+            else {
+                final Object[] content = ((HashCollisionMap<?,?>) node).content;
+                for (int i=0; i<content.length; i+=2) {
+                    target.add (single (new HashMapEntry<> (content[i], content[i+1])));
+                }
+            }
+        }
 
-                    // push elements in reverse order to provide iteration in 'ascending hash order', simplifying testing
-                    for (int i=trie.elems.length-1; i>=0; i--) {
-                        stack.push (trie.elems [i]);
+        @SuppressWarnings ("unchecked")
+        @Override Iterator<AMapEntry<K, V>> iteratorOf (Object node) {
+            return new HashMapIterator<> ((AHashMap<K,V>) node);
+        }
+
+        @Override AbstractASpliterator.TreeSpliterator<AMapEntry<K, V>> create (List<Object> parts, int size) {
+            return new HashMapSpliterator<> (parts, size);
+        }
+    }
+
+    static class HashMapEntry<K,V> implements AMapEntry<K,V> {
+        private final K key;
+        private final V value;
+
+        HashMapEntry (K key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override public K getKey () {
+            return key;
+        }
+        @Override public V getValue () {
+            return value;
+        }
+    }
+
+    /**
+     * If {@code other} is an AHashMap with the same equality, this walks both hash tries simultaneously and skips all
+     *  subtrees that are shared by both maps.
+     */
+    @Override public Iterable<AMapChange<K, V>> diff (AMap<K, V> other) {
+        if (! (other instanceof AHashMap) || ! ((AHashMap) other).equality.equals (equality)) {
+            return super.diff (other);
+        }
+
+        final AHashMap<K,V> otherHashMap = (AHashMap<K, V>) other;
+        return new Iterable<AMapChange<K, V>> () {
+            @Override public Iterator<AMapChange<K, V>> iterator () {
+                return new HashMapDiffIterator<> (AHashMap.this, otherHashMap);
+            }
+        };
+    }
+
+    static class HashMapDiffIterator<K,V> implements Iterator<AMapChange<K,V>> {
+        /**
+         * triples of (old node, new node, level) for nodes at the same position in both tries that remain to be compared
+         */
+        private final Deque<Object> pending = new ArrayDeque<> ();
+        /**
+         * changes that were found by comparing leaf nodes but were not returned yet
+         */
+        private final Deque<AMapChange<K,V>> changes = new ArrayDeque<> ();
+
+        HashMapDiffIterator (AHashMap<K,V> oldRoot, AHashMap<K,V> newRoot) {
+            push (oldRoot, newRoot, 0);
+        }
+
+        private void push (AHashMap<K,V> oldNode, AHashMap<K,V> newNode, int level) {
+            if (oldNode != newNode) {
+                pending.push (level);
+                pending.push (newNode);
+                pending.push (oldNode);
+            }
+        }
+
+        @Override public boolean hasNext () {
+            while (changes.isEmpty () && ! pending.isEmpty ()) {
+                compare ();
+            }
+            return ! changes.isEmpty ();
+        }
+
+        @Override public AMapChange<K, V> next () {
+            if (! hasNext ()) {
+                throw new NoSuchElementException ();
+            }
+            return changes.removeFirst ();
+        }
+
+        @SuppressWarnings ("unchecked")
+        private void compare () {
+            final AHashMap<K,V> oldNode = (AHashMap<K, V>) pending.pop ();
+            final AHashMap<K,V> newNode = (AHashMap<K, V>) pending.pop ();
+            final int level = (Integer) pending.pop ();
+
+            if (oldNode instanceof HashTrieMap && newNode instanceof HashTrieMap) {
+                final HashTrieMap<K,V> oldTrie = (HashTrieMap<K, V>) oldNode;
+                final HashTrieMap<K,V> newTrie = (HashTrieMap<K, V>) newNode;
+
+                // push children in descending order so that they are compared in ascending order
+                int remaining = oldTrie.dataMap | oldTrie.nodeMap | newTrie.dataMap | newTrie.nodeMap;
+                while (remaining != 0) {
+                    final int mask = Integer.highestOneBit (remaining);
+                    remaining ^= mask;
+
+                    if ((oldTrie.dataMap & newTrie.dataMap & mask) != 0) {
+                        final int oldIdx = oldTrie.dataIndex (mask);
+                        final int newIdx = newTrie.dataIndex (mask);
+                        if (oldTrie.content[oldIdx] == newTrie.content[newIdx] && oldTrie.content[oldIdx+1] == newTrie.content[newIdx+1]) {
+                            continue;
+                        }
                     }
+                    push (oldTrie.slotAsNode (mask), newTrie.slotAsNode (mask), level + LEVEL_INCREMENT);
+                }
+                return;
+            }
+
+            // at least one of the nodes is a collision node or a single entry, so there are few entries to compare
+            for (AMapEntry<K,V> oldEntry: oldNode) {
+                final V newValue = newNode.doGetOrDefault (oldEntry.getKey (), computeHash (oldEntry.getKey (), oldNode.equality), level, (V) NO_VALUE);
+                if (newValue == NO_VALUE) {
+                    changes.add (AMapChange.removed (oldEntry.getKey (), oldEntry.getValue ()));
+                }
+                else if (! Objects.equals (oldEntry.getValue (), newValue)) {
+                    changes.add (AMapChange.changed (oldEntry.getKey (), oldEntry.getValue (), newValue));
                 }
-                else if (next.getClass () == HashMapCollision1.class) {
-                    pushCollision ((HashMapCollision1<K, V>) next);
+            }
+            for (AMapEntry<K,V> newEntry: newNode) {
+                if (oldNode.doGetOrDefault (newEntry.getKey (), computeHash (newEntry.getKey (), newNode.equality), level, (V) NO_VALUE) == NO_VALUE) {
+                    changes.add (AMapChange.added (newEntry.getKey (), newEntry.getValue ()));
                 }
             }
         }
@@ -219,14 +559,63 @@ public class AHashMap<K, V> extends AbstractAMap<K,V> {
         return AOption.none();
     }
 
+    V doGetOrDefault (K key, int hash, int level, V defaultValue) {
+        return defaultValue;
+    }
+
     AHashMap<K,V> doUpdated(K key, int hash, int level, V value) {
-        return new HashMap1<> (key, hash, value, equality);
+        return new HashTrieMap<> (bitpos (hash, level), 0, new Object[] {key, value}, 1, equality);
     }
 
     AHashMap<K,V> doRemoved(K key, int hash, int level) {
         return this;
     }
 
+    /**
+     * Merges {@code that} into this map. Both maps are assumed to be nodes at the same level of tries that use the
+     *  same equality. A {@code null} conflictFn means that entries from {@code that} win.
+     */
+    <E extends Exception> AHashMap<K,V> doMerged(AHashMap<K,V> that, int level, AFunction3<? super K, ? super V, ? super V, ? extends V, E> conflictFn) throws E {
+        return that;
+    }
+
+    AHashMap<K,V> doRetainedKeys(AHashMap<K,?> that, int level) {
+        return this;
+    }
+
+    AHashMap<K,V> doRemovedKeys(AHashMap<K,?> that, int level) {
+        return this;
+    }
+
+    <E extends Exception> void doForEach (AStatement2<? super K, ? super V, E> f) throws E {
+    }
+
+    <R, E extends Exception> R doFoldLeft (R acc, AFunction3<R, ? super K, ? super V, R, E> f) throws E {
+        return acc;
+    }
+
+    /**
+     * Merges a single entry into the node {@code target}.
+     *
+     * @param leafIsThis true if the entry belongs to the left-hand side of the merge, i.e. to the map on which
+     *                   'merged' was called, and {@code target} is the right-hand side
+     */
+    private static <K,V,E extends Exception> AHashMap<K,V> mergeEntry(AHashMap<K,V> target, K key, int hash, V value, boolean leafIsThis, int level, AFunction3<? super K, ? super V, ? super V, ? extends V, E> conflictFn) throws E {
+        final AOption<V> existing = target.doGet (key, hash, level);
+        if (existing.isEmpty ()) {
+            return target.doUpdated (key, hash, level, value);
+        }
+
+        final V merged;
+        if (leafIsThis) {
+            merged = conflictFn == null ? existing.get () : conflictFn.apply (key, value, existing.get ());
+        }
+        else {
+            merged = conflictFn == null ? value : conflictFn.apply (key, existing.get (), value);
+        }
+        return target.doUpdated (key, hash, level, merged);
+    }
+
     private static int computeHash(Object key, AEquality equality) {
         int h = equality.hashCode(key);
         h = h + ~(h << 9);
@@ -235,278 +624,774 @@ public class AHashMap<K, V> extends AbstractAMap<K,V> {
         return h ^ (h >>> 10);
     }
 
-    @SuppressWarnings("unchecked")
-    private static <K,V> AHashMap<K,V>[] createArray(int size) {
-        return new AHashMap[size];
+    private static int index (int hash, int level) {
+        return (hash >>> level) & 0x1f;
+    }
+
+    private static int bitpos (int hash, int level) {
+        return 1 << index (hash, level);
     }
 
     /**
-     * very internal method. It assumes hash0 != hash1.
+     * Creates a node containing two entries with different keys.
      */
-    private static<K,V> HashTrieMap<K,V> mergeLeafMaps(int hash0, AHashMap<K,V> elem0, int hash1, AHashMap<K,V> elem1, int level, int size, AEquality equality) {
-        final int index0 = (hash0 >>> level) & 0x1f;
-        final int index1 = (hash1 >>> level) & 0x1f;
-        if(index0 != index1) {
-            final int bitmap = (1 << index0) | (1 << index1);
-            final AHashMap<K,V>[] elems = createArray(2);
-            if(index0 < index1) {
-                elems[0] = elem0;
-                elems[1] = elem1;
-            }
-            else {
-                elems[0] = elem1;
-                elems[1] = elem0;
-            }
-            return new HashTrieMap<>(bitmap, elems, size, equality);
+    private static <K,V> AHashMap<K,V> mergeEntries (K key0, V value0, int hash0, K key1, V value1, int hash1, int level, AEquality equality) {
+        if (hash0 == hash1) {
+            // hash collision --> store all entries in the same node
+            return new HashCollisionMap<> (hash0, new Object[] {key0, value0, key1, value1}, equality);
         }
-        else {
-            final AHashMap<K,V>[] elems = createArray(1);
-            final int bitmap = (1 << index0);
-            // try again, based on the
-            elems[0] = mergeLeafMaps(hash0, elem0, hash1, elem1, level + LEVEL_INCREMENT, size, equality);
-            return new HashTrieMap<>(bitmap, elems, size, equality);
+
+        final int index0 = index (hash0, level);
+        final int index1 = index (hash1, level);
+        if (index0 == index1) {
+            final AHashMap<K,V> child = mergeEntries (key0, value0, hash0, key1, value1, hash1, level + LEVEL_INCREMENT, equality);
+            return new HashTrieMap<> (0, 1 << index0, new Object[] {child}, 2, equality);
+        }
+
+        final int dataMap = (1 << index0) | (1 << index1);
+        if (index0 < index1) {
+            return new HashTrieMap<> (dataMap, 0, new Object[] {key0, value0, key1, value1}, 2, equality);
         }
+        return new HashTrieMap<> (dataMap, 0, new Object[] {key1, value1, key0, value0}, 2, equality);
     }
 
+    /**
+     * Creates a node containing a collision node and an entry with a different hash.
+     */
+    private static <K,V> AHashMap<K,V> mergeCollisionAndEntry (HashCollisionMap<K,V> collision, K key, V value, int hash, int level) {
+        final int collisionIndex = index (collision.hash, level);
+        final int index = index (hash, level);
+        if (collisionIndex == index) {
+            final AHashMap<K,V> child = mergeCollisionAndEntry (collision, key, value, hash, level + LEVEL_INCREMENT);
+            return new HashTrieMap<> (0, 1 << index, new Object[] {child}, child.size (), collision.equality);
+        }
+        return new HashTrieMap<> (1 << index, 1 << collisionIndex, new Object[] {key, value, collision}, collision.size () + 1, collision.equality);
+    }
 
-    static class HashMap1<K,V> extends AHashMap<K,V> implements AMapEntry<K,V> {
-        private final K key;
-        private final int hash;
-        private final V value;
+    private static Object[] insertEntry (Object[] content, int idx, Object key, Object value) {
+        final Object[] result = new Object[content.length + 2];
+        System.arraycopy (content, 0, result, 0, idx);
+        result[idx] = key;
+        result[idx+1] = value;
+        System.arraycopy (content, idx, result, idx + 2, content.length - idx);
+        return result;
+    }
+
+    private static Object[] removeEntry (Object[] content, int idx) {
+        final Object[] result = new Object[content.length - 2];
+        System.arraycopy (content, 0, result, 0, idx);
+        System.arraycopy (content, idx + 2, result, idx, content.length - idx - 2);
+        return result;
+    }
+
+    /**
+     * replaces the entry at {@code dataIdx} by a child node at {@code nodeIdxNew}, which is an index into the resulting array
+     */
+    private static Object[] entryToNode (Object[] content, int dataIdx, int nodeIdxNew, Object node) {
+        final Object[] result = new Object[content.length - 1];
+        System.arraycopy (content, 0, result, 0, dataIdx);
+        System.arraycopy (content, dataIdx + 2, result, dataIdx, nodeIdxNew - dataIdx);
+        result[nodeIdxNew] = node;
+        System.arraycopy (content, nodeIdxNew + 2, result, nodeIdxNew + 1, content.length - nodeIdxNew - 2);
+        return result;
+    }
+
+    /**
+     * replaces the child node at {@code nodeIdx} by an entry at {@code dataIdxNew}
+     */
+    private static Object[] nodeToEntry (Object[] content, int nodeIdx, int dataIdxNew, Object key, Object value) {
+        final Object[] result = new Object[content.length + 1];
+        System.arraycopy (content, 0, result, 0, dataIdxNew);
+        result[dataIdxNew] = key;
+        result[dataIdxNew+1] = value;
+        System.arraycopy (content, dataIdxNew, result, dataIdxNew + 2, nodeIdx - dataIdxNew);
+        System.arraycopy (content, nodeIdx + 1, result, nodeIdx + 2, content.length - nodeIdx - 1);
+        return result;
+    }
+
+    /**
+     * Creates a trie node, returning its only child instead if that is a collision node: collision nodes are not
+     *  split any further, so they are kept as high up in the trie as possible.
+     */
+    @SuppressWarnings ("unchecked")
+    private static <K,V> AHashMap<K,V> createTrieNode (int dataMap, int nodeMap, Object[] content, int size, AEquality equality) {
+        if (dataMap == 0 && content.length == 1 && content[0] instanceof HashCollisionMap) {
+            return (AHashMap<K,V>) content[0];
+        }
+        return new HashTrieMap<> (dataMap, nodeMap, content, size, equality);
+    }
+
+
+    /**
+     * This is a trie node in the 'compressed hash-array mapped prefix tree' (CHAMP) layout. Every position at the
+     *  node's level holds either an entry or a child node, as indicated by two separate bitmaps. Entries are stored
+     *  inline as key / value pairs at the start of the {@code content} array, followed by the child nodes.<p>
+     *
+     * Entries whose hashes are unique at a node's level are stored in that node. There is a child node only if at
+     *  least two entries share a position, so child nodes always contain at least two entries.
+     */
+    static class HashTrieMap<K,V> extends AHashMap<K,V> {
+        final int dataMap;
+        final int nodeMap;
+        final Object[] content;
+        final int size;
 
-        HashMap1(K key, int hash, V value, AEquality equality) {
+        HashTrieMap(int dataMap, int nodeMap, Object[] content, int size, AEquality equality) {
             super(equality);
 
-            this.key = key;
-            this.hash = hash;
-            this.value = value;
+            this.dataMap = dataMap;
+            this.nodeMap = nodeMap;
+            this.content = content;
+            this.size = size;
         }
 
-        @Override public K getKey () {
-            return key;
+        @Override public int size() {
+            return size;
         }
-        @Override public V getValue () {
-            return value;
+
+        /**
+         * @return the index of the key of the entry at a given position, with the value at the next index
+         */
+        int dataIndex (int mask) {
+            return 2 * Integer.bitCount (dataMap & (mask - 1));
         }
-        @Override public int size() {
-            return 1;
+
+        int nodeIndex (int mask) {
+            return 2 * Integer.bitCount (dataMap) + Integer.bitCount (nodeMap & (mask - 1));
         }
 
+        @SuppressWarnings ("unchecked")
+        AHashMap<K,V> nodeAt (int mask) {
+            return (AHashMap<K,V>) content[nodeIndex (mask)];
+        }
+
+        /**
+         * @return the content at a given position as a node: a child node, a node with a single entry, or an empty map
+         */
+        @SuppressWarnings ("unchecked")
+        AHashMap<K,V> slotAsNode (int mask) {
+            if ((dataMap & mask) != 0) {
+                final int idx = dataIndex (mask);
+                return new HashCollisionMap<> (computeHash (content[idx], equality), new Object[] {content[idx], content[idx+1]}, equality);
+            }
+            if ((nodeMap & mask) != 0) {
+                return nodeAt (mask);
+            }
+            return empty (equality);
+        }
+
+        @SuppressWarnings ("unchecked")
         @Override AOption<V> doGet(K key, int hash, int level) {
-            if(equality.equals(this.key, key)) {
-                return AOption.some(value);
+            final int mask = bitpos (hash, level);
+
+            if ((dataMap & mask) != 0) {
+                final int idx = dataIndex (mask);
+                return equality.equals (content[idx], key) ? AOption.some ((V) content[idx+1]) : AOption.<V>none ();
+            }
+            if ((nodeMap & mask) != 0) {
+                return nodeAt (mask).doGet (key, hash, level + LEVEL_INCREMENT);
+            }
+            return AOption.none ();
+        }
+
+        @SuppressWarnings ("unchecked")
+        @Override V doGetOrDefault (K key, int hash, int level, V defaultValue) {
+            final int mask = bitpos (hash, level);
+
+            if ((dataMap & mask) != 0) {
+                final int idx = dataIndex (mask);
+                return equality.equals (content[idx], key) ? (V) content[idx+1] : defaultValue;
             }
-            return AOption.none();
+            if ((nodeMap & mask) != 0) {
+                return nodeAt (mask).doGetOrDefault (key, hash, level + LEVEL_INCREMENT, defaultValue);
+            }
+            return defaultValue;
         }
 
+        @SuppressWarnings ("unchecked")
         @Override AHashMap<K,V> doUpdated(K key, int hash, int level, V value) {
-            if (hash == this.hash && equality.equals(key, this.key)) {
-                if(this.value == value) {
+            final int mask = bitpos (hash, level);
+
+            if ((dataMap & mask) != 0) {
+                final int idx = dataIndex (mask);
+                final K existingKey = (K) content[idx];
+                if (equality.equals (existingKey, key)) {
+                    if (content[idx+1] == value) {
+                        return this;
+                    }
+                    final Object[] contentNew = content.clone ();
+                    contentNew[idx] = key;
+                    contentNew[idx+1] = value;
+                    return new HashTrieMap<> (dataMap, nodeMap, contentNew, size, equality);
+                }
+
+                // two different keys at the same position --> move the existing entry to a new child node
+                final AHashMap<K,V> child = mergeEntries (existingKey, (V) content[idx+1], computeHash (existingKey, equality), key, value, hash, level + LEVEL_INCREMENT, equality);
+                final int nodeIdxNew = nodeIndex (mask) - 2;
+                return new HashTrieMap<> (dataMap ^ mask, nodeMap | mask, entryToNode (content, idx, nodeIdxNew, child), size + 1, equality);
+            }
+
+            if ((nodeMap & mask) != 0) {
+                final int idx = nodeIndex (mask);
+                final AHashMap<K,V> sub = (AHashMap<K,V>) content[idx];
+                final AHashMap<K,V> subNew = sub.doUpdated (key, hash, level + LEVEL_INCREMENT, value);
+                if (subNew == sub) {
                     return this;
                 }
-                else {
-                    return new HashMap1<>(key, hash, value, equality);
+
+                final Object[] contentNew = content.clone ();
+                contentNew[idx] = subNew;
+                return new HashTrieMap<> (dataMap, nodeMap, contentNew, size + (subNew.size () - sub.size ()), equality);
+            }
+
+            return new HashTrieMap<> (dataMap | mask, nodeMap, insertEntry (content, dataIndex (mask), key, value), size + 1, equality);
+        }
+
+        @SuppressWarnings ("unchecked")
+        @Override AHashMap<K,V> doRemoved(K key, int hash, int level) {
+            final int mask = bitpos (hash, level);
+
+            if ((dataMap & mask) != 0) {
+                final int idx = dataIndex (mask);
+                if (! equality.equals (content[idx], key)) {
+                    return this;
+                }
+                if (size == 1) {
+                    return empty (equality);
                 }
+                return createTrieNode (dataMap ^ mask, nodeMap, removeEntry (content, idx), size - 1, equality);
             }
-            else {
-                if (hash != this.hash) {
-                    // they have different hashes, but may collide at this level - find a level at which they don't
-                    final AHashMap<K,V> that = new HashMap1<>(key, hash, value, equality);
-                    return mergeLeafMaps(this.hash, this, hash, that, level, 2, equality);
+
+            if ((nodeMap & mask) != 0) {
+                final int idx = nodeIndex (mask);
+                final AHashMap<K,V> sub = (AHashMap<K,V>) content[idx];
+                final AHashMap<K,V> subNew = sub.doRemoved (key, hash, level + LEVEL_INCREMENT);
+                if (subNew == sub) {
+                    return this;
                 }
-                else {
-                    // hash collision --> store all elements in the same bin
-                    return new HashMapCollision1<> (hash, AListMap.<K,V>empty(equality).updated(this.key,this.value).updated(key,value));
+
+                if (subNew.size () == 1) {
+                    // a child node with a single entry is inlined to keep the trie compact
+                    final Object[] single = ((HashTrieMap<K,V>) subNew).content;
+                    return new HashTrieMap<> (dataMap | mask, nodeMap ^ mask, nodeToEntry (content, idx, dataIndex (mask), single[0], single[1]), size - 1, equality);
                 }
+
+                final Object[] contentNew = content.clone ();
+                contentNew[idx] = subNew;
+                return createTrieNode (dataMap, nodeMap, contentNew, size - 1, equality);
             }
+
+            return this;
         }
 
-        @Override AHashMap<K,V> doRemoved(K key, int hash, int level) {
-            if (hash == this.hash && equality.equals(key, this.key)) {
-                return empty(equality);
-            }
-            else {
+        @SuppressWarnings ("unchecked")
+        @Override <E extends Exception> AHashMap<K,V> doMerged(AHashMap<K,V> that, int level, AFunction3<? super K, ? super V, ? super V, ? extends V, E> conflictFn) throws E {
+            if (that.isEmpty () || (that == this && conflictFn == null)) {
                 return this;
             }
-        }
-    }
 
-    static class HashMapCollision1<K,V> extends AHashMap<K,V> {
-        private final int hash;
-        private final AListMap<K,V> kvs;
+            if (! (that instanceof HashTrieMap)) {
+                AHashMap<K,V> result = this;
+                for (AMapEntry<K,V> entry: that) {
+                    result = mergeEntry (result, entry.getKey (), computeHash (entry.getKey (), equality), entry.getValue (), false, level, conflictFn);
+                }
+                return result;
+            }
 
-        HashMapCollision1(int hash, AListMap<K, V> kvs) {
-            super(kvs.equality);
+            // both are trie nodes: walk both bitmaps, merging positions that are occupied on both sides and taking all
+            //  other entries and children by reference
+            final HashTrieMap<K,V> other = (HashTrieMap<K,V>) that;
+            final NodeBuilder<K,V> builder = new NodeBuilder<> ();
 
-            this.hash = hash;
-            this.kvs = kvs;
+            boolean sameAsThis = true;
+            boolean sameAsThat = true;
+
+            int remaining = dataMap | nodeMap | other.dataMap | other.nodeMap;
+            while (remaining != 0) {
+                final int mask = Integer.lowestOneBit (remaining);
+                remaining ^= mask;
+
+                if (((other.dataMap | other.nodeMap) & mask) == 0) {
+                    builder.addSlot (this, mask);
+                    sameAsThat = false;
+                }
+                else if (((dataMap | nodeMap) & mask) == 0) {
+                    builder.addSlot (other, mask);
+                    sameAsThis = false;
+                }
+                else if ((nodeMap & mask) != 0 && (other.nodeMap & mask) != 0) {
+                    final AHashMap<K,V> sub = nodeAt (mask);
+                    final AHashMap<K,V> otherSub = other.nodeAt (mask);
+                    final AHashMap<K,V> subNew = sub.doMerged (otherSub, level + LEVEL_INCREMENT, conflictFn);
+                    sameAsThis = sameAsThis && subNew == sub;
+                    sameAsThat = sameAsThat && subNew == otherSub;
+                    builder.addNode (mask, subNew);
+                }
+                else if ((nodeMap & mask) != 0) {
+                    final AHashMap<K,V> sub = nodeAt (mask);
+                    final int otherIdx = other.dataIndex (mask);
+                    final K otherKey = (K) other.content[otherIdx];
+                    final AHashMap<K,V> subNew = mergeEntry (sub, otherKey, computeHash (otherKey, equality), (V) other.content[otherIdx+1], false, level + LEVEL_INCREMENT, conflictFn);
+                    sameAsThis = sameAsThis && subNew == sub;
+                    sameAsThat = false;
+                    builder.addNode (mask, subNew);
+                }
+                else if ((other.nodeMap & mask) != 0) {
+                    final AHashMap<K,V> otherSub = other.nodeAt (mask);
+                    final int idx = dataIndex (mask);
+                    final K key = (K) content[idx];
+                    final AHashMap<K,V> subNew = mergeEntry (otherSub, key, computeHash (key, equality), (V) content[idx+1], true, level + LEVEL_INCREMENT, conflictFn);
+                    sameAsThis = false;
+                    sameAsThat = sameAsThat && subNew == otherSub;
+                    builder.addNode (mask, subNew);
+                }
+                else {
+                    // an entry on both sides
+                    final int idx = dataIndex (mask);
+                    final int otherIdx = other.dataIndex (mask);
+                    final K key = (K) content[idx];
+                    final V value = (V) content[idx+1];
+                    final K otherKey = (K) other.content[otherIdx];
+                    final V otherValue = (V) other.content[otherIdx+1];
+
+                    if (equality.equals (key, otherKey)) {
+                        final V merged = conflictFn == null ? otherValue : conflictFn.apply (key, value, otherValue);
+                        sameAsThis = sameAsThis && merged == value && otherKey == key;
+                        sameAsThat = sameAsThat && merged == otherValue;
+                        builder.addEntry (mask, otherKey, merged);
+                    }
+                    else {
+                        sameAsThis = false;
+                        sameAsThat = false;
+                        builder.addNode (mask, mergeEntries (key, value, computeHash (key, equality), otherKey, otherValue, computeHash (otherKey, equality), level + LEVEL_INCREMENT, equality));
+                    }
+                }
+            }
+
+            if (sameAsThis) return this;
+            if (sameAsThat) return that;
+            return builder.build (equality);
         }
 
-        @Override
-        public int size() {
-            return kvs.size();
+        @SuppressWarnings ("unchecked")
+        @Override AHashMap<K,V> doRetainedKeys(AHashMap<K,?> that, int level) {
+            if (that == this) {
+                return this;
+            }
+            if (that.isEmpty ()) {
+                return AHashMap.empty (equality);
+            }
+
+            if (! (that instanceof HashTrieMap)) {
+                // 'that' is a collision node, so the result contains at most as many entries as 'that' - build it from scratch
+                AHashMap<K,V> result = AHashMap.empty (equality);
+                for (AMapEntry<K,?> entry: that) {
+                    final int hash = computeHash (entry.getKey (), equality);
+                    final AOption<V> value = doGet (entry.getKey (), hash, level);
+                    if (value.isDefined ()) {
+                        result = result.doUpdated (entry.getKey (), hash, level, value.get ());
+                    }
+                }
+                return result;
+            }
+
+            final HashTrieMap<K,?> other = (HashTrieMap<K,?>) that;
+            final NodeBuilder<K,V> builder = new NodeBuilder<> ();
+            boolean sameAsThis = true;
+
+            int remaining = dataMap | nodeMap;
+            while (remaining != 0) {
+                final int mask = Integer.lowestOneBit (remaining);
+                remaining ^= mask;
+
+                if (((other.dataMap | other.nodeMap) & mask) == 0) {
+                    sameAsThis = false;
+                }
+                else if ((dataMap & mask) != 0) {
+                    final int idx = dataIndex (mask);
+                    if (other.slotContains (mask, content[idx], level)) {
+                        builder.addEntry (mask, content[idx], content[idx+1]);
+                    }
+                    else {
+                        sameAsThis = false;
+                    }
+                }
+                else {
+                    final AHashMap<K,V> sub = nodeAt (mask);
+                    final AHashMap<K,V> subNew = sub.doRetainedKeys (other.slotAsNode (mask), level + LEVEL_INCREMENT);
+                    sameAsThis = sameAsThis && subNew == sub;
+                    builder.addNode (mask, subNew);
+                }
+            }
+
+            if (sameAsThis) return this;
+            return builder.build (equality);
         }
 
-        @Override
-        AOption<V> doGet(K key, int hash, int level) {
-            if (hash == this.hash) {
-                return kvs.get(key);
+        @SuppressWarnings ("unchecked")
+        @Override <E extends Exception> void doForEach (AStatement2<? super K, ? super V, E> f) throws E {
+            final int dataEnd = 2 * Integer.bitCount (dataMap);
+            for (int i=0; i<dataEnd; i+=2) {
+                f.apply ((K) content[i], (V) content[i+1]);
             }
-            else {
-                return AOption.none ();
+            for (int i=dataEnd; i<content.length; i++) {
+                ((AHashMap<K,V>) content[i]).doForEach (f);
             }
         }
 
-        @Override
-        AHashMap<K,V> doUpdated(K key, int hash, int level, V value) {
-            if (hash == this.hash) {
-                return new HashMapCollision1<>(hash, kvs.updated(key, value));
+        @SuppressWarnings ("unchecked")
+        @Override <R, E extends Exception> R doFoldLeft (R acc, AFunction3<R, ? super K, ? super V, R, E> f) throws E {
+            final int dataEnd = 2 * Integer.bitCount (dataMap);
+            for (int i=0; i<dataEnd; i+=2) {
+                acc = f.apply (acc, (K) content[i], (V) content[i+1]);
             }
-            else {
-                final HashMap1<K,V> that = new HashMap1<>(key, hash, value, equality);
-                return mergeLeafMaps(this.hash, this, hash, that, level, size() + 1, equality);
+            for (int i=dataEnd; i<content.length; i++) {
+                acc = ((AHashMap<K,V>) content[i]).doFoldLeft (acc, f);
             }
+            return acc;
         }
 
-        @Override
-        AHashMap<K,V> doRemoved(K key, int hash, int level) {
-            if (hash == this.hash) {
-                final AListMap<K,V> kvs1 = kvs.removed(key);
-                if (kvs1.isEmpty()) {
-                    return AHashMap.empty(equality);
+        @SuppressWarnings ("unchecked")
+        @Override AHashMap<K,V> doRemovedKeys(AHashMap<K,?> that, int level) {
+            if (that == this) {
+                return AHashMap.empty (equality);
+            }
+            if (that.isEmpty ()) {
+                return this;
+            }
+
+            if (! (that instanceof HashTrieMap)) {
+                AHashMap<K,V> result = this;
+                for (AMapEntry<K,?> entry: that) {
+                    result = result.doRemoved (entry.getKey (), computeHash (entry.getKey (), equality), level);
                 }
-                else if(kvs1.tail().isEmpty()) {
-                    return new HashMap1<>(kvs1.getKey (), computeHash (kvs1.getKey (), equality), kvs1.getValue (), equality);
+                return result;
+            }
+
+            final HashTrieMap<K,?> other = (HashTrieMap<K,?>) that;
+            final NodeBuilder<K,V> builder = new NodeBuilder<> ();
+            boolean sameAsThis = true;
+
+            int remaining = dataMap | nodeMap;
+            while (remaining != 0) {
+                final int mask = Integer.lowestOneBit (remaining);
+                remaining ^= mask;
+
+                if (((other.dataMap | other.nodeMap) & mask) == 0) {
+                    builder.addSlot (this, mask);
+                }
+                else if ((dataMap & mask) != 0) {
+                    final int idx = dataIndex (mask);
+                    if (other.slotContains (mask, content[idx], level)) {
+                        sameAsThis = false;
+                    }
+                    else {
+                        builder.addEntry (mask, content[idx], content[idx+1]);
+                    }
                 }
                 else {
-                    return new HashMapCollision1<>(hash, kvs1);
+                    final AHashMap<K,V> sub = nodeAt (mask);
+                    final AHashMap<K,V> subNew = sub.doRemovedKeys (other.slotAsNode (mask), level + LEVEL_INCREMENT);
+                    sameAsThis = sameAsThis && subNew == sub;
+                    builder.addNode (mask, subNew);
                 }
             }
+
+            if (sameAsThis) return this;
+            return builder.build (equality);
+        }
+
+        /**
+         * @return true if the given key is stored at the given position of this node
+         */
+        @SuppressWarnings ("unchecked")
+        boolean slotContains (int mask, Object key, int level) {
+            if ((dataMap & mask) != 0) {
+                return equality.equals (content[dataIndex (mask)], key);
+            }
+            if ((nodeMap & mask) != 0) {
+                return nodeAt (mask).doGetOrDefault ((K) key, computeHash (key, equality), level + LEVEL_INCREMENT, (V) NO_VALUE) != NO_VALUE;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * This is a trie node that is owned by a {@link Builder} and modified in place. It has the same layout as a
+     *  {@link HashTrieMap}, but it is not an AHashMap and never reachable from one: {@link #freeze(Object, AEquality)}
+     *  turns it into a HashTrieMap when the builder returns a map. Its children are TransientNodes or regular nodes.
+     */
+    private static class TransientNode {
+        int dataMap;
+        int nodeMap;
+        Object[] content;
+        int size;
+
+        TransientNode (int dataMap, int nodeMap, Object[] content, int size) {
+            this.dataMap = dataMap;
+            this.nodeMap = nodeMap;
+            this.content = content;
+            this.size = size;
+        }
+
+        static int sizeOf (Object node) {
+            return node instanceof TransientNode ? ((TransientNode) node).size : ((AHashMap<?,?>) node).size ();
+        }
+
+        /**
+         * @param node either a TransientNode, which is modified in place, or a regular node, which is copied first
+         */
+        @SuppressWarnings ("unchecked")
+        static <K,V> Object updated (Object node, K key, int hash, int level, V value, AEquality equality) {
+            if (node instanceof TransientNode) {
+                return ((TransientNode) node).update (key, hash, level, value, equality);
+            }
+            if (node instanceof HashTrieMap) {
+                final HashTrieMap<K,V> trie = (HashTrieMap<K,V>) node;
+                return new TransientNode (trie.dataMap, trie.nodeMap, trie.content.clone (), trie.size).update (key, hash, level, value, equality);
+            }
+            // empty maps and collision nodes are not modified in place
+            return ((AHashMap<K,V>) node).doUpdated (key, hash, level, value);
+        }
+
+        private TransientNode update (Object key, int hash, int level, Object value, AEquality equality) {
+            final int mask = bitpos (hash, level);
+
+            if ((dataMap & mask) != 0) {
+                final int idx = 2 * Integer.bitCount (dataMap & (mask - 1));
+                final Object existingKey = content[idx];
+                if (equality.equals (existingKey, key)) {
+                    content[idx] = key;
+                    content[idx+1] = value;
+                    return this;
+                }
+
+                final Object child = mergeEntries (existingKey, content[idx+1], computeHash (existingKey, equality), key, value, hash, level + LEVEL_INCREMENT, equality);
+                content = entryToNode (content, idx, nodeIndex (mask) - 2, child);
+                dataMap ^= mask;
+                nodeMap |= mask;
+                size += 1;
+            }
+            else if ((nodeMap & mask) != 0) {
+                final int idx = nodeIndex (mask);
+                final Object sub = content[idx];
+                final int subSizeOld = sizeOf (sub); // read this before the call because 'sub' may be modified in place
+
+                final Object subNew = updated (sub, key, hash, level + LEVEL_INCREMENT, value, equality);
+                content[idx] = subNew;
+                size += sizeOf (subNew) - subSizeOld;
+            }
             else {
-                return this;
+                content = insertEntry (content, 2 * Integer.bitCount (dataMap & (mask - 1)), key, value);
+                dataMap |= mask;
+                size += 1;
+            }
+            return this;
+        }
+
+        private int nodeIndex (int mask) {
+            return 2 * Integer.bitCount (dataMap) + Integer.bitCount (nodeMap & (mask - 1));
+        }
+
+        /**
+         * Turns TransientNodes into HashTrieMaps, recursively. Children that are regular nodes are immutable already.
+         *  The TransientNodes must not be modified afterwards because the HashTrieMaps share their content arrays.
+         */
+        @SuppressWarnings ("unchecked")
+        static <K,V> AHashMap<K,V> freeze (Object node, AEquality equality) {
+            if (! (node instanceof TransientNode)) {
+                return (AHashMap<K,V>) node;
+            }
+
+            final TransientNode t = (TransientNode) node;
+            for (int i=2*Integer.bitCount (t.dataMap); i<t.content.length; i++) {
+                t.content[i] = freeze (t.content[i], equality);
             }
+            return new HashTrieMap<> (t.dataMap, t.nodeMap, t.content, t.size, equality);
         }
     }
 
+    /**
+     * collects the entries and child nodes of a new trie node, in ascending order of their positions
+     */
+    private static class NodeBuilder<K,V> {
+        private final Object[] entries = new Object[64];
+        private final Object[] nodes = new Object[32];
+        private int numEntries;
+        private int numNodes;
+        private int dataMap;
+        private int nodeMap;
+        private int size;
+
+        void addEntry (int mask, Object key, Object value) {
+            entries[numEntries++] = key;
+            entries[numEntries++] = value;
+            dataMap |= mask;
+            size += 1;
+        }
+
+        void addNode (int mask, AHashMap<K,V> node) {
+            if (node.size () == 1) {
+                final Object[] single = ((HashTrieMap<K,V>) node).content;
+                addEntry (mask, single[0], single[1]);
+            }
+            else if (node.nonEmpty ()) {
+                nodes[numNodes++] = node;
+                nodeMap |= mask;
+                size += node.size ();
+            }
+        }
 
-    static class HashTrieMap<K,V> extends AHashMap<K,V> {
-        final int bitmap;
-        final AHashMap<K,V>[] elems;
-        final int size;
+        @SuppressWarnings ("unchecked")
+        void addSlot (HashTrieMap<K,V> node, int mask) {
+            if ((node.dataMap & mask) != 0) {
+                final int idx = node.dataIndex (mask);
+                addEntry (mask, node.content[idx], node.content[idx+1]);
+            }
+            else {
+                addNode (mask, node.nodeAt (mask));
+            }
+        }
+
+        AHashMap<K,V> build (AEquality equality) {
+            if (size == 0) {
+                return empty (equality);
+            }
+
+            final Object[] content = new Object[numEntries + numNodes];
+            System.arraycopy (entries, 0, content, 0, numEntries);
+            System.arraycopy (nodes, 0, content, numEntries, numNodes);
+            return createTrieNode (dataMap, nodeMap, content, size, equality);
+        }
+    }
+
+    /**
+     * A node for entries whose keys have the same hash. The entries are stored as key / value pairs in an array.
+     */
+    static class HashCollisionMap<K,V> extends AHashMap<K,V> {
+        private final int hash;
+        private final Object[] content;
 
-        HashTrieMap(int bitmap, AHashMap<K, V>[] elems, int size, AEquality equality) {
+        HashCollisionMap(int hash, Object[] content, AEquality equality) {
             super(equality);
 
-            this.bitmap = bitmap;
-            this.elems = elems;
-            this.size = size;
+            this.hash = hash;
+            this.content = content;
         }
 
         @Override public int size() {
-            return size;
+            return content.length / 2;
+        }
+
+        private int indexOf (Object key) {
+            for (int i=0; i<content.length; i+=2) {
+                if (equality.equals (content[i], key)) {
+                    return i;
+                }
+            }
+            return -1;
         }
 
-        @Override
-        AOption<V> doGet(K key, int hash, int level) {
-            final int index = (hash >>> level) & 0x1f;
-            final int mask = 1 << index;
+        @SuppressWarnings ("unchecked")
+        @Override AOption<V> doGet(K key, int hash, int level) {
+            final int idx = (hash == this.hash) ? indexOf (key) : -1;
+            return idx >= 0 ? AOption.some ((V) content[idx+1]) : AOption.<V>none ();
+        }
 
-            if (bitmap == - 1) {
-                return elems[index & 0x1f].doGet(key, hash, level + LEVEL_INCREMENT);
+        @SuppressWarnings ("unchecked")
+        @Override V doGetOrDefault (K key, int hash, int level, V defaultValue) {
+            final int idx = (hash == this.hash) ? indexOf (key) : -1;
+            return idx >= 0 ? (V) content[idx+1] : defaultValue;
+        }
+
+        @Override AHashMap<K,V> doUpdated(K key, int hash, int level, V value) {
+            if (hash != this.hash) {
+                return mergeCollisionAndEntry (this, key, value, hash, level);
             }
-            else if ((bitmap & mask) != 0) {
-                final int offset = Integer.bitCount(bitmap & (mask - 1));
-                return elems[offset].doGet(key, hash, level + LEVEL_INCREMENT);
+
+            final int idx = indexOf (key);
+            if (idx < 0) {
+                return new HashCollisionMap<> (hash, insertEntry (content, content.length, key, value), equality);
             }
-            else {
-                return AOption.none();
+            if (content[idx+1] == value) {
+                return this;
             }
+            final Object[] contentNew = content.clone ();
+            contentNew[idx] = key;
+            contentNew[idx+1] = value;
+            return new HashCollisionMap<> (hash, contentNew, equality);
         }
 
-        @Override
-        AHashMap<K,V>  doUpdated(K key, int hash, int level, V value) {
-            final int index = (hash >>> level) & 0x1f;
-            final int mask = (1 << index);
-            final int offset = Integer.bitCount(bitmap & (mask - 1));
-            if ((bitmap & mask) != 0) {
-                final AHashMap<K,V> sub = elems[offset];
+        @SuppressWarnings ("unchecked")
+        @Override AHashMap<K,V> doRemoved(K key, int hash, int level) {
+            final int idx = (hash == this.hash) ? indexOf (key) : -1;
+            if (idx < 0) {
+                return this;
+            }
+            if (content.length == 4) {
+                // a single remaining entry is stored in a regular trie node so that it can be inlined into the parent
+                final int remainingIdx = 2 - idx;
+                return AHashMap.<K,V>empty (equality).doUpdated ((K) content[remainingIdx], hash, level, (V) content[remainingIdx+1]);
+            }
+            return new HashCollisionMap<> (hash, removeEntry (content, idx), equality);
+        }
 
-                final AHashMap<K,V> subNew = sub.doUpdated(key, hash, level + LEVEL_INCREMENT, value);
-                if(subNew == sub) {
-                    return this;
-                }
-                else {
-                    final AHashMap<K,V>[] elemsNew = createArray(elems.length);
-                    System.arraycopy(elems, 0, elemsNew, 0, elems.length);
-                    elemsNew[offset] = subNew;
-                    return new HashTrieMap<> (bitmap, elemsNew, size + (subNew.size() - sub.size()), equality);
-                }
+        @Override <E extends Exception> AHashMap<K,V> doMerged(AHashMap<K,V> that, int level, AFunction3<? super K, ? super V, ? super V, ? extends V, E> conflictFn) throws E {
+            if (that.isEmpty () || (that == this && conflictFn == null)) {
+                return this;
             }
-            else {
-                final AHashMap<K,V>[] elemsNew = createArray(elems.length + 1);
-                System.arraycopy(elems, 0, elemsNew, 0, offset);
-                elemsNew[offset] = new HashMap1<>(key, hash, value, equality);
-                System.arraycopy(elems, offset, elemsNew, offset + 1, elems.length - offset);
-                return new HashTrieMap<>(bitmap | mask, elemsNew, size + 1, equality);
+
+            AHashMap<K,V> result = that;
+            for (AMapEntry<K,V> entry: this) {
+                result = mergeEntry (result, entry.getKey (), hash, entry.getValue (), true, level, conflictFn);
             }
+            return result;
         }
 
-        @Override
-        AHashMap<K,V> doRemoved(K key, int hash, int level) {
-            final int index = (hash >>> level) & 0x1f;
-            final int mask = (1 << index);
-            final int  offset = Integer.bitCount(bitmap & (mask - 1));
+        @SuppressWarnings ("unchecked")
+        @Override <E extends Exception> void doForEach (AStatement2<? super K, ? super V, E> f) throws E {
+            for (int i=0; i<content.length; i+=2) {
+                f.apply ((K) content[i], (V) content[i+1]);
+            }
+        }
 
-            if ((bitmap & mask) != 0) {
-                final AHashMap<K,V> sub = elems[offset];
-                final AHashMap<K,V> subNew = sub.doRemoved(key, hash, level + LEVEL_INCREMENT);
+        @SuppressWarnings ("unchecked")
+        @Override <R, E extends Exception> R doFoldLeft (R acc, AFunction3<R, ? super K, ? super V, R, E> f) throws E {
+            for (int i=0; i<content.length; i+=2) {
+                acc = f.apply (acc, (K) content[i], (V) content[i+1]);
+            }
+            return acc;
+        }
 
-                if (subNew == sub) {
-                    return this;
-                }
-                else if (subNew.isEmpty()) {
-                    final int  bitmapNew = bitmap ^ mask;
-                    if (bitmapNew != 0) {
-                        final AHashMap<K,V>[] elemsNew = createArray(elems.length - 1);
-                        System.arraycopy(elems, 0, elemsNew, 0, offset);
-                        System.arraycopy(elems, offset + 1, elemsNew, offset, elems.length - offset - 1);
-                        final int sizeNew = size - sub.size();
-                        if (elemsNew.length == 1 && ! (elemsNew[0] instanceof HashTrieMap)) {
-                            return elemsNew[0];
-                        }
-                        else {
-                            return new HashTrieMap<>(bitmapNew, elemsNew, sizeNew, equality);
-                        }
-                    }
-                    else {
-                        return AHashMap.empty(equality);
-                    }
-                }
-                else if(elems.length == 1 && ! (subNew instanceof HashTrieMap)) {
-                    return subNew;
-                }
-                else {
-                    final AHashMap<K,V>[] elemsNew = createArray(elems.length);
-                    System.arraycopy(elems, 0, elemsNew, 0, elems.length);
-                    elemsNew[offset] = subNew;
-                    final int sizeNew = size + (subNew.size() - sub.size());
-                    return new HashTrieMap<>(bitmap, elemsNew, sizeNew, equality);
+        @Override AHashMap<K,V> doRetainedKeys(AHashMap<K,?> that, int level) {
+            return filtered (that, level, true);
+        }
+
+        @Override AHashMap<K,V> doRemovedKeys(AHashMap<K,?> that, int level) {
+            return filtered (that, level, false);
+        }
+
+        @SuppressWarnings ("unchecked")
+        private AHashMap<K,V> filtered(AHashMap<K,?> that, int level, boolean retainContained) {
+            AHashMap<K,V> result = this;
+            for (int i=0; i<content.length; i+=2) {
+                if (that.doGet ((K) content[i], hash, level).isDefined () != retainContained) {
+                    result = result.doRemoved ((K) content[i], hash, level);
                 }
-            } else {
-                return this;
             }
+            return result;
         }
     }
 
     private Object readResolve() {
         // rebuild the map in case hashCodes of entries were changed by serialization
 
-        AHashMap<K,V> result = AHashMap.empty (equality);
+        final Builder<K,V> builder = builder (equality);
 
         for (AMapEntry<K,V> entry: this) {
-            result = result.updated (entry.getKey (), entry.getValue ());
+            builder.add (entry.getKey (), entry.getValue ());
         }
 
-        return result;
+        return builder.build ();
     }
 }
@@ -45,12 +45,17 @@ public class AHashSet<T> extends MapAsSetWrapper<T, AHashSet<T>> {
     }
 
     public static <T> AHashSet<T> create (AEquality equality, Iterable<T> elements) {
-        AHashSet<T> result = empty (equality);
+        final AHashMap.Builder<T, Boolean> builder = AHashMap.builder (equality);
 
         for (T el: elements) {
-            result = result.added (el);
+            builder.add (el, Boolean.TRUE);
         }
-        return result;
+
+        final AHashMap<T, Boolean> inner = builder.build ();
+        if (inner.isEmpty ()) {
+            return empty (equality);
+        }
+        return fromMap (inner);
     }
 
     public static <T> AHashSet<T> fromMap (AHashMap<T, ?> inner) {
@@ -69,6 +74,68 @@ public class AHashSet<T> extends MapAsSetWrapper<T, AHashSet<T>> {
         super (inner);
     }
 
+    /**
+     * Returns a set with all elements that are contained in this set, in {@code other}, or in both. If both sets
+     *  are based on the same equality, this reuses the internal structure of both sets wherever possible.
+     */
+    public AHashSet<T> union (AHashSet<T> other) {
+        if (! equalityForEquals ().equals (other.equalityForEquals ())) {
+            AHashSet<T> result = this;
+            for (T el: other) {
+                result = result.added (el);
+            }
+            return result;
+        }
+        return wrapIfChanged (hashMap ().merged (other.hashMap ()));
+    }
+
+    /**
+     * Returns a set with all elements that are contained both in this set and in {@code other}. If both sets
+     *  are based on the same equality, this reuses the internal structure of this set wherever possible.
+     */
+    public AHashSet<T> intersection (AHashSet<T> other) {
+        if (! equalityForEquals ().equals (other.equalityForEquals ())) {
+            AHashSet<T> result = this;
+            for (T el: this) {
+                if (! other.contains (el)) {
+                    result = result.removed (el);
+                }
+            }
+            return result;
+        }
+        return wrapIfChanged (hashMap ().retainedKeys (other.hashMap ()));
+    }
+
+    /**
+     * Returns a set with all elements that are contained in this set but not in {@code other}. If both sets
+     *  are based on the same equality, this reuses the internal structure of this set wherever possible.
+     */
+    public AHashSet<T> difference (AHashSet<T> other) {
+        if (! equalityForEquals ().equals (other.equalityForEquals ())) {
+            AHashSet<T> result = this;
+            for (T el: other) {
+                result = result.removed (el);
+            }
+            return result;
+        }
+        return wrapIfChanged (hashMap ().removedKeys (other.hashMap ()));
+    }
+
+    @SuppressWarnings ("unchecked")
+    private AHashMap<T, Boolean> hashMap () {
+        return (AHashMap<T, Boolean>) inner ();
+    }
+
+    private AHashSet<T> wrapIfChanged (AHashMap<T, Boolean> newInner) {
+        if (newInner == inner ()) {
+            return this;
+        }
+        if (newInner.isEmpty ()) {
+            return empty (equalityForEquals ());
+        }
+        return new AHashSet<> (newInner);
+    }
+
     @Override protected AHashSet<T> wrapAsSet (AMap<T, ?> inner) {
         return new AHashSet<> (inner);
     }
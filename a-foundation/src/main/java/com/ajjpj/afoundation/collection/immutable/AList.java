@@ -146,6 +146,10 @@ abstract public class AList<T> extends AbstractACollection<T, AList<T>> implemen
         return create(ACollectionHelper.map(this, f));
     }
 
+    @Override public <X, E extends Exception> AList<X> parMap (AParallelism parallelism, AFunction1<? super T, ? extends X, E> f) throws E {
+        return create (ACollectionHelper.parMap (this, parallelism, f));
+    }
+
     @Override public <X, E extends Exception> AList<X> flatMap(AFunction1<? super T, ? extends Iterable<X>, E> f) throws E {
         return create(ACollectionHelper.flatMap (this, f));
     }
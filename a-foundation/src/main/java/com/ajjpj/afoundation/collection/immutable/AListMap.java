@@ -15,7 +15,7 @@ import java.util.Objects;
  * This AMap implementation stores entries in a linked list, giving all lookup operations O(n) complexity. That makes
  *  AHashMap the better choice most of the time.<p>
  *
- * This class is however useful when keys are known to have the same hash codes (e.g. deep in the innards of AHashMap),
+ * This class is however useful when keys are known to have the same hash codes,
  *  or if control over iteration order is desirable.
  *
  * @author arno
@@ -90,8 +90,6 @@ public class AListMap <K,V> extends AbstractAMap<K,V> implements AMapEntry<K,V>
 
     final AEquality equality;
 
-    private Integer cachedHashcode = null; // intentionally not volatile - potentially recalculating for different threads is traded for better single threaded performance
-
     private AListMap(AEquality equality) {
         this.equality = equality;
     }
@@ -112,6 +110,10 @@ public class AListMap <K,V> extends AbstractAMap<K,V> implements AMapEntry<K,V>
         return AOption.none();
     }
 
+    @Override public V getOrDefault (K key, V defaultValue) {
+        return defaultValue;
+    }
+
     @Override public K getKey() {
         throw new NoSuchElementException("empty map");
     }
@@ -144,6 +146,7 @@ public class AListMap <K,V> extends AbstractAMap<K,V> implements AMapEntry<K,V>
         private final K key;
         private final V value;
         private final AListMap<K,V> tail;
+        private final int size;
 
         Node(K key, V value, AListMap<K, V> tail) {
             super(tail.equality);
@@ -151,6 +154,7 @@ public class AListMap <K,V> extends AbstractAMap<K,V> implements AMapEntry<K,V>
             this.key = key;
             this.value = value;
             this.tail = tail;
+            this.size = tail.size () + 1;
         }
 
         @Override public K getKey() {
@@ -164,14 +168,7 @@ public class AListMap <K,V> extends AbstractAMap<K,V> implements AMapEntry<K,V>
         }
 
         @Override public int size() {
-            int result = 0;
-
-            AListMap<K,V> m = this;
-            while(m.tail() != null) {
-                m = m.tail();
-                result += 1;
-            }
-            return result;
+            return size;
         }
 
         @Override public AOption<V> get(K key) {
@@ -186,6 +183,18 @@ public class AListMap <K,V> extends AbstractAMap<K,V> implements AMapEntry<K,V>
             return AOption.none();
         }
 
+        @Override public V getOrDefault (K key, V defaultValue) {
+            AListMap<K,V> m = this;
+
+            while(m.tail() != null) {
+                if(equality.equals(m.getKey (), key)) {
+                    return m.getValue ();
+                }
+                m = m.tail();
+            }
+            return defaultValue;
+        }
+
         @Override public AListMap<K,V> updated(K key, V value) {
             final AListMap<K,V> m = removed(key);
             return new Node<>(key, value, m);
@@ -204,6 +213,10 @@ public class AListMap <K,V> extends AbstractAMap<K,V> implements AMapEntry<K,V>
                 remaining = remaining.tail();
             }
 
+            if (idx >= size) {
+                return this;
+            }
+
             AListMap<K,V> result = remaining;
 
             AListMap<K,V> iter = this;
@@ -212,10 +225,6 @@ public class AListMap <K,V> extends AbstractAMap<K,V> implements AMapEntry<K,V>
                 iter = iter.tail ();
             }
 
-            if (idx >= size ()) {
-                return this;
-            }
-
             return result;
         }
     }
@@ -0,0 +1,843 @@
+package com.ajjpj.afoundation.collection.immutable;
+
+import com.ajjpj.afoundation.collection.AEquality;
+
+import java.util.*;
+
+
+/**
+ * This is a {@link ABTreeMap} specialization for keys of primitive 'long' values. Leaves store their keys in a
+ *  {@code long[]}, and index nodes store their separators in a {@code long[]}, so lookups compare keys directly
+ *  without boxing and without going through a {@link Comparator}.<p>
+ *
+ * Index nodes cache the number of entries in their subtree, so {@link #size()} is O(1). Iteration and range
+ *  queries descend the tree only once and then walk through the leaves' arrays in key order.
+ *
+ * @author arno
+ */
+public abstract class ALongBTreeMap<V> extends AbstractAMap<Long,V> implements ASortedMap<Long,V> {
+    public static final int DEFAULT_MAX_NUM_ENTRIES = 32;
+
+    private static final long[] NO_KEYS = new long[0];
+    private static final Object[] NO_VALUES = new Object[0];
+
+    private static final Comparator<Long> KEY_COMPARATOR = new Comparator<Long> () {
+        @Override public int compare (Long o1, Long o2) {
+            return Long.compare (o1, o2);
+        }
+    };
+
+    /**
+     * the maximum number of entries per leaf and of children per index node
+     */
+    final int maxNumEntries;
+
+    public static <V> ALongBTreeMap<V> empty () {
+        return empty (DEFAULT_MAX_NUM_ENTRIES);
+    }
+
+    @SuppressWarnings ("unchecked")
+    public static <V> ALongBTreeMap<V> empty (int maxNumEntries) {
+        if (maxNumEntries < 4) {
+            throw new IllegalArgumentException ("maxNumEntries must be at least 4");
+        }
+        return new LeafNode<> (maxNumEntries, NO_KEYS, (V[]) NO_VALUES);
+    }
+
+    ALongBTreeMap (int maxNumEntries) {
+        this.maxNumEntries = maxNumEntries;
+    }
+
+    @Override public AMap<Long, V> clear () {
+        return empty (maxNumEntries);
+    }
+
+    @Override public AEquality keyEquality () {
+        return AEquality.EQUALS;
+    }
+
+    @Override public boolean containsKey (Long key) {
+        return containsKey (key.longValue ());
+    }
+    public boolean containsKey (long key) {
+        final LeafNode<V> leaf = leafFor (key);
+        return Arrays.binarySearch (leaf.keys, key) >= 0;
+    }
+
+    @Override public AOption<V> get (Long key) {
+        return get (key.longValue ());
+    }
+    public AOption<V> get (long key) {
+        final LeafNode<V> leaf = leafFor (key);
+        final int idx = Arrays.binarySearch (leaf.keys, key);
+        if (idx < 0) {
+            return AOption.none ();
+        }
+        return AOption.some (leaf.values[idx]);
+    }
+
+    @Override public V getRequired (Long key) {
+        return getRequired (key.longValue ());
+    }
+    public V getRequired (long key) {
+        final LeafNode<V> leaf = leafFor (key);
+        final int idx = Arrays.binarySearch (leaf.keys, key);
+        if (idx < 0) {
+            throw new NoSuchElementException ();
+        }
+        return leaf.values[idx];
+    }
+
+    @Override public V getOrDefault (Long key, V defaultValue) {
+        return getOrDefault (key.longValue (), defaultValue);
+    }
+    public V getOrDefault (long key, V defaultValue) {
+        final LeafNode<V> leaf = leafFor (key);
+        final int idx = Arrays.binarySearch (leaf.keys, key);
+        return idx >= 0 ? leaf.values[idx] : defaultValue;
+    }
+
+    @Override public V getOrNull (Long key) {
+        return getOrDefault (key.longValue (), null);
+    }
+    public V getOrNull (long key) {
+        return getOrDefault (key, null);
+    }
+
+    @Override public ALongBTreeMap<V> updated (Long key, V value) {
+        return updated (key.longValue (), value);
+    }
+    public ALongBTreeMap<V> updated (long key, V value) {
+        final UpdateResult<V> result = doUpdated (key, value);
+        if (result.optRight == null) {
+            return result.left;
+        }
+
+        // This is the only place where the tree depth can grow.
+        //  The 'minimum number of children' constraint does not apply to root nodes.
+        @SuppressWarnings ("unchecked")
+        final ALongBTreeMap<V>[] children = new ALongBTreeMap[] {result.left, result.optRight};
+        return new IndexNode<> (maxNumEntries, new long[] {result.separator}, children);
+    }
+
+    @Override public ALongBTreeMap<V> removed (Long key) {
+        return removed (key.longValue ());
+    }
+    public ALongBTreeMap<V> removed (long key) {
+        final ALongBTreeMap<V> result = doRemoved (key);
+
+        // This is the only place where the tree depth can shrink.
+        if (result instanceof IndexNode && ((IndexNode<V>) result).children.length == 1) {
+            return ((IndexNode<V>) result).children[0];
+        }
+        return result;
+    }
+
+    @Override public ASet<Long> keys () {
+        return ALongRedBlackTreeSet.create (new Iterable<Long> () {
+            @Override public Iterator<Long> iterator () {
+                final Iterator<AMapEntry<Long,V>> inner = ALongBTreeMap.this.iterator ();
+                return new Iterator<Long> () {
+                    @Override public boolean hasNext () {
+                        return inner.hasNext ();
+                    }
+                    @Override public Long next () {
+                        return inner.next ().getKey ();
+                    }
+                    @Override public void remove () {
+                        throw new UnsupportedOperationException ();
+                    }
+                };
+            }
+        });
+    }
+
+    @Override public Iterator<AMapEntry<Long, V>> iterator () {
+        return new RangeIterator<> (this, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    @Override public AOption<AMapEntry<Long, V>> first () {
+        return firstGreaterOrEquals (Long.MIN_VALUE);
+    }
+    @Override public AOption<AMapEntry<Long, V>> last () {
+        return lastSmallerOrEquals (Long.MAX_VALUE);
+    }
+
+    @Override public AOption<AMapEntry<Long, V>> firstGreaterThan (Long key) {
+        return firstGreaterThan (key.longValue ());
+    }
+    public AOption<AMapEntry<Long, V>> firstGreaterThan (long key) {
+        if (key == Long.MAX_VALUE) {
+            return AOption.none ();
+        }
+        return firstGreaterOrEquals (key + 1);
+    }
+
+    @Override public AOption<AMapEntry<Long, V>> firstGreaterOrEquals (Long key) {
+        return firstGreaterOrEquals (key.longValue ());
+    }
+    public AOption<AMapEntry<Long, V>> firstGreaterOrEquals (long key) {
+        final Iterator<AMapEntry<Long,V>> it = new RangeIterator<> (this, key, Long.MAX_VALUE);
+        return it.hasNext () ? AOption.some (it.next ()) : AOption.<AMapEntry<Long,V>>none ();
+    }
+
+    @Override public AOption<AMapEntry<Long, V>> lastSmallerThan (Long key) {
+        return lastSmallerThan (key.longValue ());
+    }
+    public AOption<AMapEntry<Long, V>> lastSmallerThan (long key) {
+        if (key == Long.MIN_VALUE) {
+            return AOption.none ();
+        }
+        return lastSmallerOrEquals (key - 1);
+    }
+
+    @Override public AOption<AMapEntry<Long, V>> lastSmallerOrEquals (Long key) {
+        return lastSmallerOrEquals (key.longValue ());
+    }
+    public AOption<AMapEntry<Long, V>> lastSmallerOrEquals (long key) {
+        return AOption.<AMapEntry<Long,V>>fromNullable (lastSmallerOrEquals (this, key));
+    }
+
+    private static <V> AMapEntry<Long,V> lastSmallerOrEquals (ALongBTreeMap<V> node, long key) {
+        if (node instanceof LeafNode) {
+            final LeafNode<V> leaf = (LeafNode<V>) node;
+            final int idx = upperBound (leaf.keys, key) - 1;
+            return idx >= 0 ? new Entry<> (leaf.keys[idx], leaf.values[idx]) : null;
+        }
+
+        // All keys in children left of the one that 'key' belongs in are smaller than key, so at most one step
+        //  to the left is necessary
+        final IndexNode<V> index = (IndexNode<V>) node;
+        for (int i=upperBound (index.separators, key); i>=0; i--) {
+            final AMapEntry<Long,V> result = lastSmallerOrEquals (index.children[i], key);
+            if (result != null) {
+                return result;
+            }
+        }
+        return null;
+    }
+
+    @Override public Iterable<AMapEntry<Long, V>> rangeII (Long fromKey, Long toKey) {
+        return rangeII (fromKey.longValue (), toKey.longValue ());
+    }
+    public Iterable<AMapEntry<Long, V>> rangeII (long fromKey, long toKey) {
+        return range (fromKey, toKey);
+    }
+
+    @Override public Iterable<AMapEntry<Long, V>> rangeIE (Long fromKey, Long toKey) {
+        return rangeIE (fromKey.longValue (), toKey.longValue ());
+    }
+    public Iterable<AMapEntry<Long, V>> rangeIE (long fromKey, long toKey) {
+        if (toKey == Long.MIN_VALUE) {
+            return AList.nil ();
+        }
+        return range (fromKey, toKey - 1);
+    }
+
+    @Override public Iterable<AMapEntry<Long, V>> rangeEI (Long fromKey, Long toKey) {
+        return rangeEI (fromKey.longValue (), toKey.longValue ());
+    }
+    public Iterable<AMapEntry<Long, V>> rangeEI (long fromKey, long toKey) {
+        if (fromKey == Long.MAX_VALUE) {
+            return AList.nil ();
+        }
+        return range (fromKey + 1, toKey);
+    }
+
+    @Override public Iterable<AMapEntry<Long, V>> rangeEE (Long fromKey, Long toKey) {
+        return rangeEE (fromKey.longValue (), toKey.longValue ());
+    }
+    public Iterable<AMapEntry<Long, V>> rangeEE (long fromKey, long toKey) {
+        if (fromKey == Long.MAX_VALUE || toKey == Long.MIN_VALUE) {
+            return AList.nil ();
+        }
+        return range (fromKey + 1, toKey - 1);
+    }
+
+    @Override public Iterable<AMapEntry<Long, V>> fromI (Long fromKey) {
+        return fromI (fromKey.longValue ());
+    }
+    public Iterable<AMapEntry<Long, V>> fromI (long fromKey) {
+        return range (fromKey, Long.MAX_VALUE);
+    }
+
+    @Override public Iterable<AMapEntry<Long, V>> fromE (Long fromKey) {
+        return fromE (fromKey.longValue ());
+    }
+    public Iterable<AMapEntry<Long, V>> fromE (long fromKey) {
+        if (fromKey == Long.MAX_VALUE) {
+            return AList.nil ();
+        }
+        return range (fromKey + 1, Long.MAX_VALUE);
+    }
+
+    @Override public Iterable<AMapEntry<Long, V>> toI (Long toKey) {
+        return toI (toKey.longValue ());
+    }
+    public Iterable<AMapEntry<Long, V>> toI (long toKey) {
+        return range (Long.MIN_VALUE, toKey);
+    }
+
+    @Override public Iterable<AMapEntry<Long, V>> toE (Long toKey) {
+        return toE (toKey.longValue ());
+    }
+    public Iterable<AMapEntry<Long, V>> toE (long toKey) {
+        if (toKey == Long.MIN_VALUE) {
+            return AList.nil ();
+        }
+        return range (Long.MIN_VALUE, toKey - 1);
+    }
+
+    @Override public int rank (Long key) {
+        return rank (key.longValue ());
+    }
+
+    /**
+     * Index nodes cache the size of their subtrees, so this descends along the key's search path, adding up the
+     *  sizes of the children to the left of the path.
+     */
+    public int rank (long key) {
+        return rank (key, false);
+    }
+
+    @Override public AMapEntry<Long, V> select (int index) {
+        if (index < 0 || index >= size ()) {
+            throw new IndexOutOfBoundsException ("index " + index + " for a map of size " + size ());
+        }
+
+        ALongBTreeMap<V> node = this;
+        while (node instanceof IndexNode) {
+            final ALongBTreeMap<V>[] children = ((IndexNode<V>) node).children;
+            int childIdx = 0;
+            while (index >= children[childIdx].size ()) {
+                index -= children[childIdx].size ();
+                childIdx += 1;
+            }
+            node = children[childIdx];
+        }
+
+        final LeafNode<V> leaf = (LeafNode<V>) node;
+        return new Entry<> (leaf.keys[index], leaf.values[index]);
+    }
+
+    @Override public int countInRange (Long fromKey, boolean fromInclusive, Long toKey, boolean toInclusive) {
+        return countInRange (fromKey.longValue (), fromInclusive, toKey.longValue (), toInclusive);
+    }
+    public int countInRange (long fromKey, boolean fromInclusive, long toKey, boolean toInclusive) {
+        return Math.max (0, rank (toKey, toInclusive) - rank (fromKey, ! fromInclusive));
+    }
+
+    /**
+     * @return the number of keys that are smaller than (or, if {@code inclusive} is true, equal to) a given key
+     */
+    private int rank (long key, boolean inclusive) {
+        int result = 0;
+
+        ALongBTreeMap<V> node = this;
+        while (node instanceof IndexNode) {
+            final IndexNode<V> index = (IndexNode<V>) node;
+            final int childIdx = upperBound (index.separators, key);
+            for (int i=0; i<childIdx; i++) {
+                result += index.children[i].size ();
+            }
+            node = index.children[childIdx];
+        }
+
+        final long[] keys = ((LeafNode<V>) node).keys;
+        return result + (inclusive ? upperBound (keys, key) : lowerBound (keys, key));
+    }
+
+    /**
+     * @param fromKey the smallest key to include
+     * @param toKey the biggest key to include
+     */
+    private Iterable<AMapEntry<Long, V>> range (final long fromKey, final long toKey) {
+        return new Iterable<AMapEntry<Long, V>> () {
+            @Override public Iterator<AMapEntry<Long, V>> iterator () {
+                return new RangeIterator<> (ALongBTreeMap.this, fromKey, toKey);
+            }
+        };
+    }
+
+    /**
+     * If {@code other} is an ALongBTreeMap, this traverses both trees simultaneously and skips all nodes that are
+     *  shared by both maps.
+     */
+    @Override public Iterable<AMapChange<Long, V>> diff (AMap<Long, V> other) {
+        if (! (other instanceof ALongBTreeMap)) {
+            return super.diff (other);
+        }
+
+        final ALongBTreeMap<V> otherRoot = (ALongBTreeMap<V>) other;
+        return new Iterable<AMapChange<Long, V>> () {
+            @Override public Iterator<AMapChange<Long, V>> iterator () {
+                return new SortedMapDiffIterator<Long, V> (KEY_COMPARATOR, ALongBTreeMap.this, otherRoot) {
+                    @Override int weight (Object node) {
+                        return ((ALongBTreeMap) node).size ();
+                    }
+
+                    @Override void expand (Object node, ArrayDeque<Object> items, ArrayDeque<Boolean> isEntry) {
+                        if (node instanceof IndexNode) {
+                            final ALongBTreeMap[] children = ((IndexNode) node).children;
+                            for (int i=children.length-1; i>=0; i--) {
+                                pushNode (children[i], items, isEntry);
+                            }
+                        }
+                        else {
+                            final LeafNode leaf = (LeafNode) node;
+                            for (int i=leaf.keys.length-1; i>=0; i--) {
+                                pushEntry (new Entry<> (leaf.keys[i], leaf.values[i]), items, isEntry);
+                            }
+                        }
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * descends from this node to the leaf that contains a given key if it is in the map at all
+     */
+    private LeafNode<V> leafFor (long key) {
+        ALongBTreeMap<V> node = this;
+        while (node instanceof IndexNode) {
+            final IndexNode<V> index = (IndexNode<V>) node;
+            node = index.children[upperBound (index.separators, key)];
+        }
+        return (LeafNode<V>) node;
+    }
+
+    /**
+     * @return the index of the first element that is greater than {@code key}, or {@code arr.length} if there is none
+     */
+    static int upperBound (long[] arr, long key) {
+        int lo = 0;
+        int hi = arr.length;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (arr[mid] <= key) {
+                lo = mid + 1;
+            }
+            else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * @return the index of the first element that is greater than or equal to {@code key}, or {@code arr.length}
+     *         if there is none
+     */
+    static int lowerBound (long[] arr, long key) {
+        int lo = 0;
+        int hi = arr.length;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (arr[mid] < key) {
+                lo = mid + 1;
+            }
+            else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    int minNumEntries () {
+        return maxNumEntries / 2;
+    }
+
+    abstract UpdateResult<V> doUpdated (long key, V value);
+
+    /**
+     * @return {@code this} if the key is not contained in this node's subtree. The returned node may contain fewer
+     *         than {@link #minNumEntries()} entries or children, it is up to the parent node to merge it with a
+     *         sibling.
+     */
+    abstract ALongBTreeMap<V> doRemoved (long key);
+
+    /**
+     * @return true if this node has fewer entries (leaf) or children (index node) than a non-root node must have
+     */
+    abstract boolean isUnderflow ();
+
+    /**
+     * @return the number of index levels below (and including) this node
+     */
+    abstract int height ();
+
+    /**
+     * Verifies all structural invariants of the tree, throwing an IllegalStateException if one of them is broken.
+     *  This is intended for testing.
+     */
+    void validate () {
+        validate (this, true, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    private static void validate (ALongBTreeMap<?> node, boolean isRoot, long minKey, long maxKey) {
+        if (! isRoot && node.isUnderflow ()) throw new IllegalStateException ("underflow");
+
+        if (node instanceof LeafNode) {
+            final long[] keys = ((LeafNode) node).keys;
+            if (keys.length > node.maxNumEntries) throw new IllegalStateException ("overflow");
+            for (int i=0; i<keys.length; i++) {
+                if (keys[i] < minKey || keys[i] > maxKey) throw new IllegalStateException ("key out of range");
+                if (i > 0 && keys[i-1] >= keys[i]) throw new IllegalStateException ("keys not sorted");
+            }
+            return;
+        }
+
+        final IndexNode<?> index = (IndexNode<?>) node;
+        if (index.children.length > node.maxNumEntries) throw new IllegalStateException ("overflow");
+        if (index.children.length < 2) throw new IllegalStateException ("index node with a single child");
+        if (index.separators.length != index.children.length - 1) throw new IllegalStateException ("number of separators");
+
+        int size = 0;
+        for (int i=0; i<index.children.length; i++) {
+            if (index.children[i].height () != index.children[0].height ()) throw new IllegalStateException ("unbalanced");
+
+            final long childMin = i == 0 ? minKey : index.separators[i-1];
+            final long childMax = i == index.separators.length ? maxKey : index.separators[i] - 1;
+            validate (index.children[i], false, childMin, childMax);
+            size += index.children[i].size ();
+        }
+        if (size != index.size) throw new IllegalStateException ("cached size");
+    }
+
+    static class UpdateResult<V> {
+        final ALongBTreeMap<V> left;
+        final long separator;
+        final ALongBTreeMap<V> optRight;
+
+        UpdateResult (ALongBTreeMap<V> left, long separator, ALongBTreeMap<V> optRight) {
+            this.left = left;
+            this.separator = separator;
+            this.optRight = optRight;
+        }
+    }
+
+    static class LeafNode<V> extends ALongBTreeMap<V> {
+        final long[] keys;
+        final V[] values;
+
+        LeafNode (int maxNumEntries, long[] keys, V[] values) {
+            super (maxNumEntries);
+            this.keys = keys;
+            this.values = values;
+        }
+
+        @Override public int size () {
+            return keys.length;
+        }
+
+        @Override boolean isUnderflow () {
+            return keys.length < minNumEntries ();
+        }
+
+        @Override int height () {
+            return 0;
+        }
+
+        @Override UpdateResult<V> doUpdated (long key, V value) {
+            final int idx = Arrays.binarySearch (keys, key);
+            if (idx >= 0) {
+                if (values[idx] == value) {
+                    return new UpdateResult<V> (this, 0, null);
+                }
+                final V[] newValues = values.clone ();
+                newValues[idx] = value;
+                return new UpdateResult<V> (new LeafNode<> (maxNumEntries, keys, newValues), 0, null);
+            }
+
+            final int insertIdx = -idx - 1;
+            final long[] newKeys = insertAt (keys, insertIdx, key);
+            final V[] newValues = insertAt (values, insertIdx, value);
+
+            if (newKeys.length <= maxNumEntries) {
+                return new UpdateResult<V> (new LeafNode<> (maxNumEntries, newKeys, newValues), 0, null);
+            }
+            return split (maxNumEntries, newKeys, newValues);
+        }
+
+        @Override ALongBTreeMap<V> doRemoved (long key) {
+            final int idx = Arrays.binarySearch (keys, key);
+            if (idx < 0) {
+                return this;
+            }
+            return new LeafNode<> (maxNumEntries, removeAt (keys, idx), removeAt (values, idx));
+        }
+
+        static <V> UpdateResult<V> split (int maxNumEntries, long[] keys, V[] values) {
+            final int splitIdx = keys.length / 2;
+            final LeafNode<V> left  = new LeafNode<> (maxNumEntries, Arrays.copyOf (keys, splitIdx), Arrays.copyOf (values, splitIdx));
+            final LeafNode<V> right = new LeafNode<> (maxNumEntries, Arrays.copyOfRange (keys, splitIdx, keys.length), Arrays.copyOfRange (values, splitIdx, values.length));
+            return new UpdateResult<V> (left, right.keys[0], right);
+        }
+
+        /**
+         * combines two adjacent leaves, returning either a single leaf or two leaves of roughly equal size
+         */
+        static <V> UpdateResult<V> merge (LeafNode<V> left, LeafNode<V> right) {
+            final long[] newKeys = Arrays.copyOf (left.keys, left.keys.length + right.keys.length);
+            System.arraycopy (right.keys, 0, newKeys, left.keys.length, right.keys.length);
+            final V[] newValues = Arrays.copyOf (left.values, left.values.length + right.values.length);
+            System.arraycopy (right.values, 0, newValues, left.values.length, right.values.length);
+
+            if (newKeys.length <= left.maxNumEntries) {
+                return new UpdateResult<V> (new LeafNode<> (left.maxNumEntries, newKeys, newValues), 0, null);
+            }
+            return split (left.maxNumEntries, newKeys, newValues);
+        }
+    }
+
+    static class IndexNode<V> extends ALongBTreeMap<V> {
+        // one more child than separators, i.e. one separator *between* every pair of adjacent children. All keys in
+        //  a child are smaller than the separator to its right, and greater than or equal to the separator to its left.
+        final long[] separators;
+        final ALongBTreeMap<V>[] children;
+        private final int size;
+
+        IndexNode (int maxNumEntries, long[] separators, ALongBTreeMap<V>[] children) {
+            super (maxNumEntries);
+            this.separators = separators;
+            this.children = children;
+
+            int size = 0;
+            for (ALongBTreeMap<V> child: children) {
+                size += child.size ();
+            }
+            this.size = size;
+        }
+
+        @Override public int size () {
+            return size;
+        }
+
+        @Override boolean isUnderflow () {
+            return children.length < minNumEntries ();
+        }
+
+        @Override int height () {
+            return 1 + children[0].height ();
+        }
+
+        @Override UpdateResult<V> doUpdated (long key, V value) {
+            final int childIdx = upperBound (separators, key);
+            final UpdateResult<V> childResult = children[childIdx].doUpdated (key, value);
+
+            if (childResult.optRight == null) {
+                if (childResult.left == children[childIdx]) {
+                    return new UpdateResult<V> (this, 0, null);
+                }
+                final ALongBTreeMap<V>[] newChildren = children.clone ();
+                newChildren[childIdx] = childResult.left;
+                return new UpdateResult<V> (new IndexNode<> (maxNumEntries, separators, newChildren), 0, null);
+            }
+
+            final long[] newSeparators = insertAt (separators, childIdx, childResult.separator);
+            final ALongBTreeMap<V>[] newChildren = insertAt (children, childIdx + 1, childResult.optRight);
+            newChildren[childIdx] = childResult.left;
+
+            if (newChildren.length <= maxNumEntries) {
+                return new UpdateResult<V> (new IndexNode<> (maxNumEntries, newSeparators, newChildren), 0, null);
+            }
+            return split (maxNumEntries, newSeparators, newChildren);
+        }
+
+        @Override ALongBTreeMap<V> doRemoved (long key) {
+            final int childIdx = upperBound (separators, key);
+            final ALongBTreeMap<V> newChild = children[childIdx].doRemoved (key);
+
+            if (newChild == children[childIdx]) {
+                return this;
+            }
+
+            if (! newChild.isUnderflow ()) {
+                final ALongBTreeMap<V>[] newChildren = children.clone ();
+                newChildren[childIdx] = newChild;
+                return new IndexNode<> (maxNumEntries, separators, newChildren);
+            }
+
+            // merge the underflowed child with a neighbour, redistributing their contents if they do not fit into a single node
+            final int leftIdx = childIdx > 0 ? childIdx - 1 : childIdx;
+            final ALongBTreeMap<V> left  = childIdx > 0 ? children[leftIdx] : newChild;
+            final ALongBTreeMap<V> right = childIdx > 0 ? newChild : children[childIdx + 1];
+
+            final UpdateResult<V> merged = mergeSiblings (left, separators[leftIdx], right);
+
+            if (merged.optRight == null) {
+                final ALongBTreeMap<V>[] newChildren = removeAt (children, leftIdx + 1);
+                newChildren[leftIdx] = merged.left;
+                return new IndexNode<> (maxNumEntries, removeAt (separators, leftIdx), newChildren);
+            }
+
+            final long[] newSeparators = separators.clone ();
+            newSeparators[leftIdx] = merged.separator;
+            final ALongBTreeMap<V>[] newChildren = children.clone ();
+            newChildren[leftIdx] = merged.left;
+            newChildren[leftIdx + 1] = merged.optRight;
+            return new IndexNode<> (maxNumEntries, newSeparators, newChildren);
+        }
+
+        static <V> UpdateResult<V> split (int maxNumEntries, long[] separators, ALongBTreeMap<V>[] children) {
+            final int splitIdx = children.length / 2;
+            final IndexNode<V> left  = new IndexNode<> (maxNumEntries, Arrays.copyOf (separators, splitIdx - 1), Arrays.copyOf (children, splitIdx));
+            final IndexNode<V> right = new IndexNode<> (maxNumEntries, Arrays.copyOfRange (separators, splitIdx, separators.length), Arrays.copyOfRange (children, splitIdx, children.length));
+            return new UpdateResult<V> (left, separators[splitIdx - 1], right);
+        }
+
+        /**
+         * combines two adjacent index nodes, pulling down the separator between them
+         */
+        static <V> UpdateResult<V> merge (IndexNode<V> left, long separator, IndexNode<V> right) {
+            final long[] newSeparators = new long[left.separators.length + right.separators.length + 1];
+            System.arraycopy (left.separators, 0, newSeparators, 0, left.separators.length);
+            newSeparators[left.separators.length] = separator;
+            System.arraycopy (right.separators, 0, newSeparators, left.separators.length + 1, right.separators.length);
+
+            final ALongBTreeMap<V>[] newChildren = Arrays.copyOf (left.children, left.children.length + right.children.length);
+            System.arraycopy (right.children, 0, newChildren, left.children.length, right.children.length);
+
+            if (newChildren.length <= left.maxNumEntries) {
+                return new UpdateResult<V> (new IndexNode<> (left.maxNumEntries, newSeparators, newChildren), 0, null);
+            }
+            return split (left.maxNumEntries, newSeparators, newChildren);
+        }
+    }
+
+    private static <V> UpdateResult<V> mergeSiblings (ALongBTreeMap<V> left, long separator, ALongBTreeMap<V> right) {
+        if (left instanceof LeafNode) {
+            return LeafNode.merge ((LeafNode<V>) left, (LeafNode<V>) right);
+        }
+        return IndexNode.merge ((IndexNode<V>) left, separator, (IndexNode<V>) right);
+    }
+
+    private static long[] insertAt (long[] arr, int idx, long value) {
+        final long[] result = new long[arr.length + 1];
+        System.arraycopy (arr, 0, result, 0, idx);
+        result[idx] = value;
+        System.arraycopy (arr, idx, result, idx + 1, arr.length - idx);
+        return result;
+    }
+
+    private static <T> T[] insertAt (T[] arr, int idx, T value) {
+        final T[] result = Arrays.copyOf (arr, arr.length + 1);
+        System.arraycopy (arr, idx, result, idx + 1, arr.length - idx);
+        result[idx] = value;
+        return result;
+    }
+
+    private static long[] removeAt (long[] arr, int idx) {
+        final long[] result = new long[arr.length - 1];
+        System.arraycopy (arr, 0, result, 0, idx);
+        System.arraycopy (arr, idx + 1, result, idx, arr.length - idx - 1);
+        return result;
+    }
+
+    private static <T> T[] removeAt (T[] arr, int idx) {
+        final T[] result = Arrays.copyOf (arr, arr.length - 1);
+        System.arraycopy (arr, idx + 1, result, idx, arr.length - idx - 1);
+        return result;
+    }
+
+    private static class Entry<V> implements AMapEntry<Long,V> {
+        private final long key;
+        private final V value;
+
+        Entry (long key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override public Long getKey () {
+            return key;
+        }
+        @Override public V getValue () {
+            return value;
+        }
+
+        @Override public String toString () {
+            return key + "->" + value;
+        }
+    }
+
+    /**
+     * This iterator descends the tree once to find the first entry of the range, and then walks through the leaves
+     *  in key order. It keeps the path from the root to the current leaf in arrays, so moving to the next leaf
+     *  does not require a lookup from the root.
+     */
+    static class RangeIterator<V> implements Iterator<AMapEntry<Long,V>> {
+        private final long toKey;
+
+        private final IndexNode<V>[] path;
+        private final int[] pathIdx;
+
+        private LeafNode<V> leaf;
+        private int leafIdx;
+
+        @SuppressWarnings ("unchecked")
+        RangeIterator (ALongBTreeMap<V> root, long fromKey, long toKey) {
+            this.toKey = toKey;
+
+            final int height = root.height ();
+            path = new IndexNode[height];
+            pathIdx = new int[height];
+
+            ALongBTreeMap<V> node = root;
+            for (int i=0; i<height; i++) {
+                path[i] = (IndexNode<V>) node;
+                pathIdx[i] = upperBound (path[i].separators, fromKey);
+                node = path[i].children[pathIdx[i]];
+            }
+            leaf = (LeafNode<V>) node;
+            leafIdx = lowerBound (leaf.keys, fromKey);
+
+            if (leafIdx == leaf.keys.length) {
+                nextLeaf ();
+            }
+        }
+
+        private void nextLeaf () {
+            int level = path.length - 1;
+            while (level >= 0 && pathIdx[level] == path[level].children.length - 1) {
+                level -= 1;
+            }
+            if (level < 0) {
+                leaf = null;
+                return;
+            }
+
+            pathIdx[level] += 1;
+            ALongBTreeMap<V> node = path[level].children[pathIdx[level]];
+            for (int i=level+1; i<path.length; i++) {
+                path[i] = (IndexNode<V>) node;
+                pathIdx[i] = 0;
+                node = path[i].children[0];
+            }
+            leaf = (LeafNode<V>) node;
+            leafIdx = 0;
+        }
+
+        @Override public boolean hasNext () {
+            return leaf != null && leaf.keys[leafIdx] <= toKey;
+        }
+
+        @Override public AMapEntry<Long, V> next () {
+            if (! hasNext ()) {
+                throw new NoSuchElementException ();
+            }
+
+            final AMapEntry<Long,V> result = new Entry<> (leaf.keys[leafIdx], leaf.values[leafIdx]);
+            leafIdx += 1;
+            if (leafIdx == leaf.keys.length) {
+                nextLeaf ();
+            }
+            return result;
+        }
+
+        @Override public void remove () {
+            throw new UnsupportedOperationException ();
+        }
+    }
+}
@@ -16,8 +16,6 @@ import java.util.*;
 public class ALongHashMap<V> extends AbstractAMap<Long,V> {
     private static final int LEVEL_INCREMENT = 10;
 
-    transient private Integer cachedHashcode = null; // intentionally not volatile: This class is immutable, so recalculating per thread works
-
     private static final ALongHashMap EMPTY = new ALongHashMap ();
 
 
@@ -87,15 +85,16 @@ public class ALongHashMap<V> extends AbstractAMap<Long,V> {
     }
 
     @Override public AMap<Long, V> clear () {
-        return null;
+        return empty ();
     }
 
     @Override public int size() {
         return 0;
     }
 
+    @SuppressWarnings ("unchecked")
     public boolean containsKey(long key) {
-        return get(key).isDefined();
+        return getOrDefault (key, (V) NO_VALUE) != NO_VALUE;
     }
 
     @Override public AOption<V> get (Long key) {
@@ -108,8 +107,27 @@ public class ALongHashMap<V> extends AbstractAMap<Long,V> {
     @Override public V getRequired (Long key) {
         return getRequired (key.longValue());
     }
+    @SuppressWarnings ("unchecked")
     public V getRequired (long key) {
-        return get(key).get();
+        final V result = getOrDefault (key, (V) NO_VALUE);
+        if (result == NO_VALUE) {
+            throw new NoSuchElementException ();
+        }
+        return result;
+    }
+
+    @Override public V getOrDefault (Long key, V defaultValue) {
+        return getOrDefault (key.longValue (), defaultValue);
+    }
+    public V getOrDefault (long key, V defaultValue) {
+        return doGetOrDefault (key, computeHash (key), 0, defaultValue);
+    }
+
+    @Override public V getOrNull (Long key) {
+        return getOrDefault (key.longValue (), null);
+    }
+    public V getOrNull (long key) {
+        return getOrDefault (key, null);
     }
 
     @Override public ALongHashMap<V> updated (Long key, V value) {
@@ -146,6 +164,13 @@ public class ALongHashMap<V> extends AbstractAMap<Long,V> {
         };
     }
 
+    /**
+     * The spliterator splits on the children of trie nodes.
+     */
+    @Override public ASpliterator<AMapEntry<Long, V>> aSpliterator () {
+        return new LongHashMapSpliterator<> (this, size ());
+    }
+
     public ALongMapIterator<V> longIterator() { //TODO test this - and all map iterator() implementations
         return new LongIteratorImpl<> (this);
     }
@@ -162,6 +187,10 @@ public class ALongHashMap<V> extends AbstractAMap<Long,V> {
         return AOption.none();
     }
 
+    V doGetOrDefault (long key, long hash, int level, V defaultValue) {
+        return defaultValue;
+    }
+
     ALongHashMap<V> doUpdated(long key, long hash, int level, V value) {
         return new LongHashMap1<> (key, hash, value);
     }
@@ -290,6 +319,37 @@ public class ALongHashMap<V> extends AbstractAMap<Long,V> {
         }
     }
 
+    static class LongHashMapSpliterator<V> extends AbstractASpliterator.TreeSpliterator<AMapEntry<Long,V>> {
+        LongHashMapSpliterator (ALongHashMap<V> root, int size) {
+            super (root, size);
+        }
+
+        private LongHashMapSpliterator (List<Object> parts, int size) {
+            super (parts, size);
+        }
+
+        @Override int sizeOf (Object node) {
+            return ((ALongHashMap<?>) node).size ();
+        }
+
+        @Override void expand (Object node, List<Object> target) {
+            // a node with more than one entry is always a trie node, and the iterator visits its children in reverse order
+            final ALongHashMap<?>[] elems = ((LongHashTrieMap<?>) node).elems;
+            for (int i=elems.length-1; i>=0; i--) {
+                target.add (elems[i]);
+            }
+        }
+
+        @SuppressWarnings ("unchecked")
+        @Override Iterator<AMapEntry<Long, V>> iteratorOf (Object node) {
+            return ((ALongHashMap<V>) node).iterator ();
+        }
+
+        @Override AbstractASpliterator.TreeSpliterator<AMapEntry<Long, V>> create (List<Object> parts, int size) {
+            return new LongHashMapSpliterator<> (parts, size);
+        }
+    }
+
     static class LongHashMap1<V> extends ALongHashMap<V> {
         private final long key;
         private final long hash;
@@ -314,6 +374,13 @@ public class ALongHashMap<V> extends AbstractAMap<Long,V> {
             return AOption.none();
         }
 
+        @Override V doGetOrDefault (long key, long hash, int level, V defaultValue) {
+            if(this.key == key) {
+                return value;
+            }
+            return defaultValue;
+        }
+
         @Override ALongHashMap<V> doUpdated(long key, long hash, int level, V value) {
             if (key == this.key) {
                 if(this.value == value) {
@@ -373,6 +440,23 @@ public class ALongHashMap<V> extends AbstractAMap<Long,V> {
             return AOption.none();
         }
 
+        @Override
+        V doGetOrDefault (long key, long hash, int level, V defaultValue) {
+            final int index = (int) ((hash >>> level) & 0x3f);
+
+            if (bitmap == - 1) {
+                return elems[index & 0x3f].doGetOrDefault (key, hash, level + LEVEL_INCREMENT, defaultValue);
+            }
+
+            final long mask = 1L << index;
+            if ((bitmap & mask) != 0) {
+                final int offset = Long.bitCount (bitmap & (mask - 1));
+                return elems[offset].doGetOrDefault (key, hash, level + LEVEL_INCREMENT, defaultValue);
+            }
+
+            return defaultValue;
+        }
+
         @Override ALongHashMap<V> doUpdated(long key, long hash, int level, V value) {
             final int index = (int) ((hash >>> level) & 0x3f);
             final long mask = (1L << index);
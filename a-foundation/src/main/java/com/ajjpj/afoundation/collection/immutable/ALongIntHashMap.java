@@ -0,0 +1,428 @@
+package com.ajjpj.afoundation.collection.immutable;
+
+import com.ajjpj.afoundation.collection.AEquality;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+
+/**
+ * This is a specialization of {@link ALongHashMap} for primitive 'int' values. Both keys and values are stored in
+ *  primitive arrays inside the trie nodes, so neither of them is boxed, and {@link #get(long, int)} returns a
+ *  primitive value (or a default value provided by the caller) without allocating anything.<p>
+ *
+ * Every node of the 64-way hash trie stores entries that are unique at its level in place, and has child nodes only
+ *  for entries whose hashes collide at that level. The hash function is a bijection on 'long' values, so different
+ *  keys are guaranteed to end up in different positions at some level.<p>
+ *
+ * The generic {@link AMap} API is supported for interoperability, but it boxes keys and values.
+ *
+ * @author arno
+ */
+public class ALongIntHashMap extends AbstractAMap<Long,Integer> {
+    private static final int LEVEL_INCREMENT = 6;
+
+    private static final ALongIntHashMap EMPTY = new ALongIntHashMap (0, 0, new long[0], new int[0], new ALongIntHashMap[0], 0);
+
+    /**
+     * bitmap of the positions at this level for which an entry is stored in place, i.e. in {@link #keys} and {@link #values}
+     */
+    private final long dataMap;
+    /**
+     * bitmap of the positions at this level for which there is a child node in {@link #nodes}
+     */
+    private final long nodeMap;
+
+    private final long[] keys;
+    private final int[] values;
+    private final ALongIntHashMap[] nodes;
+    private final int size;
+
+    /**
+     * Returns an empty ALongIntHashMap instance. Calling this factory method instead of
+     *  the constructor allows internal reuse of empty map instances since they are immutable.
+     */
+    public static ALongIntHashMap empty () {
+        return EMPTY;
+    }
+
+    public static ALongIntHashMap fromJavaUtilMap (Map<? extends Number, ? extends Number> map) {
+        ALongIntHashMap result = empty ();
+
+        for (Map.Entry<? extends Number, ? extends Number> entry: map.entrySet ()) {
+            result = result.updated (entry.getKey ().longValue (), entry.getValue ().intValue ());
+        }
+
+        return result;
+    }
+
+    private ALongIntHashMap (long dataMap, long nodeMap, long[] keys, int[] values, ALongIntHashMap[] nodes, int size) {
+        this.dataMap = dataMap;
+        this.nodeMap = nodeMap;
+        this.keys = keys;
+        this.values = values;
+        this.nodes = nodes;
+        this.size = size;
+    }
+
+    @Override public AEquality keyEquality () {
+        return AEquality.NATURAL_ORDER;
+    }
+
+    @Override public AMap<Long, Integer> clear () {
+        return empty ();
+    }
+
+    @Override public int size () {
+        return size;
+    }
+
+    @Override public boolean containsKey (Long key) {
+        return containsKey (key.longValue ());
+    }
+    public boolean containsKey (long key) {
+        final long hash = computeHash (key);
+
+        ALongIntHashMap node = this;
+        int level = 0;
+        while (true) {
+            final long mask = 1L << ((hash >>> level) & 0x3f);
+            if ((node.dataMap & mask) != 0) {
+                return node.keys[Long.bitCount (node.dataMap & (mask - 1))] == key;
+            }
+            if ((node.nodeMap & mask) == 0) {
+                return false;
+            }
+            node = node.nodes[Long.bitCount (node.nodeMap & (mask - 1))];
+            level += LEVEL_INCREMENT;
+        }
+    }
+
+    @Override public AOption<Integer> get (Long key) {
+        return AOption.fromNullable (getOrNull (key));
+    }
+
+    /**
+     * Returns the value stored for a given key, or {@code defaultValue} if there is no entry for the key. This method
+     *  does not allocate any objects.
+     */
+    public int get (long key, int defaultValue) {
+        final long hash = computeHash (key);
+
+        ALongIntHashMap node = this;
+        int level = 0;
+        while (true) {
+            final long mask = 1L << ((hash >>> level) & 0x3f);
+            if ((node.dataMap & mask) != 0) {
+                final int idx = Long.bitCount (node.dataMap & (mask - 1));
+                return node.keys[idx] == key ? node.values[idx] : defaultValue;
+            }
+            if ((node.nodeMap & mask) == 0) {
+                return defaultValue;
+            }
+            node = node.nodes[Long.bitCount (node.nodeMap & (mask - 1))];
+            level += LEVEL_INCREMENT;
+        }
+    }
+
+    /**
+     * The primitive method {@link #get(long, int)} should be preferred where possible since this method boxes
+     *  the value it returns.
+     */
+    @Override public Integer getOrDefault (Long key, Integer defaultValue) {
+        final Integer result = getOrNull (key);
+        return result != null ? result : defaultValue;
+    }
+    @Override public Integer getOrNull (Long key) {
+        final long k = key;
+        final long hash = computeHash (k);
+
+        ALongIntHashMap node = this;
+        int level = 0;
+        while (true) {
+            final long mask = 1L << ((hash >>> level) & 0x3f);
+            if ((node.dataMap & mask) != 0) {
+                final int idx = Long.bitCount (node.dataMap & (mask - 1));
+                return node.keys[idx] == k ? node.values[idx] : null;
+            }
+            if ((node.nodeMap & mask) == 0) {
+                return null;
+            }
+            node = node.nodes[Long.bitCount (node.nodeMap & (mask - 1))];
+            level += LEVEL_INCREMENT;
+        }
+    }
+
+    @Override public Integer getRequired (Long key) {
+        return getRequired (key.longValue ());
+    }
+    public int getRequired (long key) {
+        if (! containsKey (key)) {
+            throw new NoSuchElementException ();
+        }
+        return get (key, 0);
+    }
+
+    @Override public ALongIntHashMap updated (Long key, Integer value) {
+        return updated (key.longValue (), value.intValue ());
+    }
+    public ALongIntHashMap updated (long key, int value) {
+        return doUpdated (key, computeHash (key), 0, value);
+    }
+
+    @Override public ALongIntHashMap removed (Long key) {
+        return removed (key.longValue ());
+    }
+    public ALongIntHashMap removed (long key) {
+        return doRemoved (key, computeHash (key), 0);
+    }
+
+    /**
+     * Returns a set with this map's keys. The keys are copied, so this takes time proportional to the map's size.
+     */
+    @Override public ASet<Long> keys () {
+        return ALongHashSet.create (new Iterable<Long> () {
+            @Override public Iterator<Long> iterator () {
+                final Iterator<AMapEntry<Long,Integer>> inner = ALongIntHashMap.this.iterator ();
+                return new Iterator<Long> () {
+                    @Override public boolean hasNext () {
+                        return inner.hasNext ();
+                    }
+                    @Override public Long next () {
+                        return inner.next ().getKey ();
+                    }
+                    @Override public void remove () {
+                        throw new UnsupportedOperationException ();
+                    }
+                };
+            }
+        });
+    }
+
+    @Override public Iterator<AMapEntry<Long, Integer>> iterator () {
+        return new LongIntIterator (this);
+    }
+
+    private ALongIntHashMap doUpdated (long key, long hash, int level, int value) {
+        final long mask = 1L << ((hash >>> level) & 0x3f);
+
+        if ((dataMap & mask) != 0) {
+            final int idx = Long.bitCount (dataMap & (mask - 1));
+            if (keys[idx] == key) {
+                if (values[idx] == value) {
+                    return this;
+                }
+                final int[] valuesNew = values.clone ();
+                valuesNew[idx] = value;
+                return new ALongIntHashMap (dataMap, nodeMap, keys, valuesNew, nodes, size);
+            }
+
+            // two different keys at the same position --> move the existing entry to a new child node
+            final ALongIntHashMap child = mergeEntries (keys[idx], values[idx], computeHash (keys[idx]), key, value, hash, level + LEVEL_INCREMENT);
+            final int nodeIdx = Long.bitCount (nodeMap & (mask - 1));
+            return new ALongIntHashMap (dataMap ^ mask, nodeMap | mask, removeAt (keys, idx), removeAt (values, idx), insertAt (nodes, nodeIdx, child), size + 1);
+        }
+
+        if ((nodeMap & mask) != 0) {
+            final int nodeIdx = Long.bitCount (nodeMap & (mask - 1));
+            final ALongIntHashMap sub = nodes[nodeIdx];
+            final ALongIntHashMap subNew = sub.doUpdated (key, hash, level + LEVEL_INCREMENT, value);
+            if (subNew == sub) {
+                return this;
+            }
+
+            final ALongIntHashMap[] nodesNew = nodes.clone ();
+            nodesNew[nodeIdx] = subNew;
+            return new ALongIntHashMap (dataMap, nodeMap, keys, values, nodesNew, size + (subNew.size - sub.size));
+        }
+
+        final int idx = Long.bitCount (dataMap & (mask - 1));
+        return new ALongIntHashMap (dataMap | mask, nodeMap, insertAt (keys, idx, key), insertAt (values, idx, value), nodes, size + 1);
+    }
+
+    private ALongIntHashMap doRemoved (long key, long hash, int level) {
+        final long mask = 1L << ((hash >>> level) & 0x3f);
+
+        if ((dataMap & mask) != 0) {
+            final int idx = Long.bitCount (dataMap & (mask - 1));
+            if (keys[idx] != key) {
+                return this;
+            }
+            if (size == 1) {
+                return empty ();
+            }
+            return new ALongIntHashMap (dataMap ^ mask, nodeMap, removeAt (keys, idx), removeAt (values, idx), nodes, size - 1);
+        }
+
+        if ((nodeMap & mask) != 0) {
+            final int nodeIdx = Long.bitCount (nodeMap & (mask - 1));
+            final ALongIntHashMap sub = nodes[nodeIdx];
+            final ALongIntHashMap subNew = sub.doRemoved (key, hash, level + LEVEL_INCREMENT);
+            if (subNew == sub) {
+                return this;
+            }
+
+            if (subNew.size == 1) {
+                // a child node with a single entry is inlined to keep the trie compact
+                final int idx = Long.bitCount (dataMap & (mask - 1));
+                return new ALongIntHashMap (dataMap | mask, nodeMap ^ mask, insertAt (keys, idx, subNew.keys[0]), insertAt (values, idx, subNew.values[0]), removeAt (nodes, nodeIdx), size - 1);
+            }
+
+            final ALongIntHashMap[] nodesNew = nodes.clone ();
+            nodesNew[nodeIdx] = subNew;
+            return new ALongIntHashMap (dataMap, nodeMap, keys, values, nodesNew, size - 1);
+        }
+
+        return this;
+    }
+
+    /**
+     * creates a node containing two entries with different keys
+     */
+    private static ALongIntHashMap mergeEntries (long key0, int value0, long hash0, long key1, int value1, long hash1, int level) {
+        final int index0 = (int) ((hash0 >>> level) & 0x3f);
+        final int index1 = (int) ((hash1 >>> level) & 0x3f);
+
+        if (index0 == index1) {
+            final ALongIntHashMap child = mergeEntries (key0, value0, hash0, key1, value1, hash1, level + LEVEL_INCREMENT);
+            return new ALongIntHashMap (0, 1L << index0, new long[0], new int[0], new ALongIntHashMap[] {child}, 2);
+        }
+
+        final long dataMap = (1L << index0) | (1L << index1);
+        if (index0 < index1) {
+            return new ALongIntHashMap (dataMap, 0, new long[] {key0, key1}, new int[] {value0, value1}, EMPTY.nodes, 2);
+        }
+        return new ALongIntHashMap (dataMap, 0, new long[] {key1, key0}, new int[] {value1, value0}, EMPTY.nodes, 2);
+    }
+
+    private static long[] insertAt (long[] arr, int idx, long value) {
+        final long[] result = new long[arr.length + 1];
+        System.arraycopy (arr, 0, result, 0, idx);
+        result[idx] = value;
+        System.arraycopy (arr, idx, result, idx + 1, arr.length - idx);
+        return result;
+    }
+    private static long[] removeAt (long[] arr, int idx) {
+        final long[] result = new long[arr.length - 1];
+        System.arraycopy (arr, 0, result, 0, idx);
+        System.arraycopy (arr, idx + 1, result, idx, arr.length - idx - 1);
+        return result;
+    }
+    private static int[] insertAt (int[] arr, int idx, int value) {
+        final int[] result = new int[arr.length + 1];
+        System.arraycopy (arr, 0, result, 0, idx);
+        result[idx] = value;
+        System.arraycopy (arr, idx, result, idx + 1, arr.length - idx);
+        return result;
+    }
+    private static int[] removeAt (int[] arr, int idx) {
+        final int[] result = new int[arr.length - 1];
+        System.arraycopy (arr, 0, result, 0, idx);
+        System.arraycopy (arr, idx + 1, result, idx, arr.length - idx - 1);
+        return result;
+    }
+    private static ALongIntHashMap[] insertAt (ALongIntHashMap[] arr, int idx, ALongIntHashMap value) {
+        final ALongIntHashMap[] result = new ALongIntHashMap[arr.length + 1];
+        System.arraycopy (arr, 0, result, 0, idx);
+        result[idx] = value;
+        System.arraycopy (arr, idx, result, idx + 1, arr.length - idx);
+        return result;
+    }
+    private static ALongIntHashMap[] removeAt (ALongIntHashMap[] arr, int idx) {
+        final ALongIntHashMap[] result = new ALongIntHashMap[arr.length - 1];
+        System.arraycopy (arr, 0, result, 0, idx);
+        System.arraycopy (arr, idx + 1, result, idx, arr.length - idx - 1);
+        return result;
+    }
+
+    /**
+     * This is the same hash function as in {@link ALongHashMap}. It is a bijection, i.e. different keys are guaranteed
+     *  to have different hashes.
+     */
+    private static long computeHash (long key) {
+        long h = key;
+        h = h + ~(h << 18);
+        h = h ^ (h >>> 28);
+        h = h + (h << 8);
+        return h ^ (h >>> 20);
+    }
+
+    private Object readResolve () {
+        return size == 0 ? EMPTY : this;
+    }
+
+    static class LongIntIterator implements Iterator<AMapEntry<Long, Integer>> {
+        // the trie has at most 11 levels, so fixed size arrays are sufficient for the path from the root
+        private final ALongIntHashMap[] nodeStack = new ALongIntHashMap[12];
+        private final int[] dataIdxStack = new int[12];
+        private final int[] nodeIdxStack = new int[12];
+        private int depth;
+
+        LongIntIterator (ALongIntHashMap root) {
+            nodeStack[0] = root;
+            depth = root.size == 0 ? -1 : 0;
+            advanceToData ();
+        }
+
+        /**
+         * moves to the next node that has an unvisited entry stored in place, or sets depth to -1 if there is none
+         */
+        private void advanceToData () {
+            while (depth >= 0) {
+                final ALongIntHashMap node = nodeStack[depth];
+                if (dataIdxStack[depth] < node.keys.length) {
+                    return;
+                }
+                if (nodeIdxStack[depth] < node.nodes.length) {
+                    final ALongIntHashMap child = node.nodes[nodeIdxStack[depth]++];
+                    depth += 1;
+                    nodeStack[depth] = child;
+                    dataIdxStack[depth] = 0;
+                    nodeIdxStack[depth] = 0;
+                }
+                else {
+                    nodeStack[depth] = null;
+                    depth -= 1;
+                }
+            }
+        }
+
+        @Override public boolean hasNext () {
+            return depth >= 0;
+        }
+
+        @Override public AMapEntry<Long, Integer> next () {
+            if (depth < 0) {
+                throw new NoSuchElementException ();
+            }
+
+            final ALongIntHashMap node = nodeStack[depth];
+            final int idx = dataIdxStack[depth]++;
+            final AMapEntry<Long, Integer> result = new LongIntEntry (node.keys[idx], node.values[idx]);
+            advanceToData ();
+            return result;
+        }
+
+        @Override public void remove () {
+            throw new UnsupportedOperationException ();
+        }
+    }
+
+    static class LongIntEntry implements AMapEntry<Long, Integer> {
+        private final long key;
+        private final int value;
+
+        LongIntEntry (long key, int value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override public Long getKey () {
+            return key;
+        }
+        @Override public Integer getValue () {
+            return value;
+        }
+    }
+}
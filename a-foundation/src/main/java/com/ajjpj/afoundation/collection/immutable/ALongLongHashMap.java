@@ -0,0 +1,415 @@
+package com.ajjpj.afoundation.collection.immutable;
+
+import com.ajjpj.afoundation.collection.AEquality;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+
+/**
+ * This is a specialization of {@link ALongHashMap} for primitive 'long' values. Both keys and values are stored in
+ *  primitive arrays inside the trie nodes, so neither of them is boxed, and {@link #get(long, long)} returns a
+ *  primitive value (or a default value provided by the caller) without allocating anything.<p>
+ *
+ * Every node of the 64-way hash trie stores entries that are unique at its level in place, and has child nodes only
+ *  for entries whose hashes collide at that level. The hash function is a bijection on 'long' values, so different
+ *  keys are guaranteed to end up in different positions at some level.<p>
+ *
+ * The generic {@link AMap} API is supported for interoperability, but it boxes keys and values.
+ *
+ * @author arno
+ */
+public class ALongLongHashMap extends AbstractAMap<Long,Long> {
+    private static final int LEVEL_INCREMENT = 6;
+
+    private static final ALongLongHashMap EMPTY = new ALongLongHashMap (0, 0, new long[0], new long[0], new ALongLongHashMap[0], 0);
+
+    /**
+     * bitmap of the positions at this level for which an entry is stored in place, i.e. in {@link #keys} and {@link #values}
+     */
+    private final long dataMap;
+    /**
+     * bitmap of the positions at this level for which there is a child node in {@link #nodes}
+     */
+    private final long nodeMap;
+
+    private final long[] keys;
+    private final long[] values;
+    private final ALongLongHashMap[] nodes;
+    private final int size;
+
+    /**
+     * Returns an empty ALongLongHashMap instance. Calling this factory method instead of
+     *  the constructor allows internal reuse of empty map instances since they are immutable.
+     */
+    public static ALongLongHashMap empty () {
+        return EMPTY;
+    }
+
+    public static ALongLongHashMap fromJavaUtilMap (Map<? extends Number, ? extends Number> map) {
+        ALongLongHashMap result = empty ();
+
+        for (Map.Entry<? extends Number, ? extends Number> entry: map.entrySet ()) {
+            result = result.updated (entry.getKey ().longValue (), entry.getValue ().longValue ());
+        }
+
+        return result;
+    }
+
+    private ALongLongHashMap (long dataMap, long nodeMap, long[] keys, long[] values, ALongLongHashMap[] nodes, int size) {
+        this.dataMap = dataMap;
+        this.nodeMap = nodeMap;
+        this.keys = keys;
+        this.values = values;
+        this.nodes = nodes;
+        this.size = size;
+    }
+
+    @Override public AEquality keyEquality () {
+        return AEquality.NATURAL_ORDER;
+    }
+
+    @Override public AMap<Long, Long> clear () {
+        return empty ();
+    }
+
+    @Override public int size () {
+        return size;
+    }
+
+    @Override public boolean containsKey (Long key) {
+        return containsKey (key.longValue ());
+    }
+    public boolean containsKey (long key) {
+        final long hash = computeHash (key);
+
+        ALongLongHashMap node = this;
+        int level = 0;
+        while (true) {
+            final long mask = 1L << ((hash >>> level) & 0x3f);
+            if ((node.dataMap & mask) != 0) {
+                return node.keys[Long.bitCount (node.dataMap & (mask - 1))] == key;
+            }
+            if ((node.nodeMap & mask) == 0) {
+                return false;
+            }
+            node = node.nodes[Long.bitCount (node.nodeMap & (mask - 1))];
+            level += LEVEL_INCREMENT;
+        }
+    }
+
+    @Override public AOption<Long> get (Long key) {
+        return AOption.fromNullable (getOrNull (key));
+    }
+
+    /**
+     * Returns the value stored for a given key, or {@code defaultValue} if there is no entry for the key. This method
+     *  does not allocate any objects.
+     */
+    public long get (long key, long defaultValue) {
+        final long hash = computeHash (key);
+
+        ALongLongHashMap node = this;
+        int level = 0;
+        while (true) {
+            final long mask = 1L << ((hash >>> level) & 0x3f);
+            if ((node.dataMap & mask) != 0) {
+                final int idx = Long.bitCount (node.dataMap & (mask - 1));
+                return node.keys[idx] == key ? node.values[idx] : defaultValue;
+            }
+            if ((node.nodeMap & mask) == 0) {
+                return defaultValue;
+            }
+            node = node.nodes[Long.bitCount (node.nodeMap & (mask - 1))];
+            level += LEVEL_INCREMENT;
+        }
+    }
+
+    /**
+     * The primitive method {@link #get(long, long)} should be preferred where possible since this method boxes
+     *  the value it returns.
+     */
+    @Override public Long getOrDefault (Long key, Long defaultValue) {
+        final Long result = getOrNull (key);
+        return result != null ? result : defaultValue;
+    }
+    @Override public Long getOrNull (Long key) {
+        final long k = key;
+        final long hash = computeHash (k);
+
+        ALongLongHashMap node = this;
+        int level = 0;
+        while (true) {
+            final long mask = 1L << ((hash >>> level) & 0x3f);
+            if ((node.dataMap & mask) != 0) {
+                final int idx = Long.bitCount (node.dataMap & (mask - 1));
+                return node.keys[idx] == k ? node.values[idx] : null;
+            }
+            if ((node.nodeMap & mask) == 0) {
+                return null;
+            }
+            node = node.nodes[Long.bitCount (node.nodeMap & (mask - 1))];
+            level += LEVEL_INCREMENT;
+        }
+    }
+
+    @Override public Long getRequired (Long key) {
+        return getRequired (key.longValue ());
+    }
+    public long getRequired (long key) {
+        if (! containsKey (key)) {
+            throw new NoSuchElementException ();
+        }
+        return get (key, 0);
+    }
+
+    @Override public ALongLongHashMap updated (Long key, Long value) {
+        return updated (key.longValue (), value.longValue ());
+    }
+    public ALongLongHashMap updated (long key, long value) {
+        return doUpdated (key, computeHash (key), 0, value);
+    }
+
+    @Override public ALongLongHashMap removed (Long key) {
+        return removed (key.longValue ());
+    }
+    public ALongLongHashMap removed (long key) {
+        return doRemoved (key, computeHash (key), 0);
+    }
+
+    /**
+     * Returns a set with this map's keys. The keys are copied, so this takes time proportional to the map's size.
+     */
+    @Override public ASet<Long> keys () {
+        return ALongHashSet.create (new Iterable<Long> () {
+            @Override public Iterator<Long> iterator () {
+                final Iterator<AMapEntry<Long,Long>> inner = ALongLongHashMap.this.iterator ();
+                return new Iterator<Long> () {
+                    @Override public boolean hasNext () {
+                        return inner.hasNext ();
+                    }
+                    @Override public Long next () {
+                        return inner.next ().getKey ();
+                    }
+                    @Override public void remove () {
+                        throw new UnsupportedOperationException ();
+                    }
+                };
+            }
+        });
+    }
+
+    @Override public Iterator<AMapEntry<Long, Long>> iterator () {
+        return new LongLongIterator (this);
+    }
+
+    private ALongLongHashMap doUpdated (long key, long hash, int level, long value) {
+        final long mask = 1L << ((hash >>> level) & 0x3f);
+
+        if ((dataMap & mask) != 0) {
+            final int idx = Long.bitCount (dataMap & (mask - 1));
+            if (keys[idx] == key) {
+                if (values[idx] == value) {
+                    return this;
+                }
+                final long[] valuesNew = values.clone ();
+                valuesNew[idx] = value;
+                return new ALongLongHashMap (dataMap, nodeMap, keys, valuesNew, nodes, size);
+            }
+
+            // two different keys at the same position --> move the existing entry to a new child node
+            final ALongLongHashMap child = mergeEntries (keys[idx], values[idx], computeHash (keys[idx]), key, value, hash, level + LEVEL_INCREMENT);
+            final int nodeIdx = Long.bitCount (nodeMap & (mask - 1));
+            return new ALongLongHashMap (dataMap ^ mask, nodeMap | mask, removeAt (keys, idx), removeAt (values, idx), insertAt (nodes, nodeIdx, child), size + 1);
+        }
+
+        if ((nodeMap & mask) != 0) {
+            final int nodeIdx = Long.bitCount (nodeMap & (mask - 1));
+            final ALongLongHashMap sub = nodes[nodeIdx];
+            final ALongLongHashMap subNew = sub.doUpdated (key, hash, level + LEVEL_INCREMENT, value);
+            if (subNew == sub) {
+                return this;
+            }
+
+            final ALongLongHashMap[] nodesNew = nodes.clone ();
+            nodesNew[nodeIdx] = subNew;
+            return new ALongLongHashMap (dataMap, nodeMap, keys, values, nodesNew, size + (subNew.size - sub.size));
+        }
+
+        final int idx = Long.bitCount (dataMap & (mask - 1));
+        return new ALongLongHashMap (dataMap | mask, nodeMap, insertAt (keys, idx, key), insertAt (values, idx, value), nodes, size + 1);
+    }
+
+    private ALongLongHashMap doRemoved (long key, long hash, int level) {
+        final long mask = 1L << ((hash >>> level) & 0x3f);
+
+        if ((dataMap & mask) != 0) {
+            final int idx = Long.bitCount (dataMap & (mask - 1));
+            if (keys[idx] != key) {
+                return this;
+            }
+            if (size == 1) {
+                return empty ();
+            }
+            return new ALongLongHashMap (dataMap ^ mask, nodeMap, removeAt (keys, idx), removeAt (values, idx), nodes, size - 1);
+        }
+
+        if ((nodeMap & mask) != 0) {
+            final int nodeIdx = Long.bitCount (nodeMap & (mask - 1));
+            final ALongLongHashMap sub = nodes[nodeIdx];
+            final ALongLongHashMap subNew = sub.doRemoved (key, hash, level + LEVEL_INCREMENT);
+            if (subNew == sub) {
+                return this;
+            }
+
+            if (subNew.size == 1) {
+                // a child node with a single entry is inlined to keep the trie compact
+                final int idx = Long.bitCount (dataMap & (mask - 1));
+                return new ALongLongHashMap (dataMap | mask, nodeMap ^ mask, insertAt (keys, idx, subNew.keys[0]), insertAt (values, idx, subNew.values[0]), removeAt (nodes, nodeIdx), size - 1);
+            }
+
+            final ALongLongHashMap[] nodesNew = nodes.clone ();
+            nodesNew[nodeIdx] = subNew;
+            return new ALongLongHashMap (dataMap, nodeMap, keys, values, nodesNew, size - 1);
+        }
+
+        return this;
+    }
+
+    /**
+     * creates a node containing two entries with different keys
+     */
+    private static ALongLongHashMap mergeEntries (long key0, long value0, long hash0, long key1, long value1, long hash1, int level) {
+        final int index0 = (int) ((hash0 >>> level) & 0x3f);
+        final int index1 = (int) ((hash1 >>> level) & 0x3f);
+
+        if (index0 == index1) {
+            final ALongLongHashMap child = mergeEntries (key0, value0, hash0, key1, value1, hash1, level + LEVEL_INCREMENT);
+            return new ALongLongHashMap (0, 1L << index0, new long[0], new long[0], new ALongLongHashMap[] {child}, 2);
+        }
+
+        final long dataMap = (1L << index0) | (1L << index1);
+        if (index0 < index1) {
+            return new ALongLongHashMap (dataMap, 0, new long[] {key0, key1}, new long[] {value0, value1}, EMPTY.nodes, 2);
+        }
+        return new ALongLongHashMap (dataMap, 0, new long[] {key1, key0}, new long[] {value1, value0}, EMPTY.nodes, 2);
+    }
+
+    private static long[] insertAt (long[] arr, int idx, long value) {
+        final long[] result = new long[arr.length + 1];
+        System.arraycopy (arr, 0, result, 0, idx);
+        result[idx] = value;
+        System.arraycopy (arr, idx, result, idx + 1, arr.length - idx);
+        return result;
+    }
+    private static long[] removeAt (long[] arr, int idx) {
+        final long[] result = new long[arr.length - 1];
+        System.arraycopy (arr, 0, result, 0, idx);
+        System.arraycopy (arr, idx + 1, result, idx, arr.length - idx - 1);
+        return result;
+    }
+    private static ALongLongHashMap[] insertAt (ALongLongHashMap[] arr, int idx, ALongLongHashMap value) {
+        final ALongLongHashMap[] result = new ALongLongHashMap[arr.length + 1];
+        System.arraycopy (arr, 0, result, 0, idx);
+        result[idx] = value;
+        System.arraycopy (arr, idx, result, idx + 1, arr.length - idx);
+        return result;
+    }
+    private static ALongLongHashMap[] removeAt (ALongLongHashMap[] arr, int idx) {
+        final ALongLongHashMap[] result = new ALongLongHashMap[arr.length - 1];
+        System.arraycopy (arr, 0, result, 0, idx);
+        System.arraycopy (arr, idx + 1, result, idx, arr.length - idx - 1);
+        return result;
+    }
+
+    /**
+     * This is the same hash function as in {@link ALongHashMap}. It is a bijection, i.e. different keys are guaranteed
+     *  to have different hashes.
+     */
+    private static long computeHash (long key) {
+        long h = key;
+        h = h + ~(h << 18);
+        h = h ^ (h >>> 28);
+        h = h + (h << 8);
+        return h ^ (h >>> 20);
+    }
+
+    private Object readResolve () {
+        return size == 0 ? EMPTY : this;
+    }
+
+    static class LongLongIterator implements Iterator<AMapEntry<Long, Long>> {
+        // the trie has at most 11 levels, so fixed size arrays are sufficient for the path from the root
+        private final ALongLongHashMap[] nodeStack = new ALongLongHashMap[12];
+        private final int[] dataIdxStack = new int[12];
+        private final int[] nodeIdxStack = new int[12];
+        private int depth;
+
+        LongLongIterator (ALongLongHashMap root) {
+            nodeStack[0] = root;
+            depth = root.size == 0 ? -1 : 0;
+            advanceToData ();
+        }
+
+        /**
+         * moves to the next node that has an unvisited entry stored in place, or sets depth to -1 if there is none
+         */
+        private void advanceToData () {
+            while (depth >= 0) {
+                final ALongLongHashMap node = nodeStack[depth];
+                if (dataIdxStack[depth] < node.keys.length) {
+                    return;
+                }
+                if (nodeIdxStack[depth] < node.nodes.length) {
+                    final ALongLongHashMap child = node.nodes[nodeIdxStack[depth]++];
+                    depth += 1;
+                    nodeStack[depth] = child;
+                    dataIdxStack[depth] = 0;
+                    nodeIdxStack[depth] = 0;
+                }
+                else {
+                    nodeStack[depth] = null;
+                    depth -= 1;
+                }
+            }
+        }
+
+        @Override public boolean hasNext () {
+            return depth >= 0;
+        }
+
+        @Override public AMapEntry<Long, Long> next () {
+            if (depth < 0) {
+                throw new NoSuchElementException ();
+            }
+
+            final ALongLongHashMap node = nodeStack[depth];
+            final int idx = dataIdxStack[depth]++;
+            final AMapEntry<Long, Long> result = new LongLongEntry (node.keys[idx], node.values[idx]);
+            advanceToData ();
+            return result;
+        }
+
+        @Override public void remove () {
+            throw new UnsupportedOperationException ();
+        }
+    }
+
+    static class LongLongEntry implements AMapEntry<Long, Long> {
+        private final long key;
+        private final long value;
+
+        LongLongEntry (long key, long value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override public Long getKey () {
+            return key;
+        }
+        @Override public Long getValue () {
+            return value;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.ajjpj.afoundation.collection.immutable;
+
+import com.ajjpj.afoundation.collection.AEquality;
+
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+
+/**
+ * This is a {@link ALongRedBlackTreeMap} specialization for primitive 'long' values. Values are stored unboxed in the
+ *  tree nodes, and {@link #get(long, long)} returns a primitive value (or a default value provided by the caller)
+ *  without allocating anything.
+ *
+ * @author arno
+ */
+public class ALongLongRedBlackTreeMap extends AbstractAMap<Long,Long> {
+    final Tree root;
+
+    private static final Comparator<Long> KEY_COMPARATOR = new Comparator<Long> () {
+        @Override public int compare (Long o1, Long o2) {
+            return Long.compare (o1, o2);
+        }
+    };
+
+    private static final ALongLongRedBlackTreeMap EMPTY = new ALongLongRedBlackTreeMap (null);
+
+    public static ALongLongRedBlackTreeMap empty () {
+        return EMPTY;
+    }
+
+    private ALongLongRedBlackTreeMap (Tree root) {
+        this.root = root;
+    }
+
+    @Override public int size () {
+        return root == null ? 0 : root.count;
+    }
+
+    @Override public boolean containsKey (Long key) {
+        return containsKey (key.longValue ());
+    }
+    public boolean containsKey (long key) {
+        return LongTree.lookup (root, key) != null;
+    }
+
+    @Override public AOption<Long> get (Long key) {
+        return get (key.longValue ());
+    }
+    public AOption<Long> get (long key) {
+        final Tree raw = LongTree.lookup (root, key);
+        if (raw == null) {
+            return AOption.none ();
+        }
+        return AOption.some (raw.value);
+    }
+
+    /**
+     * Returns the value stored for a given key, or {@code defaultValue} if there is no entry for the key. This method
+     *  does not allocate any objects.
+     */
+    public long get (long key, long defaultValue) {
+        final Tree raw = LongTree.lookup (root, key);
+        return raw == null ? defaultValue : raw.value;
+    }
+
+    /**
+     * The primitive method {@link #get(long, long)} should be preferred where possible since this method boxes
+     *  the value it returns.
+     */
+    @Override public Long getOrDefault (Long key, Long defaultValue) {
+        final Tree raw = LongTree.lookup (root, key);
+        return raw == null ? defaultValue : Long.valueOf (raw.value);
+    }
+    @Override public Long getOrNull (Long key) {
+        return getOrDefault (key, null);
+    }
+
+    @Override public Long getRequired (Long key) {
+        return getRequired (key.longValue ());
+    }
+    public long getRequired (long key) {
+        final Tree raw = LongTree.lookup (root, key);
+        if (raw == null) {
+            throw new NoSuchElementException ();
+        }
+        return raw.value;
+    }
+
+    /**
+     * If {@code other} is an ALongLongRedBlackTreeMap, this traverses both trees simultaneously and skips all subtrees
+     *  that are shared by both maps.
+     */
+    @Override public Iterable<AMapChange<Long, Long>> diff (AMap<Long, Long> other) {
+        if (! (other instanceof ALongLongRedBlackTreeMap)) {
+            return super.diff (other);
+        }
+
+        final Tree otherRoot = ((ALongLongRedBlackTreeMap) other).root;
+        return new Iterable<AMapChange<Long, Long>> () {
+            @Override public Iterator<AMapChange<Long, Long>> iterator () {
+                return new SortedMapDiffIterator<Long, Long> (KEY_COMPARATOR, root, otherRoot) {
+                    @Override int weight (Object node) {
+                        return ((Tree) node).count;
+                    }
+
+                    @Override void expand (Object node, ArrayDeque<Object> items, ArrayDeque<Boolean> isEntry) {
+                        final Tree tree = (Tree) node;
+                        if (tree.right != null) pushNode (tree.right, items, isEntry);
+                        pushEntry (tree, items, isEntry);
+                        if (tree.left != null) pushNode (tree.left, items, isEntry);
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Returns a set with this map's keys. The keys are copied, so this takes time proportional to the map's size.
+     */
+    @Override public ASet<Long> keys () {
+        return ALongRedBlackTreeSet.create (new Iterable<Long> () {
+            @Override public Iterator<Long> iterator () {
+                return new LongTree.TreeIterator<Tree, Long> (root) {
+                    @Override Long toResult (Tree tree) {
+                        return tree.key;
+                    }
+                };
+            }
+        });
+    }
+
+    @Override public AEquality keyEquality () {
+        return AEquality.EQUALS;
+    }
+
+    @Override public AMap<Long, Long> clear () {
+        return empty ();
+    }
+
+    @Override public AMap<Long, Long> updated (Long key, Long value) {
+        return updated (key.longValue (), value.longValue ());
+    }
+    public ALongLongRedBlackTreeMap updated (long key, long value) {
+        return new ALongLongRedBlackTreeMap (LongTree.blacken (LongTree.upd (root, new RedTree (key, value, null, null))));
+    }
+
+    @Override public AMap<Long, Long> removed (Long key) {
+        return removed (key.longValue ());
+    }
+    public ALongLongRedBlackTreeMap removed (long key) {
+        return new ALongLongRedBlackTreeMap (LongTree.blacken (LongTree.del (root, key)));
+    }
+
+    @Override public Iterator<AMapEntry<Long, Long>> iterator () {
+        return new LongTree.TreeIterator<Tree, AMapEntry<Long, Long>> (root) {
+            @Override AMapEntry<Long, Long> toResult (Tree tree) {
+                return tree;
+            }
+        };
+    }
+
+    /**
+     * The tree node stores its value as a primitive.
+     */
+    static abstract class Tree extends LongTree<Tree> implements AMapEntry<Long, Long> {
+        final long value;
+
+        Tree (long key, long value, Tree left, Tree right) {
+            super (key, left, right);
+            this.value = value;
+        }
+
+        @Override public Long getKey () {
+            return key;
+        }
+        @Override public Long getValue () {
+            return value;
+        }
+
+        @Override Tree red (Tree left, Tree right) {
+            return new RedTree (key, value, left, right);
+        }
+        @Override Tree black (Tree left, Tree right) {
+            return new BlackTree (key, value, left, right);
+        }
+    }
+
+    static class BlackTree extends Tree {
+        BlackTree (long key, long value, Tree left, Tree right) {
+            super (key, value, left, right);
+        }
+
+        @Override boolean isRed () {
+            return false;
+        }
+    }
+
+    static class RedTree extends Tree {
+        RedTree (long key, long value, Tree left, Tree right) {
+            super (key, value, left, right);
+        }
+
+        @Override boolean isRed () {
+            return true;
+        }
+    }
+}
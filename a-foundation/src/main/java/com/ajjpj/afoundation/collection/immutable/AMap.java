@@ -75,6 +75,22 @@ public interface AMap<K,V> extends Iterable<AMapEntry<K,V>>, Serializable {
      */
     V getRequired(K key);
 
+    /**
+     * Returns the value stored for a given key, or {@code defaultValue} if the map does not contain the key. Unlike
+     *  {@link #get(Object)}, this method does not wrap the result in an {@link AOption}, so implementations can perform
+     *  the lookup without allocating any objects.<p>
+     *
+     * If the map can contain {@code null} values, the result does not distinguish between a key that is mapped to
+     *  {@code null} and a missing key with a default value of {@code null}. Use {@link #containsKey(Object)} or
+     *  {@link #get(Object)} if that distinction matters.
+     */
+    V getOrDefault(K key, V defaultValue);
+
+    /**
+     * This is the equivalent of calling {@code getOrDefault(key, null)}.
+     */
+    V getOrNull(K key);
+
     /**
      * This method 'adds' a new value for a given key, returning a modified copy of the map while leaving the original
      *  unmodified.
@@ -93,6 +109,24 @@ public interface AMap<K,V> extends Iterable<AMapEntry<K,V>>, Serializable {
      */
     @Override Iterator<AMapEntry<K,V>> iterator();
 
+    /**
+     * Returns an {@link ASpliterator} with all key/value pairs stored in the map, e.g. for processing them in parallel.
+     */
+    ASpliterator<AMapEntry<K,V>> aSpliterator();
+
+    /**
+     * Returns the differences between this map and {@code other}, i.e. the changes that turn this map into
+     *  {@code other}: keys that are only contained in {@code other} are reported as 'added', keys that are only
+     *  contained in this map are reported as 'removed', and keys that are contained in both maps with different
+     *  values are reported as 'changed'. Values are compared using <code>equals()</code>.<p>
+     *
+     * The returned collection is calculated lazily while it is iterated. Tree based implementations compare two
+     *  versions of a map efficiently by skipping all parts of their internal data structure that both versions
+     *  share, so the cost of a diff is roughly proportional to the number of differences rather than to the size
+     *  of the maps.
+     */
+    Iterable<AMapChange<K,V>> diff(AMap<K,V> other);
+
     /**
      * Returns an <code>java.util.Set</code> with the map's keys. The returned object throws
      *  <code>UnsupportedOperationException</code> for all modifying operations.<p>
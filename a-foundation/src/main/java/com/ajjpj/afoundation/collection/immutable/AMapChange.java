@@ -0,0 +1,71 @@
+package com.ajjpj.afoundation.collection.immutable;
+
+import java.util.Objects;
+
+
+/**
+ * This class represents a single difference between two maps as returned by {@link AMap#diff(AMap)}: a key that was
+ *  added, a key that was removed, or a key whose value was changed.<p>
+ *
+ * {@link #getOldValue()} returns {@code null} for added keys, and {@link #getNewValue()} returns {@code null} for
+ *  removed keys.
+ *
+ * @author arno
+ */
+public class AMapChange<K,V> {
+    public enum Kind {ADDED, REMOVED, CHANGED}
+
+    private final Kind kind;
+    private final K key;
+    private final V oldValue;
+    private final V newValue;
+
+    public static <K,V> AMapChange<K,V> added (K key, V newValue) {
+        return new AMapChange<> (Kind.ADDED, key, null, newValue);
+    }
+    public static <K,V> AMapChange<K,V> removed (K key, V oldValue) {
+        return new AMapChange<> (Kind.REMOVED, key, oldValue, null);
+    }
+    public static <K,V> AMapChange<K,V> changed (K key, V oldValue, V newValue) {
+        return new AMapChange<> (Kind.CHANGED, key, oldValue, newValue);
+    }
+
+    private AMapChange (Kind kind, K key, V oldValue, V newValue) {
+        this.kind = kind;
+        this.key = key;
+        this.oldValue = oldValue;
+        this.newValue = newValue;
+    }
+
+    public Kind getKind () {
+        return kind;
+    }
+    public K getKey () {
+        return key;
+    }
+    public V getOldValue () {
+        return oldValue;
+    }
+    public V getNewValue () {
+        return newValue;
+    }
+
+    @Override public boolean equals (Object o) {
+        if (this == o) return true;
+        if (o == null || getClass () != o.getClass ()) return false;
+
+        final AMapChange<?,?> that = (AMapChange<?,?>) o;
+        return kind == that.kind &&
+                Objects.equals (key, that.key) &&
+                Objects.equals (oldValue, that.oldValue) &&
+                Objects.equals (newValue, that.newValue);
+    }
+
+    @Override public int hashCode () {
+        return Objects.hash (kind, key, oldValue, newValue);
+    }
+
+    @Override public String toString () {
+        return "AMapChange{" + kind + " " + key + ": " + oldValue + " -> " + newValue + "}";
+    }
+}
@@ -113,6 +113,32 @@ public abstract class AOption<T> implements ACollection<T>, Serializable {
     public abstract boolean equals(Object o);
     public abstract int hashCode();
 
+    @Override public abstract <X, E extends Exception> AOption<X> map (AFunction1<? super T, ? extends X, E> f) throws E;
+    @Override public abstract <E extends Exception> AOption<T> filter (APredicate<? super T, E> pred) throws E;
+
+    /**
+     * An AOption has at most one element, so there is nothing to parallelize.
+     */
+    @Override public <R, E extends Exception> R parFold (AParallelism parallelism, R startValue, AFunction2<R, ? super T, R, E> f, AFunction2<R, R, R, E> combiner) throws E {
+        return foldLeft (startValue, f);
+    }
+
+    @Override public <X, E extends Exception> AOption<X> parMap (AParallelism parallelism, AFunction1<? super T, ? extends X, E> f) throws E {
+        return map (f);
+    }
+
+    @Override public <E extends Exception> AOption<T> parFilter (AParallelism parallelism, APredicate<? super T, E> pred) throws E {
+        return filter (pred);
+    }
+
+    @Override public AView<T> view () {
+        return AView.of (this);
+    }
+
+    @Override public ASpliterator<T> aSpliterator () {
+        return AbstractASpliterator.fromIterable (this, size ());
+    }
+
     @Override public Collection<T> asJavaUtilCollection () {
         return new AbstractCollection<T> () {
             @SuppressWarnings ("NullableProblems")
@@ -0,0 +1,227 @@
+package com.ajjpj.afoundation.collection.immutable;
+
+import com.ajjpj.afoundation.concurrent.AFuture;
+import com.ajjpj.afoundation.concurrent.ATaskScheduler;
+import com.ajjpj.afoundation.function.AFunction1;
+import com.ajjpj.afoundation.function.AFunction2;
+import com.ajjpj.afoundation.util.AUnchecker;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+
+/**
+ * An AParallelism defines how parallel bulk operations like {@link ACollection#parFold(AParallelism, Object, AFunction2, AFunction2)}
+ *  distribute their work. It splits a collection's {@link ASpliterator} into parts, processes the parts concurrently,
+ *  and combines the parts' results in iteration order.<p>
+ *
+ * There are two flavors. {@link #forkJoin(ForkJoinPool)} splits recursively inside a ForkJoinPool, so that idle
+ *  threads steal the remaining halves from busy threads. {@link #taskScheduler(ATaskScheduler, long, TimeUnit)} splits
+ *  into a fixed number of parts up front and submits them to an {@link ATaskScheduler} with a timeout.<p>
+ *
+ * Parts with no more than {@code grainSize} elements are not split further. Collections that are no bigger than that
+ *  are processed in the calling thread without any scheduling overhead.
+ *
+ * @author arno
+ */
+public abstract class AParallelism {
+    public static final int DEFAULT_GRAIN_SIZE = 1000;
+
+    final int grainSize;
+
+    AParallelism (int grainSize) {
+        if (grainSize < 1) {
+            throw new IllegalArgumentException ("grain size must be positive");
+        }
+        this.grainSize = grainSize;
+    }
+
+    public static AParallelism forkJoin (ForkJoinPool pool) {
+        return forkJoin (pool, DEFAULT_GRAIN_SIZE);
+    }
+
+    public static AParallelism forkJoin (ForkJoinPool pool, int grainSize) {
+        return new ForkJoinParallelism (pool, grainSize);
+    }
+
+    /**
+     * Splits into four parts per available processor, which balances uneven work per element reasonably well.
+     */
+    public static AParallelism taskScheduler (ATaskScheduler scheduler, long timeout, TimeUnit timeoutUnit) {
+        return taskScheduler (scheduler, 4 * Runtime.getRuntime ().availableProcessors (), DEFAULT_GRAIN_SIZE, timeout, timeoutUnit);
+    }
+
+    /**
+     * @param timeout applies to every part separately, and it is measured from the moment the parts are submitted
+     */
+    public static AParallelism taskScheduler (ATaskScheduler scheduler, int numParts, int grainSize, long timeout, TimeUnit timeoutUnit) {
+        return new TaskSchedulerParallelism (scheduler, numParts, grainSize, timeout, timeoutUnit);
+    }
+
+    /**
+     * Processes all parts of a spliterator concurrently by calling {@code leafFunction} on each of them, and combines
+     *  the results in the parts' order. If processing a part fails, this method rethrows that part's exception.
+     *
+     * @param combiner must be associative, but it need not be commutative
+     */
+    public abstract <T, R, E extends Exception> R process (ASpliterator<T> spliterator, AFunction1<ASpliterator<T>, R, E> leafFunction, AFunction2<R, R, R, E> combiner) throws E;
+
+
+    static class ForkJoinParallelism extends AParallelism {
+        private final ForkJoinPool pool;
+
+        ForkJoinParallelism (ForkJoinPool pool, int grainSize) {
+            super (grainSize);
+            this.pool = pool;
+        }
+
+        @Override public <T, R, E extends Exception> R process (ASpliterator<T> spliterator, AFunction1<ASpliterator<T>, R, E> leafFunction, AFunction2<R, R, R, E> combiner) throws E {
+            if (spliterator.size () <= grainSize) {
+                return leafFunction.apply (spliterator);
+            }
+
+            final AtomicReference<Throwable> failure = new AtomicReference<> ();
+            final R result = pool.invoke (new ProcessTask<> (spliterator, leafFunction, combiner, grainSize, failure));
+            if (failure.get () != null) {
+                AUnchecker.throwUnchecked (failure.get ());
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Exceptions are not passed through the ForkJoinPool, which may replace them with copies when they cross threads.
+     *  The first exception is stored instead, and tasks that start afterwards do not process their parts.
+     */
+    static class ProcessTask<T, R, E extends Exception> extends RecursiveTask<R> {
+        private final ASpliterator<T> spliterator;
+        private final AFunction1<ASpliterator<T>, R, E> leafFunction;
+        private final AFunction2<R, R, R, E> combiner;
+        private final int grainSize;
+        private final AtomicReference<Throwable> failure;
+
+        ProcessTask (ASpliterator<T> spliterator, AFunction1<ASpliterator<T>, R, E> leafFunction, AFunction2<R, R, R, E> combiner, int grainSize, AtomicReference<Throwable> failure) {
+            this.spliterator = spliterator;
+            this.leafFunction = leafFunction;
+            this.combiner = combiner;
+            this.grainSize = grainSize;
+            this.failure = failure;
+        }
+
+        @Override protected R compute () {
+            if (failure.get () != null) {
+                return null;
+            }
+
+            try {
+                if (spliterator.size () > grainSize) {
+                    final ASpliterator<T> prefix = spliterator.trySplit ();
+                    if (prefix != null) {
+                        final ProcessTask<T, R, E> prefixTask = new ProcessTask<> (prefix, leafFunction, combiner, grainSize, failure);
+                        prefixTask.fork ();
+                        final R suffixResult = compute ();
+                        final R prefixResult = prefixTask.join ();
+                        if (failure.get () != null) {
+                            return null;
+                        }
+                        return combiner.apply (prefixResult, suffixResult);
+                    }
+                }
+                return leafFunction.apply (spliterator);
+            }
+            catch (Throwable th) {
+                failure.compareAndSet (null, th);
+                return null;
+            }
+        }
+    }
+
+    static class TaskSchedulerParallelism extends AParallelism {
+        private final ATaskScheduler scheduler;
+        private final int numParts;
+        private final long timeout;
+        private final TimeUnit timeoutUnit;
+
+        TaskSchedulerParallelism (ATaskScheduler scheduler, int numParts, int grainSize, long timeout, TimeUnit timeoutUnit) {
+            super (grainSize);
+            this.scheduler = scheduler;
+            this.numParts = numParts;
+            this.timeout = timeout;
+            this.timeoutUnit = timeoutUnit;
+        }
+
+        @Override public <T, R, E extends Exception> R process (ASpliterator<T> spliterator, AFunction1<ASpliterator<T>, R, E> leafFunction, AFunction2<R, R, R, E> combiner) throws E {
+            final List<ASpliterator<T>> parts = split (spliterator);
+            if (parts.size () == 1) {
+                return leafFunction.apply (spliterator);
+            }
+
+            final List<AFuture<R>> futures = scheduler.submitAll (parts, leafFunction, timeout, timeoutUnit);
+
+            boolean succeeded = false;
+            try {
+                R result = null;
+                for (int i=0; i<futures.size (); i++) {
+                    final R partResult = await (futures.get (i));
+                    result = (i == 0) ? partResult : combiner.apply (result, partResult);
+                }
+                succeeded = true;
+                return result;
+            }
+            finally {
+                if (! succeeded) {
+                    // the result is not needed anymore, so there is no point in processing the remaining parts
+                    for (AFuture<R> f: futures) {
+                        f.cancel (true);
+                    }
+                }
+            }
+        }
+
+        private <R> R await (AFuture<R> future) {
+            try {
+                return future.get ();
+            }
+            catch (InterruptedException exc) {
+                Thread.currentThread ().interrupt ();
+                AUnchecker.throwUnchecked (exc);
+            }
+            catch (ExecutionException exc) {
+                AUnchecker.throwUnchecked (exc.getCause ());
+            }
+            return null; // for the compiler
+        }
+
+        /**
+         * splits every part in half per round, keeping the parts in iteration order
+         */
+        private <T> List<ASpliterator<T>> split (ASpliterator<T> spliterator) {
+            List<ASpliterator<T>> result = new ArrayList<> ();
+            result.add (spliterator);
+
+            boolean changed = true;
+            while (changed && result.size () < numParts) {
+                changed = false;
+                final List<ASpliterator<T>> next = new ArrayList<> ();
+                for (int i=0; i<result.size (); i++) {
+                    final ASpliterator<T> part = result.get (i);
+                    if (part.size () > grainSize && next.size () + result.size () - i < numParts) {
+                        final ASpliterator<T> prefix = part.trySplit ();
+                        if (prefix != null) {
+                            next.add (prefix);
+                            changed = true;
+                        }
+                    }
+                    next.add (part);
+                }
+                result = next;
+            }
+            return result;
+        }
+    }
+}
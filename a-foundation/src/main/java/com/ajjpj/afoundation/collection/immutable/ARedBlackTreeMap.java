@@ -1,11 +1,16 @@
 package com.ajjpj.afoundation.collection.immutable;
 
 import com.ajjpj.afoundation.collection.AEquality;
+import com.ajjpj.afoundation.collection.tuples.ATuple2;
 
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 
 /**
@@ -47,6 +52,14 @@ public class ARedBlackTreeMap<K,V> extends AbstractAMap<K,V> implements ASortedM
         return AOption.some (raw.value);
     }
 
+    @Override public V getOrDefault (K key, V defaultValue) {
+        final Tree<K,V> raw = lookup (root, key, comparator);
+        if (raw == null) {
+            return defaultValue;
+        }
+        return raw.value;
+    }
+
     @Override public ASet<K> keys () {
         return ARedBlackTreeSet.create (this);
     }
@@ -59,6 +72,149 @@ public class ARedBlackTreeMap<K,V> extends AbstractAMap<K,V> implements ASortedM
         return new ARedBlackTreeMap<> (blacken (del (root, key, comparator)), comparator);
     }
 
+    /**
+     * Adds or replaces a batch of entries whose keys are sorted in strictly ascending order with regard to this map's
+     *  comparator. This has the same result as calling {@link #updated(Object, Object)} for every entry, but the batch
+     *  is split along the tree's nodes and each subtree is rebuilt only once, so every affected node is copied once
+     *  rather than once per entry. Subtrees that are not affected by the batch are shared with this map.
+     *
+     * @throws IllegalArgumentException if the entries are not sorted
+     */
+    @SuppressWarnings ("unchecked")
+    public ARedBlackTreeMap<K,V> updatedAll (Iterable<? extends AMapEntry<K,V>> sortedEntries) {
+        final ArrayList<K> keys = new ArrayList<> ();
+        final ArrayList<V> values = new ArrayList<> ();
+        for (AMapEntry<K,V> entry: sortedEntries) {
+            checkOrder (keys, entry.getKey ());
+            keys.add (entry.getKey ());
+            values.add (entry.getValue ());
+        }
+        if (keys.isEmpty ()) {
+            return this;
+        }
+        return new ARedBlackTreeMap<> (blacken (updAll (root, (K[]) keys.toArray (), (V[]) values.toArray (), 0, keys.size (), comparator)), comparator);
+    }
+
+    /**
+     * Removes a batch of keys that are sorted in strictly ascending order with regard to this map's comparator. This
+     *  has the same result as calling {@link #removed(Object)} for every key, copying every affected node only once.
+     *
+     * @throws IllegalArgumentException if the keys are not sorted
+     */
+    @SuppressWarnings ("unchecked")
+    public ARedBlackTreeMap<K,V> removedAll (Iterable<? extends K> sortedKeys) {
+        final ArrayList<K> keys = new ArrayList<> ();
+        for (K key: sortedKeys) {
+            checkOrder (keys, key);
+            keys.add (key);
+        }
+        if (keys.isEmpty ()) {
+            return this;
+        }
+        final Tree<K,V> newRoot = blacken (delAll (root, (K[]) keys.toArray (), 0, keys.size (), comparator));
+        return newRoot == root ? this : new ARedBlackTreeMap<> (newRoot, comparator);
+    }
+
+    private void checkOrder (ArrayList<K> keys, K key) {
+        if (! keys.isEmpty () && comparator.compare (keys.get (keys.size () - 1), key) >= 0) {
+            throw new IllegalArgumentException ("keys are not sorted in strictly ascending order: " + keys.get (keys.size () - 1) + " is followed by " + key);
+        }
+    }
+
+    /**
+     * Splits this map into the entries with keys smaller than a given key and the entries with keys greater than or
+     *  equal to it. This takes O(log n) time, and both resulting maps share most of their nodes with this map.
+     */
+    public ATuple2<ARedBlackTreeMap<K,V>, ARedBlackTreeMap<K,V>> split (K key) {
+        final SplitResult<K,V> split = split (root, key, comparator);
+        final Tree<K,V> right = split.match == null ? split.right : join (null, split.match.key, split.match.value, split.right);
+        return new ATuple2<> (new ARedBlackTreeMap<> (blacken (split.left), comparator), new ARedBlackTreeMap<> (blacken (right), comparator));
+    }
+
+    /**
+     * Combines two maps in O(log n) time, requiring that all keys in {@code left} are smaller than all keys in
+     *  {@code right}. This is the inverse of {@link #split(Object)}.
+     *
+     * @throws IllegalArgumentException if the maps' keys overlap
+     */
+    public static <K,V> ARedBlackTreeMap<K,V> concat (ARedBlackTreeMap<K,V> left, ARedBlackTreeMap<K,V> right) {
+        if (left.isEmpty ()) return right;
+        if (right.isEmpty ()) return left;
+
+        left.checkCompatible (right);
+        if (left.comparator.compare (left.last ().get ().getKey (), right.first ().get ().getKey ()) >= 0) {
+            throw new IllegalArgumentException ("all keys of the left map must be smaller than all keys of the right map");
+        }
+        return new ARedBlackTreeMap<> (blacken (join (left.root, right.root)), left.comparator);
+    }
+
+    /**
+     * Returns a map with the entries of both this map and {@code other}. If a key is contained in both maps, the value
+     *  from {@code other} is used, as if all of its entries were added to this map with {@link #updated(Object, Object)}.<p>
+     *
+     * This and the other set operations split one tree along the nodes of the other and join the results, which takes
+     *  O(m log(n/m + 1)) time for maps of sizes m &lt;= n and shares unaffected subtrees with the original maps.
+     *
+     * @throws IllegalArgumentException if the maps have different comparators
+     */
+    public ARedBlackTreeMap<K,V> union (ARedBlackTreeMap<K,V> other) {
+        checkCompatible (other);
+        return new ARedBlackTreeMap<> (blacken (combine (UNION, root, other.root, comparator, false)), comparator);
+    }
+
+    /**
+     * This is a variant of {@link #union(ARedBlackTreeMap)} that processes independent subtrees in parallel in a given
+     *  ForkJoinPool once the trees are large enough.
+     */
+    public ARedBlackTreeMap<K,V> union (ARedBlackTreeMap<K,V> other, ForkJoinPool pool) {
+        checkCompatible (other);
+        return new ARedBlackTreeMap<> (blacken (pool.invoke (new CombineTask<> (UNION, root, other.root, comparator))), comparator);
+    }
+
+    /**
+     * Returns a map with the entries of this map whose keys are also contained in {@code other}.
+     *
+     * @throws IllegalArgumentException if the maps have different comparators
+     */
+    public ARedBlackTreeMap<K,V> intersection (ARedBlackTreeMap<K,V> other) {
+        checkCompatible (other);
+        return new ARedBlackTreeMap<> (blacken (combine (INTERSECTION, root, other.root, comparator, false)), comparator);
+    }
+
+    /**
+     * This is a variant of {@link #intersection(ARedBlackTreeMap)} that processes independent subtrees in parallel in
+     *  a given ForkJoinPool once the trees are large enough.
+     */
+    public ARedBlackTreeMap<K,V> intersection (ARedBlackTreeMap<K,V> other, ForkJoinPool pool) {
+        checkCompatible (other);
+        return new ARedBlackTreeMap<> (blacken (pool.invoke (new CombineTask<> (INTERSECTION, root, other.root, comparator))), comparator);
+    }
+
+    /**
+     * Returns a map with the entries of this map whose keys are not contained in {@code other}.
+     *
+     * @throws IllegalArgumentException if the maps have different comparators
+     */
+    public ARedBlackTreeMap<K,V> difference (ARedBlackTreeMap<K,V> other) {
+        checkCompatible (other);
+        return new ARedBlackTreeMap<> (blacken (combine (DIFFERENCE, root, other.root, comparator, false)), comparator);
+    }
+
+    /**
+     * This is a variant of {@link #difference(ARedBlackTreeMap)} that processes independent subtrees in parallel in a
+     *  given ForkJoinPool once the trees are large enough.
+     */
+    public ARedBlackTreeMap<K,V> difference (ARedBlackTreeMap<K,V> other, ForkJoinPool pool) {
+        checkCompatible (other);
+        return new ARedBlackTreeMap<> (blacken (pool.invoke (new CombineTask<> (DIFFERENCE, root, other.root, comparator))), comparator);
+    }
+
+    private void checkCompatible (ARedBlackTreeMap<K,V> other) {
+        if (! comparator.equals (other.comparator)) {
+            throw new IllegalArgumentException ("maps with different comparators can not be combined");
+        }
+    }
+
     @Override public Iterator<AMapEntry<K, V>> iterator () {
         return new TreeIterator<AMapEntry<K, V>> () {
             @Override AMapEntry<K, V> nextResult (Tree<K, V> tree) {
@@ -67,8 +223,81 @@ public class ARedBlackTreeMap<K,V> extends AbstractAMap<K,V> implements ASortedM
         };
     }
 
+    /**
+     * The spliterator splits a subtree into its left subtree, its root entry and its right subtree.
+     */
+    @Override public ASpliterator<AMapEntry<K, V>> aSpliterator () {
+        return new RedBlackTreeSpliterator<> (root, size (), comparator);
+    }
+
+    static class RedBlackTreeSpliterator<K,V> extends AbstractASpliterator.TreeSpliterator<AMapEntry<K,V>> {
+        private final Comparator<K> comparator;
 
+        RedBlackTreeSpliterator (Tree<K,V> root, int size, Comparator<K> comparator) {
+            super (root, size);
+            this.comparator = comparator;
+        }
+
+        private RedBlackTreeSpliterator (List<Object> parts, int size, Comparator<K> comparator) {
+            super (parts, size);
+            this.comparator = comparator;
+        }
 
+        @Override int sizeOf (Object node) {
+            return ((Tree<?,?>) node).count;
+        }
+
+        @Override void expand (Object node, List<Object> target) {
+            final Tree<?,?> tree = (Tree<?,?>) node;
+            if (tree.left != null) {
+                target.add (tree.left);
+            }
+            target.add (single (tree));
+            if (tree.right != null) {
+                target.add (tree.right);
+            }
+        }
+
+        @SuppressWarnings ("unchecked")
+        @Override Iterator<AMapEntry<K, V>> iteratorOf (Object node) {
+            return new ARedBlackTreeMap<> ((Tree<K,V>) node, comparator).iterator ();
+        }
+
+        @Override AbstractASpliterator.TreeSpliterator<AMapEntry<K, V>> create (List<Object> parts, int size) {
+            return new RedBlackTreeSpliterator<> (parts, size, comparator);
+        }
+    }
+
+
+
+
+    /**
+     * If {@code other} is an ARedBlackTreeMap with the same comparator, this traverses both trees simultaneously and
+     *  skips all subtrees that are shared by both maps.
+     */
+    @Override public Iterable<AMapChange<K, V>> diff (AMap<K, V> other) {
+        if (! (other instanceof ARedBlackTreeMap) || ! ((ARedBlackTreeMap) other).comparator.equals (comparator)) {
+            return super.diff (other);
+        }
+
+        final Tree<K,V> otherRoot = ((ARedBlackTreeMap<K,V>) other).root;
+        return new Iterable<AMapChange<K, V>> () {
+            @Override public Iterator<AMapChange<K, V>> iterator () {
+                return new SortedMapDiffIterator<K, V> (comparator, root, otherRoot) {
+                    @Override int weight (Object node) {
+                        return ((Tree) node).count;
+                    }
+
+                    @Override void expand (Object node, ArrayDeque<Object> items, ArrayDeque<Boolean> isEntry) {
+                        final Tree<K,V> tree = (Tree<K, V>) node;
+                        if (tree.right != null) pushNode (tree.right, items, isEntry);
+                        pushEntry (tree, items, isEntry);
+                        if (tree.left != null) pushNode (tree.left, items, isEntry);
+                    }
+                };
+            }
+        };
+    }
 
     @Override public AOption<AMapEntry<K, V>> first () {
         if (root == null) return AOption.none ();
@@ -317,6 +546,39 @@ public class ARedBlackTreeMap<K,V> extends AbstractAMap<K,V> implements ASortedM
         };
     }
 
+    /**
+     * Every node stores the size of its subtree, so this descends along the key's search path, adding up the sizes
+     *  of the left subtrees along the way.
+     */
+    @Override public int rank (K key) {
+        return rank (root, key, false, comparator);
+    }
+
+    @Override public AMapEntry<K, V> select (int index) {
+        if (index < 0 || index >= size ()) {
+            throw new IndexOutOfBoundsException ("index " + index + " for a map of size " + size ());
+        }
+
+        Tree<K,V> cur = root;
+        while (true) {
+            final int leftCount = count (cur.left);
+            if (index < leftCount) {
+                cur = cur.left;
+            }
+            else if (index == leftCount) {
+                return cur;
+            }
+            else {
+                index -= leftCount + 1;
+                cur = cur.right;
+            }
+        }
+    }
+
+    @Override public int countInRange (K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+        return Math.max (0, rank (root, toKey, toInclusive, comparator) - rank (root, fromKey, ! fromInclusive, comparator));
+    }
+
 
 
 
@@ -477,6 +739,28 @@ public class ARedBlackTreeMap<K,V> extends AbstractAMap<K,V> implements ASortedM
     }
 
 
+    /**
+     * @return the number of keys in the tree that are smaller than (or, if {@code inclusive} is true, equal to) a given key
+     */
+    static <K,V> int rank (Tree<K,V> tree, K key, boolean inclusive, Comparator<K> comparator) {
+        int result = 0;
+        while (tree != null) {
+            final int cmp = comparator.compare (key, tree.key);
+            if (cmp < 0 || (cmp == 0 && ! inclusive)) {
+                tree = tree.left;
+            }
+            else {
+                result += count (tree.left) + 1;
+                tree = tree.right;
+            }
+        }
+        return result;
+    }
+
+    static int count (Tree tree) {
+        return tree == null ? 0 : tree.count;
+    }
+
     static boolean isRedTree (Tree tree) {
         return tree != null && tree.isRed ();
     }
@@ -640,6 +924,271 @@ public class ARedBlackTreeMap<K,V> extends AbstractAMap<K,V> implements ASortedM
         throw new IllegalStateException ("invariant violation: unmatched tree on append: " + tl + ", " + tr);
     }
 
+    /**
+     * applies the updates between {@code from} (inclusive) and {@code to} (exclusive) to a tree, splitting the batch at
+     *  the tree's key and joining the updated subtrees
+     */
+    static <K,V> Tree<K,V> updAll (Tree<K,V> tree, K[] keys, V[] values, int from, int to, Comparator<K> comparator) {
+        if (from == to) {
+            return tree;
+        }
+        if (tree == null) {
+            final int mid = (from + to) >>> 1;
+            return join (updAll (null, keys, values, from, mid, comparator), keys[mid], values[mid], updAll (null, keys, values, mid + 1, to, comparator));
+        }
+
+        final int split = firstNotSmaller (keys, tree.key, from, to, comparator);
+        final boolean isMatch = split < to && comparator.compare (keys[split], tree.key) == 0;
+
+        final Tree<K,V> newLeft = updAll (tree.left, keys, values, from, split, comparator);
+        final Tree<K,V> newRight = updAll (tree.right, keys, values, isMatch ? split + 1 : split, to, comparator);
+        return isMatch ?
+                join (newLeft, keys[split], values[split], newRight) :
+                join (newLeft, tree.key, tree.value, newRight);
+    }
+
+    /**
+     * removes the keys between {@code from} (inclusive) and {@code to} (exclusive) from a tree, splitting the batch at
+     *  the tree's key and joining the remaining subtrees
+     */
+    static <K,V> Tree<K,V> delAll (Tree<K,V> tree, K[] keys, int from, int to, Comparator<K> comparator) {
+        if (from == to || tree == null) {
+            return tree;
+        }
+
+        final int split = firstNotSmaller (keys, tree.key, from, to, comparator);
+        final boolean isMatch = split < to && comparator.compare (keys[split], tree.key) == 0;
+
+        final Tree<K,V> newLeft = delAll (tree.left, keys, from, split, comparator);
+        final Tree<K,V> newRight = delAll (tree.right, keys, isMatch ? split + 1 : split, to, comparator);
+        if (isMatch) {
+            return join (newLeft, newRight);
+        }
+        if (newLeft == tree.left && newRight == tree.right) {
+            // none of the keys was present in this subtree
+            return tree;
+        }
+        return join (newLeft, tree.key, tree.value, newRight);
+    }
+
+    private static <K> int firstNotSmaller (K[] keys, K key, int from, int to, Comparator<K> comparator) {
+        int lo = from;
+        int hi = to;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (comparator.compare (keys[mid], key) < 0) {
+                lo = mid + 1;
+            }
+            else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * This method combines two balanced trees and a key between them into a single balanced tree. Unlike
+     *  {@link #append(Tree, Tree)}, it does not require the trees to have the same black height: it descends along
+     *  the spine of the higher tree to a subtree with the other tree's black height and rebalances on the way back
+     *  up, so it takes time proportional to the difference of their black heights.<p>
+     *
+     * All keys in 'tl' must be smaller than 'key', and all keys in 'tr' must be greater than 'key'. The resulting tree
+     *  may have a red root.
+     */
+    static <K,V> Tree<K,V> join (Tree<K,V> tl, K key, V value, Tree<K,V> tr) {
+        final int hl = blackHeight (tl);
+        final int hr = blackHeight (tr);
+
+        if (hl > hr) {
+            final Tree<K,V> result = joinRight (tl, key, value, tr, hl, hr);
+            return isRedTree (result) && isRedTree (result.right) ? result.blacken () : result;
+        }
+        if (hl < hr) {
+            final Tree<K,V> result = joinLeft (tl, key, value, tr, hl, hr);
+            return isRedTree (result) && isRedTree (result.left) ? result.blacken () : result;
+        }
+        if (isRedTree (tl) || isRedTree (tr)) {
+            return new BlackTree<> (key, value, tl, tr);
+        }
+        return new RedTree<> (key, value, tl, tr);
+    }
+
+    /**
+     * combines two balanced trees without a key between them
+     */
+    static <K,V> Tree<K,V> join (Tree<K,V> tl, Tree<K,V> tr) {
+        if (tl == null) return tr;
+        if (tr == null) return tl;
+
+        Tree<K,V> last = tl;
+        while (last.right != null) last = last.right;
+        return join (withoutLast (tl), last.key, last.value, tr);
+    }
+
+    private static <K,V> Tree<K,V> withoutLast (Tree<K,V> tree) {
+        if (tree.right == null) {
+            return tree.left;
+        }
+        return join (tree.left, tree.key, tree.value, withoutLast (tree.right));
+    }
+
+    /**
+     * descends the right spine of 'tl', which has a greater black height than 'tr'
+     */
+    private static <K,V> Tree<K,V> joinRight (Tree<K,V> tl, K key, V value, Tree<K,V> tr, int hl, int hr) {
+        if (hl == hr && ! isRedTree (tl)) {
+            return new RedTree<> (key, value, tl, tr);
+        }
+
+        final Tree<K,V> newRight = joinRight (tl.right, key, value, tr, isBlackTree (tl) ? hl - 1 : hl, hr);
+        if (isBlackTree (tl) && isRedTree (newRight) && isRedTree (newRight.right)) {
+            // two consecutive red nodes --> rotate left
+            return new RedTree<> (newRight.key, newRight.value, new BlackTree<> (tl.key, tl.value, tl.left, newRight.left), newRight.right.blacken ());
+        }
+        return tl.create (tl.left, newRight);
+    }
+
+    /**
+     * descends the left spine of 'tr', which has a greater black height than 'tl'
+     */
+    private static <K,V> Tree<K,V> joinLeft (Tree<K,V> tl, K key, V value, Tree<K,V> tr, int hl, int hr) {
+        if (hl == hr && ! isRedTree (tr)) {
+            return new RedTree<> (key, value, tl, tr);
+        }
+
+        final Tree<K,V> newLeft = joinLeft (tl, key, value, tr.left, hl, isBlackTree (tr) ? hr - 1 : hr);
+        if (isBlackTree (tr) && isRedTree (newLeft) && isRedTree (newLeft.left)) {
+            // two consecutive red nodes --> rotate right
+            return new RedTree<> (newLeft.key, newLeft.value, newLeft.left.blacken (), new BlackTree<> (tr.key, tr.value, newLeft.right, tr.right));
+        }
+        return tr.create (newLeft, tr.right);
+    }
+
+    /**
+     * the result of splitting a tree at a key: the subtrees with smaller and greater keys, and the node with the key
+     *  itself if it is present
+     */
+    static class SplitResult<K,V> {
+        final Tree<K,V> left;
+        final Tree<K,V> match;
+        final Tree<K,V> right;
+
+        SplitResult (Tree<K, V> left, Tree<K, V> match, Tree<K, V> right) {
+            this.left = left;
+            this.match = match;
+            this.right = right;
+        }
+    }
+
+    /**
+     * splits a tree at a key, joining the subtrees along the search path. The resulting trees may have red roots.
+     */
+    static <K,V> SplitResult<K,V> split (Tree<K,V> tree, K key, Comparator<K> comparator) {
+        if (tree == null) {
+            return new SplitResult<> (null, null, null);
+        }
+
+        final int cmp = comparator.compare (key, tree.key);
+        if (cmp == 0) {
+            return new SplitResult<> (tree.left, tree, tree.right);
+        }
+        if (cmp < 0) {
+            final SplitResult<K,V> s = split (tree.left, key, comparator);
+            return new SplitResult<> (s.left, s.match, join (s.right, tree.key, tree.value, tree.right));
+        }
+        final SplitResult<K,V> s = split (tree.right, key, comparator);
+        return new SplitResult<> (join (tree.left, tree.key, tree.value, s.left), s.match, s.right);
+    }
+
+    static final int UNION = 0;
+    static final int INTERSECTION = 1;
+    static final int DIFFERENCE = 2;
+
+    /**
+     * the combined size of two trees below which a set operation is not split into parallel tasks
+     */
+    static final int PARALLEL_THRESHOLD = 8192;
+
+    /**
+     * Applies a set operation to two trees by splitting one of them at the other's root, combining the corresponding
+     *  subtrees recursively and joining the results. The two recursive calls are independent, so they are run in
+     *  parallel if {@code parallel} is true, which requires the call to be made from inside a ForkJoinPool.
+     */
+    static <K,V> Tree<K,V> combine (int op, Tree<K,V> t1, Tree<K,V> t2, Comparator<K> comparator, boolean parallel) {
+        switch (op) {
+            case UNION:
+                if (t1 == null) return t2;
+                if (t2 == null) return t1;
+                break;
+            case INTERSECTION:
+                if (t1 == null || t2 == null) return null;
+                break;
+            case DIFFERENCE:
+                if (t1 == null || t2 == null) return t1;
+                break;
+        }
+
+        // for intersections, entries are taken from t1. Otherwise the pivot is taken from t2: its value replaces t1's value for
+        //  a union, and its key is removed for a difference.
+        final Tree<K,V> pivot = (op == INTERSECTION) ? t1 : t2;
+        final SplitResult<K,V> split = split (op == INTERSECTION ? t2 : t1, pivot.key, comparator);
+
+        // the operands of the recursive calls, keeping t1's parts as the first operand
+        final Tree<K,V> left1  = (op == INTERSECTION) ? pivot.left  : split.left;
+        final Tree<K,V> left2  = (op == INTERSECTION) ? split.left  : pivot.left;
+        final Tree<K,V> right1 = (op == INTERSECTION) ? pivot.right : split.right;
+        final Tree<K,V> right2 = (op == INTERSECTION) ? split.right : pivot.right;
+
+        final Tree<K,V> left;
+        final Tree<K,V> right;
+        if (parallel && t1.count + t2.count >= PARALLEL_THRESHOLD) {
+            final CombineTask<K,V> leftTask = new CombineTask<> (op, left1, left2, comparator);
+            leftTask.fork ();
+            right = combine (op, right1, right2, comparator, true);
+            left = leftTask.join ();
+        }
+        else {
+            left = combine (op, left1, left2, comparator, parallel);
+            right = combine (op, right1, right2, comparator, parallel);
+        }
+
+        switch (op) {
+            case UNION:        return join (left, pivot.key, pivot.value, right);
+            case INTERSECTION: return split.match != null ? join (left, pivot.key, pivot.value, right) : join (left, right);
+            default:           return join (left, right);
+        }
+    }
+
+    static class CombineTask<K,V> extends RecursiveTask<Tree<K,V>> {
+        private final int op;
+        private final Tree<K,V> t1;
+        private final Tree<K,V> t2;
+        private final Comparator<K> comparator;
+
+        CombineTask (int op, Tree<K, V> t1, Tree<K, V> t2, Comparator<K> comparator) {
+            this.op = op;
+            this.t1 = t1;
+            this.t2 = t2;
+            this.comparator = comparator;
+        }
+
+        @Override protected Tree<K,V> compute () {
+            return combine (op, t1, t2, comparator, true);
+        }
+    }
+
+    /**
+     * @return the number of black nodes on the path from the tree's root to its leftmost leaf
+     */
+    static int blackHeight (Tree tree) {
+        int result = 0;
+        while (tree != null) {
+            if (tree.isBlack ()) result += 1;
+            tree = tree.left;
+        }
+        return result;
+    }
+
 
     /**
      * encapsulates tree creation for a given colour
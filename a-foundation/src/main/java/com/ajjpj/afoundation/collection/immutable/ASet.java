@@ -24,6 +24,8 @@ public interface ASet<T> extends ACollection<T> {
     @Override <X, E extends Exception> ASet<X> map(AFunction1<? super T, ? extends X, E> f) throws E;
     @Override <X, E extends Exception> ASet<X> flatMap(AFunction1<? super T, ? extends Iterable<X>, E> f) throws E;
     @Override <X, E extends Exception> ASet<X> collect (APartialFunction<? super T, ? extends X, E> pf) throws E;
+    @Override <X, E extends Exception> ASet<X> parMap (AParallelism parallelism, AFunction1<? super T, ? extends X, E> f) throws E;
+    @Override <E extends Exception> ASet<T> parFilter (AParallelism parallelism, APredicate<? super T, E> pred) throws E;
 
     @Override <X> ASet<X> flatten ();
 
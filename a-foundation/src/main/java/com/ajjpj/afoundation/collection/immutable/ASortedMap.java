@@ -95,4 +95,27 @@ public interface ASortedMap<K,V> extends AMap<K,V> { //TODO ASortedSet
      * @return all entries with keys strictly smaller than or equal to a given value.
      */
     Iterable <AMapEntry <K,V>> toE (K toKey);
+
+    /**
+     * @return the number of entries with keys 'smaller than' a given key relative to the
+     *          underlying sort order, i.e. the index the key has (or would have) in the
+     *          sorted sequence of keys.
+     */
+    int rank (K key);
+
+    /**
+     * @return the entry at a given position in the sorted sequence of entries, i.e. the entry
+     *          with exactly {@code index} smaller keys.
+     * @throws IndexOutOfBoundsException if {@code index} is negative or not smaller than
+     *          {@link #size()}
+     */
+    AMapEntry<K,V> select (int index);
+
+    /**
+     * @return the number of entries with keys in the range from {@code fromKey} to {@code toKey},
+     *          including or excluding the boundaries as specified. This is the number of entries
+     *          the corresponding 'range' method returns, but it is calculated without iterating
+     *          over them.
+     */
+    int countInRange (K fromKey, boolean fromInclusive, K toKey, boolean toInclusive);
 }
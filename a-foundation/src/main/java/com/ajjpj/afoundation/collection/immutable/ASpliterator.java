@@ -0,0 +1,47 @@
+package com.ajjpj.afoundation.collection.immutable;
+
+import com.ajjpj.afoundation.function.AStatement1;
+
+import java.util.Iterator;
+
+
+/**
+ * An ASpliterator covers the elements of a collection (or a part of them), and it can be split recursively into parts
+ *  of roughly equal size, which can then be processed in parallel. It is a counterpart to Java 8's
+ *  {@code java.util.Spliterator} that works with Java 7.<p>
+ *
+ * Collections split along their internal structure where they can - hash tries on child nodes, search trees on
+ *  subtrees, B-trees on the children of index nodes - so that splitting does not copy elements. The size of every
+ *  part is known exactly, including the parts created by splitting.<p>
+ *
+ * An ASpliterator is split first and iterated afterwards: once {@link #iterator()} or {@link #forEach(AStatement1)}
+ *  was called, it can not be split anymore. ASpliterators are not thread safe, but the parts created by splitting are
+ *  independent of each other and can be processed by different threads.
+ *
+ * @author arno
+ */
+public interface ASpliterator<T> {
+    /**
+     * Splits off a part of this ASpliterator's elements. The returned ASpliterator covers the first part of the
+     *  elements in iteration order, and this ASpliterator covers the rest.
+     *
+     * @return an ASpliterator with some of this ASpliterator's elements, or {@code null} if it can not be split further
+     * @throws IllegalStateException if iteration has already started
+     */
+    ASpliterator<T> trySplit ();
+
+    /**
+     * @return the exact number of elements covered by this ASpliterator
+     */
+    int size ();
+
+    /**
+     * @return an iterator over this ASpliterator's elements. It can be called only once.
+     */
+    Iterator<T> iterator ();
+
+    /**
+     * Calls {@code f} for every element covered by this ASpliterator, as an alternative to calling {@link #iterator()}.
+     */
+    <E extends Exception> void forEach (AStatement1<? super T, E> f) throws E;
+}
@@ -0,0 +1,451 @@
+package com.ajjpj.afoundation.collection.immutable;
+
+import com.ajjpj.afoundation.collection.ACollectionHelper;
+import com.ajjpj.afoundation.collection.AEquality;
+import com.ajjpj.afoundation.function.AFunction1;
+import com.ajjpj.afoundation.function.APartialFunction;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+
+/**
+ * This is an immutable indexed sequence. Unlike {@link AList}, it provides indexed access, replacing elements and
+ *  appending at the end in effectively constant time, and slicing in constant time.<p>
+ *
+ * Its elements are stored in a bit-partitioned trie with 32 children per node, the last (incomplete) leaf of 32 elements
+ *  being kept separately as a 'tail'. Most appends only copy the tail, and all other operations copy one path of at
+ *  most log<sub>32</sub>(n) nodes, sharing everything else with the original vector.<p>
+ *
+ * A slice shares the trie of the vector it was taken from, so it keeps all of that vector's elements reachable. Copy
+ *  a small slice of a big vector with {@link #create(Iterable)} if it outlives the big vector.
+ *
+ * @author arno
+ */
+public class AVector<T> extends AbstractACollection<T, AVector<T>> implements Serializable {
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+
+    private static final AVector<Object> EMPTY = new AVector<> (Trie.EMPTY, 0, 0);
+
+    private final Trie data;
+    private final int offset;
+    private final int size;
+
+    private AVector (Trie data, int offset, int size) {
+        this.data = data;
+        this.offset = offset;
+        this.size = size;
+    }
+
+    @SuppressWarnings ("unchecked")
+    public static <T> AVector<T> empty () {
+        return (AVector<T>) EMPTY;
+    }
+
+    /**
+     * Creates an AVector based on the contents of an existing <code>java.util.Iterable</code>, copying its contents.
+     */
+    public static <T> AVector<T> create (Iterable<? extends T> elements) {
+        return AVector.<T>builder ().addAll (elements).build ();
+    }
+
+    @SafeVarargs
+    public static <T> AVector<T> create (T... elements) {
+        return create (Arrays.asList (elements));
+    }
+
+    public static <T> Builder<T> builder () {
+        return new Builder<> ();
+    }
+
+    /**
+     * A builder collects elements in a mutable leaf and adds it to the trie only when it is full, which makes creating an
+     *  AVector from many elements a lot cheaper than appending them one by one.
+     */
+    public static class Builder<T> {
+        private Trie trie = Trie.EMPTY;
+        private Object[] leaf = new Object[WIDTH];
+        private int leafSize = 0;
+
+        public Builder<T> add (T el) {
+            if (leafSize == WIDTH) {
+                trie = trie.withTail (leaf);
+                leaf = new Object[WIDTH];
+                leafSize = 0;
+            }
+            leaf[leafSize++] = el;
+            return this;
+        }
+
+        public Builder<T> addAll (Iterable<? extends T> elements) {
+            for (T el: elements) {
+                add (el);
+            }
+            return this;
+        }
+
+        /**
+         * The builder can be used after calling build(), it does not modify vectors it returned.
+         */
+        public AVector<T> build () {
+            if (trie.size + leafSize == 0) {
+                return empty ();
+            }
+            final Trie result = leafSize == 0 ? trie : trie.withTail (Arrays.copyOf (leaf, leafSize));
+            return new AVector<> (result, 0, result.size);
+        }
+    }
+
+    @Override public int size () {
+        return size;
+    }
+
+    @Override public AVector<T> clear () {
+        return empty ();
+    }
+
+    @Override protected AVector<T> createInternal (Collection<T> elements) {
+        return create (elements);
+    }
+
+    @Override protected AEquality equalityForEquals () {
+        return AEquality.EQUALS;
+    }
+
+    /**
+     * @throws IndexOutOfBoundsException if {@code idx} is negative or not smaller than the vector's size
+     */
+    @SuppressWarnings ("unchecked")
+    public T get (int idx) {
+        checkIndex (idx);
+        return (T) data.get (offset + idx);
+    }
+
+    /**
+     * Returns a copy of this vector with the element at position {@code idx} replaced with {@code el}.
+     *
+     * @throws IndexOutOfBoundsException if {@code idx} is negative or not smaller than the vector's size
+     */
+    public AVector<T> updated (int idx, T el) {
+        checkIndex (idx);
+        return new AVector<> (data.updated (offset + idx, el), offset, size);
+    }
+
+    /**
+     * Returns a copy of this vector with {@code el} added at the end.
+     */
+    public AVector<T> appended (T el) {
+        final int idx = offset + size;
+        return new AVector<> (idx == data.size ? data.appended (el) : data.updated (idx, el), offset, size + 1);
+    }
+
+    /**
+     * Returns the elements from position {@code from} (inclusive) to position {@code to} (exclusive). The returned
+     *  vector shares the trie with this vector, which makes this a constant time operation.
+     *
+     * @throws IndexOutOfBoundsException if {@code from} or {@code to} are out of range, or {@code from > to}
+     */
+    public AVector<T> slice (int from, int to) {
+        if (from < 0 || to > size || from > to) {
+            throw new IndexOutOfBoundsException ("slice [" + from + ", " + to + ") of a vector with size " + size);
+        }
+        if (from == to) {
+            return empty ();
+        }
+        return new AVector<> (data, offset + from, to - from);
+    }
+
+    /**
+     * Returns this vector without its last element.
+     *
+     * @throws NoSuchElementException if this vector is empty
+     */
+    public AVector<T> removedLast () {
+        if (size == 0) {
+            throw new NoSuchElementException ();
+        }
+        return slice (0, size - 1);
+    }
+
+    private void checkIndex (int idx) {
+        if (idx < 0 || idx >= size) {
+            throw new IndexOutOfBoundsException ("index " + idx + " for a vector with size " + size);
+        }
+    }
+
+    @Override public boolean contains (T el) {
+        for (T candidate: this) {
+            if (AEquality.EQUALS.equals (candidate, el)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override public Iterator<T> iterator () {
+        return new RangeIterator<> (data, offset, offset + size);
+    }
+
+    @Override public ASpliterator<T> aSpliterator () {
+        return new VectorSpliterator<> (data, offset, offset + size);
+    }
+
+    @Override public <X, E extends Exception> AVector<X> map (AFunction1<? super T, ? extends X, E> f) throws E {
+        final Builder<X> builder = builder ();
+        for (T el: this) {
+            builder.add (f.apply (el));
+        }
+        return builder.build ();
+    }
+
+    @Override public <X, E extends Exception> AVector<X> flatMap (AFunction1<? super T, ? extends Iterable<X>, E> f) throws E {
+        final Builder<X> builder = builder ();
+        for (T el: this) {
+            builder.addAll (f.apply (el));
+        }
+        return builder.build ();
+    }
+
+    @SuppressWarnings ("unchecked")
+    @Override public <X> AVector<X> flatten () {
+        return (AVector<X>) create (ACollectionHelper.flatten ((Iterable<? extends Iterable<Object>>) this));
+    }
+
+    @Override public <X, E extends Exception> AVector<X> collect (APartialFunction<? super T, ? extends X, E> pf) throws E {
+        return create (ACollectionHelper.collect (this, pf));
+    }
+
+    @Override public <X, E extends Exception> AVector<X> parMap (AParallelism parallelism, AFunction1<? super T, ? extends X, E> f) throws E {
+        return create (ACollectionHelper.parMap (this, parallelism, f));
+    }
+
+    /**
+     * Returns a read-only <code>java.util.List</code> view of this AVector with constant time indexed access.
+     */
+    public java.util.List<T> asJavaUtilList () {
+        return new JuListWrapper<> (this);
+    }
+
+    @Override public Collection<T> asJavaUtilCollection () {
+        return asJavaUtilList ();
+    }
+
+    /**
+     * A slice is serialized without the parts of the trie it does not cover.
+     */
+    private Object writeReplace () {
+        if (offset == 0 && size == data.size) {
+            return this;
+        }
+        return create (this);
+    }
+
+    static class JuListWrapper<T> extends AbstractList<T> implements RandomAccess {
+        private final AVector<T> inner;
+
+        JuListWrapper (AVector<T> inner) {
+            this.inner = inner;
+        }
+
+        @Override public T get (int index) {
+            return inner.get (index);
+        }
+
+        @Override public int size () {
+            return inner.size ();
+        }
+
+        @Override public Iterator<T> iterator () {
+            return inner.iterator ();
+        }
+    }
+
+    /**
+     * This iterator looks up every leaf only once rather than walking down the trie for every element.
+     */
+    static class RangeIterator<T> implements Iterator<T> {
+        private final Trie data;
+        private final int to;
+        private int idx;
+        private Object[] leaf;
+
+        RangeIterator (Trie data, int from, int to) {
+            this.data = data;
+            this.idx = from;
+            this.to = to;
+        }
+
+        @Override public boolean hasNext () {
+            return idx < to;
+        }
+
+        @SuppressWarnings ("unchecked")
+        @Override public T next () {
+            if (idx >= to) {
+                throw new NoSuchElementException ();
+            }
+            if (leaf == null || (idx & MASK) == 0) {
+                leaf = data.leafFor (idx);
+            }
+            return (T) leaf[(idx++) & MASK];
+        }
+
+        @Override public void remove () {
+            throw new UnsupportedOperationException ();
+        }
+    }
+
+    /**
+     * splits index ranges, preferably at leaf boundaries so that every leaf is looked up by one part only
+     */
+    static class VectorSpliterator<T> extends AbstractASpliterator<T> {
+        private final Trie data;
+        private int from;
+        private final int to;
+
+        VectorSpliterator (Trie data, int from, int to) {
+            this.data = data;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override public int size () {
+            return to - from;
+        }
+
+        @Override ASpliterator<T> doTrySplit () {
+            if (to - from < 2) {
+                return null;
+            }
+            int mid = (from + to) >>> 1;
+            if ((mid & ~MASK) > from) {
+                mid = mid & ~MASK;
+            }
+            final ASpliterator<T> result = new VectorSpliterator<> (data, from, mid);
+            from = mid;
+            return result;
+        }
+
+        @Override Iterator<T> doIterator () {
+            return new RangeIterator<> (data, from, to);
+        }
+    }
+
+    /**
+     * This is the actual persistent data structure. Inner nodes and leaves are arrays of length 32, and the tail has
+     *  exactly as many slots as it has elements, i.e. between 1 and 32 for a non-empty trie.
+     */
+    static final class Trie implements Serializable {
+        static final Trie EMPTY = new Trie (0, BITS, new Object[WIDTH], new Object[0]);
+
+        final int size;
+        private final int shift;
+        private final Object[] root;
+        private final Object[] tail;
+
+        private Trie (int size, int shift, Object[] root, Object[] tail) {
+            this.size = size;
+            this.shift = shift;
+            this.root = root;
+            this.tail = tail;
+        }
+
+        private int tailOffset () {
+            return size - tail.length;
+        }
+
+        Object get (int idx) {
+            return leafFor (idx)[idx & MASK];
+        }
+
+        Object[] leafFor (int idx) {
+            if (idx >= tailOffset ()) {
+                return tail;
+            }
+            Object[] node = root;
+            for (int level = shift; level > 0; level -= BITS) {
+                node = (Object[]) node[(idx >>> level) & MASK];
+            }
+            return node;
+        }
+
+        Trie updated (int idx, Object el) {
+            if (idx >= tailOffset ()) {
+                final Object[] newTail = tail.clone ();
+                newTail[idx & MASK] = el;
+                return new Trie (size, shift, root, newTail);
+            }
+            return new Trie (size, shift, updated (shift, root, idx, el), tail);
+        }
+
+        private static Object[] updated (int level, Object[] node, int idx, Object el) {
+            final Object[] result = node.clone ();
+            if (level == 0) {
+                result[idx & MASK] = el;
+            }
+            else {
+                final int childIdx = (idx >>> level) & MASK;
+                result[childIdx] = updated (level - BITS, (Object[]) node[childIdx], idx, el);
+            }
+            return result;
+        }
+
+        Trie appended (Object el) {
+            if (tail.length < WIDTH) {
+                final Object[] newTail = Arrays.copyOf (tail, tail.length + 1);
+                newTail[tail.length] = el;
+                return new Trie (size + 1, shift, root, newTail);
+            }
+            return withTail (new Object[] {el});
+        }
+
+        /**
+         * Moves the current tail into the trie and starts a new one. This requires the current tail to be full, or the trie to
+         *  be empty.
+         */
+        Trie withTail (Object[] newTail) {
+            if (size == 0) {
+                return new Trie (newTail.length, shift, root, newTail);
+            }
+
+            if ((size >>> BITS) > (1 << shift)) {
+                // the root is full, so the trie grows by one level
+                final Object[] newRoot = new Object[WIDTH];
+                newRoot[0] = root;
+                newRoot[1] = newPath (shift, tail);
+                return new Trie (size + newTail.length, shift + BITS, newRoot, newTail);
+            }
+            return new Trie (size + newTail.length, shift, pushTail (shift, root), newTail);
+        }
+
+        private Object[] pushTail (int level, Object[] parent) {
+            final int childIdx = ((size - 1) >>> level) & MASK;
+            final Object[] result = parent.clone ();
+
+            if (level == BITS) {
+                result[childIdx] = tail;
+            }
+            else {
+                final Object[] child = (Object[]) parent[childIdx];
+                result[childIdx] = child != null ? pushTail (level - BITS, child) : newPath (level - BITS, tail);
+            }
+            return result;
+        }
+
+        private static Object[] newPath (int level, Object[] leaf) {
+            if (level == 0) {
+                return leaf;
+            }
+            final Object[] result = new Object[WIDTH];
+            result[0] = newPath (level - BITS, leaf);
+            return result;
+        }
+    }
+}
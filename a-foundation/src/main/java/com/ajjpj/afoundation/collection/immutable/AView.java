@@ -0,0 +1,344 @@
+package com.ajjpj.afoundation.collection.immutable;
+
+import com.ajjpj.afoundation.collection.AEquality;
+import com.ajjpj.afoundation.function.*;
+import com.ajjpj.afoundation.util.AUnchecker;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * An AView is a lazy pipeline of transformations on a collection, created by {@link ACollection#view()}. Transformations
+ *  like {@link #map(AFunction1)} or {@link #filter(APredicate)} do not create intermediate collections but only record
+ *  the step. All steps are evaluated together in a single pass over the underlying collection when a terminal operation
+ *  like {@link #toList()}, {@link #foldLeft(Object, AFunction2)} or {@link #find(APredicate)} is called. Short circuiting
+ *  operations like {@code find()}, {@code exists()}, {@code forAll()} and {@link #take(int)} stop the pass as soon as
+ *  their result is known, so later elements are not even transformed.<p>
+ *
+ * An AView is immutable and can be evaluated any number of times, every evaluation passing over the underlying
+ *  collection again. Functions passed to transformations are called only during evaluation, so exceptions thrown by
+ *  them surface in the terminal operation rather than in the call to e.g. {@code map()}.
+ *
+ * @author arno
+ */
+public abstract class AView<T> implements ATraversable<T> {
+    AView () {
+    }
+
+    public static <T> AView<T> of (Iterable<T> source) {
+        return new IterableView<> (source);
+    }
+
+    /**
+     * Passes this view's elements to {@code sink} until there are no more elements or the sink returns {@code false}.
+     */
+    abstract void traverse (Sink<? super T> sink) throws Exception;
+
+    interface Sink<T> {
+        /**
+         * @return {@code false} to stop the traversal
+         */
+        boolean accept (T el) throws Exception;
+    }
+
+    private void run (Sink<? super T> sink) {
+        try {
+            traverse (sink);
+        }
+        catch (Exception exc) {
+            AUnchecker.throwUnchecked (exc);
+        }
+    }
+
+    //-------------------------------------- lazy transformations
+
+    @Override public <E extends Exception> AView<T> filter (APredicate<? super T, E> pred) {
+        return new FilterView<> (this, pred);
+    }
+
+    @Override public <X, E extends Exception> AView<X> map (AFunction1<? super T, ? extends X, E> f) {
+        return new MapView<> (this, f);
+    }
+
+    @Override public <X, E extends Exception> AView<X> flatMap (AFunction1<? super T, ? extends Iterable<X>, E> f) {
+        return new FlatMapView<> (this, f);
+    }
+
+    @Override public <X, E extends Exception> AView<X> collect (APartialFunction<? super T, ? extends X, E> pf) {
+        return new CollectView<> (this, pf);
+    }
+
+    @SuppressWarnings ("unchecked")
+    @Override public <X> AView<X> flatten () {
+        return new FlatMapView<> ((AView<Iterable<X>>) this, new AFunction1<Iterable<X>, Iterable<X>, RuntimeException> () {
+            @Override public Iterable<X> apply (Iterable<X> param) {
+                return param;
+            }
+        });
+    }
+
+    /**
+     * @return a view of the first {@code n} elements of this view
+     */
+    public AView<T> take (int n) {
+        return new TakeView<> (this, n);
+    }
+
+    /**
+     * @return a view of this view's elements except the first {@code n}
+     */
+    public AView<T> drop (int n) {
+        return new DropView<> (this, n);
+    }
+
+    //-------------------------------------- terminal operations
+
+    @Override public <E extends Exception> void forEach (final AStatement1<? super T, E> f) throws E {
+        run (new Sink<T> () {
+            @Override public boolean accept (T el) throws Exception {
+                f.apply (el);
+                return true;
+            }
+        });
+    }
+
+    @Override public <R, E extends Exception> R foldLeft (final R startValue, final AFunction2<R, ? super T, R, E> f) throws E {
+        class FoldSink implements Sink<T> {
+            R result = startValue;
+
+            @Override public boolean accept (T el) throws Exception {
+                result = f.apply (result, el);
+                return true;
+            }
+        }
+
+        final FoldSink sink = new FoldSink ();
+        run (sink);
+        return sink.result;
+    }
+
+    @Override public <E extends Exception> AOption<T> find (final APredicate<? super T, E> pred) throws E {
+        class FindSink implements Sink<T> {
+            AOption<T> result = AOption.none ();
+
+            @Override public boolean accept (T el) throws Exception {
+                if (pred.apply (el)) {
+                    result = AOption.some (el);
+                    return false;
+                }
+                return true;
+            }
+        }
+
+        final FindSink sink = new FindSink ();
+        run (sink);
+        return sink.result;
+    }
+
+    @Override public <E extends Exception> boolean forAll (final APredicate<? super T, E> pred) throws E {
+        final boolean[] result = {true};
+        run (new Sink<T> () {
+            @Override public boolean accept (T el) throws Exception {
+                result[0] = pred.apply (el);
+                return result[0];
+            }
+        });
+        return result[0];
+    }
+
+    @Override public <E extends Exception> boolean exists (final APredicate<? super T, E> pred) throws E {
+        final boolean[] result = {false};
+        run (new Sink<T> () {
+            @Override public boolean accept (T el) throws Exception {
+                result[0] = pred.apply (el);
+                return ! result[0];
+            }
+        });
+        return result[0];
+    }
+
+    public int size () {
+        final int[] result = {0};
+        run (new Sink<T> () {
+            @Override public boolean accept (T el) {
+                result[0] += 1;
+                return true;
+            }
+        });
+        return result[0];
+    }
+
+    public AList<T> toList () {
+        return AList.create (toJavaUtilList ());
+    }
+
+    public AHashSet<T> toSet () {
+        return AHashSet.create (toJavaUtilList ());
+    }
+
+    public AHashSet<T> toSet (AEquality equality) {
+        return AHashSet.create (equality, toJavaUtilList ());
+    }
+
+    private List<T> toJavaUtilList () {
+        final List<T> result = new ArrayList<> ();
+        run (new Sink<T> () {
+            @Override public boolean accept (T el) {
+                result.add (el);
+                return true;
+            }
+        });
+        return result;
+    }
+
+    @Override public String toString () {
+        return "AView" + toJavaUtilList ();
+    }
+
+    //-------------------------------------- pipeline steps
+
+    static class IterableView<T> extends AView<T> {
+        private final Iterable<T> source;
+
+        IterableView (Iterable<T> source) {
+            this.source = source;
+        }
+
+        @Override void traverse (Sink<? super T> sink) throws Exception {
+            for (T el: source) {
+                if (! sink.accept (el)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    static class FilterView<T> extends AView<T> {
+        private final AView<T> parent;
+        private final APredicate<? super T, ?> pred;
+
+        FilterView (AView<T> parent, APredicate<? super T, ?> pred) {
+            this.parent = parent;
+            this.pred = pred;
+        }
+
+        @Override void traverse (final Sink<? super T> sink) throws Exception {
+            parent.traverse (new Sink<T> () {
+                @Override public boolean accept (T el) throws Exception {
+                    return ! pred.apply (el) || sink.accept (el);
+                }
+            });
+        }
+    }
+
+    static class MapView<S,T> extends AView<T> {
+        private final AView<S> parent;
+        private final AFunction1<? super S, ? extends T, ?> f;
+
+        MapView (AView<S> parent, AFunction1<? super S, ? extends T, ?> f) {
+            this.parent = parent;
+            this.f = f;
+        }
+
+        @Override void traverse (final Sink<? super T> sink) throws Exception {
+            parent.traverse (new Sink<S> () {
+                @Override public boolean accept (S el) throws Exception {
+                    return sink.accept (f.apply (el));
+                }
+            });
+        }
+    }
+
+    static class FlatMapView<S,T> extends AView<T> {
+        private final AView<S> parent;
+        private final AFunction1<? super S, ? extends Iterable<T>, ?> f;
+
+        FlatMapView (AView<S> parent, AFunction1<? super S, ? extends Iterable<T>, ?> f) {
+            this.parent = parent;
+            this.f = f;
+        }
+
+        @Override void traverse (final Sink<? super T> sink) throws Exception {
+            parent.traverse (new Sink<S> () {
+                @Override public boolean accept (S el) throws Exception {
+                    for (T inner: f.apply (el)) {
+                        if (! sink.accept (inner)) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }
+            });
+        }
+    }
+
+    static class CollectView<S,T> extends AView<T> {
+        private final AView<S> parent;
+        private final APartialFunction<? super S, ? extends T, ?> pf;
+
+        CollectView (AView<S> parent, APartialFunction<? super S, ? extends T, ?> pf) {
+            this.parent = parent;
+            this.pf = pf;
+        }
+
+        @Override void traverse (final Sink<? super T> sink) throws Exception {
+            parent.traverse (new Sink<S> () {
+                @Override public boolean accept (S el) throws Exception {
+                    return ! pf.isDefinedAt (el) || sink.accept (pf.apply (el));
+                }
+            });
+        }
+    }
+
+    /**
+     * The counters live in the sinks rather than in the views, so that a view can be evaluated repeatedly.
+     */
+    static class TakeView<T> extends AView<T> {
+        private final AView<T> parent;
+        private final int n;
+
+        TakeView (AView<T> parent, int n) {
+            this.parent = parent;
+            this.n = n;
+        }
+
+        @Override void traverse (final Sink<? super T> sink) throws Exception {
+            if (n <= 0) {
+                return;
+            }
+            parent.traverse (new Sink<T> () {
+                private int remaining = n;
+
+                @Override public boolean accept (T el) throws Exception {
+                    remaining -= 1;
+                    return sink.accept (el) && remaining > 0;
+                }
+            });
+        }
+    }
+
+    static class DropView<T> extends AView<T> {
+        private final AView<T> parent;
+        private final int n;
+
+        DropView (AView<T> parent, int n) {
+            this.parent = parent;
+            this.n = n;
+        }
+
+        @Override void traverse (final Sink<? super T> sink) throws Exception {
+            parent.traverse (new Sink<T> () {
+                private int toBeDropped = n;
+
+                @Override public boolean accept (T el) throws Exception {
+                    if (toBeDropped > 0) {
+                        toBeDropped -= 1;
+                        return true;
+                    }
+                    return sink.accept (el);
+                }
+            });
+        }
+    }
+}
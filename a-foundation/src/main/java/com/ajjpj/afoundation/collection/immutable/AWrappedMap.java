@@ -61,6 +61,22 @@ abstract class AWrappedMap<K,V> implements AMap<K,V>, Serializable {
         return get(key).get();
     }
 
+    /**
+     * Keys that are not stored in the inner map are mapped to the wrapper's default, so {@code defaultValue} is
+     *  never returned.
+     */
+    @Override public V getOrDefault(K key, V defaultValue) {
+        final V innerResult = inner.getOrNull(key);
+        if(innerResult == null && ! inner.containsKey(key)) {
+            return defaultValue(key);
+        }
+        return innerResult;
+    }
+
+    @Override public V getOrNull(K key) {
+        return getOrDefault(key, null);
+    }
+
     @Override public AMap<K,V> updated(K key, V value) {
         return wrap(inner.updated(key, value));
     }
@@ -73,6 +89,17 @@ abstract class AWrappedMap<K,V> implements AMap<K,V>, Serializable {
         return inner.iterator();
     }
 
+    @Override public ASpliterator<AMapEntry<K, V>> aSpliterator () {
+        return inner.aSpliterator ();
+    }
+
+    @Override public Iterable<AMapChange<K, V>> diff (AMap<K, V> other) {
+        if (other instanceof AWrappedMap) {
+            return inner.diff (((AWrappedMap<K,V>) other).inner);
+        }
+        return inner.diff (other);
+    }
+
     @Override public Map<K,V> asJavaUtilMap() {
         return inner.asJavaUtilMap();
     }
@@ -28,7 +28,7 @@ import java.util.Map;
  *     <li>createInternal() creates a new instance of the collection, containing a given list of elements</li>
  * </ul>
  *
- * The methods <code>flatten()</code>, <code>flatMap()</code> and <code>map()</code> are not implemented generically in this class
+ * The methods <code>flatten()</code>, <code>flatMap()</code>, <code>map()</code> and <code>parMap()</code> are not implemented generically in this class
  *  because there is no way to provide the concrete collection class as their return type.<p>
  *
  * The <code>equals()</code> and <code>hashCode()</code> implementations are based on the <code>AEquality</code> instance provided
@@ -84,6 +84,14 @@ public abstract class AbstractACollection<T, C extends AbstractACollection<T, C>
         return ACollectionHelper.foldLeft (this, startValue, f);
     }
 
+    @Override public <R, E extends Exception> R parFold (AParallelism parallelism, R startValue, AFunction2<R, ? super T, R, E> f, AFunction2<R, R, R, E> combiner) throws E {
+        return ACollectionHelper.parFold (this, parallelism, startValue, f, combiner);
+    }
+
+    @Override public <E extends Exception> C parFilter (AParallelism parallelism, APredicate<? super T, E> pred) throws E {
+        return createInternal (ACollectionHelper.parFilter (this, parallelism, pred));
+    }
+
     @Override public <E extends Exception> AOption<T> find(APredicate<? super T, E> pred) throws E {
         return ACollectionHelper.find(this, pred);
     }
@@ -152,6 +160,18 @@ public abstract class AbstractACollection<T, C extends AbstractACollection<T, C>
     }
 
 
+    @Override public AView<T> view () {
+        return AView.of (this);
+    }
+
+    /**
+     * This default implementation copies the collection's elements to an array. Collections with a tree structure
+     *  override it to split along that structure instead.
+     */
+    @Override public ASpliterator<T> aSpliterator () {
+        return AbstractASpliterator.fromIterable (this, size ());
+    }
+
     @Override public Collection<T> asJavaUtilCollection () {
         return new Collection<T> () {
             @Override public int size () {
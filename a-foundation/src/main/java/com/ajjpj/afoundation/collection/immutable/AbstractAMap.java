@@ -4,6 +4,7 @@ import com.ajjpj.afoundation.function.AFunction1;
 
 import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Objects;
 
 
@@ -11,6 +12,13 @@ import java.util.Objects;
  * @author arno
  */
 abstract class AbstractAMap<K,V> implements AMap<K,V> {
+    /**
+     * This is passed as a default value to {@link #getOrDefault(Object, Object)} to check for the presence of a key
+     *  without an AOption wrapper. It is never stored in a map, so identity comparison with the result is safe. Maps
+     *  with primitive values can not return it and override all methods using it.
+     */
+    static final Object NO_VALUE = new Object ();
+
     transient private Integer cachedHashcode = null; // intentionally not volatile: This class is immutable, so recalculating per thread works
 
     @Override public boolean isEmpty () {
@@ -20,12 +28,22 @@ abstract class AbstractAMap<K,V> implements AMap<K,V> {
         return size () != 0;
     }
 
+    @SuppressWarnings ("unchecked")
     @Override public V getRequired (K key) {
-        return get (key).get ();
+        final V result = getOrDefault (key, (V) NO_VALUE);
+        if (result == NO_VALUE) {
+            throw new NoSuchElementException ();
+        }
+        return result;
     }
 
+    @SuppressWarnings ("unchecked")
     @Override public boolean containsKey (K key) {
-        return get (key).isDefined ();
+        return getOrDefault (key, (V) NO_VALUE) != NO_VALUE;
+    }
+
+    @Override public V getOrNull (K key) {
+        return getOrDefault (key, null);
     }
 
     @Override public ACollection<V> values () {
@@ -35,6 +53,18 @@ abstract class AbstractAMap<K,V> implements AMap<K,V> {
         return values ().contains (value);
     }
 
+    @Override public Iterable<AMapChange<K, V>> diff (AMap<K, V> other) {
+        return MapDiffIterator.diff (this, other);
+    }
+
+    /**
+     * This default implementation copies the map's entries to an array. Maps with a tree structure override it to
+     *  split along that structure instead.
+     */
+    @Override public ASpliterator<AMapEntry<K, V>> aSpliterator () {
+        return AbstractASpliterator.fromIterable (this, size ());
+    }
+
     @Override public Map<K, V> asJavaUtilMap () {
         return new JavaUtilMapWrapper<> (this);
     }
@@ -61,8 +91,12 @@ abstract class AbstractAMap<K,V> implements AMap<K,V> {
         }
 
         for (AMapEntry<K,V> e: this) {
-            final AOption<V> o = other.get (e.getKey ());
-            if (o.isEmpty () || ! Objects.equals (e.getValue (), o.get ())) return false;
+            // 'other' may store primitive values, so NO_VALUE can not be passed to it as a default
+            final V o = other.getOrNull (e.getKey ());
+            if (o == null) {
+                if (e.getValue () != null || ! other.containsKey (e.getKey ())) return false;
+            }
+            else if (! o.equals (e.getValue ())) return false;
         }
 
         return true;
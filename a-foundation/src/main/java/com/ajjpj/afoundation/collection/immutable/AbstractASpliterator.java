@@ -0,0 +1,259 @@
+package com.ajjpj.afoundation.collection.immutable;
+
+import com.ajjpj.afoundation.function.AFunction1NoThrow;
+import com.ajjpj.afoundation.function.AStatement1;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+
+/**
+ * This is the common superclass of all ASpliterator implementations. It keeps track of whether iteration has started,
+ *  and it contains generic implementations for splitting arrays and tree structures.
+ *
+ * @author arno
+ */
+abstract class AbstractASpliterator<T> implements ASpliterator<T> {
+    private boolean iterating = false;
+
+    @Override public final ASpliterator<T> trySplit () {
+        if (iterating) {
+            throw new IllegalStateException ("iteration has already started");
+        }
+        return doTrySplit ();
+    }
+
+    @Override public final Iterator<T> iterator () {
+        if (iterating) {
+            throw new IllegalStateException ("iteration has already started");
+        }
+        iterating = true;
+        return doIterator ();
+    }
+
+    @Override public <E extends Exception> void forEach (AStatement1<? super T, E> f) throws E {
+        final Iterator<T> it = iterator ();
+        while (it.hasNext ()) {
+            f.apply (it.next ());
+        }
+    }
+
+    abstract ASpliterator<T> doTrySplit ();
+    abstract Iterator<T> doIterator ();
+
+    /**
+     * This is the generic fallback for collections that can not be split along their internal structure: their
+     *  elements are copied to an array once, and splitting divides the array's index range.
+     */
+    static <T> ASpliterator<T> fromIterable (Iterable<T> elements, int size) {
+        final Object[] array = new Object[size];
+        int idx = 0;
+        for (T el: elements) {
+            array[idx++] = el;
+        }
+        return new ArraySpliterator<> (array, 0, size);
+    }
+
+    static class ArraySpliterator<T> extends AbstractASpliterator<T> {
+        private final Object[] array;
+        private int from;
+        private final int to;
+
+        ArraySpliterator (Object[] array, int from, int to) {
+            this.array = array;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override public int size () {
+            return to - from;
+        }
+
+        @Override ASpliterator<T> doTrySplit () {
+            if (to - from < 2) {
+                return null;
+            }
+            final int mid = (from + to) >>> 1;
+            final ASpliterator<T> result = new ArraySpliterator<> (array, from, mid);
+            from = mid;
+            return result;
+        }
+
+        @Override Iterator<T> doIterator () {
+            return new Iterator<T> () {
+                int idx = from;
+
+                @Override public boolean hasNext () {
+                    return idx < to;
+                }
+
+                @SuppressWarnings ("unchecked")
+                @Override public T next () {
+                    if (idx >= to) {
+                        throw new NoSuchElementException ();
+                    }
+                    return (T) array[idx++];
+                }
+
+                @Override public void remove () {
+                    throw new UnsupportedOperationException ();
+                }
+            };
+        }
+    }
+
+    /**
+     * This is the generic implementation for tree structures. It covers a list of 'parts', which are subtrees or single
+     *  elements. Splitting divides the list of parts, and a single part is first replaced by its children. Subclasses
+     *  deal with their own tree nodes only, single elements are wrapped with {@link #single(Object)}.
+     */
+    static abstract class TreeSpliterator<T> extends AbstractASpliterator<T> {
+        private List<Object> parts;
+        private int size;
+
+        TreeSpliterator (Object root, int size) {
+            this.parts = size == 0 ? Collections.emptyList () : Collections.singletonList (root);
+            this.size = size;
+        }
+
+        TreeSpliterator (List<Object> parts, int size) {
+            this.parts = parts;
+            this.size = size;
+        }
+
+        abstract int sizeOf (Object node);
+
+        /**
+         * Adds the children of a tree node to {@code target} in iteration order, either as nodes or as single elements.
+         *  This is called only for nodes with at least two elements.
+         */
+        abstract void expand (Object node, List<Object> target);
+
+        abstract Iterator<T> iteratorOf (Object node);
+
+        abstract TreeSpliterator<T> create (List<Object> parts, int size);
+
+        static Object single (Object element) {
+            return new Single (element);
+        }
+
+        private int partSize (Object part) {
+            return (part instanceof Single) ? 1 : sizeOf (part);
+        }
+
+        @SuppressWarnings ("unchecked")
+        private Iterator<T> partIterator (Object part) {
+            return (part instanceof Single) ? Collections.singletonList ((T) ((Single) part).element).iterator () : iteratorOf (part);
+        }
+
+        @Override public int size () {
+            return size;
+        }
+
+        @Override ASpliterator<T> doTrySplit () {
+            while (parts.size () == 1) {
+                if (partSize (parts.get (0)) < 2) {
+                    return null;
+                }
+                final List<Object> expanded = new ArrayList<> ();
+                expand (parts.get (0), expanded);
+                parts = expanded;
+            }
+            if (parts.isEmpty ()) {
+                return null;
+            }
+
+            // split off a prefix with roughly half the elements, leaving at least one part in this spliterator
+            int numPrefixParts = 0;
+            int prefixSize = 0;
+            do {
+                prefixSize += partSize (parts.get (numPrefixParts));
+                numPrefixParts += 1;
+            }
+            while (numPrefixParts < parts.size () - 1 && prefixSize < size / 2);
+
+            final List<Object> prefix = new ArrayList<> (parts.subList (0, numPrefixParts));
+            parts = new ArrayList<> (parts.subList (numPrefixParts, parts.size ()));
+            size -= prefixSize;
+            return create (prefix, prefixSize);
+        }
+
+        @Override Iterator<T> doIterator () {
+            return new Iterator<T> () {
+                private int nextPart = 0;
+                private Iterator<T> current = Collections.emptyIterator ();
+
+                @Override public boolean hasNext () {
+                    while (! current.hasNext ()) {
+                        if (nextPart >= parts.size ()) {
+                            return false;
+                        }
+                        current = partIterator (parts.get (nextPart++));
+                    }
+                    return true;
+                }
+
+                @Override public T next () {
+                    if (! hasNext ()) {
+                        throw new NoSuchElementException ();
+                    }
+                    return current.next ();
+                }
+
+                @Override public void remove () {
+                    throw new UnsupportedOperationException ();
+                }
+            };
+        }
+
+        private static class Single {
+            final Object element;
+
+            Single (Object element) {
+                this.element = element;
+            }
+        }
+    }
+
+    /**
+     * applies a function to every element of another ASpliterator, e.g. to turn map entries into keys
+     */
+    static class MappedSpliterator<S,T> extends AbstractASpliterator<T> {
+        private final ASpliterator<S> inner;
+        private final AFunction1NoThrow<S,T> f;
+
+        MappedSpliterator (ASpliterator<S> inner, AFunction1NoThrow<S, T> f) {
+            this.inner = inner;
+            this.f = f;
+        }
+
+        @Override public int size () {
+            return inner.size ();
+        }
+
+        @Override ASpliterator<T> doTrySplit () {
+            final ASpliterator<S> split = inner.trySplit ();
+            return split == null ? null : new MappedSpliterator<> (split, f);
+        }
+
+        @Override Iterator<T> doIterator () {
+            final Iterator<S> it = inner.iterator ();
+            return new Iterator<T> () {
+                @Override public boolean hasNext () {
+                    return it.hasNext ();
+                }
+
+                @Override public T next () {
+                    return f.apply (it.next ());
+                }
+
+                @Override public void remove () {
+                    throw new UnsupportedOperationException ();
+                }
+            };
+        }
+    }
+}
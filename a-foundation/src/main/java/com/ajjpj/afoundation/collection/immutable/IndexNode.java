@@ -12,10 +12,19 @@ class IndexNode extends ABTreeMap {
     final Object[] separators;
     final ABTreeMap[] children;
 
+    // the number of entries in this node's subtree. Every node caches its size, so this takes O(1) per child.
+    private final int size;
+
     IndexNode (ABTreeSpec spec, Object[] separators, ABTreeMap[] children) {
         super (spec);
         this.separators = separators;
         this.children = children;
+
+        int size = 0;
+        for (ABTreeMap child: children) {
+            size += child.size ();
+        }
+        this.size = size;
     }
 
     /**
@@ -51,6 +60,11 @@ class IndexNode extends ABTreeMap {
         return children[lookupKey (key)].get (key);
     }
 
+    @SuppressWarnings ("unchecked")
+    @Override public Object getOrDefault (Object key, Object defaultValue) {
+        return children[lookupKey (key)].getOrDefault (key, defaultValue);
+    }
+
     @Override UpdateResult merge (ABTreeMap rightNeighbour, Object separator) {
         final IndexNode right = (IndexNode) rightNeighbour;
         final int len = children.length + right.children.length;
@@ -270,11 +284,7 @@ class IndexNode extends ABTreeMap {
     }
 
     @Override public int size () {
-        int result = 0;
-        for (ABTreeMap child: children) {
-            result += child.size ();
-        }
-        return result;
+        return size;
     }
 
     @Override public boolean isEmpty () {
@@ -66,6 +66,13 @@ class LeafNode extends ABTreeMap {
         return AOption.none ();
     }
 
+    @SuppressWarnings ("unchecked")
+    @Override public Object getOrDefault (Object key, Object defaultValue) {
+        // binary search without creating a LookupResult to keep this lookup free of allocations
+        final int idx = Arrays.binarySearch (keys, key, spec.comparator);
+        return idx >= 0 ? values[idx] : defaultValue;
+    }
+
     @Override UpdateResult merge (ABTreeMap rightNeighbour, Object separator) {
         final LeafNode rightLeaf = (LeafNode) rightNeighbour;
 
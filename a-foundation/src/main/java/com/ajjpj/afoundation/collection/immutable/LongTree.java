@@ -0,0 +1,534 @@
+package com.ajjpj.afoundation.collection.immutable;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.RecursiveTask;
+
+
+/**
+ * This is the node of a red-black tree with primitive 'long' keys, and it contains the tree algorithms that are shared
+ *  by {@link ALongRedBlackTreeMap} and {@link ALongLongRedBlackTreeMap}. The maps differ only in the way their nodes
+ *  store values, so the algorithms never handle values directly: they create nodes by copying an existing node's key
+ *  and value with a given colour and given children.
+ *
+ * @author arno
+ */
+abstract class LongTree<T extends LongTree<T>> {
+    final long key;
+    final int count;
+
+    final T left;
+    final T right;
+
+    LongTree (long key, T left, T right) {
+        this.key = key;
+        this.left = left;
+        this.right = right;
+
+        this.count = 1 +
+                (left == null ? 0 : left.count) +
+                (right == null ? 0 : right.count);
+    }
+
+    /**
+     * @return a red node with this node's key and value and the given children
+     */
+    abstract T red (T left, T right);
+    /**
+     * @return a black node with this node's key and value and the given children
+     */
+    abstract T black (T left, T right);
+
+    abstract boolean isRed ();
+    boolean isBlack () {
+        return ! isRed ();
+    }
+
+    @SuppressWarnings ("unchecked")
+    private T self () {
+        return (T) this;
+    }
+
+    /**
+     * @return a node with this node's key, value and colour and the given children
+     */
+    T create (T left, T right) {
+        return isRed () ? red (left, right) : black (left, right);
+    }
+
+    T redden () {
+        return isRed () ? self () : red (left, right);
+    }
+    T blacken () {
+        return isRed () ? black (left, right) : self ();
+    }
+    T blackToRed () {
+        if (isRed ()) {
+            throw new IllegalStateException ();
+        }
+        return red (left, right);
+    }
+
+
+    static <T extends LongTree<T>> T lookup (T tree, long key) {
+        while (tree != null) {
+            if (key == tree.key) return tree;
+
+            tree = (key < tree.key) ? tree.left : tree.right;
+        }
+        return null;
+    }
+
+    static boolean isRedTree (LongTree<?> tree) {
+        return tree != null && tree.isRed ();
+    }
+    static boolean isBlackTree (LongTree<?> tree) {
+        return tree != null && tree.isBlack ();
+    }
+
+    static <T extends LongTree<T>> T blacken (T tree) {
+        if (tree == null) {
+            return null;
+        }
+        return tree.blacken ();
+    }
+
+    /**
+     * Inserts or replaces an entry.
+     *
+     * @param leaf a red node without children that holds the new key and value
+     */
+    static <T extends LongTree<T>> T upd (T tree, T leaf) {
+        if (tree == null) {
+            return leaf;
+        }
+        if (leaf.key < tree.key) {
+            return balanceLeft (tree, upd (tree.left, leaf), tree.right);
+        }
+        if (leaf.key > tree.key) {
+            return balanceRight (tree, tree.left, upd (tree.right, leaf));
+        }
+        return tree.isRed () ? leaf.red (tree.left, tree.right) : leaf.black (tree.left, tree.right);
+    }
+
+    /**
+     * rebalancing after an insertion into the left subtree; {@code tree} provides the key, value and colour of the new node
+     */
+    private static <T extends LongTree<T>> T balanceLeft (T tree, T l, T d) {
+        if (isRedTree (l) && isRedTree (l.left)) {
+            return l.red (l.left.black (l.left.left, l.left.right), tree.black (l.right, d));
+        }
+        if (isRedTree (l) && isRedTree (l.right)) {
+            return l.right.red (l.black (l.left, l.right.left), tree.black (l.right.right, d));
+        }
+        return tree.create (l, d);
+    }
+
+    /**
+     * rebalancing after an insertion into the right subtree; {@code tree} provides the key, value and colour of the new node
+     */
+    private static <T extends LongTree<T>> T balanceRight (T tree, T a, T r) {
+        if (isRedTree (r) && isRedTree (r.left)) {
+            return r.left.red (tree.black (a, r.left.left), r.black (r.left.right, r.right));
+        }
+        if (isRedTree (r) && isRedTree (r.right)) {
+            return r.red (tree.black (a, r.left), r.right.black (r.right.left, r.right.right));
+        }
+        return tree.create (a, r);
+    }
+
+    static <T extends LongTree<T>> T del (T tree, long key) {
+        if (tree == null) {
+            return null;
+        }
+
+        if (key < tree.key) {
+            // the node that must be deleted is to the left
+            return isBlackTree (tree.left) ?
+                    balanceLeftAfterDel (tree, del (tree.left, key), tree.right) :
+
+                // tree.left is 'red', so its children are guaranteed to be black.
+                tree.red (del (tree.left, key), tree.right);
+        }
+        else if (key > tree.key) {
+            // the node that must be deleted is to the right
+            return isBlackTree (tree.right) ?
+                    balanceRightAfterDel (tree, tree.left, del (tree.right, key)) :
+                    tree.red (tree.left, del (tree.right, key));
+        }
+
+        // delete this node and we are finished
+        return append (tree.left, tree.right);
+    }
+
+    private static <T extends LongTree<T>> T balance (T node, T tl, T tr) {
+        if (isRedTree (tl) && isRedTree (tr)) return node.red (tl.blacken (), tr.blacken ());
+
+        if (isRedTree (tl)) {
+            // left is red, right is black
+            if (isRedTree (tl.left)) return tl.red (tl.left.blacken (), node.black (tl.right, tr));
+            if (isRedTree (tl.right)) {
+                return tl.right.red (tl.black (tl.left, tl.right.left), node.black (tl.right.right, tr));
+            }
+            return node.black (tl, tr);
+        }
+
+        if (isRedTree (tr)) {
+            // left is black, right is red
+            if (isRedTree (tr.right)) return tr.red (node.black (tl, tr.left), tr.right.blacken ());
+            if (isRedTree (tr.left))  return tr.left.red (node.black (tl, tr.left.left), tr.black (tr.left.right, tr.right));
+            return node.black (tl, tr);
+        }
+
+        // tl and tr are both black
+        return node.black (tl, tr);
+    }
+
+    private static <T extends LongTree<T>> T balanceLeftAfterDel (T node, T tl, T tr) {
+        if (isRedTree (tl)) {
+            return node.red (tl.blacken (), tr);
+        }
+        if (isBlackTree (tr)) {
+            return balance (node, tl, tr.redden ());
+        }
+        if (isRedTree (tr) && isBlackTree (tr.left)) {
+            return tr.left.red (node.black (tl, tr.left.left), balance (tr, tr.left.right, tr.right.blackToRed ()));
+        }
+        throw new IllegalStateException ("invariant violation");
+    }
+
+    private static <T extends LongTree<T>> T balanceRightAfterDel (T node, T tl, T tr) {
+        if (isRedTree (tr)) {
+            return node.red (tl, tr.blacken ());
+        }
+        if (isBlackTree (tl)) {
+            return balance (node, tl.redden (), tr);
+        }
+        if (isRedTree (tl) && isBlackTree (tl.right)) {
+            return tl.right.red (balance (tl, tl.left.blackToRed (), tl.right.left), node.black (tl.right.right, tr));
+        }
+        throw new IllegalStateException ("invariant violation");
+    }
+
+    /**
+     * This method combines two separate sub-trees into a single (balanced) tree. It assumes that both subtrees are
+     *  balanced and that all elements in 'tl' are smaller than all elements in 'tr'. This situation occurs when a
+     *  node is deleted and its child nodes must be combined into a resulting tree.
+     */
+    private static <T extends LongTree<T>> T append (T tl, T tr) {
+        if (tl == null) return tr;
+        if (tr == null) return tl;
+
+        if (isRedTree (tl) && isRedTree (tr)) {
+            final T bc = append (tl.right, tr.left);
+            return isRedTree (bc) ?
+                    bc.red (tl.red (tl.left, bc.left), tr.red (bc.right, tr.right)) :
+                    tl.red (tl.left, tr.red (bc, tr.right));
+        }
+        if (isBlackTree (tl) && isBlackTree (tr)) {
+            final T bc = append (tl.right, tr.left);
+            return isRedTree (bc) ?
+                    bc.red (tl.black (tl.left, bc.left), tr.black (bc.right, tr.right)) :
+                    balanceLeftAfterDel (tl, tl.left, tr.black (bc, tr.right));
+        }
+        if (isRedTree (tr)) {
+            return tr.red (append (tl, tr.left), tr.right);
+        }
+        if (isRedTree (tl)) {
+            return tl.red (tl.left, append (tl.right, tr));
+        }
+        throw new IllegalStateException ("invariant violation: unmatched tree on append: " + tl + ", " + tr);
+    }
+
+
+    /**
+     * This method combines two balanced trees and a node between them into a single balanced tree, regardless of their
+     *  black heights. Only the key and value of {@code mid} are used, not its children.
+     *
+     * @see ARedBlackTreeMap#join(ARedBlackTreeMap.Tree, Object, Object, ARedBlackTreeMap.Tree)
+     */
+    static <T extends LongTree<T>> T join (T tl, T mid, T tr) {
+        final int hl = blackHeight (tl);
+        final int hr = blackHeight (tr);
+
+        if (hl > hr) {
+            final T result = joinRight (tl, mid, tr, hl, hr);
+            return isRedTree (result) && isRedTree (result.right) ? result.blacken () : result;
+        }
+        if (hl < hr) {
+            final T result = joinLeft (tl, mid, tr, hl, hr);
+            return isRedTree (result) && isRedTree (result.left) ? result.blacken () : result;
+        }
+        if (isRedTree (tl) || isRedTree (tr)) {
+            return mid.black (tl, tr);
+        }
+        return mid.red (tl, tr);
+    }
+
+    /**
+     * combines two balanced trees without a key between them
+     */
+    static <T extends LongTree<T>> T join (T tl, T tr) {
+        if (tl == null) return tr;
+        if (tr == null) return tl;
+
+        T last = tl;
+        while (last.right != null) last = last.right;
+        return join (withoutLast (tl), last, tr);
+    }
+
+    private static <T extends LongTree<T>> T withoutLast (T tree) {
+        if (tree.right == null) {
+            return tree.left;
+        }
+        return join (tree.left, tree, withoutLast (tree.right));
+    }
+
+    private static <T extends LongTree<T>> T joinRight (T tl, T mid, T tr, int hl, int hr) {
+        if (hl == hr && ! isRedTree (tl)) {
+            return mid.red (tl, tr);
+        }
+
+        final T newRight = joinRight (tl.right, mid, tr, isBlackTree (tl) ? hl - 1 : hl, hr);
+        if (isBlackTree (tl) && isRedTree (newRight) && isRedTree (newRight.right)) {
+            // two consecutive red nodes --> rotate left
+            return newRight.red (tl.black (tl.left, newRight.left), newRight.right.blacken ());
+        }
+        return tl.create (tl.left, newRight);
+    }
+
+    private static <T extends LongTree<T>> T joinLeft (T tl, T mid, T tr, int hl, int hr) {
+        if (hl == hr && ! isRedTree (tr)) {
+            return mid.red (tl, tr);
+        }
+
+        final T newLeft = joinLeft (tl, mid, tr.left, hl, isBlackTree (tr) ? hr - 1 : hr);
+        if (isBlackTree (tr) && isRedTree (newLeft) && isRedTree (newLeft.left)) {
+            // two consecutive red nodes --> rotate right
+            return newLeft.red (newLeft.left.blacken (), tr.black (newLeft.right, tr.right));
+        }
+        return tr.create (newLeft, tr.right);
+    }
+
+    static int blackHeight (LongTree<?> tree) {
+        int result = 0;
+        while (tree != null) {
+            if (tree.isBlack ()) result += 1;
+            tree = tree.left;
+        }
+        return result;
+    }
+
+    static class SplitResult<T extends LongTree<T>> {
+        final T left;
+        final T match;
+        final T right;
+
+        SplitResult (T left, T match, T right) {
+            this.left = left;
+            this.match = match;
+            this.right = right;
+        }
+    }
+
+    static <T extends LongTree<T>> SplitResult<T> split (T tree, long key) {
+        if (tree == null) {
+            return new SplitResult<> (null, null, null);
+        }
+
+        if (key == tree.key) {
+            return new SplitResult<> (tree.left, tree, tree.right);
+        }
+        if (key < tree.key) {
+            final SplitResult<T> s = split (tree.left, key);
+            return new SplitResult<> (s.left, s.match, join (s.right, tree, tree.right));
+        }
+        final SplitResult<T> s = split (tree.right, key);
+        return new SplitResult<> (join (tree.left, tree, s.left), s.match, s.right);
+    }
+
+    static final int UNION = 0;
+    static final int INTERSECTION = 1;
+    static final int DIFFERENCE = 2;
+
+    /**
+     * @see ARedBlackTreeMap#combine(int, ARedBlackTreeMap.Tree, ARedBlackTreeMap.Tree, java.util.Comparator, boolean)
+     */
+    static <T extends LongTree<T>> T combine (int op, T t1, T t2, boolean parallel) {
+        switch (op) {
+            case UNION:
+                if (t1 == null) return t2;
+                if (t2 == null) return t1;
+                break;
+            case INTERSECTION:
+                if (t1 == null || t2 == null) return null;
+                break;
+            case DIFFERENCE:
+                if (t1 == null || t2 == null) return t1;
+                break;
+        }
+
+        final T pivot = (op == INTERSECTION) ? t1 : t2;
+        final SplitResult<T> split = split (op == INTERSECTION ? t2 : t1, pivot.key);
+
+        // the operands of the recursive calls, keeping t1's parts as the first operand
+        final T left1  = (op == INTERSECTION) ? pivot.left  : split.left;
+        final T left2  = (op == INTERSECTION) ? split.left  : pivot.left;
+        final T right1 = (op == INTERSECTION) ? pivot.right : split.right;
+        final T right2 = (op == INTERSECTION) ? split.right : pivot.right;
+
+        final T left;
+        final T right;
+        if (parallel && t1.count + t2.count >= ARedBlackTreeMap.PARALLEL_THRESHOLD) {
+            final CombineTask<T> leftTask = new CombineTask<> (op, left1, left2);
+            leftTask.fork ();
+            right = combine (op, right1, right2, true);
+            left = leftTask.join ();
+        }
+        else {
+            left = combine (op, left1, left2, parallel);
+            right = combine (op, right1, right2, parallel);
+        }
+
+        switch (op) {
+            case UNION:        return join (left, pivot, right);
+            case INTERSECTION: return split.match != null ? join (left, pivot, right) : join (left, right);
+            default:           return join (left, right);
+        }
+    }
+
+    static class CombineTask<T extends LongTree<T>> extends RecursiveTask<T> {
+        private final int op;
+        private final T t1;
+        private final T t2;
+
+        CombineTask (int op, T t1, T t2) {
+            this.op = op;
+            this.t1 = t1;
+            this.t2 = t2;
+        }
+
+        @Override protected T compute () {
+            return combine (op, t1, t2, true);
+        }
+    }
+
+    static void validate (LongTree<?> tree) {
+        if (tree == null) {
+            return;
+        }
+
+        validate (tree.left);
+        validate (tree.right);
+
+        // rule 4: every red node has two black children
+        if (isRedTree (tree)) {
+            if (tree.left != null && isRedTree (tree.left)) {
+                throw new IllegalStateException ("tree " + tree.key + " is red and has a left child that is red");
+            }
+            if (tree.right != null && isRedTree (tree.right)) {
+                throw new IllegalStateException ("tree " + tree.key + " is red and has a right child that is red");
+            }
+        }
+
+        checkBlackDepth (tree);
+    }
+
+    private static int checkBlackDepth (LongTree<?> tree) {
+        if (tree == null) {
+            return 1;
+        }
+
+        final int own = isBlackTree (tree) ? 1 : 0;
+        final int left  = checkBlackDepth (tree.left);
+        final int right = checkBlackDepth (tree.right);
+
+        // rule 5: every path to 'leaf' nodes must have the same number of black nodes
+        if (left != right) {
+            throw new IllegalStateException ("left and right side have paths to leaf nodes with different numbers of black nodes: " + tree.key);
+        }
+        return own + left;
+    }
+
+
+    /**
+     * iterates over a tree's nodes in key order, returning {@link #toResult(LongTree)} for each of them
+     */
+    static abstract class TreeIterator<T extends LongTree<T>, R> implements Iterator<R> {
+        /*
+         * According to "Ralf Hinze. Constructing red-black trees" [http://www.cs.ox.ac.uk/ralf.hinze/publications/#P5]
+         * the maximum height of a red-black tree is 2*log_2(n + 2) - 2.
+         *
+         * According to {@see Integer#numberOfLeadingZeros} ceil(log_2(n)) = (32 - Integer.numberOfLeadingZeros(n - 1))
+         *
+         * We also don't store the deepest nodes in the pathStack so the maximum pathStack length is further reduced by one.
+         */
+        private final LongTree<?>[] pathStack;
+        private int stackIndex = 0;
+        private T next;
+
+        abstract R toResult (T tree);
+
+        TreeIterator (T root) {
+            // initialize 'next' with the leftmost element
+            if (root == null) {
+                pathStack = null;
+                next = null;
+            }
+            else {
+                pathStack = new LongTree<?> [2 * (32 - Integer.numberOfLeadingZeros(root.count + 2 - 1)) - 2 - 1];
+                next = root;
+                while (next.left != null) {
+                    pushPath (next);
+                    next = next.left;
+                }
+            }
+        }
+
+        @Override public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override public R next() {
+            if (next == null) {
+                throw new NoSuchElementException ();
+            }
+
+            final T cur = next;
+            next = findNext (next.right);
+            return toResult (cur);
+        }
+
+        @Override public void remove () {
+            throw new UnsupportedOperationException ();
+        }
+
+        private T findNext (T tree) {
+            while (true) {
+                if (tree == null) {
+                    return popPath ();
+                }
+                if (tree.left == null) {
+                    return tree;
+                }
+                pushPath (tree);
+                tree = tree.left;
+            }
+        }
+
+        private void pushPath (T tree) {
+            pathStack[stackIndex] = tree;
+            stackIndex += 1;
+        }
+
+        @SuppressWarnings ("unchecked")
+        private T popPath() {
+            if (stackIndex == 0) {
+                // convenience for handling the end of iteration
+                return null;
+            }
+            stackIndex -= 1;
+            return (T) pathStack[stackIndex];
+        }
+    }
+}
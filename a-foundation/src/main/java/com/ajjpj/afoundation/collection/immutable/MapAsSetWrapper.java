@@ -19,6 +19,10 @@ abstract class MapAsSetWrapper<K, C extends MapAsSetWrapper<K, C>> implements AS
         this.inner = (AMap<K, Boolean>) inner;
     }
 
+    AMap<K, Boolean> inner () {
+        return inner;
+    }
+
     @Override public C clear () {
         return wrapAsSet (inner.clear ());
     }
@@ -53,6 +57,18 @@ abstract class MapAsSetWrapper<K, C extends MapAsSetWrapper<K, C>> implements AS
         return inner.containsKey (el);
     }
 
+    @Override public AView<K> view () {
+        return AView.of (this);
+    }
+
+    @Override public ASpliterator<K> aSpliterator () {
+        return new AbstractASpliterator.MappedSpliterator<> (inner.aSpliterator (), new AFunction1NoThrow<AMapEntry<K, Boolean>, K> () {
+            @Override public K apply (AMapEntry<K, Boolean> param) {
+                return param.getKey ();
+            }
+        });
+    }
+
     @Override public Iterator<K> iterator () {
         return new Iterator<K> () {
             final Iterator<AMapEntry<K, Boolean>> iter = inner.iterator ();
@@ -193,6 +209,88 @@ abstract class MapAsSetWrapper<K, C extends MapAsSetWrapper<K, C>> implements AS
         return ACollectionHelper.foldLeft (this, startValue, f);
     }
 
+    //-------------------------------------- parallel operations
+
+    @Override public <R, E extends Exception> R parFold (AParallelism parallelism, R startValue, AFunction2<R, ? super K, R, E> f, AFunction2<R, R, R, E> combiner) throws E {
+        return ACollectionHelper.parFold (this, parallelism, startValue, f, combiner);
+    }
+
+    /**
+     * Every part is filtered into a map of the same kind as the inner map. The parts are disjoint and - for sorted maps -
+     *  in key order, so the partial maps can be combined along their structure rather than by adding their entries.
+     */
+    @SuppressWarnings ("unchecked")
+    @Override public <E extends Exception> C parFilter (AParallelism parallelism, final APredicate<? super K, E> pred) throws E {
+        final AMap<K, Boolean> empty = inner.clear ();
+        final AMap<K, Boolean> filtered = parallelism.process (aSpliterator (), new AFunction1<ASpliterator<K>, AMap<K, Boolean>, E> () {
+            @Override public AMap<K, Boolean> apply (ASpliterator<K> part) throws E {
+                AMap<K, Boolean> result = empty;
+                for (Iterator<K> it = part.iterator (); it.hasNext (); ) {
+                    final K el = it.next ();
+                    if (pred.apply (el)) {
+                        result = result.updated (el, Boolean.TRUE);
+                    }
+                }
+                return result;
+            }
+        }, new AFunction2<AMap<K, Boolean>, AMap<K, Boolean>, AMap<K, Boolean>, E> () {
+            @Override public AMap<K, Boolean> apply (AMap<K, Boolean> left, AMap<K, Boolean> right) {
+                return concatParts (left, right);
+            }
+        });
+        return wrapAsSet (filtered);
+    }
+
+    /**
+     * Hash based sets are mapped into partial hash tries that are merged structurally. Other sets return a view like
+     *  {@link #map(AFunction1)} does, because e.g. a comparator for the original elements can not sort the mapped elements.<p>
+     *
+     * Like {@link #map(AFunction1)}, the result uses 'equals' semantics regardless of this set's equality: the original
+     *  equality is defined for this set's elements and need not fit the mapped elements.
+     */
+    @Override public <X, E extends Exception> ASet<X> parMap (AParallelism parallelism, final AFunction1<? super K, ? extends X, E> f) throws E {
+        if (! (inner instanceof AHashMap)) {
+            return ACollectionHelper.asASetView (ACollectionHelper.parMap (this, parallelism, f));
+        }
+
+        final AHashMap<X, Boolean> empty = AHashMap.empty (AEquality.EQUALS);
+        final AHashMap<X, Boolean> mapped = parallelism.process (aSpliterator (), new AFunction1<ASpliterator<K>, AHashMap<X, Boolean>, E> () {
+            @Override public AHashMap<X, Boolean> apply (ASpliterator<K> part) throws E {
+                AHashMap<X, Boolean> result = empty;
+                for (Iterator<K> it = part.iterator (); it.hasNext (); ) {
+                    result = result.updated (f.apply (it.next ()), Boolean.TRUE);
+                }
+                return result;
+            }
+        }, new AFunction2<AHashMap<X, Boolean>, AHashMap<X, Boolean>, AHashMap<X, Boolean>, E> () {
+            @Override public AHashMap<X, Boolean> apply (AHashMap<X, Boolean> left, AHashMap<X, Boolean> right) {
+                return left.merged (right);
+            }
+        });
+        return AHashSet.fromMap (mapped);
+    }
+
+    /**
+     * combines two disjoint partial results, all of {@code left}'s elements preceding {@code right}'s in iteration order
+     */
+    private static <K> AMap<K, Boolean> concatParts (AMap<K, Boolean> left, AMap<K, Boolean> right) {
+        if (left instanceof AHashMap) {
+            return ((AHashMap<K, Boolean>) left).merged ((AHashMap<K, Boolean>) right);
+        }
+        if (left instanceof ARedBlackTreeMap) {
+            return ARedBlackTreeMap.concat ((ARedBlackTreeMap<K, Boolean>) left, (ARedBlackTreeMap<K, Boolean>) right);
+        }
+        if (left instanceof ABTreeMap) {
+            return ((ABTreeMap<K, Boolean>) left).updatedAll (right);
+        }
+
+        AMap<K, Boolean> result = left;
+        for (AMapEntry<K, Boolean> e: right) {
+            result = result.updated (e.getKey (), e.getValue ());
+        }
+        return result;
+    }
+
     @Override public <E extends Exception> AOption<K> find (APredicate<? super K, E> pred) throws E {
         return ACollectionHelper.find (this, pred);
     }
@@ -0,0 +1,81 @@
+package com.ajjpj.afoundation.collection.immutable;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+
+/**
+ * This is the generic implementation of {@link AMap#diff(AMap)} that works for arbitrary maps. It iterates over both
+ *  maps and looks up every key in the other map, so it takes time proportional to the size of the maps.
+ *
+ * @author arno
+ */
+class MapDiffIterator<K,V> implements Iterator<AMapChange<K,V>> {
+    private final AMap<K,V> oldMap;
+    private final AMap<K,V> newMap;
+
+    private final Iterator<AMapEntry<K,V>> oldIterator;
+    private final Iterator<AMapEntry<K,V>> newIterator;
+
+    private AMapChange<K,V> next;
+
+    MapDiffIterator (AMap<K,V> oldMap, AMap<K,V> newMap) {
+        this.oldMap = oldMap;
+        this.newMap = newMap;
+        this.oldIterator = oldMap.iterator ();
+        this.newIterator = newMap.iterator ();
+    }
+
+    static <K,V> Iterable<AMapChange<K,V>> diff (final AMap<K,V> oldMap, final AMap<K,V> newMap) {
+        return new Iterable<AMapChange<K, V>> () {
+            @Override public Iterator<AMapChange<K, V>> iterator () {
+                return new MapDiffIterator<> (oldMap, newMap);
+            }
+        };
+    }
+
+    private AMapChange<K,V> computeNext () {
+        // first all keys that were removed or changed, ...
+        while (oldIterator.hasNext ()) {
+            final AMapEntry<K,V> entry = oldIterator.next ();
+            if (! newMap.containsKey (entry.getKey ())) {
+                return AMapChange.removed (entry.getKey (), entry.getValue ());
+            }
+
+            final V newValue = newMap.getRequired (entry.getKey ());
+            if (! Objects.equals (entry.getValue (), newValue)) {
+                return AMapChange.changed (entry.getKey (), entry.getValue (), newValue);
+            }
+        }
+
+        // ... then all keys that were added
+        while (newIterator.hasNext ()) {
+            final AMapEntry<K,V> entry = newIterator.next ();
+            if (! oldMap.containsKey (entry.getKey ())) {
+                return AMapChange.added (entry.getKey (), entry.getValue ());
+            }
+        }
+        return null;
+    }
+
+    @Override public boolean hasNext () {
+        if (next == null) {
+            next = computeNext ();
+        }
+        return next != null;
+    }
+
+    @Override public AMapChange<K, V> next () {
+        if (! hasNext ()) {
+            throw new NoSuchElementException ();
+        }
+        final AMapChange<K,V> result = next;
+        next = null;
+        return result;
+    }
+
+    @Override public void remove () {
+        throw new UnsupportedOperationException ();
+    }
+}
@@ -2,6 +2,7 @@ package com.ajjpj.afoundation.collection.immutable;
 
 import com.ajjpj.afoundation.collection.ACollectionHelper;
 import com.ajjpj.afoundation.function.AFunction1;
+import com.ajjpj.afoundation.function.AFunction1NoThrow;
 import com.ajjpj.afoundation.function.APartialFunction;
 
 import java.util.Collection;
@@ -43,6 +44,9 @@ class MapValueCollection<K,V> extends AbstractACollection<V, AList<V>> { //TODO
     @Override public <X, E extends Exception> ACollection<X> map (AFunction1<? super V, ? extends X, E> f) throws E {
         return AList.create (ACollectionHelper.map (this, f));
     }
+    @Override public <X, E extends Exception> ACollection<X> parMap (AParallelism parallelism, AFunction1<? super V, ? extends X, E> f) throws E {
+        return AList.create (ACollectionHelper.parMap (this, parallelism, f));
+    }
     @SuppressWarnings ("unchecked")
     @Override public <X, E extends Exception> ACollection<X> flatMap (AFunction1<? super V, ? extends Iterable<X>, E> f) throws E {
         return AList.create (ACollectionHelper.flatMap (this, f));
@@ -52,6 +56,14 @@ class MapValueCollection<K,V> extends AbstractACollection<V, AList<V>> { //TODO
         return AList.create (ACollectionHelper.collect (this, pf));
     }
 
+    @Override public ASpliterator<V> aSpliterator () {
+        return new AbstractASpliterator.MappedSpliterator<> (inner.aSpliterator (), new AFunction1NoThrow<AMapEntry<K,V>, V> () {
+            @Override public V apply (AMapEntry<K, V> param) {
+                return param.getValue ();
+            }
+        });
+    }
+
     @Override public Iterator<V> iterator () {
         return new Iterator<V> () {
             private final Iterator<AMapEntry<K,V>> iter = inner.iterator ();
@@ -0,0 +1,166 @@
+package com.ajjpj.afoundation.collection.immutable;
+
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+
+/**
+ * This iterator calculates the differences between two tree based sorted maps, typically two versions of the same
+ *  map. It traverses both trees in key order at the same time, and it skips subtrees that are shared by both trees
+ *  without looking at their contents. So the cost of a diff depends mostly on the number of differences rather than
+ *  on the size of the maps.<p>
+ *
+ * Each side of the traversal is a stack of 'items' in ascending key order. An item is either a node that was not
+ *  expanded yet, or a single entry. If the topmost items on both sides are the same node, that node is skipped.
+ *  Otherwise the bigger of the two is expanded, so nodes shared by both trees eventually surface on both sides.
+ *
+ * @author arno
+ */
+abstract class SortedMapDiffIterator<K,V> implements Iterator<AMapChange<K,V>> {
+    private final Comparator<? super K> comparator;
+
+    private final ArrayDeque<Object> oldItems = new ArrayDeque<> ();
+    private final ArrayDeque<Boolean> oldIsEntry = new ArrayDeque<> ();
+    private final ArrayDeque<Object> newItems = new ArrayDeque<> ();
+    private final ArrayDeque<Boolean> newIsEntry = new ArrayDeque<> ();
+
+    private AMapChange<K,V> next;
+
+    SortedMapDiffIterator (Comparator<? super K> comparator, Object oldRoot, Object newRoot) {
+        this.comparator = comparator;
+
+        if (oldRoot != null) {
+            oldItems.push (oldRoot);
+            oldIsEntry.push (Boolean.FALSE);
+        }
+        if (newRoot != null) {
+            newItems.push (newRoot);
+            newIsEntry.push (Boolean.FALSE);
+        }
+    }
+
+    /**
+     * @return a measure for the size of a node that is used to decide which of two nodes to expand
+     */
+    abstract int weight (Object node);
+
+    /**
+     * pushes the contents of a node on the stack of items, in <em>descending</em> key order. Child nodes are pushed
+     *  by calling {@code pushNode}, entries by calling {@code pushEntry}.
+     */
+    abstract void expand (Object node, ArrayDeque<Object> items, ArrayDeque<Boolean> isEntry);
+
+    static void pushNode (Object node, ArrayDeque<Object> items, ArrayDeque<Boolean> isEntry) {
+        items.push (node);
+        isEntry.push (Boolean.FALSE);
+    }
+
+    static void pushEntry (AMapEntry<?,?> entry, ArrayDeque<Object> items, ArrayDeque<Boolean> isEntry) {
+        items.push (entry);
+        isEntry.push (Boolean.TRUE);
+    }
+
+    private void expandTop (ArrayDeque<Object> items, ArrayDeque<Boolean> isEntry) {
+        isEntry.pop ();
+        expand (items.pop (), items, isEntry);
+    }
+
+    @SuppressWarnings ("unchecked")
+    private AMapChange<K,V> computeNext () {
+        while (true) {
+            if (oldItems.isEmpty () && newItems.isEmpty ()) {
+                return null;
+            }
+
+            if (newItems.isEmpty ()) {
+                if (! oldIsEntry.peek ()) {
+                    expandTop (oldItems, oldIsEntry);
+                    continue;
+                }
+                oldIsEntry.pop ();
+                final AMapEntry<K,V> entry = (AMapEntry<K, V>) oldItems.pop ();
+                return AMapChange.removed (entry.getKey (), entry.getValue ());
+            }
+            if (oldItems.isEmpty ()) {
+                if (! newIsEntry.peek ()) {
+                    expandTop (newItems, newIsEntry);
+                    continue;
+                }
+                newIsEntry.pop ();
+                final AMapEntry<K,V> entry = (AMapEntry<K, V>) newItems.pop ();
+                return AMapChange.added (entry.getKey (), entry.getValue ());
+            }
+
+            final Object oldTop = oldItems.peek ();
+            final Object newTop = newItems.peek ();
+            final boolean oldTopIsEntry = oldIsEntry.peek ();
+            final boolean newTopIsEntry = newIsEntry.peek ();
+
+            if (oldTop == newTop && oldTopIsEntry == newTopIsEntry) {
+                // shared by both trees --> skip without looking inside
+                oldItems.pop ();
+                oldIsEntry.pop ();
+                newItems.pop ();
+                newIsEntry.pop ();
+                continue;
+            }
+
+            if (! oldTopIsEntry || ! newTopIsEntry) {
+                final int oldWeight = oldTopIsEntry ? -1 : weight (oldTop);
+                final int newWeight = newTopIsEntry ? -1 : weight (newTop);
+                if (oldWeight >= newWeight) {
+                    expandTop (oldItems, oldIsEntry);
+                }
+                if (newWeight >= oldWeight) {
+                    expandTop (newItems, newIsEntry);
+                }
+                continue;
+            }
+
+            final AMapEntry<K,V> oldEntry = (AMapEntry<K, V>) oldTop;
+            final AMapEntry<K,V> newEntry = (AMapEntry<K, V>) newTop;
+            final int cmp = comparator.compare (oldEntry.getKey (), newEntry.getKey ());
+            if (cmp < 0) {
+                oldItems.pop ();
+                oldIsEntry.pop ();
+                return AMapChange.removed (oldEntry.getKey (), oldEntry.getValue ());
+            }
+            if (cmp > 0) {
+                newItems.pop ();
+                newIsEntry.pop ();
+                return AMapChange.added (newEntry.getKey (), newEntry.getValue ());
+            }
+
+            oldItems.pop ();
+            oldIsEntry.pop ();
+            newItems.pop ();
+            newIsEntry.pop ();
+            if (! Objects.equals (oldEntry.getValue (), newEntry.getValue ())) {
+                return AMapChange.changed (oldEntry.getKey (), oldEntry.getValue (), newEntry.getValue ());
+            }
+        }
+    }
+
+    @Override public boolean hasNext () {
+        if (next == null) {
+            next = computeNext ();
+        }
+        return next != null;
+    }
+
+    @Override public AMapChange<K, V> next () {
+        if (! hasNext ()) {
+            throw new NoSuchElementException ();
+        }
+        final AMapChange<K,V> result = next;
+        next = null;
+        return result;
+    }
+
+    @Override public void remove () {
+        throw new UnsupportedOperationException ();
+    }
+}
@@ -0,0 +1,254 @@
+package com.ajjpj.afoundation.concurrent;
+
+import com.ajjpj.afoundation.function.AFunction1;
+import com.ajjpj.afoundation.util.AUnchecker;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+
+/**
+ * This class holds a reference to an immutable value - typically an {@link com.ajjpj.afoundation.collection.immutable.AMap},
+ *  {@link com.ajjpj.afoundation.collection.immutable.ASet} or {@link com.ajjpj.afoundation.collection.immutable.AList} -
+ *  and replaces it atomically by applying update functions to it. It replaces the hand-written 'read, modify,
+ *  compareAndSet, retry' loop around an {@link AtomicReference}.<p>
+ *
+ * An update is first applied directly with a single compareAndSet. If that fails because of concurrent modification,
+ *  the update function is added to a queue of pending updates instead. One of the waiting threads becomes the
+ *  'combiner': it applies all pending update functions in sequence and publishes the result with a single
+ *  compareAndSet, handing each waiting thread the value that its own function produced. While there are pending
+ *  updates or a combiner is at work, new updates are queued rather than applied directly, so they do not invalidate
+ *  the combiner's batch. So under heavy contention threads do not repeatedly invalidate each other's work, and a batch
+ *  of updates costs a single successful CAS.<p>
+ *
+ * Waiting threads spin briefly and then park until the combiner has applied their update, or until it is their turn
+ *  to become the combiner.<p>
+ *
+ * Update functions may be called more than once, and they may be called from a different thread than the one that
+ *  submitted them, so they must not have side effects. An exception thrown by an update function is rethrown in the
+ *  thread that submitted it, and the function's update is skipped without affecting the other updates in its batch.<p>
+ *
+ * The atom counts updates, failed CAS attempts and batches, so contention on shared state can be monitored.
+ *
+ * @author arno
+ */
+public class AAtom<T> {
+    /**
+     * number of times a waiting thread yields before it parks
+     */
+    private static final int SPIN_LIMIT = 64;
+
+    private final AtomicReference<T> value;
+
+    /**
+     * pending updates as a linked stack, i.e. the most recently added update first
+     */
+    private final AtomicReference<PendingUpdate<T>> pending = new AtomicReference<> ();
+    /**
+     * held by the combiner while it applies a batch, telling new updates to queue behind it
+     */
+    private final AtomicBoolean combinerLock = new AtomicBoolean ();
+
+    private final AtomicLong numUpdates = new AtomicLong ();
+    private final AtomicLong numRetries = new AtomicLong ();
+    private final AtomicLong numBatches = new AtomicLong ();
+    private final AtomicLong numBatchedUpdates = new AtomicLong ();
+    private final AtomicLong maxBatchSize = new AtomicLong ();
+
+    public AAtom (T initialValue) {
+        value = new AtomicReference<> (initialValue);
+    }
+
+    public T get () {
+        return value.get ();
+    }
+
+    public void set (T newValue) {
+        value.set (newValue);
+    }
+
+    public boolean compareAndSet (T expected, T newValue) {
+        return value.compareAndSet (expected, newValue);
+    }
+
+    /**
+     * Atomically replaces the value with the result of applying {@code f} to it.
+     *
+     * @return the new value, i.e. the value returned by {@code f}
+     */
+    public <E extends Exception> T update (AFunction1<T, T, E> f) throws E {
+        numUpdates.incrementAndGet ();
+
+        if (pending.get () == null && ! combinerLock.get ()) {
+            // no queued updates and no combiner at work --> try to apply the update directly
+            final T before = value.get ();
+            final T after = f.apply (before);
+            if (value.compareAndSet (before, after)) {
+                return after;
+            }
+            numRetries.incrementAndGet ();
+        }
+
+        final PendingUpdate<T> update = new PendingUpdate<> (f);
+        PendingUpdate<T> head;
+        do {
+            head = pending.get ();
+            update.next = head;
+        }
+        while (! pending.compareAndSet (head, update));
+
+        int numSpins = 0;
+        while (! update.done) {
+            if (! combinerLock.get () && combinerLock.compareAndSet (false, true)) {
+                try {
+                    combine ();
+                }
+                finally {
+                    combinerLock.set (false);
+                    wakeNextCombiner ();
+                }
+            }
+            else if (numSpins < SPIN_LIMIT) {
+                numSpins += 1;
+                Thread.yield ();
+            }
+            else {
+                LockSupport.park (this);
+            }
+        }
+
+        if (update.failure != null) {
+            AUnchecker.throwUnchecked (update.failure);
+        }
+        return update.result;
+    }
+
+    /**
+     * Updates that were queued while the combiner was at work are not part of its batch. Their threads may be parked, so one
+     *  of them is woken up to become the next combiner. A thread that queues an update after this check finds the lock free.
+     */
+    private void wakeNextCombiner () {
+        final PendingUpdate<T> head = pending.get ();
+        if (head != null) {
+            LockSupport.unpark (head.thread);
+        }
+    }
+
+    private void combine () {
+        PendingUpdate<T> stack = pending.getAndSet (null);
+        if (stack == null) {
+            return;
+        }
+
+        // reverse the stack so that updates are applied in the order in which they were queued
+        PendingUpdate<T> batch = null;
+        int batchSize = 0;
+        while (stack != null) {
+            final PendingUpdate<T> next = stack.next;
+            stack.next = batch;
+            batch = stack;
+            stack = next;
+            batchSize += 1;
+        }
+
+        while (true) {
+            final T before = value.get ();
+            T current = before;
+            for (PendingUpdate<T> u = batch; u != null; u = u.next) {
+                try {
+                    current = u.f.apply (current);
+                    u.result = current;
+                    u.failure = null;
+                }
+                catch (Throwable th) {
+                    u.failure = th;
+                }
+            }
+
+            if (value.compareAndSet (before, current)) {
+                break;
+            }
+            // another thread updated the value directly - either through set() or compareAndSet(), or because it checked
+            //  for pending updates before this batch was taken - so the whole batch is applied again
+            numRetries.incrementAndGet ();
+        }
+
+        numBatches.incrementAndGet ();
+        numBatchedUpdates.addAndGet (batchSize);
+        long max;
+        while ((max = maxBatchSize.get ()) < batchSize && ! maxBatchSize.compareAndSet (max, batchSize)) {
+            // retry
+        }
+
+        for (PendingUpdate<T> u = batch; u != null; ) {
+            final PendingUpdate<T> next = u.next;
+            u.done = true;
+            if (u.thread != Thread.currentThread ()) {
+                LockSupport.unpark (u.thread);
+            }
+            u = next;
+        }
+    }
+
+    /**
+     * @return the number of calls to {@link #update(AFunction1)}
+     */
+    public long getNumUpdates () {
+        return numUpdates.get ();
+    }
+
+    /**
+     * @return the number of failed compareAndSet operations in {@link #update(AFunction1)}, either for a single update
+     *  or for a batch of combined updates
+     */
+    public long getNumRetries () {
+        return numRetries.get ();
+    }
+
+    /**
+     * @return the number of batches of queued updates that were combined, i.e. applied with a single compareAndSet
+     */
+    public long getNumBatches () {
+        return numBatches.get ();
+    }
+
+    /**
+     * @return the total number of updates that were applied as part of a batch rather than directly
+     */
+    public long getNumBatchedUpdates () {
+        return numBatchedUpdates.get ();
+    }
+
+    public long getMaxBatchSize () {
+        return maxBatchSize.get ();
+    }
+
+    public double getAverageBatchSize () {
+        final long batches = numBatches.get ();
+        return batches == 0 ? 0 : numBatchedUpdates.get () / (double) batches;
+    }
+
+    @Override public String toString () {
+        return "AAtom{" + value.get () + "}";
+    }
+
+    private static class PendingUpdate<T> {
+        final AFunction1<T, T, ? extends Exception> f;
+        final Thread thread = Thread.currentThread ();
+        PendingUpdate<T> next;
+
+        T result;
+        Throwable failure;
+
+        /**
+         * written by the combiner after 'result' and 'failure', making them visible to the submitting thread
+         */
+        volatile boolean done;
+
+        PendingUpdate (AFunction1<T, T, ? extends Exception> f) {
+            this.f = f;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.ajjpj.afoundation.concurrent;
+
+import com.ajjpj.afoundation.function.AFunction1;
+import com.ajjpj.afoundation.function.AStatement2NoThrow;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * This class implements {@link ATaskScheduler#submitAll(List, AFunction1, long, TimeUnit)} for thread pools with a queue. Instead of
+ *  submitting a task per parameter, it splits the parameters into chunks of <code>grainSize</code> consecutive parameters and submits
+ *  one task per chunk, which evaluates the function for its parameters one after the other. Every parameter still has a future of its
+ *  own, but that is a plain {@link APromise} that the chunk's task completes.<p>
+ *
+ * The whole batch shares a single timeout. When it expires, all unfinished futures fail with a <code>TimeoutException</code>, and
+ *  chunks that are still running stop after their current parameter. The timeout is cancelled as soon as all futures are finished.<p>
+ *
+ * Futures of the batch can be cancelled individually. A chunk skips parameters whose future is finished before it gets to them.
+ *  Cancelling a future with <code>mayInterruptIfRunning</code> interrupts the chunk's task only once all futures of the chunk are
+ *  cancelled, because the task's thread is shared by all of them.<p>
+ *
+ * The pools use this class only for a grain size greater than 1. For a grain size of 1, they submit a task per parameter
+ *  with a timeout of its own instead, which avoids the overhead of a chunk task in addition to every parameter's future.
+ *
+ * @author arno
+ */
+class ABatchSubmission<T, R, E extends Exception> {
+    private final List<T> params;
+    private final AFunction1<T, R, E> taskFunction;
+    private final int grainSize;
+
+    private final List<APromise<R>> results;
+    private final List<AFutureImpl<Void>> chunks = new ArrayList<> ();
+    private final AtomicInteger numUnfinished;
+
+    private volatile boolean isTimedOut = false;
+
+    /**
+     * @param timeoutListenerExecutor fails the futures when the batch times out, running their listeners
+     */
+    static <T, R, E extends Exception> List<AFuture<R>> submit (ATaskScheduler owner, Executor executor, Executor timeoutListenerExecutor, AHashedWheelTimer timer, boolean shouldInterruptOnTimeout,
+                                                                int grainSize, List<T> params, AFunction1<T, R, E> taskFunction, long timeout, TimeUnit timeoutUnit) {
+        final ABatchSubmission<T,R,E> batch = new ABatchSubmission<> (owner, grainSize, params, taskFunction);
+        batch.start (executor, timeoutListenerExecutor, timer, shouldInterruptOnTimeout, timeout, timeoutUnit);
+        return new ArrayList<AFuture<R>> (batch.results);
+    }
+
+    private ABatchSubmission (ATaskScheduler owner, int grainSize, List<T> params, AFunction1<T, R, E> taskFunction) {
+        this.params = new ArrayList<> (params);
+        this.taskFunction = taskFunction;
+        this.grainSize = grainSize;
+
+        this.results = new ArrayList<> (this.params.size ());
+        for (int i=0; i<this.params.size (); i++) {
+            results.add (new ParamPromise (owner, i / grainSize));
+        }
+        this.numUnfinished = new AtomicInteger (results.size ());
+
+        for (int from=0; from<this.params.size (); from+=grainSize) {
+            final int chunkFrom = from;
+            final int chunkTo = Math.min (from + grainSize, this.params.size ());
+            chunks.add (new AFutureImpl<> (owner, new Callable<Void> () {
+                @Override public Void call () {
+                    runChunk (chunkFrom, chunkTo);
+                    return null;
+                }
+            }));
+        }
+    }
+
+    private void start (Executor executor, final Executor timeoutListenerExecutor, AHashedWheelTimer timer, final boolean shouldInterruptOnTimeout, long timeout, TimeUnit timeoutUnit) {
+        if (results.isEmpty ()) {
+            return;
+        }
+
+        final AHashedWheelTimer.Timeout timerTimeout = timer.schedule (new Runnable () {
+            @Override public void run () {
+                final Runnable expiry = new Runnable () {
+                    @Override public void run () {
+                        timeout (shouldInterruptOnTimeout);
+                    }
+                };
+                try {
+                    timeoutListenerExecutor.execute (expiry);
+                }
+                catch (RejectedExecutionException exc) {
+                    expiry.run ();
+                }
+            }
+        }, timeout, timeoutUnit);
+
+        final AStatement2NoThrow<R, Throwable> finishedListener = new AStatement2NoThrow<R, Throwable> () {
+            @Override public void apply (R param1, Throwable param2) {
+                if (numUnfinished.decrementAndGet () == 0) {
+                    timerTimeout.cancel ();
+                }
+            }
+        };
+        for (APromise<R> p: results) {
+            p.onFinished (finishedListener);
+        }
+
+        try {
+            for (AFutureImpl<Void> chunk: chunks) {
+                executor.execute (chunk);
+            }
+        }
+        catch (RuntimeException | Error exc) {
+            // chunks that were submitted already skip their remaining parameters
+            for (APromise<R> p: results) {
+                p.tryFailure (exc);
+            }
+            throw exc;
+        }
+    }
+
+    private void runChunk (int from, int to) {
+        for (int i=from; i<to && ! isTimedOut; i++) {
+            final APromise<R> result = results.get (i);
+            if (result.isFinished ()) {
+                continue;
+            }
+
+            try {
+                result.trySuccess (taskFunction.apply (params.get (i)));
+            }
+            catch (Throwable th) {
+                result.tryFailure (th);
+            }
+        }
+    }
+
+    /**
+     * This is the future of a single parameter.
+     */
+    private class ParamPromise extends APromise<R> {
+        private final int chunkIndex;
+
+        ParamPromise (ATaskScheduler owner, int chunkIndex) {
+            super (owner);
+            this.chunkIndex = chunkIndex;
+        }
+
+        @Override void interruptTask () {
+            final int from = chunkIndex * grainSize;
+            final int to = Math.min (from + grainSize, params.size ());
+            for (int i=from; i<to; i++) {
+                if (! results.get (i).isCancelled ()) {
+                    return;
+                }
+            }
+            chunks.get (chunkIndex).cancel (true);
+        }
+    }
+
+    /**
+     * This runs on the listener executor rather than the timer's thread because failing the futures runs their listeners.
+     */
+    private void timeout (boolean shouldInterruptOnTimeout) {
+        isTimedOut = true;
+        for (APromise<R> p: results) {
+            p.tryFailure (new TimeoutException ());
+        }
+        for (AFutureImpl<Void> chunk: chunks) {
+            chunk.expire (shouldInterruptOnTimeout);
+        }
+    }
+}
@@ -83,8 +83,8 @@ public class ACircuitBreaker implements ATaskScheduler {
     }
 
     private <R> AFuture<R> failure () {
-        final AFutureImpl<R> result = AFutureImpl.unscheduled (threadPool);
-        result.setException (new RejectedByCircuitBreakerException ("recovering from previous failures (CircuitBreaker)"));
+        final APromise<R> result = new APromise<> (threadPool);
+        result.tryFailure (new RejectedByCircuitBreakerException ("recovering from previous failures (CircuitBreaker)"));
         return result;
     }
 
@@ -68,7 +68,7 @@ public class AFutureHelper {
             throw new IllegalArgumentException ("only non-empty collections can be lifted");
         }
 
-        final AFutureImpl<List<T>> result = ((AFutureImpl) futures.iterator ().next ()).unscheduled ();
+        final APromise<List<T>> result = new APromise<> (threadPoolOf (futures));
         final ListCollector<T> collector = new ListCollector<> (futures.size ());
 
         int idx = 0;
@@ -77,11 +77,11 @@ public class AFutureHelper {
             f.onFinished (new AStatement2NoThrow<T, Throwable> () {
                 @Override public void apply (T param1, Throwable param2) {
                     if (param2 != null) {
-                        result.setException (param2);
+                        result.tryFailure (param2);
                     }
                     else {
                         if (collector.setValue (curIdx, param1) == 0) {
-                            result.set ((List) Arrays.asList (collector.data));
+                            result.trySuccess ((List) Arrays.asList (collector.data));
                         }
                     }
                 }
@@ -108,18 +108,18 @@ public class AFutureHelper {
             throw new IllegalArgumentException ("'anyOf' only supports non-empty collections");
         }
 
-        final AFutureImpl<T> result = ((AFutureImpl) futures.iterator ().next ()).unscheduled ();
+        final APromise<T> result = new APromise<> (threadPoolOf (futures));
         final AtomicInteger numUnfinished = new AtomicInteger (futures.size ());
 
         final AStatement2NoThrow<T, Throwable> listener = new AStatement2NoThrow<T, Throwable> () {
             @Override public void apply (T param1, Throwable param2) {
                 if (param2 == null) {
-                    result.set (param1);
+                    result.trySuccess (param1);
                 }
 
                 final int remaining = numUnfinished.decrementAndGet ();
-                if (remaining == 0) {
-                    result.setException (param2);
+                if (remaining == 0 && param2 != null) {
+                    result.tryFailure (param2);
                 }
             }
         };
@@ -131,6 +131,14 @@ public class AFutureHelper {
         return result;
     }
 
+    /**
+     * The combined future uses the first future's thread pool as its default, if that is known
+     */
+    private static ATaskScheduler threadPoolOf (Collection<? extends AFuture<?>> futures) {
+        final AFuture<?> first = futures.iterator ().next ();
+        return first instanceof APromise ? ((APromise<?>) first).threadPool : null;
+    }
+
     private static class ListCollector<T> {
         volatile Object[] data;
         final AtomicInteger numEmpty;
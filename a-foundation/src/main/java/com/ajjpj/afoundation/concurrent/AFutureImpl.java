@@ -1,317 +1,152 @@
 package com.ajjpj.afoundation.concurrent;
 
-import com.ajjpj.afoundation.collection.immutable.AList;
-import com.ajjpj.afoundation.collection.immutable.AOption;
-import com.ajjpj.afoundation.collection.tuples.ATuple2;
-import com.ajjpj.afoundation.collection.tuples.ATuple3;
-import com.ajjpj.afoundation.function.AFunction1;
-import com.ajjpj.afoundation.function.AStatement1NoThrow;
-import com.ajjpj.afoundation.function.AStatement2NoThrow;
-
-import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
 
 
 /**
+ * This is the future of a task that is submitted to an {@link AThreadPoolImpl}: an {@link APromise} that completes
+ *  itself by running the task.
+ *
  * @author arno
  */
-@SuppressWarnings ("Convert2Lambda")
-class AFutureImpl<T> extends FutureTask<T> implements AFuture<T> {
-    private final AtomicReference<AList<AStatement2NoThrow<T, Throwable>>> onFinishedListeners = new AtomicReference<> (AList.<AStatement2NoThrow<T, Throwable>>nil ());
+class AFutureImpl<T> extends APromise<T> implements RunnableFuture<T> {
+    // the runner and an interrupting thread agree on the interrupt through these states, like FutureTask does
+    private static final int INTERRUPT_POSSIBLE = 0;
+    private static final int INTERRUPTING = 1;
+    private static final int INTERRUPTED = 2;
+    private static final int NOT_INTERRUPTED = 3;
 
-    private final ATaskScheduler threadPool;
+    /**
+     * the number of times the runner yields while waiting for an interrupt to be delivered before it parks
+     */
+    private static final int SPIN_LIMIT = 64;
 
-    private static final Callable NO_CALLABLE = new Callable () {
-        @Override public Object call () throws Exception {
-            return null;
-        }
-    };
+    private static final AtomicIntegerFieldUpdater<AFutureImpl> INTERRUPT_STATE = AtomicIntegerFieldUpdater.newUpdater (AFutureImpl.class, "interruptState");
 
-    <X> AFutureImpl<X> unscheduled () {
-        return unscheduled (threadPool);
-    }
+    private final Callable<T> callable;
 
-    @SuppressWarnings ("unchecked")
-    static <X> AFutureImpl<X> unscheduled (ATaskScheduler threadPool) {
-        return new AFutureImpl<> (threadPool, NO_CALLABLE);
-    }
+    /**
+     * the thread that is running the task, or null if it was not started or is finished
+     */
+    private volatile Thread runner;
+    private volatile int interruptState = INTERRUPT_POSSIBLE;
 
     AFutureImpl (ATaskScheduler threadPool, Callable<T> callable) {
-        super (callable);
-        this.threadPool = threadPool;
+        super (threadPool);
+        this.callable = callable;
     }
     AFutureImpl (ATaskScheduler threadPool, Runnable runnable, T value) {
-        super (runnable, value);
-        this.threadPool = threadPool;
-    }
-
-     @Override public AFuture<T> withDefaultValue (final T defaultValue) {
-         final AFutureImpl<T> result = unscheduled ();
-
-         onFinished (new AStatement2NoThrow<T, Throwable> () {
-             @Override public void apply (T param1, Throwable param2) {
-                 if (param2 == null) {
-                     result.set (param1);
-                 }
-                 else {
-                     result.set (defaultValue);
-                 }
-             }
-         });
-         return result;
-     }
-
-    @Override protected void set (T t) {
-        super.set (t);
-    }
-
-    @Override protected void setException (Throwable t) {
-        super.setException (t);
-    }
-
-    void setTimedOut() {
-        setException (new TimeoutException ());
-    }
-
-    @Override public boolean isFinished () {
-        return super.isDone ();
-    }
-    @Override protected void done () {
-        notifyListeners ();
+        this (threadPool, Executors.callable (runnable, value));
     }
 
-    private void notifyListeners () {
-        T result = null;
-        Throwable th = null;
+    @Override public void run () {
+        if (isFinished ()) {
+            // cancelled or timed out before it was started
+            return;
+        }
 
+        runner = Thread.currentThread ();
         try {
-            result = get ();
+            if (! isFinished ()) {
+                trySuccess (callable.call ());
+            }
         }
-        catch (Exception exc) {
-            th = exc;
+        catch (Throwable th) {
+            tryFailure (th);
         }
-
-        // This method can be called several times, even concurrently - see the comment in onFinished(). Atomically removing all listeners from the list deals with
-        //  that concurrency in a robust fashion.
-        for (AStatement2NoThrow<T, Throwable> l: onFinishedListeners.getAndSet (AList.<AStatement2NoThrow<T,Throwable>>nil())) {
-            l.apply (result, th);
+        finally {
+            runner = null;
+            if (! INTERRUPT_STATE.compareAndSet (this, INTERRUPT_POSSIBLE, NOT_INTERRUPTED)) {
+                awaitInterrupt ();
+            }
         }
     }
 
-    @Override public void onSuccess (final AStatement1NoThrow<T> callback) {
-        onFinished (new AStatement2NoThrow<T, Throwable> () {
-            @Override public void apply (T param1, Throwable param2) {
-                if (param2 == null) {
-                    callback.apply (param1);
-                }
+    /**
+     * Another thread decided to interrupt the runner. The runner waits for the interrupt to be delivered so that it can not
+     *  hit the runner's next task, and then clears it: a ForkJoinPool does not clear the flag between tasks.
+     */
+    private void awaitInterrupt () {
+        for (int i=0; interruptState == INTERRUPTING; i++) {
+            if (i < SPIN_LIMIT) {
+                Thread.yield ();
             }
-        });
-    }
-
-    @Override public void onFailure (final AStatement1NoThrow<Throwable> callback) {
-        onFinished (new AStatement2NoThrow<T, Throwable> () {
-            @Override public void apply (T param1, Throwable param2) {
-                if (param2 != null) {
-                    callback.apply (param2);
-                }
+            else {
+                LockSupport.park (this);
             }
-        });
-    }
-
-    @Override public void onFinished (AStatement2NoThrow<T, Throwable> callback) {
-        AList<AStatement2NoThrow<T, Throwable>> prev;
-        do {
-            prev = onFinishedListeners.get ();
         }
-        while (! onFinishedListeners.compareAndSet (prev, prev.cons (callback)));
-
-        if (isDone ()) {
-            // This is necessary for notifying listeners that are registered *after* the future is done.
-            // NB: Doing it this way takes care of the situation that the future is not done at the beginning of onFinished() but becomes so before the listener is registered.
-            notifyListeners ();
+        if (interruptState == INTERRUPTED) {
+            Thread.interrupted ();
         }
     }
 
-    @SuppressWarnings ("unchecked")
-    @Override public <U, E extends Exception> AFuture<U> mapSync (final AFunction1<T, U, E> f) {
-        final AFutureImpl<U> result = new AFutureImpl<> (threadPool, NO_CALLABLE);
-
-        onFinished (new AStatement2NoThrow<T, Throwable> () {
-            @Override public void apply (T param1, Throwable param2) {
-                if (param2 != null) {
-                    if (param2 instanceof ExecutionException) {
-                        final ExecutionException ee = (ExecutionException) param2;
-                        if (ee.getCause () != null) {
-                            param2 = ee.getCause ();
-                        }
-                    }
-
-                    result.setException (param2);
-                    return;
-                }
-
-                try {
-                    result.set (f.apply (param1));
-                }
-                catch (Exception e) {
-                    result.setException (e);
-                }
-            }
-        });
-
-        return result;
-    }
-
-    @Override public <U, E extends Exception> AFuture<U> mapAsync (AFunction1<T, U, E> f, long timeout, TimeUnit timeoutUnit) {
-        return mapAsync (f, threadPool, timeout, timeoutUnit);
+    @Override public boolean isDone () {
+        return isFinished ();
     }
 
-    @SuppressWarnings ("unchecked")
-    @Override public <U, E extends Exception> AFuture<U> mapAsync (final AFunction1<T, U, E> f, final ATaskScheduler threadPool, final long timeout, final TimeUnit timeoutUnit) {
-        final AFutureImpl<U> result = new AFutureImpl<> (threadPool, NO_CALLABLE);
-
-        onFinished (new AStatement2NoThrow<T, Throwable> () {
-            @Override public void apply (final T param1, Throwable param2) {
-                if (param2 != null) {
-                    if (param2 instanceof ExecutionException) {
-                        final ExecutionException ee = (ExecutionException) param2;
-                        if (ee.getCause () != null) {
-                            param2 = ee.getCause ();
-                        }
-                    }
-                    result.setException (param2);
-                    return;
-                }
-
-                try {
-                    final AFuture<U> mappedFuture = threadPool.submit (new Callable<U> () {
-                        @Override public U call () throws Exception {
-                            return f.apply (param1);
-                        }
-                    }, timeout, timeoutUnit);
-
-                    mappedFuture.onFinished (new AStatement2NoThrow<U, Throwable> () {
-                        @Override public void apply (U param1, Throwable param2) {
-                            if (param2 != null) {
-                                result.setException (param2);
-                            }
-                            else {
-                                result.set (param1);
-                            }
-                        }
-                    });
-                }
-                catch (Throwable exc) {
-                    result.setException (exc);
-                }
-            }
-        });
-
+    /**
+     * @return an executor for the listeners of a pool's timed out futures. The pool's own threads may all be busy with long running
+     *  tasks, so the listeners get a daemon thread of their own that is started on demand and stops when it is idle.
+     */
+    static ThreadPoolExecutor newTimeoutListenerExecutor () {
+        final ThreadPoolExecutor result = new ThreadPoolExecutor (1, 1, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable> (),
+                AThreadFactory.createWithRunningPoolNumber ("AThreadPool-timeoutListeners", true));
+        result.allowCoreThreadTimeOut (true);
         return result;
     }
 
-    @SuppressWarnings ("unchecked")
-    @Override public <U> AFuture<ATuple2<T, U>> zip (AFuture<U> other) {
-        final AFutureImpl<ATuple2<T,U>> result = new AFutureImpl<> (threadPool, NO_CALLABLE);
-
-        final ResultCollector<T,U,Object> collector = new ResultCollector<> ();
-        collector.set3 (collector);
-
-        onFinished (new AStatement2NoThrow<T, Throwable> () {
-            @Override public void apply (T param1, Throwable param2) {
-                if (param2 != null) {
-                    result.setException (param2);
-                }
-                else {
-                    final boolean finished = collector.set1 (param1);
-                    if (finished) {
-                        result.set (new ATuple2<> (collector._1.get (), collector._2.get ()));
-                    }
-                }
-            }
-        });
-        other.onFinished (new AStatement2NoThrow<U, Throwable> () {
-            @Override public void apply (U param1, Throwable param2) {
-                if (param2 != null) {
-                    result.setException (param2);
-                }
-                else {
-                    final boolean finished = collector.set2 (param1);
-                    if (finished) {
-                        result.set (new ATuple2<> (collector._1.get (), collector._2.get ()));
-                    }
-                }
+    /**
+     * This is called by the timer's thread. Failing the future runs its listeners, so that is handed to the pool's
+     *  {@code timeoutListenerExecutor} instead of delaying the timer.
+     */
+    void setTimedOut (final boolean mayInterruptIfRunning, Executor timeoutListenerExecutor) {
+        final Runnable expiry = new Runnable () {
+            @Override public void run () {
+                expire (mayInterruptIfRunning);
             }
-        });
+        };
 
-        return result;
+        try {
+            timeoutListenerExecutor.execute (expiry);
+        }
+        catch (RejectedExecutionException exc) {
+            expiry.run ();
+        }
     }
 
-    @SuppressWarnings ("unchecked")
-    @Override public <U, V> AFuture<ATuple3<T, U, V>> zip (AFuture<U> other1, AFuture<V> other2) {
-        final AFutureImpl<ATuple3<T,U,V>> result = new AFutureImpl<> (threadPool, NO_CALLABLE);
-
-        final ResultCollector<T,U,V> collector = new ResultCollector<> ();
-
-        onFinished (new AStatement2NoThrow<T, Throwable> () {
-            @Override public void apply (T param1, Throwable param2) {
-                if (param2 != null) {
-                    result.setException (param2);
-                }
-                else {
-                    final boolean finished = collector.set1 (param1);
-                    if (finished) {
-                        result.set (new ATuple3<> (collector._1.get (), collector._2.get (), collector._3.get ()));
-                    }
-                }
-            }
-        });
-        other1.onFinished (new AStatement2NoThrow<U, Throwable> () {
-            @Override public void apply (U param1, Throwable param2) {
-                if (param2 != null) {
-                    result.setException (param2);
-                }
-                else {
-                    final boolean finished = collector.set2 (param1);
-                    if (finished) {
-                        result.set (new ATuple3<> (collector._1.get (), collector._2.get (), collector._3.get ()));
-                    }
-                }
-            }
-        });
-        other2.onFinished (new AStatement2NoThrow<V, Throwable> () {
-            @Override public void apply (V param1, Throwable param2) {
-                if (param2 != null) {
-                    result.setException (param2);
-                }
-                else {
-                    final boolean finished = collector.set3 (param1);
-                    if (finished) {
-                        result.set (new ATuple3<> (collector._1.get (), collector._2.get (), collector._3.get ()));
-                    }
-                }
-            }
-        });
-
-        return result;
+    void expire (boolean mayInterruptIfRunning) {
+        if (tryFailure (new TimeoutException ()) && mayInterruptIfRunning) {
+            interruptTask ();
+        }
     }
 
-    static class ResultCollector<R,S,T> {
-        private AOption<R> _1 = AOption.none ();
-        private AOption<S> _2 = AOption.none ();
-        private AOption<T> _3 = AOption.none ();
-
-        synchronized boolean set1 (R o) {
-            _1 = AOption.some (o);
-            return _2.isDefined () && _3.isDefined ();
+    @Override void interruptTask () {
+        if (! INTERRUPT_STATE.compareAndSet (this, INTERRUPT_POSSIBLE, INTERRUPTING)) {
+            // the task finished, or another thread interrupted it
+            return;
         }
-        synchronized boolean set2 (S o) {
-            _2 = AOption.some (o);
-            return _1.isDefined () && _3.isDefined ();
+
+        final Thread t = runner;
+        try {
+            if (t != null) {
+                t.interrupt ();
+            }
         }
-        synchronized boolean set3 (T o) {
-            _3 = AOption.some (o);
-            return _1.isDefined () && _2.isDefined ();
+        finally {
+            interruptState = (t != null) ? INTERRUPTED : NOT_INTERRUPTED;
+            if (t != null) {
+                LockSupport.unpark (t);
+            }
         }
     }
 }
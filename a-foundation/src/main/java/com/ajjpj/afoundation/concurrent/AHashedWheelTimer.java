@@ -0,0 +1,423 @@
+package com.ajjpj.afoundation.concurrent;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+
+/**
+ * A hashed wheel timer executes tasks after a delay, trading precision for cheap bookkeeping: scheduling and cancelling
+ *  a timeout are O(1) and do not take a lock. This makes it a good fit for timeouts that are scheduled for every task and
+ *  that are usually cancelled long before they expire, which is how {@link AThreadPool}s use it.<p>
+ *
+ * Time is divided into ticks of a configurable duration, and pending timeouts are kept in a 'wheel' of buckets with one
+ *  bucket per tick. A single worker thread advances the wheel once per tick and runs the tasks whose deadline has passed.
+ *  Timeouts therefore expire up to one tick late, and tasks must be short because they run on the worker thread.<p>
+ *
+ * Scheduling and cancelling threads never touch the wheel. They put timeouts into lock-free queues which the worker thread
+ *  drains at the start of every tick, so the wheel itself is accessed by the worker thread only.<p>
+ *
+ * The worker thread is a daemon thread that is started lazily when the first timeout is scheduled. It parks while there are
+ *  no pending timeouts, so a fine tick duration costs nothing for an idle timer. There is a {@link #shared()} instance with
+ *  a tick duration of {@link #DEFAULT_TICK_MILLIS} millisecond that is used by default.
+ *
+ * @author arno
+ */
+public class AHashedWheelTimer {
+    /**
+     * the default resolution: thread pools use timeouts of a few milliseconds, and a coarser tick would make them expire noticeably late
+     */
+    public static final long DEFAULT_TICK_MILLIS = 1;
+    public static final int DEFAULT_WHEEL_SIZE = 512;
+
+    /**
+     * the maximum number of newly scheduled timeouts that are moved to the wheel per tick, preventing a flood of new timeouts from delaying expiry
+     */
+    private static final int MAX_TRANSFER_PER_TICK = 100_000;
+
+    private static final int STATE_INIT = 0;
+    private static final int STATE_STARTED = 1;
+    private static final int STATE_SHUTDOWN = 2;
+
+    private static final AHashedWheelTimer SHARED = new AHashedWheelTimer ("AHashedWheelTimer-shared", DEFAULT_TICK_MILLIS, TimeUnit.MILLISECONDS, DEFAULT_WHEEL_SIZE);
+
+    /**
+     * @return the timer that is shared by all thread pools that were not configured with a timer of their own. It can not be shut down.
+     */
+    public static AHashedWheelTimer shared () {
+        return SHARED;
+    }
+
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+
+    private final ConcurrentLinkedQueue<Timeout> newTimeouts = new ConcurrentLinkedQueue<> ();
+    private final ConcurrentLinkedQueue<Timeout> cancelledTimeouts = new ConcurrentLinkedQueue<> ();
+
+    private final AtomicInteger state = new AtomicInteger (STATE_INIT);
+    private final Thread workerThread;
+    private volatile long startTime;
+
+    /**
+     * true while the worker thread is parked, or about to park, because there are no pending timeouts
+     */
+    private volatile boolean idle;
+
+    private final AtomicLong numScheduled = new AtomicLong ();
+    private final AtomicLong numCancelled = new AtomicLong ();
+    private final AtomicLong numExpired = new AtomicLong ();
+    private final AtomicLong numPending = new AtomicLong ();
+
+    /**
+     * Creates a timer with the default tick duration and wheel size.
+     */
+    public AHashedWheelTimer (String threadName) {
+        this (threadName, DEFAULT_TICK_MILLIS, TimeUnit.MILLISECONDS, DEFAULT_WHEEL_SIZE);
+    }
+
+    /**
+     * @param tickDuration the resolution of the timer: timeouts expire up to this duration late
+     * @param wheelSize the number of buckets in the wheel, rounded up to a power of two. Timeouts that are further in the future than
+     *                  <code>wheelSize</code> ticks stay in their bucket for several rounds, so this should cover typical timeouts.
+     */
+    public AHashedWheelTimer (String threadName, long tickDuration, TimeUnit tickUnit, int wheelSize) {
+        if (tickDuration <= 0) {
+            throw new IllegalArgumentException ("tick duration must be positive");
+        }
+        if (wheelSize <= 0 || wheelSize > (1 << 30)) {
+            throw new IllegalArgumentException ("wheel size must be between 1 and 2^30");
+        }
+
+        this.tickNanos = tickUnit.toNanos (tickDuration);
+
+        int size = 1;
+        while (size < wheelSize) {
+            size <<= 1;
+        }
+        this.wheel = new Bucket[size];
+        for (int i=0; i<size; i++) {
+            wheel[i] = new Bucket ();
+        }
+        this.mask = size - 1;
+
+        this.workerThread = new Thread (new Worker (), threadName);
+        workerThread.setDaemon (true);
+    }
+
+    /**
+     * Schedules a task to be run by the timer's worker thread after the given delay, or up to one tick later. The task should
+     *  be short and not block because it delays all other timeouts of this timer.
+     */
+    public Timeout schedule (Runnable task, long delay, TimeUnit delayUnit) {
+        if (task == null) {
+            throw new IllegalArgumentException ("task must not be null");
+        }
+        start ();
+
+        final Timeout result = new Timeout (this, task, System.nanoTime () - startTime + delayUnit.toNanos (delay));
+        numScheduled.incrementAndGet ();
+        numPending.incrementAndGet ();
+        newTimeouts.add (result);
+        if (idle) {
+            LockSupport.unpark (workerThread);
+        }
+        return result;
+    }
+
+    private void start () {
+        switch (state.get ()) {
+            case STATE_INIT:
+                if (state.compareAndSet (STATE_INIT, STATE_STARTED)) {
+                    final long now = System.nanoTime ();
+                    startTime = now == 0 ? 1 : now; // 0 means 'not initialized'
+                    workerThread.start ();
+                }
+                break;
+            case STATE_STARTED:
+                break;
+            default:
+                throw new IllegalStateException ("timer is shut down");
+        }
+
+        while (startTime == 0) {
+            // another thread is starting the worker thread right now
+            Thread.yield ();
+        }
+    }
+
+    /**
+     * Stops the worker thread. Pending timeouts are discarded without running their tasks.
+     */
+    public void shutdown () {
+        if (this == SHARED) {
+            throw new IllegalStateException ("the shared timer can not be shut down");
+        }
+        if (state.getAndSet (STATE_SHUTDOWN) == STATE_STARTED) {
+            workerThread.interrupt ();
+        }
+    }
+
+    /**
+     * @return the number of timeouts that were scheduled and neither expired nor cancelled yet
+     */
+    public long getNumPendingTimeouts () {
+        return numPending.get ();
+    }
+
+    /**
+     * @return the total number of calls to {@link #schedule(Runnable, long, TimeUnit)}
+     */
+    public long getNumScheduled () {
+        return numScheduled.get ();
+    }
+
+    /**
+     * @return the number of timeouts that were cancelled before they expired
+     */
+    public long getNumCancelled () {
+        return numCancelled.get ();
+    }
+
+    /**
+     * @return the number of timeouts whose task was run
+     */
+    public long getNumExpired () {
+        return numExpired.get ();
+    }
+
+    public long getTickNanos () {
+        return tickNanos;
+    }
+
+    @Override public String toString () {
+        return "AHashedWheelTimer{" + workerThread.getName () + ", pending=" + numPending.get () + "}";
+    }
+
+    /**
+     * This is the handle for a scheduled task. Its main purpose is to {@link #cancel()} the task.
+     */
+    public static class Timeout {
+        private static final int ST_PENDING = 0;
+        private static final int ST_CANCELLED = 1;
+        private static final int ST_EXPIRED = 2;
+
+        private static final AtomicIntegerFieldUpdater<Timeout> STATE = AtomicIntegerFieldUpdater.newUpdater (Timeout.class, "state");
+
+        private final AHashedWheelTimer timer;
+        private final Runnable task;
+        private final long deadline;
+
+        private volatile int state = ST_PENDING;
+
+        // the following fields are accessed by the worker thread only
+        long remainingRounds;
+        Timeout next;
+        Timeout prev;
+        Bucket bucket;
+
+        Timeout (AHashedWheelTimer timer, Runnable task, long deadline) {
+            this.timer = timer;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Cancels this timeout so that its task is not run.
+         *
+         * @return true if and only if the timeout was pending, i.e. it was neither cancelled before nor expired
+         */
+        public boolean cancel () {
+            if (! STATE.compareAndSet (this, ST_PENDING, ST_CANCELLED)) {
+                return false;
+            }
+            timer.numCancelled.incrementAndGet ();
+            timer.numPending.decrementAndGet ();
+            timer.cancelledTimeouts.add (this);
+            return true;
+        }
+
+        public boolean isCancelled () {
+            return state == ST_CANCELLED;
+        }
+
+        public boolean isExpired () {
+            return state == ST_EXPIRED;
+        }
+
+        void expire () {
+            if (! STATE.compareAndSet (this, ST_PENDING, ST_EXPIRED)) {
+                return;
+            }
+            timer.numExpired.incrementAndGet ();
+            timer.numPending.decrementAndGet ();
+
+            try {
+                task.run ();
+            }
+            catch (Throwable th) {
+                final Thread curThread = Thread.currentThread ();
+                curThread.getUncaughtExceptionHandler ().uncaughtException (curThread, th);
+            }
+        }
+    }
+
+    /**
+     * a doubly linked list of the timeouts that map to the same tick, modulo the wheel size
+     */
+    private static class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        void add (Timeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            }
+            else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        void remove (Timeout timeout) {
+            final Timeout next = timeout.next;
+            if (timeout.prev != null) {
+                timeout.prev.next = next;
+            }
+            if (next != null) {
+                next.prev = timeout.prev;
+            }
+
+            if (timeout == head) {
+                head = next;
+            }
+            if (timeout == tail) {
+                tail = timeout.prev;
+            }
+
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+
+        void expireTimeouts (long deadline) {
+            Timeout timeout = head;
+            while (timeout != null) {
+                final Timeout next = timeout.next;
+                if (timeout.isCancelled ()) {
+                    remove (timeout);
+                }
+                else if (timeout.remainingRounds <= 0 && timeout.deadline <= deadline) {
+                    remove (timeout);
+                    timeout.expire ();
+                }
+                else {
+                    timeout.remainingRounds -= 1;
+                }
+                timeout = next;
+            }
+        }
+    }
+
+    private class Worker implements Runnable {
+        private long tick;
+
+        @Override public void run () {
+            while (state.get () == STATE_STARTED) {
+                awaitPendingTimeouts ();
+
+                final long deadline = waitForNextTick ();
+                if (deadline < 0) {
+                    break;
+                }
+
+                removeCancelled ();
+                transferNewTimeouts ();
+                wheel[(int) (tick & mask)].expireTimeouts (deadline);
+                tick += 1;
+            }
+
+            newTimeouts.clear ();
+            cancelledTimeouts.clear ();
+        }
+
+        /**
+         * Parks the worker thread while there are no pending timeouts. The wheel holds only cancelled or expired timeouts at that
+         *  point, so the wheel can skip the ticks that passed while the thread was parked.
+         */
+        private void awaitPendingTimeouts () {
+            if (numPending.get () != 0) {
+                return;
+            }
+            removeCancelled ();
+
+            // 'idle' is set before numPending is checked, and schedule() increments numPending before it checks 'idle'
+            idle = true;
+            try {
+                while (numPending.get () == 0 && state.get () == STATE_STARTED) {
+                    LockSupport.park (this);
+                }
+            }
+            finally {
+                idle = false;
+            }
+            tick = Math.max (tick, (System.nanoTime () - startTime) / tickNanos);
+        }
+
+        /**
+         * @return the end of the current tick relative to the start time, or -1 if the timer was shut down while waiting
+         */
+        private long waitForNextTick () {
+            final long deadline = tickNanos * (tick + 1);
+            while (true) {
+                final long sleepNanos = deadline - (System.nanoTime () - startTime);
+                if (sleepNanos <= 0) {
+                    return deadline;
+                }
+
+                try {
+                    TimeUnit.NANOSECONDS.sleep (sleepNanos);
+                }
+                catch (InterruptedException exc) {
+                    if (state.get () == STATE_SHUTDOWN) {
+                        return -1;
+                    }
+                }
+            }
+        }
+
+        private void removeCancelled () {
+            Timeout timeout;
+            while ((timeout = cancelledTimeouts.poll ()) != null) {
+                // a timeout that was cancelled before it was transferred is not in a bucket
+                if (timeout.bucket != null) {
+                    timeout.bucket.remove (timeout);
+                }
+            }
+        }
+
+        private void transferNewTimeouts () {
+            for (int i=0; i<MAX_TRANSFER_PER_TICK; i++) {
+                final Timeout timeout = newTimeouts.poll ();
+                if (timeout == null) {
+                    break;
+                }
+                if (timeout.isCancelled ()) {
+                    continue;
+                }
+
+                final long calculatedTick = timeout.deadline / tickNanos;
+                timeout.remainingRounds = (calculatedTick - tick) / wheel.length;
+
+                // timeouts whose deadline has passed already go into the current bucket
+                final long ticks = Math.max (calculatedTick, tick);
+                wheel[(int) (ticks & mask)].add (timeout);
+            }
+        }
+    }
+}
@@ -0,0 +1,463 @@
+package com.ajjpj.afoundation.concurrent;
+
+import com.ajjpj.afoundation.collection.immutable.AOption;
+import com.ajjpj.afoundation.collection.tuples.ATuple2;
+import com.ajjpj.afoundation.collection.tuples.ATuple3;
+import com.ajjpj.afoundation.function.AFunction1;
+import com.ajjpj.afoundation.function.AStatement1NoThrow;
+import com.ajjpj.afoundation.function.AStatement2NoThrow;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+
+/**
+ * An APromise is an {@link AFuture} that is completed explicitly by calling {@link #trySuccess(Object)} or
+ *  {@link #tryFailure(Throwable)}, e.g. from the callback of an asynchronous RPC library. It is also the basis for the
+ *  futures returned by {@link AThreadPool}s.<p>
+ *
+ * All of a promise's state is kept in a single volatile field: while it is pending, that field holds a stack of
+ *  registered listeners, and completing the promise replaces the stack with the outcome in a single CAS. Only the
+ *  thread that wins the CAS gets the stack, so every listener is called exactly once - either by the completing thread
+ *  or, if it is registered after completion, by the registering thread. Listeners are called in the order in which they
+ *  were registered.<p>
+ *
+ * Listeners receive the actual cause of a failure, not an <code>ExecutionException</code> wrapping it. Only the
+ *  blocking {@link #get()} methods wrap it, as required by their contract.
+ *
+ * @author arno
+ */
+@SuppressWarnings ("Convert2Lambda")
+public class APromise<T> implements AFuture<T> {
+    private static final AtomicReferenceFieldUpdater<APromise, Object> STATE = AtomicReferenceFieldUpdater.newUpdater (APromise.class, Object.class, "state");
+    private static final AtomicReferenceFieldUpdater<APromise, CountDownLatch> WAITER = AtomicReferenceFieldUpdater.newUpdater (APromise.class, CountDownLatch.class, "waiter");
+
+    /**
+     * This is either a {@link Listeners} stack while the promise is pending, or an {@link Outcome} once it is finished.
+     */
+    private volatile Object state = Listeners.NONE;
+
+    /**
+     * This latch is shared by all threads that block on this promise, so that polling with short timeouts does not register a listener per call.
+     */
+    private volatile CountDownLatch waiter;
+
+    final ATaskScheduler threadPool;
+
+    /**
+     * Creates a promise without a default thread pool, i.e. {@link #mapAsync(AFunction1, long, TimeUnit)} requires an explicit thread pool.
+     */
+    public APromise () {
+        this (null);
+    }
+
+    /**
+     * @param threadPool is used by {@link #mapAsync(AFunction1, long, TimeUnit)} and as the default thread pool of derived futures
+     */
+    public APromise (ATaskScheduler threadPool) {
+        this.threadPool = threadPool;
+    }
+
+    /**
+     * Completes this promise successfully unless it is finished already.
+     *
+     * @return true if and only if this call completed the promise
+     */
+    public boolean trySuccess (T value) {
+        return complete (new Outcome (value, null, false));
+    }
+
+    /**
+     * Completes this promise with a failure unless it is finished already.
+     *
+     * @return true if and only if this call completed the promise
+     */
+    public boolean tryFailure (Throwable th) {
+        if (th == null) {
+            throw new IllegalArgumentException ("the cause of failure must not be null");
+        }
+        return complete (new Outcome (null, th, false));
+    }
+
+    /**
+     * Cancelling a promise fails it with a <code>CancellationException</code>. Subclasses that represent a running
+     *  computation interrupt it if {@code mayInterruptIfRunning} is true.
+     */
+    @Override public boolean cancel (boolean mayInterruptIfRunning) {
+        if (complete (new Outcome (null, new CancellationException (), true))) {
+            if (mayInterruptIfRunning) {
+                interruptTask ();
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * This is a hook for subclasses that run a task, it is called after the promise was cancelled.
+     */
+    void interruptTask () {
+    }
+
+    @Override public boolean isCancelled () {
+        final Object s = state;
+        return s instanceof Outcome && ((Outcome) s).cancelled;
+    }
+
+    @Override public boolean isFinished () {
+        return state instanceof Outcome;
+    }
+
+    private boolean complete (Outcome outcome) {
+        Object prev;
+        do {
+            prev = state;
+            if (prev instanceof Outcome) {
+                return false;
+            }
+        }
+        while (! STATE.compareAndSet (this, prev, outcome));
+
+        notifyListeners ((Listeners) prev, outcome);
+        return true;
+    }
+
+    private void notifyListeners (Listeners stack, Outcome outcome) {
+        // the stack has the most recently registered listener on top, so it is reversed to call listeners in registration order
+        Listeners reversed = Listeners.NONE;
+        for (Listeners l = stack; l != Listeners.NONE; l = l.next) {
+            reversed = new Listeners (l.listener, reversed);
+        }
+        for (Listeners l = reversed; l != Listeners.NONE; l = l.next) {
+            call (l.listener, outcome);
+        }
+    }
+
+    @SuppressWarnings ("unchecked")
+    private void call (AStatement2NoThrow<T, Throwable> listener, Outcome outcome) {
+        try {
+            listener.apply ((T) outcome.value, outcome.failure);
+        }
+        catch (Throwable th) {
+            // a failing listener must neither prevent the other listeners from being called nor fail the completing thread's task
+            final Thread curThread = Thread.currentThread ();
+            curThread.getUncaughtExceptionHandler ().uncaughtException (curThread, th);
+        }
+    }
+
+    @Override public void onFinished (AStatement2NoThrow<T, Throwable> callback) {
+        Object prev;
+        do {
+            prev = state;
+            if (prev instanceof Outcome) {
+                call (callback, (Outcome) prev);
+                return;
+            }
+        }
+        while (! STATE.compareAndSet (this, prev, new Listeners (callback, (Listeners) prev)));
+    }
+
+    @Override public void onSuccess (final AStatement1NoThrow<T> callback) {
+        onFinished (new AStatement2NoThrow<T, Throwable> () {
+            @Override public void apply (T param1, Throwable param2) {
+                if (param2 == null) {
+                    callback.apply (param1);
+                }
+            }
+        });
+    }
+
+    @Override public void onFailure (final AStatement1NoThrow<Throwable> callback) {
+        onFinished (new AStatement2NoThrow<T, Throwable> () {
+            @Override public void apply (T param1, Throwable param2) {
+                if (param2 != null) {
+                    callback.apply (param2);
+                }
+            }
+        });
+    }
+
+    //-------------------------------------- blocking access
+
+    @Override public T get () throws InterruptedException, ExecutionException {
+        if (! isFinished ()) {
+            await (awaitLatch (), false, 0);
+        }
+        return report ();
+    }
+
+    @Override public T get (long timeout, TimeUnit timeoutUnit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (! isFinished ()) {
+            if (! await (awaitLatch (), true, timeoutUnit.toNanos (timeout))) {
+                throw new TimeoutException ();
+            }
+        }
+        return report ();
+    }
+
+    /**
+     * Blocking is done with a latch that is created only when it is needed, keeping the non-blocking use of promises cheap.
+     */
+    private CountDownLatch awaitLatch () {
+        final CountDownLatch existing = waiter;
+        if (existing != null) {
+            return existing;
+        }
+
+        final CountDownLatch latch = new CountDownLatch (1);
+        if (! WAITER.compareAndSet (this, null, latch)) {
+            return waiter;
+        }
+        onFinished (new AStatement2NoThrow<T, Throwable> () {
+            @Override public void apply (T param1, Throwable param2) {
+                latch.countDown ();
+            }
+        });
+        return latch;
+    }
+
+    /**
+     * A thread of a work-stealing pool that blocks would reduce the pool's parallelism and could even starve it if the promise depends on tasks
+     *  that are queued in the same pool. Such threads therefore block through {@link ForkJoinPool#managedBlock(ForkJoinPool.ManagedBlocker)},
+     *  allowing the pool to compensate with a spare thread.
+     */
+    private static boolean await (final CountDownLatch latch, final boolean timed, long timeoutNanos) throws InterruptedException {
+        if (! (Thread.currentThread () instanceof ForkJoinWorkerThread)) {
+            if (timed) {
+                return latch.await (timeoutNanos, TimeUnit.NANOSECONDS);
+            }
+            latch.await ();
+            return true;
+        }
+
+        final long deadline = System.nanoTime () + timeoutNanos;
+        ForkJoinPool.managedBlock (new ForkJoinPool.ManagedBlocker () {
+            @Override public boolean block () throws InterruptedException {
+                if (timed) {
+                    latch.await (deadline - System.nanoTime (), TimeUnit.NANOSECONDS);
+                }
+                else {
+                    latch.await ();
+                }
+                return true;
+            }
+
+            @Override public boolean isReleasable () {
+                return latch.getCount () == 0 || (timed && deadline - System.nanoTime () <= 0);
+            }
+        });
+        return latch.getCount () == 0;
+    }
+
+    @SuppressWarnings ("unchecked")
+    private T report () throws ExecutionException {
+        final Outcome outcome = (Outcome) state;
+        if (outcome.cancelled) {
+            throw (CancellationException) outcome.failure;
+        }
+        if (outcome.failure != null) {
+            throw new ExecutionException (outcome.failure);
+        }
+        return (T) outcome.value;
+    }
+
+    //-------------------------------------- derived futures
+
+    @Override public AFuture<T> withDefaultValue (final T defaultValue) {
+        final APromise<T> result = new APromise<> (threadPool);
+
+        onFinished (new AStatement2NoThrow<T, Throwable> () {
+            @Override public void apply (T param1, Throwable param2) {
+                result.trySuccess (param2 == null ? param1 : defaultValue);
+            }
+        });
+        return result;
+    }
+
+    @Override public <U, E extends Exception> AFuture<U> mapSync (final AFunction1<T, U, E> f) {
+        final APromise<U> result = new APromise<> (threadPool);
+
+        onFinished (new AStatement2NoThrow<T, Throwable> () {
+            @Override public void apply (T param1, Throwable param2) {
+                if (param2 != null) {
+                    result.tryFailure (param2);
+                    return;
+                }
+
+                try {
+                    result.trySuccess (f.apply (param1));
+                }
+                catch (Throwable th) {
+                    result.tryFailure (th);
+                }
+            }
+        });
+
+        return result;
+    }
+
+    @Override public <U, E extends Exception> AFuture<U> mapAsync (AFunction1<T, U, E> f, long timeout, TimeUnit timeoutUnit) {
+        if (threadPool == null) {
+            throw new IllegalStateException ("this future has no default thread pool - pass a thread pool explicitly");
+        }
+        return mapAsync (f, threadPool, timeout, timeoutUnit);
+    }
+
+    @Override public <U, E extends Exception> AFuture<U> mapAsync (final AFunction1<T, U, E> f, final ATaskScheduler threadPool, final long timeout, final TimeUnit timeoutUnit) {
+        final APromise<U> result = new APromise<> (threadPool);
+
+        onFinished (new AStatement2NoThrow<T, Throwable> () {
+            @Override public void apply (final T param1, Throwable param2) {
+                if (param2 != null) {
+                    result.tryFailure (param2);
+                    return;
+                }
+
+                try {
+                    final AFuture<U> mappedFuture = threadPool.submit (new Callable<U> () {
+                        @Override public U call () throws Exception {
+                            return f.apply (param1);
+                        }
+                    }, timeout, timeoutUnit);
+
+                    mappedFuture.onFinished (new AStatement2NoThrow<U, Throwable> () {
+                        @Override public void apply (U param1, Throwable param2) {
+                            if (param2 != null) {
+                                result.tryFailure (param2);
+                            }
+                            else {
+                                result.trySuccess (param1);
+                            }
+                        }
+                    });
+                }
+                catch (Throwable th) {
+                    result.tryFailure (th);
+                }
+            }
+        });
+
+        return result;
+    }
+
+    @Override public <U> AFuture<ATuple2<T, U>> zip (AFuture<U> other) {
+        final APromise<ATuple2<T,U>> result = new APromise<> (threadPool);
+
+        final ResultCollector<T,U,Object> collector = new ResultCollector<> ();
+        collector.set3 (collector);
+
+        onFinished (new AStatement2NoThrow<T, Throwable> () {
+            @Override public void apply (T param1, Throwable param2) {
+                if (param2 != null) {
+                    result.tryFailure (param2);
+                }
+                else if (collector.set1 (param1)) {
+                    result.trySuccess (new ATuple2<> (collector._1.get (), collector._2.get ()));
+                }
+            }
+        });
+        other.onFinished (new AStatement2NoThrow<U, Throwable> () {
+            @Override public void apply (U param1, Throwable param2) {
+                if (param2 != null) {
+                    result.tryFailure (param2);
+                }
+                else if (collector.set2 (param1)) {
+                    result.trySuccess (new ATuple2<> (collector._1.get (), collector._2.get ()));
+                }
+            }
+        });
+
+        return result;
+    }
+
+    @Override public <U, V> AFuture<ATuple3<T, U, V>> zip (AFuture<U> other1, AFuture<V> other2) {
+        final APromise<ATuple3<T,U,V>> result = new APromise<> (threadPool);
+
+        final ResultCollector<T,U,V> collector = new ResultCollector<> ();
+
+        onFinished (new AStatement2NoThrow<T, Throwable> () {
+            @Override public void apply (T param1, Throwable param2) {
+                if (param2 != null) {
+                    result.tryFailure (param2);
+                }
+                else if (collector.set1 (param1)) {
+                    result.trySuccess (new ATuple3<> (collector._1.get (), collector._2.get (), collector._3.get ()));
+                }
+            }
+        });
+        other1.onFinished (new AStatement2NoThrow<U, Throwable> () {
+            @Override public void apply (U param1, Throwable param2) {
+                if (param2 != null) {
+                    result.tryFailure (param2);
+                }
+                else if (collector.set2 (param1)) {
+                    result.trySuccess (new ATuple3<> (collector._1.get (), collector._2.get (), collector._3.get ()));
+                }
+            }
+        });
+        other2.onFinished (new AStatement2NoThrow<V, Throwable> () {
+            @Override public void apply (V param1, Throwable param2) {
+                if (param2 != null) {
+                    result.tryFailure (param2);
+                }
+                else if (collector.set3 (param1)) {
+                    result.trySuccess (new ATuple3<> (collector._1.get (), collector._2.get (), collector._3.get ()));
+                }
+            }
+        });
+
+        return result;
+    }
+
+    @Override public String toString () {
+        final Object s = state;
+        if (! (s instanceof Outcome)) {
+            return "APromise{pending}";
+        }
+        final Outcome outcome = (Outcome) s;
+        return outcome.failure != null ? "APromise{failure=" + outcome.failure + "}" : "APromise{value=" + outcome.value + "}";
+    }
+
+    private static class Listeners {
+        static final Listeners NONE = new Listeners (null, null);
+
+        final AStatement2NoThrow listener;
+        final Listeners next;
+
+        Listeners (AStatement2NoThrow listener, Listeners next) {
+            this.listener = listener;
+            this.next = next;
+        }
+    }
+
+    private static class Outcome {
+        final Object value;
+        final Throwable failure;
+        final boolean cancelled;
+
+        Outcome (Object value, Throwable failure, boolean cancelled) {
+            this.value = value;
+            this.failure = failure;
+            this.cancelled = cancelled;
+        }
+    }
+
+    static class ResultCollector<R,S,T> {
+        private AOption<R> _1 = AOption.none ();
+        private AOption<S> _2 = AOption.none ();
+        private AOption<T> _3 = AOption.none ();
+
+        synchronized boolean set1 (R o) {
+            _1 = AOption.some (o);
+            return _2.isDefined () && _3.isDefined ();
+        }
+        synchronized boolean set2 (S o) {
+            _2 = AOption.some (o);
+            return _1.isDefined () && _3.isDefined ();
+        }
+        synchronized boolean set3 (T o) {
+            _3 = AOption.some (o);
+            return _1.isDefined () && _2.isDefined ();
+        }
+    }
+}
@@ -35,26 +35,26 @@ class ASyncThreadPool implements AThreadPool { //TODO test
     }
 
     @Override public <T> AFuture<T> submit (Callable<T> task, long timeout, TimeUnit timeoutUnit) {
-        final AFutureImpl<T> result = AFutureImpl.unscheduled (this);
+        final APromise<T> result = new APromise<> (this);
 
         try {
-            result.set (task.call ());
+            result.trySuccess (task.call ());
         }
         catch (Throwable th) {
-            result.setException (th);
+            result.tryFailure (th);
         }
         return result;
     }
 
     @Override public <T> AFuture<T> submit (Runnable task, T resultValue, long timeout, TimeUnit timeoutUnit) {
-        final AFutureImpl<T> result = AFutureImpl.unscheduled (this);
+        final APromise<T> result = new APromise<> (this);
 
         try {
             task.run ();
-            result.set (resultValue);
+            result.trySuccess (resultValue);
         }
         catch (Throwable th) {
-            result.setException (th);
+            result.tryFailure (th);
         }
         return result;
     }
@@ -13,7 +13,7 @@ import java.util.concurrent.*;
  *
  * Setter methods return the thread pool builder instance to provide a 'fluent API'.<p>
  *
- * There are three basic kinds of AThreadPools that can be built with this class. The following sections
+ * There are five basic kinds of AThreadPools that can be built with this class. The following sections
  *  deal with them in turn. <p>
  *
  * <em>Fixed size</em> thread pools have a fixed number of threads, which are created on thread pool creation
@@ -29,6 +29,14 @@ import java.util.concurrent.*;
  *  will never queue submitted tasks. Idling threads will be released after a timeout (see {@link #setReclaimTimeoutForUnusedThreads(long, java.util.concurrent.TimeUnit)}),
  *  but the pool's core size will always be maintained. Call {@link #buildDynamicSize(int, int)} to create a dynamic size thread pool.<p>
  *
+ * <em>Work-stealing</em> thread pools have a fixed number of threads with a task queue per thread instead of a single shared queue,
+ *  and idle threads steal tasks from busy threads' queues. They have the best throughput for large numbers of small tasks. Call
+ *  {@link #buildForkJoin(int)} to create a work-stealing thread pool.<p>
+ *
+ * <em>Virtual thread</em> pools run every task on a new virtual thread (or a pooled platform thread on JVMs without
+ *  virtual threads), optionally limiting the number of concurrently running tasks. They are intended for tasks that
+ *  mostly wait for blocking I/O. Call {@link #buildVirtualThreads()} or {@link #buildVirtualThreads(int)} to create one.<p>
+ *
  * <em>Synchronous</em> thread pools do not schedule submitted tasks to other threads at all, but execute them
  *  immediately on the caller's thread. They do however provide the error handling and callback semantics
  *  specified for {@link AThreadPool}s. Synchronous pools are useful mainly for functional testing. Call
@@ -47,6 +55,9 @@ public class AThreadPoolBuilder {
     private ThreadFactory threadFactory = Executors.defaultThreadFactory ();
     private RejectedExecutionHandler rejectedExecutionHandler = defaultHandler;
 
+    private AHashedWheelTimer timer = AHashedWheelTimer.shared ();
+    private int submitAllGrainSize = 1;
+
     private static final RejectedExecutionHandler defaultHandler = new ThreadPoolExecutor.AbortPolicy ();
 
     /**
@@ -92,6 +103,33 @@ public class AThreadPoolBuilder {
         return this;
     }
 
+    /**
+     * This method specifies the timer that checks the timeouts of submitted tasks. The default is {@link AHashedWheelTimer#shared()}, so
+     *  a pool needs a timer of its own only if it requires a different timeout resolution, or to isolate its timeout handling from other pools.
+     */
+    public AThreadPoolBuilder setTimer (AHashedWheelTimer timer) {
+        this.timer = timer;
+        return this;
+    }
+
+    /**
+     * This method specifies how many of the parameters passed to {@link ATaskScheduler#submitAll(java.util.List, com.ajjpj.afoundation.function.AFunction1, long, TimeUnit)}
+     *  are processed by a single task. Every parameter still gets a future of its own, but one task is queued per chunk of
+     *  <code>grainSize</code> parameters, evaluating them one after the other. The default is 1, i.e. every parameter is processed by a
+     *  task of its own with a timeout of its own, which gives the best latency. Larger values reduce the overhead for many small tasks. This parameter is used by
+     *  fixed size, dynamic size and work-stealing thread pools.<p>
+     *
+     * Batched submission is off unless the grain size is set to a value greater than 1. If it is, all parameters of a <code>submitAll</code> call
+     *  share a single timeout: when it expires, all of their futures that are not finished yet time out together.
+     */
+    public AThreadPoolBuilder setSubmitAllGrainSize (int grainSize) {
+        if (grainSize <= 0) {
+            throw new IllegalArgumentException ("grain size must be positive");
+        }
+        this.submitAllGrainSize = grainSize;
+        return this;
+    }
+
     /**
      * Creates a 'thread pool' that executes all submitted tasks in the caller's thread without maintaining either a queue or worker threads. It does however maintain
      *  error handling and callback semantics specified by {@link ATaskScheduler}. It is useful mainly for functional testing.
@@ -100,9 +138,37 @@ public class AThreadPoolBuilder {
         return new ASyncThreadPool ();
     }
 
-//    public AThreadPool buildForkJoin (int size) {
-//        return new AThreadPoolFjImpl (size, interruptOnTimeout);
-//    }
+    /**
+     * Creates a work-stealing thread pool with a fixed number of threads, each of which has a task queue of its own. Tasks that are submitted
+     *  from one of the pool's threads go to that thread's queue, and idle threads steal tasks from other threads' queues. This scales better
+     *  than a fixed size pool's single shared queue when many small tasks are submitted, especially if tasks submit further tasks.<p>
+     *
+     * Work-stealing pools are based on {@link java.util.concurrent.ForkJoinPool}, so they use its worker threads and ignore the settings for
+     *  the thread factory, work queue and rejected execution handler. Submissions are rejected only after the pool is shut down.
+     */
+    public AThreadPool buildForkJoin (int size) {
+        return new AThreadPoolFjImpl (size, interruptOnTimeout, timer, submitAllGrainSize);
+    }
+
+    /**
+     * Creates a thread pool for tasks that spend most of their time in blocking calls, e.g. JDBC or HTTP requests. Every task runs
+     *  on a thread of its own, which is a virtual thread if the JVM supports them, or a platform thread from an unbounded cached pool otherwise.
+     *  There is no limit to the number of concurrently running tasks, see {@link #buildVirtualThreads(int)}.
+     */
+    public AThreadPool buildVirtualThreads () {
+        return buildVirtualThreads (Integer.MAX_VALUE);
+    }
+
+    /**
+     * Creates a thread pool that runs every task on a thread of its own, like {@link #buildVirtualThreads()}, but with at most
+     *  <code>maxConcurrency</code> tasks running at the same time. This limit is a semaphore that waiting tasks acquire on their own
+     *  threads rather than a queue, so submitting never blocks or rejects a task.<p>
+     *
+     * These thread pools ignore all configuration except the timer: they always interrupt a task on timeout since threads are not reused.
+     */
+    public AThreadPool buildVirtualThreads (int maxConcurrency) {
+        return new AThreadPoolVirtualImpl (maxConcurrency, timer);
+    }
 
     /**
      * Creates a fixed size thread pool of the given size.
@@ -116,7 +182,7 @@ public class AThreadPoolBuilder {
             queue = new LinkedBlockingQueue<> ();
         }
 
-        return new AThreadPoolImpl (size, size, 0, TimeUnit.MILLISECONDS, queue, threadFactory, rejectedExecutionHandler, interruptOnTimeout);
+        return new AThreadPoolImpl (size, size, 0, TimeUnit.MILLISECONDS, queue, threadFactory, rejectedExecutionHandler, interruptOnTimeout, timer, submitAllGrainSize);
     }
 
     /**
@@ -126,6 +192,6 @@ public class AThreadPoolBuilder {
      *  specified with {@link #setReclaimTimeoutForUnusedThreads(long, java.util.concurrent.TimeUnit)}.
      */
     public AThreadPool buildDynamicSize (int coreSize, int maxSize) {
-        return new AThreadPoolImpl (coreSize, maxSize, unusedThreadThreshold, unusedThreadThresholdUnit, new SynchronousQueue<Runnable> (), threadFactory, rejectedExecutionHandler, interruptOnTimeout);
+        return new AThreadPoolImpl (coreSize, maxSize, unusedThreadThreshold, unusedThreadThresholdUnit, new SynchronousQueue<Runnable> (), threadFactory, rejectedExecutionHandler, interruptOnTimeout, timer, submitAllGrainSize);
     }
 }
@@ -0,0 +1,113 @@
+package com.ajjpj.afoundation.concurrent;
+
+import com.ajjpj.afoundation.function.AFunction1;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+
+
+/**
+ * This is a work-stealing AThreadPool based on a {@link ForkJoinPool} in 'async mode'. Every worker thread has a deque of its own,
+ *  and idle workers steal tasks from other workers' deques, so there is no single queue that all submitting and executing
+ *  threads contend for.<p>
+ *
+ * Tasks that are submitted by one of the pool's own worker threads go to that worker's local deque, where they are typically
+ *  executed by the same thread without any synchronization. Tasks submitted from other threads go to the pool's submission queues.
+ *  Tasks are executed in FIFO order per deque, which is fair for independent tasks that are not joined.
+ *
+ * @author arno
+ */
+class AThreadPoolFjImpl implements AThreadPool {
+    private final ForkJoinPool pool;
+    private final boolean shouldInterruptOnTimeout;
+    private final AHashedWheelTimer timer;
+    private final int submitAllGrainSize;
+
+    /**
+     * runs the listeners of futures that time out, keeping them off the shared timer thread
+     */
+    private final Executor timeoutListenerExecutor = AFutureImpl.newTimeoutListenerExecutor ();
+
+    AThreadPoolFjImpl (int size, boolean shouldInterruptOnTimeout, AHashedWheelTimer timer, int submitAllGrainSize) {
+        this.pool = new ForkJoinPool (size, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+        this.shouldInterruptOnTimeout = shouldInterruptOnTimeout;
+        this.timer = timer;
+        this.submitAllGrainSize = submitAllGrainSize;
+    }
+
+    @Override public <T> AFuture<T> submit (Callable<T> task, long timeout, TimeUnit timeoutUnit) {
+        return AThreadPoolSupport.registerTimeout (execute (new AFutureImpl<> (this, task)), timer, timeout, timeoutUnit, shouldInterruptOnTimeout, timeoutListenerExecutor);
+    }
+
+    @Override public <T> AFuture<T> submit (Runnable task, T result, long timeout, TimeUnit timeoutUnit) {
+        return AThreadPoolSupport.registerTimeout (execute (new AFutureImpl<> (this, task, result)), timer, timeout, timeoutUnit, shouldInterruptOnTimeout, timeoutListenerExecutor);
+    }
+
+    private <T> AFutureImpl<T> execute (AFutureImpl<T> f) {
+        dispatch (f);
+        return f;
+    }
+
+    private void dispatch (Runnable r) {
+        if (pool.isShutdown ()) {
+            throw new RejectedExecutionException ("thread pool is shut down");
+        }
+
+        final ForkJoinTask<?> task = ForkJoinTask.adapt (r);
+
+        final Thread curThread = Thread.currentThread ();
+        if (curThread instanceof ForkJoinWorkerThread && ((ForkJoinWorkerThread) curThread).getPool () == pool) {
+            // submitted from one of our own workers: push to its local deque
+            task.fork ();
+        }
+        else {
+            pool.execute (task);
+        }
+    }
+
+    @Override public <T, R, E extends Exception> List<AFuture<R>> submitAll (List<T> params, AFunction1<T, R, E> taskFunction, long timeout, TimeUnit timeoutUnit) {
+        if (submitAllGrainSize == 1) {
+            return AThreadPoolSupport.submitIndividually (this, params, taskFunction, timeout, timeoutUnit);
+        }
+
+        return ABatchSubmission.submit (this, new Executor () {
+            @Override public void execute (Runnable command) {
+                dispatch (command);
+            }
+        }, timeoutListenerExecutor, timer, shouldInterruptOnTimeout, submitAllGrainSize, params, taskFunction, timeout, timeoutUnit);
+    }
+
+    @Override public <T, R, E extends Exception> List<AFuture<R>> submitAllWithDefaultValue (List<T> params, AFunction1<T, R, E> taskFunction, long timeout, TimeUnit timeoutUnit, R defaultValue) {
+        return AThreadPoolSupport.withDefaultValue (submitAll (params, taskFunction, timeout, timeoutUnit), defaultValue);
+    }
+
+
+    @Override public void shutdown () {
+        pool.shutdown ();
+    }
+
+    /**
+     * A ForkJoinPool does not report the tasks it discards, so the returned list is always empty.
+     */
+    @Override public List<Runnable> shutdownNow () {
+        pool.shutdownNow ();
+        return Collections.emptyList ();
+    }
+
+    @Override public boolean isShutdown () {
+        return pool.isShutdown ();
+    }
+
+    @Override public boolean isTerminated () {
+        return pool.isTerminated ();
+    }
+
+    @Override public boolean awaitTermination (long timeout, TimeUnit unit) throws InterruptedException {
+        return pool.awaitTermination (timeout, unit);
+    }
+
+    @Override public String toString () {
+        return "AThreadPoolFjImpl{" + pool + "}";
+    }
+}
@@ -1,11 +1,7 @@
 package com.ajjpj.afoundation.concurrent;
 
-import com.ajjpj.afoundation.collection.ACollectionHelper;
 import com.ajjpj.afoundation.function.AFunction1;
-import com.ajjpj.afoundation.function.AFunction1NoThrow;
-import com.ajjpj.afoundation.function.AStatement2NoThrow;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.*;
 
@@ -16,24 +12,24 @@ import java.util.concurrent.*;
 class AThreadPoolImpl extends ThreadPoolExecutor implements AThreadPool {
     private final boolean shouldInterruptOnTimeout;
 
-    final ScheduledThreadPoolExecutor timeoutChecker;
+    /**
+     * The timer is typically shared between thread pools, so it is not shut down with the pool. Timeouts of tasks that are still pending
+     *  are cancelled when the tasks finish, or they expire and fail their futures.
+     */
+    final AHashedWheelTimer timer;
 
-    AThreadPoolImpl (int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit, BlockingQueue<Runnable> workQueue, ThreadFactory threadFactory, RejectedExecutionHandler handler, boolean shouldInterruptOnTimeout) {
-        super (corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, threadFactory, handler);
-        this.shouldInterruptOnTimeout = shouldInterruptOnTimeout;
-
-        timeoutChecker = new ScheduledThreadPoolExecutor (1, AThreadFactory.createWithRunningPoolNumber ("timeoutChecker", true));
-        timeoutChecker.setRemoveOnCancelPolicy (true);
-    }
+    private final int submitAllGrainSize;
 
-    @Override public void shutdown () {
-        super.shutdown ();
-        timeoutChecker.shutdown ();
-    }
+    /**
+     * runs the listeners of futures that time out, keeping them off the shared timer thread
+     */
+    private final Executor timeoutListenerExecutor = AFutureImpl.newTimeoutListenerExecutor ();
 
-    @Override public List<Runnable> shutdownNow () {
-        timeoutChecker.shutdownNow ();
-        return super.shutdownNow ();
+    AThreadPoolImpl (int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit, BlockingQueue<Runnable> workQueue, ThreadFactory threadFactory, RejectedExecutionHandler handler, boolean shouldInterruptOnTimeout, AHashedWheelTimer timer, int submitAllGrainSize) {
+        super (corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, threadFactory, handler);
+        this.shouldInterruptOnTimeout = shouldInterruptOnTimeout;
+        this.timer = timer;
+        this.submitAllGrainSize = submitAllGrainSize;
     }
 
     @Override protected <T> RunnableFuture<T> newTaskFor (Runnable runnable, T value) {
@@ -44,55 +40,22 @@ class AThreadPoolImpl extends ThreadPoolExecutor implements AThreadPool {
     }
 
     @Override public <T> AFuture<T> submit (Callable<T> task, long timeout, TimeUnit timeoutUnit) {
-        return register ((AFutureImpl<T>) submit (task), timeout, timeoutUnit);
+        return AThreadPoolSupport.registerTimeout ((AFutureImpl<T>) submit (task), timer, timeout, timeoutUnit, shouldInterruptOnTimeout, timeoutListenerExecutor);
     }
 
     @Override public <T> AFuture<T> submit (Runnable task, T result, long timeout, TimeUnit timeoutUnit) {
-        return register ((AFutureImpl<T>) submit (task, result), timeout, timeoutUnit);
+        return AThreadPoolSupport.registerTimeout ((AFutureImpl<T>) submit (task, result), timer, timeout, timeoutUnit, shouldInterruptOnTimeout, timeoutListenerExecutor);
     }
 
-    @Override public <T, R, E extends Exception> List<AFuture<R>> submitAll (List<T> params, final AFunction1<T, R, E> taskFunction, long timeout, TimeUnit timeoutUnit) {
-        // first transform all tasks to callables to submit either all or none, even if an exception occurs during transformation
-        final List<Callable<R>> callables = new ArrayList<> ();
-        for (final T param: params) {
-            callables.add (new Callable<R> () {
-                @Override public R call () throws Exception {
-                    return taskFunction.apply (param);
-                }
-            });
-        }
-
-        final List<AFuture<R>> result = new ArrayList<> ();
-        for (Callable<R> c: callables) {
-            result.add (submit (c, timeout, timeoutUnit));
+    @Override public <T, R, E extends Exception> List<AFuture<R>> submitAll (List<T> params, AFunction1<T, R, E> taskFunction, long timeout, TimeUnit timeoutUnit) {
+        if (submitAllGrainSize == 1) {
+            return AThreadPoolSupport.submitIndividually (this, params, taskFunction, timeout, timeoutUnit);
         }
-        return result;
+        return ABatchSubmission.submit (this, this, timeoutListenerExecutor, timer, shouldInterruptOnTimeout, submitAllGrainSize, params, taskFunction, timeout, timeoutUnit);
     }
 
-    @Override public <T, R, E extends Exception> List<AFuture<R>> submitAllWithDefaultValue (List<T> params, AFunction1<T, R, E> taskFunction, long timeout, TimeUnit timeoutUnit, final R defaultValue) {
-        final List<AFuture<R>> raw = submitAll (params, taskFunction, timeout, timeoutUnit);
-        return ACollectionHelper.map (raw, new AFunction1NoThrow<AFuture<R>, AFuture<R>> () {
-            @Override public AFuture<R> apply (AFuture<R> param) {
-                return param.withDefaultValue (defaultValue);
-            }
-        });
+    @Override public <T, R, E extends Exception> List<AFuture<R>> submitAllWithDefaultValue (List<T> params, AFunction1<T, R, E> taskFunction, long timeout, TimeUnit timeoutUnit, R defaultValue) {
+        return AThreadPoolSupport.withDefaultValue (submitAll (params, taskFunction, timeout, timeoutUnit), defaultValue);
     }
 
-    private <T> AFutureImpl<T> register (final AFutureImpl<T> f, long timeout, TimeUnit timeoutUnit) {
-        final Runnable timeoutCanceler = new Runnable () {
-            @Override public void run () {
-                f.setTimedOut ();
-                f.cancel (shouldInterruptOnTimeout);
-            }
-        };
-
-        final ScheduledFuture<?> timeoutFuture = timeoutChecker.schedule (timeoutCanceler, timeout, timeoutUnit);
-        f.onFinished (new AStatement2NoThrow<T, Throwable> () {
-            @Override public void apply (T param1, Throwable param2) {
-                timeoutFuture.cancel (false);
-            }
-        });
-
-        return f;
-    }
 }
@@ -0,0 +1,73 @@
+package com.ajjpj.afoundation.concurrent;
+
+import com.ajjpj.afoundation.collection.ACollectionHelper;
+import com.ajjpj.afoundation.function.AFunction1;
+import com.ajjpj.afoundation.function.AFunction1NoThrow;
+import com.ajjpj.afoundation.function.AStatement2NoThrow;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * This class contains the parts of the {@link AThreadPool} implementations that do not depend on how a pool executes its
+ *  tasks, so that timeouts and default values behave the same for all of them.
+ *
+ * @author arno
+ */
+class AThreadPoolSupport {
+    /**
+     * Schedules a submitted task's timeout, which is cancelled as soon as the task finishes.
+     *
+     * @param timeoutListenerExecutor fails the future when the timeout expires, running its listeners
+     */
+    static <T> AFutureImpl<T> registerTimeout (final AFutureImpl<T> f, AHashedWheelTimer timer, long timeout, TimeUnit timeoutUnit,
+                                               final boolean shouldInterruptOnTimeout, final Executor timeoutListenerExecutor) {
+        final Runnable timeoutCanceler = new Runnable () {
+            @Override public void run () {
+                f.setTimedOut (shouldInterruptOnTimeout, timeoutListenerExecutor);
+            }
+        };
+
+        final AHashedWheelTimer.Timeout timerTimeout = timer.schedule (timeoutCanceler, timeout, timeoutUnit);
+        f.onFinished (new AStatement2NoThrow<T, Throwable> () {
+            @Override public void apply (T param1, Throwable param2) {
+                timerTimeout.cancel ();
+            }
+        });
+
+        return f;
+    }
+
+    /**
+     * Submits a task with a timeout of its own per parameter.
+     */
+    static <T, R, E extends Exception> List<AFuture<R>> submitIndividually (ATaskScheduler scheduler, List<T> params, final AFunction1<T, R, E> taskFunction, long timeout, TimeUnit timeoutUnit) {
+        // first transform all tasks to callables to submit either all or none, even if an exception occurs during transformation
+        final List<Callable<R>> callables = new ArrayList<> ();
+        for (final T param: params) {
+            callables.add (new Callable<R> () {
+                @Override public R call () throws Exception {
+                    return taskFunction.apply (param);
+                }
+            });
+        }
+
+        final List<AFuture<R>> result = new ArrayList<> ();
+        for (Callable<R> c: callables) {
+            result.add (scheduler.submit (c, timeout, timeoutUnit));
+        }
+        return result;
+    }
+
+    static <R> List<AFuture<R>> withDefaultValue (List<AFuture<R>> futures, final R defaultValue) {
+        return ACollectionHelper.map (futures, new AFunction1NoThrow<AFuture<R>, AFuture<R>> () {
+            @Override public AFuture<R> apply (AFuture<R> param) {
+                return param.withDefaultValue (defaultValue);
+            }
+        });
+    }
+}
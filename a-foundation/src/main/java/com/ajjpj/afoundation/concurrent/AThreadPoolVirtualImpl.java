@@ -0,0 +1,208 @@
+package com.ajjpj.afoundation.concurrent;
+
+import com.ajjpj.afoundation.function.AFunction1;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+
+
+/**
+ * This is an AThreadPool that runs every task on a thread of its own, intended for tasks that spend most of their time in blocking
+ *  I/O. If the JVM supports virtual threads, those are used, making threads so cheap that there is no need to pool them. On older JVMs,
+ *  tasks run on platform threads from an unbounded cached pool instead.<p>
+ *
+ * There is no queue: a task's thread is started right away. The optional concurrency limit is a semaphore that a task acquires
+ *  on its own thread before it starts, so submitting never blocks, and a virtual thread waiting for a permit costs next to nothing.<p>
+ *
+ * Because threads are not reused for other tasks, a timeout always interrupts the task's thread, including a task that
+ *  is still waiting for a permit.<p>
+ *
+ * The JVM is accessed reflectively so that this class compiles and runs on Java 7.
+ *
+ * @author arno
+ */
+class AThreadPoolVirtualImpl implements AThreadPool {
+    private static final ThreadFactory VIRTUAL_THREAD_FACTORY = createVirtualThreadFactory ();
+
+    /**
+     * @return a factory for virtual threads, or null if the JVM does not support them
+     */
+    private static ThreadFactory createVirtualThreadFactory () {
+        try {
+            final Method ofVirtual = Thread.class.getMethod ("ofVirtual");
+            final Class<?> builderClass = Class.forName ("java.lang.Thread$Builder");
+
+            Object builder = ofVirtual.invoke (null);
+            builder = builderClass.getMethod ("name", String.class, long.class).invoke (builder, "AThreadPool-virtual-", 0L);
+            return (ThreadFactory) builderClass.getMethod ("factory").invoke (builder);
+        }
+        catch (Exception exc) {
+            return null;
+        }
+    }
+
+    static boolean isVirtualThreadSupported () {
+        return VIRTUAL_THREAD_FACTORY != null;
+    }
+
+    private final Executor executor;
+    private final ExecutorService platformThreads; // null if virtual threads are used
+    private final Semaphore limit; // null means 'unlimited'
+    private final AHashedWheelTimer timer;
+
+    private final Set<AFutureImpl<?>> running = Collections.newSetFromMap (new ConcurrentHashMap<AFutureImpl<?>, Boolean> ());
+    private final Object terminationLock = new Object ();
+    private volatile boolean isShutdown = false;
+
+    /**
+     * @param maxConcurrency the maximum number of tasks that are executed concurrently, or <code>Integer.MAX_VALUE</code> for 'unlimited'
+     */
+    AThreadPoolVirtualImpl (int maxConcurrency, AHashedWheelTimer timer) {
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException ("concurrency limit must be positive");
+        }
+
+        if (VIRTUAL_THREAD_FACTORY != null) {
+            this.platformThreads = null;
+            this.executor = new Executor () {
+                @Override public void execute (Runnable command) {
+                    VIRTUAL_THREAD_FACTORY.newThread (command).start ();
+                }
+            };
+        }
+        else {
+            this.platformThreads = new ThreadPoolExecutor (0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable> (),
+                    AThreadFactory.createWithRunningPoolNumber ("AThreadPool-perTask", true));
+            this.executor = platformThreads;
+        }
+
+        this.limit = maxConcurrency == Integer.MAX_VALUE ? null : new Semaphore (maxConcurrency);
+        this.timer = timer;
+    }
+
+    @Override public <T> AFuture<T> submit (Callable<T> task, long timeout, TimeUnit timeoutUnit) {
+        return AThreadPoolSupport.registerTimeout (execute (new AFutureImpl<> (this, limited (task))), timer, timeout, timeoutUnit, true, executor);
+    }
+
+    @Override public <T> AFuture<T> submit (Runnable task, T result, long timeout, TimeUnit timeoutUnit) {
+        return submit (Executors.callable (task, result), timeout, timeoutUnit);
+    }
+
+    /**
+     * The permit is acquired inside the callable, i.e. while the future's runner thread is known, so that a timeout can interrupt a waiting task
+     */
+    private <T> Callable<T> limited (final Callable<T> task) {
+        if (limit == null) {
+            return task;
+        }
+
+        return new Callable<T> () {
+            @Override public T call () throws Exception {
+                limit.acquire ();
+                try {
+                    return task.call ();
+                }
+                finally {
+                    limit.release ();
+                }
+            }
+        };
+    }
+
+    private <T> AFutureImpl<T> execute (final AFutureImpl<T> f) {
+        // the task is registered before checking for shutdown: either this thread sees the shutdown, or shutdownNow() sees the task
+        running.add (f);
+        if (isShutdown) {
+            taskFinished (f);
+            throw new RejectedExecutionException ("thread pool is shut down");
+        }
+
+        try {
+            executor.execute (new Runnable () {
+                @Override public void run () {
+                    try {
+                        f.run ();
+                    }
+                    finally {
+                        taskFinished (f);
+                    }
+                }
+            });
+        }
+        catch (RuntimeException | Error exc) {
+            taskFinished (f);
+            throw exc;
+        }
+        return f;
+    }
+
+    private void taskFinished (AFutureImpl<?> f) {
+        running.remove (f);
+        signalIfTerminated ();
+    }
+
+    private void signalIfTerminated () {
+        if (isTerminated ()) {
+            synchronized (terminationLock) {
+                terminationLock.notifyAll ();
+            }
+        }
+    }
+
+    @Override public <T, R, E extends Exception> List<AFuture<R>> submitAll (List<T> params, AFunction1<T, R, E> taskFunction, long timeout, TimeUnit timeoutUnit) {
+        return AThreadPoolSupport.submitIndividually (this, params, taskFunction, timeout, timeoutUnit);
+    }
+
+    @Override public <T, R, E extends Exception> List<AFuture<R>> submitAllWithDefaultValue (List<T> params, AFunction1<T, R, E> taskFunction, long timeout, TimeUnit timeoutUnit, R defaultValue) {
+        return AThreadPoolSupport.withDefaultValue (submitAll (params, taskFunction, timeout, timeoutUnit), defaultValue);
+    }
+
+
+    @Override public void shutdown () {
+        isShutdown = true;
+        if (platformThreads != null) {
+            platformThreads.shutdown ();
+        }
+        signalIfTerminated ();
+    }
+
+    /**
+     * All submitted tasks are running (or waiting for a permit), so this cancels and interrupts all of them, and the returned list is always empty.
+     */
+    @Override public List<Runnable> shutdownNow () {
+        shutdown ();
+        for (AFutureImpl<?> f: running) {
+            f.cancel (true);
+        }
+        return Collections.emptyList ();
+    }
+
+    @Override public boolean isShutdown () {
+        return isShutdown;
+    }
+
+    @Override public boolean isTerminated () {
+        return isShutdown && running.isEmpty ();
+    }
+
+    @Override public boolean awaitTermination (long timeout, TimeUnit unit) throws InterruptedException {
+        final long deadline = System.nanoTime () + unit.toNanos (timeout);
+        synchronized (terminationLock) {
+            while (! isTerminated ()) {
+                final long remainingMillis = TimeUnit.NANOSECONDS.toMillis (deadline - System.nanoTime ());
+                if (remainingMillis <= 0) {
+                    return false;
+                }
+                terminationLock.wait (remainingMillis);
+            }
+            return true;
+        }
+    }
+
+    @Override public String toString () {
+        return "AThreadPoolVirtualImpl{" + (isVirtualThreadSupported () ? "virtual threads" : "platform threads") + ", running=" + running.size () + "}";
+    }
+}
@@ -0,0 +1,224 @@
+package com.ajjpj.afoundation.collection.immutable;
+
+import com.ajjpj.afoundation.collection.AEquality;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * @author arno
+ */
+public class ACtrieMapTest {
+    /**
+     * an equality with very few hash values, causing collisions at every level of the trie
+     */
+    private static final AEquality WEAK_HASH = new AEquality () {
+        @Override public boolean equals (Object o1, Object o2) {
+            return Objects.equals (o1, o2);
+        }
+        @Override public int hashCode (Object o) {
+            return ((Integer) o) % 7;
+        }
+    };
+
+    @Test
+    public void testSimple() {
+        final ACtrieMap<String, Integer> map = new ACtrieMap<> ();
+        assertTrue (map.isEmpty ());
+        assertEquals (0, map.size ());
+        assertEquals (AOption.<Integer>none (), map.get ("a"));
+
+        assertEquals (AOption.<Integer>none (), map.put ("a", 1));
+        assertEquals (AOption.some (1), map.put ("a", 2));
+        assertEquals (AOption.some (2), map.putIfAbsent ("a", 3));
+        assertEquals (AOption.<Integer>none (), map.putIfAbsent ("b", 4));
+
+        assertEquals (AOption.some (2), map.get ("a"));
+        assertEquals (Integer.valueOf (4), map.getOrNull ("b"));
+        assertEquals (Integer.valueOf (99), map.getOrDefault ("c", 99));
+        assertTrue (map.containsKey ("b"));
+        assertFalse (map.containsKey ("c"));
+        assertEquals (2, map.size ());
+
+        assertEquals (AOption.some (2), map.remove ("a"));
+        assertEquals (AOption.<Integer>none (), map.remove ("a"));
+        assertEquals (1, map.size ());
+
+        map.clear ();
+        assertTrue (map.isEmpty ());
+        assertFalse (map.containsKey ("b"));
+    }
+
+    @Test
+    public void testRandomOperations() {
+        doTestRandomOperations (new ACtrieMap<Integer, Integer> (), 10_000);
+    }
+
+    @Test
+    public void testHashCollisions() {
+        doTestRandomOperations (new ACtrieMap<Integer, Integer> (WEAK_HASH), 500);
+    }
+
+    private void doTestRandomOperations (ACtrieMap<Integer, Integer> map, int keyRange) {
+        final Map<Integer, Integer> reference = new HashMap<> ();
+        final Random rand = new Random (12345);
+
+        for (int i=0; i<100_000; i++) {
+            final Integer key = rand.nextInt (keyRange);
+            if (rand.nextBoolean ()) {
+                assertEquals (AOption.fromNullable (reference.put (key, i)), map.put (key, i));
+            }
+            else {
+                assertEquals (AOption.fromNullable (reference.remove (key)), map.remove (key));
+            }
+
+            if (i % 10_000 == 0) {
+                assertEquals (reference, map.snapshot ().asJavaUtilMap ());
+            }
+        }
+
+        for (int key=0; key<keyRange; key++) {
+            assertEquals (AOption.fromNullable (reference.get (key)), map.get (key));
+        }
+        assertEquals (reference.size (), map.size ());
+        assertEquals (reference, map.snapshot ().asJavaUtilMap ());
+
+        for (Integer key: new ArrayList<> (reference.keySet ())) {
+            assertEquals (AOption.fromNullable (reference.remove (key)), map.remove (key));
+        }
+        assertTrue (map.isEmpty ());
+    }
+
+    @Test
+    public void testSnapshotIsolation() {
+        final ACtrieMap<Integer, Integer> map = new ACtrieMap<> ();
+        for (int i=0; i<1000; i++) {
+            map.put (i, i);
+        }
+
+        final AMap<Integer, Integer> snapshot = map.snapshot ();
+        for (int i=0; i<1000; i++) {
+            if (i%2 == 0) {
+                map.remove (i);
+            }
+            else {
+                map.put (i, -i);
+            }
+        }
+        map.put (5000, 5000);
+
+        assertEquals (1000, snapshot.size ());
+        assertEquals (501, map.size ());
+        for (int i=0; i<1000; i++) {
+            assertEquals (Integer.valueOf (i), snapshot.getRequired (i));
+        }
+        assertFalse (snapshot.containsKey (5000));
+
+        final AMap<Integer, Integer> snapshot2 = map.snapshot ();
+        assertEquals (501, snapshot2.size ());
+        assertEquals (Integer.valueOf (-1), snapshot2.getRequired (1));
+        assertFalse (snapshot2.containsKey (0));
+    }
+
+    @Test
+    public void testSnapshotAsAMap() {
+        final ACtrieMap<String, Integer> map = new ACtrieMap<> ();
+        map.put ("a", 1);
+        map.put ("b", 2);
+
+        final AMap<String, Integer> snapshot = map.snapshot ();
+        final AMap<String, Integer> hashMap = AHashMap.<String, Integer>empty ().updated ("a", 1).updated ("b", 2);
+
+        assertEquals (hashMap, snapshot);
+        assertEquals (snapshot, hashMap);
+        assertEquals (hashMap.hashCode (), snapshot.hashCode ());
+        assertEquals (hashMap.keys (), snapshot.keys ());
+
+        assertEquals (hashMap.updated ("c", 3), snapshot.updated ("c", 3));
+        assertEquals (hashMap.removed ("a"), snapshot.removed ("a"));
+        assertTrue (snapshot.clear ().isEmpty ());
+
+        // modifying the snapshot has no effect on the map or the snapshot itself
+        assertEquals (2, snapshot.size ());
+        assertEquals (2, map.size ());
+    }
+
+    @Test
+    public void testConcurrentWriters() throws Exception {
+        final int numThreads = 8;
+        final int numKeysPerThread = 20_000;
+
+        final ACtrieMap<Integer, Integer> map = new ACtrieMap<> ();
+        final CountDownLatch latch = new CountDownLatch (1);
+        final AtomicReference<Throwable> failure = new AtomicReference<> ();
+
+        final List<Thread> threads = new ArrayList<> ();
+        for (int t=0; t<numThreads; t++) {
+            final int offset = t*numKeysPerThread;
+            threads.add (new Thread () {
+                @Override public void run () {
+                    try {
+                        latch.await ();
+                        for (int i=0; i<numKeysPerThread; i++) {
+                            map.put (offset + i, i);
+                        }
+                        // remove every other key again, concurrently with the other threads' inserts
+                        for (int i=0; i<numKeysPerThread; i+=2) {
+                            assertEquals (AOption.some (i), map.remove (offset + i));
+                        }
+                    }
+                    catch (Throwable th) {
+                        failure.set (th);
+                    }
+                }
+            });
+        }
+
+        // a reader that takes snapshots concurrently with the writers and checks that they are consistent
+        final Thread reader = new Thread () {
+            @Override public void run () {
+                try {
+                    latch.await ();
+                    for (int i=0; i<50; i++) {
+                        final AMap<Integer, Integer> snapshot = map.snapshot ();
+                        int count = 0;
+                        for (AMapEntry<Integer, Integer> e: snapshot) {
+                            assertEquals (snapshot.getRequired (e.getKey ()), e.getValue ());
+                            count += 1;
+                        }
+                        assertEquals (count, snapshot.size ());
+                    }
+                }
+                catch (Throwable th) {
+                    failure.set (th);
+                }
+            }
+        };
+
+        for (Thread th: threads) {
+            th.start ();
+        }
+        reader.start ();
+        latch.countDown ();
+        for (Thread th: threads) {
+            th.join ();
+        }
+        reader.join ();
+
+        if (failure.get () != null) {
+            throw new AssertionError (failure.get ());
+        }
+
+        assertEquals (numThreads * numKeysPerThread / 2, map.size ());
+        for (int t=0; t<numThreads; t++) {
+            for (int i=0; i<numKeysPerThread; i++) {
+                assertEquals (i%2 != 0, map.containsKey (t*numKeysPerThread + i));
+            }
+        }
+    }
+}
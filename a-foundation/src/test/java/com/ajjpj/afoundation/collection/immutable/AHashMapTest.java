@@ -5,13 +5,19 @@ import com.ajjpj.afoundation.collection.immutable.AHashMap;
 import com.ajjpj.afoundation.collection.immutable.AMap;
 import com.ajjpj.afoundation.collection.immutable.AOption;
 import com.ajjpj.afoundation.function.AFunction1NoThrow;
+import com.ajjpj.afoundation.function.AFunction3;
+import com.ajjpj.afoundation.function.AStatement2;
 import org.junit.Ignore;
 import org.junit.Test;
 import static org.junit.Assert.*;
 import static org.junit.Assert.assertEquals;
 
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 /**
@@ -222,6 +228,164 @@ public class AHashMapTest {
 
         assertEquals(AOption.some(1L), map.get(1L));
         assertEquals(AOption.some(withHash1), map.get(withHash1));
+
+        final Long withHash1b = 0x200000003L;
+        assertEquals(1, withHash1b.hashCode());
+
+        map = map.updated(withHash1b, withHash1b);
+        assertEquals(3, map.size());
+        map = map.updated(1L, 2L);
+        assertEquals(3, map.size());
+        map = map.removed(withHash1);
+        assertEquals(2, map.size());
+        map = map.removed(withHash1);
+        assertEquals(2, map.size());
+    }
+
+    @Test
+    public void testManyHashCollisions() {
+        // keys below 1000 have distinct hash codes, all others share one of seven hash codes
+        final AEquality weakHash = new AEquality () {
+            @Override public boolean equals (Object o1, Object o2) {
+                return o1.equals (o2);
+            }
+            @Override public int hashCode (Object o) {
+                final int i = (Integer) o;
+                return i < 1000 ? i : i % 7;
+            }
+        };
+
+        final Random rand = new Random (12345);
+        for (int iter=0; iter<30; iter++) {
+            final Map<Integer, Integer> ref1 = new HashMap<> ();
+            final Map<Integer, Integer> ref2 = new HashMap<> ();
+            AHashMap<Integer, Integer> map1 = AHashMap.empty (weakHash);
+            final AHashMap.Builder<Integer, Integer> builder = AHashMap.builder (weakHash);
+
+            final int numOps = rand.nextInt (3000);
+            for (int i=0; i<numOps; i++) {
+                final int key = rand.nextInt (2000);
+                if (rand.nextInt (3) == 0) {
+                    ref1.remove (key);
+                    map1 = map1.removed (key);
+                }
+                else {
+                    ref1.put (key, i);
+                    map1 = map1.updated (key, i);
+                }
+                if (rand.nextBoolean ()) {
+                    ref2.put (key, -i);
+                    builder.add (key, -i);
+                }
+            }
+            final AHashMap<Integer, Integer> map2 = builder.build ();
+
+            assertEqualsRef (ref1, map1);
+            assertEqualsRef (ref2, map2);
+
+            final Map<Integer, Integer> merged = new HashMap<> (ref1);
+            merged.putAll (ref2);
+            assertEqualsRef (merged, map1.merged (map2));
+
+            final Map<Integer, Integer> retained = new HashMap<> (ref1);
+            retained.keySet ().retainAll (ref2.keySet ());
+            assertEqualsRef (retained, map1.retainedKeys (map2));
+
+            final Map<Integer, Integer> removed = new HashMap<> (ref1);
+            removed.keySet ().removeAll (ref2.keySet ());
+            assertEqualsRef (removed, map1.removedKeys (map2));
+
+            int numChanges = 0;
+            for (AMapChange<Integer, Integer> change: map1.diff (map2)) {
+                numChanges += 1;
+                assertEquals (ref1.get (change.getKey ()), change.getOldValue ());
+                assertEquals (ref2.get (change.getKey ()), change.getNewValue ());
+            }
+            final Set<Integer> allKeys = new HashSet<> (ref1.keySet ());
+            allKeys.addAll (ref2.keySet ());
+            int expectedChanges = 0;
+            for (Integer key: allKeys) {
+                if (! Objects.equals (ref1.get (key), ref2.get (key))) expectedChanges += 1;
+            }
+            assertEquals (expectedChanges, numChanges);
+
+            for (Integer key: new ArrayList<> (ref1.keySet ())) {
+                map1 = map1.removed (key);
+            }
+            assertTrue (map1.isEmpty ());
+        }
+    }
+
+    private static void assertEqualsRef (Map<Integer, Integer> expected, AHashMap<Integer, Integer> actual) {
+        assertEquals (expected.size (), actual.size ());
+        int numEntries = 0;
+        for (AMapEntry<Integer, Integer> e: actual) {
+            assertEquals (expected.get (e.getKey ()), e.getValue ());
+            numEntries += 1;
+        }
+        assertEquals (expected.size (), numEntries);
+        for (Map.Entry<Integer, Integer> e: expected.entrySet ()) {
+            assertEquals (e.getValue (), actual.getOrNull (e.getKey ()));
+        }
+
+        final Map<Integer, Integer> visited = new HashMap<> ();
+        actual.forEach (new AStatement2<Integer, Integer, RuntimeException> () {
+            @Override public void apply (Integer key, Integer value) {
+                assertNull (visited.put (key, value));
+            }
+        });
+        assertEquals (expected, visited);
+    }
+
+    @Test
+    public void testForEachAndFoldLeft() {
+        final AFunction3<List<Integer>, Integer, Integer, List<Integer>, RuntimeException> collectKeys = new AFunction3<List<Integer>, Integer, Integer, List<Integer>, RuntimeException> () {
+            @Override public List<Integer> apply (List<Integer> acc, Integer key, Integer value) {
+                assertEquals (key, value);
+                acc.add (key);
+                return acc;
+            }
+        };
+
+        AHashMap<Integer, Integer> map = AHashMap.empty ();
+        assertTrue (map.foldLeft (new ArrayList<Integer> (), collectKeys).isEmpty ());
+
+        final Random rand = new Random (12345);
+        for (int i=0; i<10_000; i++) {
+            final int key = rand.nextInt ();
+            map = map.updated (key, key);
+        }
+
+        // foldLeft visits the entries in iteration order
+        final List<Integer> iterated = new ArrayList<> ();
+        for (AMapEntry<Integer, Integer> e: map) {
+            iterated.add (e.getKey ());
+        }
+        assertEquals (iterated, map.foldLeft (new ArrayList<Integer> (), collectKeys));
+
+        final long[] sum = new long[1];
+        map.forEach (new AStatement2<Integer, Integer, RuntimeException> () {
+            @Override public void apply (Integer key, Integer value) {
+                sum[0] += value;
+            }
+        });
+        long expectedSum = 0;
+        for (Integer key: iterated) {
+            expectedSum += key;
+        }
+        assertEquals (expectedSum, sum[0]);
+
+        try {
+            map.forEach (new AStatement2<Integer, Integer, IOException> () {
+                @Override public void apply (Integer key, Integer value) throws IOException {
+                    throw new IOException ();
+                }
+            });
+            fail ("exception expected");
+        }
+        catch (IOException exc) {
+            // expected
+        }
     }
 
     @Test
@@ -277,4 +441,211 @@ public class AHashMapTest {
         assertEquals (AOption.<String>none (), map.get (key2));
         assertEquals ("3", map.getRequired (key3));
     }
+
+    @Test
+    public void testBuilder() {
+        final Random rand = new Random (12345);
+
+        final AHashMap.Builder<Integer, Integer> builder = AHashMap.builder ();
+        AMap<Integer, Integer> reference = AHashMap.empty ();
+
+        for (int i=0; i<100_000; i++) {
+            final int key = rand.nextInt (50_000);
+            builder.add (key, i);
+            reference = reference.updated (key, i);
+        }
+
+        final AHashMap<Integer, Integer> built = builder.build ();
+        assertEquals (reference.size (), built.size ());
+        assertEquals (reference, built);
+        for (AMapEntry<Integer, Integer> e: reference) {
+            assertEquals (e.getValue (), built.getRequired (e.getKey ()));
+        }
+    }
+
+    @Test
+    public void testBuilderDoesNotModifyBuiltMaps() {
+        final AHashMap.Builder<Integer, Integer> builder = AHashMap.builder ();
+        for (int i=0; i<1000; i++) {
+            builder.add (i, i);
+        }
+        final AHashMap<Integer, Integer> first = builder.build ();
+
+        for (int i=0; i<2000; i++) {
+            builder.add (i, -i);
+        }
+        final AHashMap<Integer, Integer> second = builder.build ();
+
+        assertEquals (1000, first.size ());
+        assertEquals (2000, second.size ());
+        for (int i=0; i<1000; i++) {
+            assertEquals (Integer.valueOf (i), first.getRequired (i));
+            assertEquals (Integer.valueOf (-i), second.getRequired (i));
+        }
+
+        // a built map is unaffected by persistent updates of maps derived from it and vice versa
+        final AHashMap<Integer, Integer> third = second.updated (5000, 5000);
+        assertEquals (2000, second.size ());
+        assertEquals (2001, third.size ());
+    }
+
+    @Test
+    public void testTrieNodeFieldsAreFinal() {
+        // maps are handed to other threads without synchronization, which is safe because their nodes' fields are final
+        for (Field f: AHashMap.HashTrieMap.class.getDeclaredFields ()) {
+            assertTrue (f.getName (), Modifier.isFinal (f.getModifiers ()));
+        }
+    }
+
+    @Test
+    public void testBuilderHashCollision() {
+        final Long withHash1 = 0x100000000L;
+
+        final AHashMap<Long, Long> map = AHashMap.<Long, Long>builder ()
+                .add (1L, 1L)
+                .add (withHash1, withHash1)
+                .add (2L, 2L)
+                .build ();
+
+        assertEquals (3, map.size ());
+        assertEquals (AOption.some (1L), map.get (1L));
+        assertEquals (AOption.some (withHash1), map.get (withHash1));
+        assertEquals (AOption.some (2L), map.get (2L));
+    }
+
+    @Test
+    public void testFromJavaUtilMap() {
+        final Map<String, Integer> ju = new HashMap<> ();
+        for (int i=0; i<1000; i++) {
+            ju.put ("" + i, i);
+        }
+
+        final AHashMap<String, Integer> map = AHashMap.fromJavaUtilMap (ju);
+        assertEquals (ju, map.asJavaUtilMap ());
+        assertEquals (AHashMap.<String, Integer>empty (), AHashMap.fromJavaUtilMap (new HashMap<String, Integer> ()));
+    }
+
+    @Test
+    public void testMerged() {
+        final Random rand = new Random (12345);
+
+        for (int iter=0; iter<20; iter++) {
+            AHashMap<Integer, Integer> a = AHashMap.empty ();
+            AHashMap<Integer, Integer> b = AHashMap.empty ();
+            final Map<Integer, Integer> expectedOverlay = new HashMap<> ();
+            final Map<Integer, Integer> expectedSum = new HashMap<> ();
+
+            final int numEntries = rand.nextInt (5000);
+            for (int i=0; i<numEntries; i++) {
+                final int key = rand.nextInt (10_000);
+                if (rand.nextBoolean ()) {
+                    a = a.updated (key, key);
+                }
+                else {
+                    b = b.updated (key, -key);
+                }
+            }
+
+            for (AMapEntry<Integer, Integer> e: a) {
+                expectedOverlay.put (e.getKey (), e.getValue ());
+                expectedSum.put (e.getKey (), e.getValue ());
+            }
+            for (AMapEntry<Integer, Integer> e: b) {
+                expectedOverlay.put (e.getKey (), e.getValue ());
+                expectedSum.put (e.getKey (), a.containsKey (e.getKey ()) ? 0 : e.getValue ());
+            }
+
+            final AHashMap<Integer, Integer> overlay = a.merged (b);
+            assertEquals (expectedOverlay.size (), overlay.size ());
+            assertEquals (expectedOverlay, overlay.asJavaUtilMap ());
+
+            final AHashMap<Integer, Integer> sum = a.merged (b, new AFunction3<Integer, Integer, Integer, Integer, RuntimeException> () {
+                @Override public Integer apply (Integer key, Integer v1, Integer v2) {
+                    return v1 + v2;
+                }
+            });
+            assertEquals (expectedSum.size (), sum.size ());
+            assertEquals (expectedSum, sum.asJavaUtilMap ());
+        }
+    }
+
+    @Test
+    public void testMergedReusesStructure() {
+        AHashMap<Integer, Integer> base = AHashMap.empty ();
+        for (int i=0; i<10_000; i++) {
+            base = base.updated (i, i);
+        }
+
+        assertSame (base, base.merged (base));
+        assertSame (base, base.merged (AHashMap.<Integer, Integer>empty ()));
+        assertSame (base, AHashMap.<Integer, Integer>empty ().merged (base));
+
+        final AHashMap<Integer, Integer> changed = base.updated (5, 500);
+        assertSame (changed, base.merged (changed));
+        assertSame (base, base.merged (base.updated (5, 5)));
+
+        final AHashMap<Integer, Integer> merged = base.merged (AHashMap.<Integer, Integer>empty ().updated (20_000, 1));
+        assertEquals (10_001, merged.size ());
+        assertEquals (Integer.valueOf (1), merged.getRequired (20_000));
+    }
+
+    @Test
+    public void testMergedHashCollision() {
+        final Long withHash1 = 0x100000000L;
+
+        final AHashMap<Long, String> a = AHashMap.<Long, String>empty ().updated (1L, "a1").updated (2L, "a2");
+        final AHashMap<Long, String> b = AHashMap.<Long, String>empty ().updated (withHash1, "b").updated (1L, "b1");
+
+        final AHashMap<Long, String> merged = a.merged (b);
+        assertEquals (3, merged.size ());
+        assertEquals ("b1", merged.getRequired (1L));
+        assertEquals ("a2", merged.getRequired (2L));
+        assertEquals ("b", merged.getRequired (withHash1));
+
+        assertEquals (merged, b.merged (a).merged (b));
+    }
+
+    @Test
+    public void testMergedDifferentEquality() {
+        final AHashMap<String, Integer> a = AHashMap.<String, Integer>empty ().updated ("a", 1).updated ("b", 2);
+        final AHashMap<String, Integer> b = AHashMap.<String, Integer>empty (AEquality.IDENTITY).updated ("b", 3).updated ("c", 4);
+
+        final AHashMap<String, Integer> merged = a.merged (b);
+        assertEquals (AEquality.EQUALS, merged.keyEquality ());
+        assertEquals (3, merged.size ());
+        assertEquals (Integer.valueOf (3), merged.getRequired ("b"));
+    }
+
+    @Test
+    public void testDiffSkipsSharedSubtrees() {
+        final AtomicInteger numHashCodeCalls = new AtomicInteger ();
+        final AEquality countingEquality = new AEquality () {
+            @Override public boolean equals (Object o1, Object o2) {
+                return o1.equals (o2);
+            }
+            @Override public int hashCode (Object o) {
+                numHashCodeCalls.incrementAndGet ();
+                return o.hashCode ();
+            }
+        };
+
+        final AHashMap.Builder<Integer, Integer> builder = AHashMap.builder (countingEquality);
+        for (int i=0; i<100_000; i++) {
+            builder.add (i, i);
+        }
+        final AHashMap<Integer, Integer> base = builder.build ();
+        final AHashMap<Integer, Integer> modified = base.updated (5, 55).removed (77).updated (-1, -1);
+
+        numHashCodeCalls.set (0);
+        final Set<AMapChange<Integer, Integer>> changes = new HashSet<> ();
+        for (AMapChange<Integer, Integer> change: base.diff (modified)) {
+            changes.add (change);
+        }
+
+        assertEquals (new HashSet<> (Arrays.asList (
+                AMapChange.changed (5, 5, 55),
+                AMapChange.removed (77, 77),
+                AMapChange.<Integer, Integer>added (-1, -1))), changes);
+        assertTrue (numHashCodeCalls.get () < 100);
+    }
 }
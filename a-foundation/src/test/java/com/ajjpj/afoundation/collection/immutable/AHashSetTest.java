@@ -6,6 +6,9 @@ import org.junit.Test;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
 
 import static org.junit.Assert.*;
 
@@ -100,5 +103,62 @@ public class AHashSetTest extends AbstractCollectionTest<AHashSet<String>, AHash
         assertTrue("b#a".equals(s2) || "a#b".equals(s2));
     }
 
+    @Test
+    public void testSetAlgebra() {
+        final Random rand = new Random (12345);
+
+        for (int iter=0; iter<20; iter++) {
+            final Set<Integer> ju1 = new HashSet<> ();
+            final Set<Integer> ju2 = new HashSet<> ();
+            for (int i=0; i<rand.nextInt (3000); i++) {
+                ju1.add (rand.nextInt (5000));
+                ju2.add (rand.nextInt (5000));
+            }
+
+            final AHashSet<Integer> s1 = AHashSet.create (ju1);
+            final AHashSet<Integer> s2 = AHashSet.create (ju2);
+
+            final Set<Integer> union = new HashSet<> (ju1);
+            union.addAll (ju2);
+            final Set<Integer> intersection = new HashSet<> (ju1);
+            intersection.retainAll (ju2);
+            final Set<Integer> difference = new HashSet<> (ju1);
+            difference.removeAll (ju2);
+
+            assertEquals (union, s1.union (s2).asJavaUtilSet ());
+            assertEquals (union.size (), s1.union (s2).size ());
+            assertEquals (intersection, s1.intersection (s2).asJavaUtilSet ());
+            assertEquals (intersection.size (), s1.intersection (s2).size ());
+            assertEquals (difference, s1.difference (s2).asJavaUtilSet ());
+            assertEquals (difference.size (), s1.difference (s2).size ());
+        }
+    }
+
+    @Test
+    public void testSetAlgebraReusesStructure() {
+        final AHashSet<Integer> s = AHashSet.create (1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 100, 1000, 10000);
+
+        assertSame (s, s.union (s));
+        assertSame (s, s.union (AHashSet.<Integer>empty ()));
+        assertSame (s, s.intersection (s));
+        assertSame (s, s.difference (AHashSet.<Integer>empty ()));
+        assertSame (s, s.difference (AHashSet.create (-1, -2)));
+        assertTrue (s.difference (s).isEmpty ());
+        assertTrue (s.intersection (AHashSet.<Integer>empty ()).isEmpty ());
+    }
+
+    @Test
+    public void testSetAlgebraHashCollision() {
+        final Long withHash1 = 0x100000000L;
+
+        final AHashSet<Long> s1 = AHashSet.create (1L, 2L, withHash1);
+        final AHashSet<Long> s2 = AHashSet.create (1L, 3L);
+
+        assertEquals (AHashSet.create (1L, 2L, 3L, withHash1), s1.union (s2));
+        assertEquals (AHashSet.create (1L), s1.intersection (s2));
+        assertEquals (AHashSet.create (2L, withHash1), s1.difference (s2));
+        assertEquals (AHashSet.create (3L), s2.difference (s1));
+    }
+
     //TODO testEquality
 }
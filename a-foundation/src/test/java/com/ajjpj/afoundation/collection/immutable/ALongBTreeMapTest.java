@@ -0,0 +1,132 @@
+package com.ajjpj.afoundation.collection.immutable;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * @author arno
+ */
+public class ALongBTreeMapTest {
+    @Test
+    public void testRandomUpdatesAndRemoves() {
+        for (int maxNumEntries: new int[] {4, 5, 8, 32}) {
+            final Random rand = new Random (12345);
+            final TreeMap<Long, Integer> reference = new TreeMap<> ();
+            ALongBTreeMap<Integer> map = ALongBTreeMap.empty (maxNumEntries);
+
+            for (int i=0; i<20_000; i++) {
+                final long key = rand.nextInt (2000) - 1000;
+                if (rand.nextInt (3) == 0) {
+                    reference.remove (key);
+                    map = map.removed (key);
+                }
+                else {
+                    reference.put (key, i);
+                    map = map.updated (key, Integer.valueOf (i));
+                }
+
+                assertEquals (reference.size (), map.size ());
+                if (i % 1000 == 0) {
+                    map.validate ();
+                }
+            }
+
+            map.validate ();
+            assertEquals (new ArrayList<> (reference.entrySet ()), toJavaUtilEntries (map));
+            for (long key=-1001; key<=1001; key++) {
+                assertEquals (reference.get (key), map.getOrNull (key));
+            }
+
+            // remove everything, shrinking the tree down to a single leaf
+            for (long key: new ArrayList<> (reference.keySet ())) {
+                map = map.removed (key);
+                map.validate ();
+            }
+            assertTrue (map.isEmpty ());
+            assertTrue (map instanceof ALongBTreeMap.LeafNode);
+        }
+    }
+
+    @Test
+    public void testRanges() {
+        final TreeMap<Long, Integer> reference = new TreeMap<> ();
+        ALongBTreeMap<Integer> map = ALongBTreeMap.empty (4);
+
+        for (int i=0; i<300; i++) {
+            reference.put (3L * i, i);
+            map = map.updated (3L * i, Integer.valueOf (i));
+        }
+
+        for (long from=-5; from<910; from+=7) {
+            assertFalse (map.rangeII (from, from-1).iterator ().hasNext ());
+
+            for (long to=from; to<910; to+=11) {
+                assertEquals (new ArrayList<> (reference.subMap (from, true, to, true).entrySet ()),   toJavaUtilEntries (map.rangeII (from, to)));
+                assertEquals (new ArrayList<> (reference.subMap (from, true, to, false).entrySet ()),  toJavaUtilEntries (map.rangeIE (from, to)));
+                assertEquals (new ArrayList<> (reference.subMap (from, false, to, true).entrySet ()),  toJavaUtilEntries (map.rangeEI (from, to)));
+                assertEquals (new ArrayList<> (reference.subMap (from, false, to, false).entrySet ()), toJavaUtilEntries (map.rangeEE (from, to)));
+            }
+
+            assertEquals (reference.ceilingKey (from), key (map.firstGreaterOrEquals (from)));
+            assertEquals (reference.higherKey (from),  key (map.firstGreaterThan (from)));
+            assertEquals (reference.floorKey (from),   key (map.lastSmallerOrEquals (from)));
+            assertEquals (reference.lowerKey (from),   key (map.lastSmallerThan (from)));
+        }
+    }
+
+    @Test
+    public void testExtremeKeys() {
+        final ALongBTreeMap<String> map = ALongBTreeMap.<String>empty (4)
+                .updated (Long.MIN_VALUE, "min")
+                .updated (0L, "zero")
+                .updated (Long.MAX_VALUE, "max");
+
+        assertEquals ("min", map.first ().get ().getValue ());
+        assertEquals ("max", map.last ().get ().getValue ());
+        assertFalse (map.firstGreaterThan (Long.MAX_VALUE).isDefined ());
+        assertFalse (map.lastSmallerThan (Long.MIN_VALUE).isDefined ());
+        assertFalse (map.rangeEE (Long.MAX_VALUE, Long.MAX_VALUE).iterator ().hasNext ());
+        assertEquals (3, toJavaUtilEntries (map.rangeII (Long.MIN_VALUE, Long.MAX_VALUE)).size ());
+        assertEquals (1, toJavaUtilEntries (map.fromE (0L)).size ());
+        assertEquals (1, toJavaUtilEntries (map.toE (0L)).size ());
+    }
+
+    @Test
+    public void testDiffAndEquals() {
+        ALongBTreeMap<Integer> map = ALongBTreeMap.empty (8);
+        for (int i=0; i<1000; i++) {
+            map = map.updated (i, Integer.valueOf (i));
+        }
+        final ALongBTreeMap<Integer> changed = map.updated (500L, Integer.valueOf (-1)).removed (10L).updated (2000L, Integer.valueOf (2000));
+
+        final Set<AMapChange<Long, Integer>> expected = new HashSet<> (Arrays.asList (
+                AMapChange.changed (500L, 500, -1),
+                AMapChange.<Long,Integer>removed (10L, 10),
+                AMapChange.<Long,Integer>added (2000L, 2000)));
+        final Set<AMapChange<Long, Integer>> actual = new HashSet<> ();
+        for (AMapChange<Long, Integer> c: map.diff (changed)) {
+            actual.add (c);
+        }
+        assertEquals (expected, actual);
+
+        final AMap<Long, Integer> other = AHashMap.<Long, Integer>empty ().updated (1L, 1).updated (2L, 2);
+        assertEquals (other, ALongBTreeMap.<Integer>empty ().updated (2L, Integer.valueOf (2)).updated (1L, Integer.valueOf (1)));
+        assertEquals (ALongBTreeMap.<Integer>empty ().updated (2L, Integer.valueOf (2)).updated (1L, Integer.valueOf (1)), other);
+    }
+
+    private static Long key (AOption<AMapEntry<Long, Integer>> o) {
+        return o.isDefined () ? o.get ().getKey () : null;
+    }
+
+    private static <V> List<Map.Entry<Long, V>> toJavaUtilEntries (Iterable<AMapEntry<Long, V>> entries) {
+        final List<Map.Entry<Long, V>> result = new ArrayList<> ();
+        for (AMapEntry<Long, V> e: entries) {
+            result.add (new AbstractMap.SimpleEntry<> (e.getKey (), e.getValue ()));
+        }
+        return result;
+    }
+}
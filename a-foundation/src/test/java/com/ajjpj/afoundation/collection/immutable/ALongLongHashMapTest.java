@@ -0,0 +1,155 @@
+package com.ajjpj.afoundation.collection.immutable;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Tests the maps with primitive values: ALongLongHashMap, ALongIntHashMap and ALongLongRedBlackTreeMap.
+ *
+ * @author arno
+ */
+public class ALongLongHashMapTest {
+    private static final int NUM_ITER = 100_000;
+
+    @Test
+    public void testLongLongHashMap() {
+        final Random rand = new Random (12345);
+        final Map<Long, Long> reference = new HashMap<> ();
+        ALongLongHashMap map = ALongLongHashMap.empty ();
+
+        for (int i=0; i<NUM_ITER; i++) {
+            final long key = randomKey (rand);
+            if (rand.nextInt (3) == 0) {
+                reference.remove (key);
+                map = map.removed (key);
+            }
+            else {
+                final long value = rand.nextLong ();
+                reference.put (key, value);
+                map = map.updated (key, value);
+            }
+            assertEquals (reference.size (), map.size ());
+        }
+
+        assertEquals (reference, map.asJavaUtilMap ());
+        for (Map.Entry<Long, Long> e: reference.entrySet ()) {
+            assertTrue (map.containsKey (e.getKey ().longValue ()));
+            assertEquals (e.getValue ().longValue (), map.get (e.getKey (), -1L));
+            assertEquals (e.getValue ().longValue (), map.getRequired (e.getKey ().longValue ()));
+        }
+        for (int i=0; i<1000; i++) {
+            final long key = randomKey (rand);
+            assertEquals (reference.containsKey (key), map.containsKey (key));
+            assertEquals (reference.containsKey (key) ? reference.get (key).longValue () : 99L, map.get (key, 99L));
+        }
+
+        // removing everything returns the empty map
+        for (Long key: reference.keySet ()) {
+            map = map.removed (key);
+        }
+        assertSame (ALongLongHashMap.empty (), map);
+    }
+
+    @Test
+    public void testLongIntHashMap() {
+        final Random rand = new Random (12345);
+        final Map<Long, Integer> reference = new HashMap<> ();
+        ALongIntHashMap map = ALongIntHashMap.empty ();
+
+        for (int i=0; i<NUM_ITER; i++) {
+            final long key = randomKey (rand);
+            if (rand.nextInt (3) == 0) {
+                reference.remove (key);
+                map = map.removed (key);
+            }
+            else {
+                final int value = rand.nextInt ();
+                reference.put (key, value);
+                map = map.updated (key, value);
+            }
+            assertEquals (reference.size (), map.size ());
+        }
+
+        assertEquals (reference, map.asJavaUtilMap ());
+        for (Map.Entry<Long, Integer> e: reference.entrySet ()) {
+            assertEquals (e.getValue ().intValue (), map.get (e.getKey (), -1));
+        }
+        assertEquals (-1, map.get (Long.MAX_VALUE, -1));
+        assertEquals (AOption.<Integer>none (), map.get (Long.valueOf (Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void testLongLongRedBlackTreeMap() {
+        final Random rand = new Random (12345);
+        final Map<Long, Long> reference = new HashMap<> ();
+        ALongLongRedBlackTreeMap map = ALongLongRedBlackTreeMap.empty ();
+
+        for (int i=0; i<NUM_ITER; i++) {
+            final long key = randomKey (rand);
+            if (rand.nextInt (3) == 0) {
+                reference.remove (key);
+                map = map.removed (key);
+            }
+            else {
+                final long value = rand.nextLong ();
+                reference.put (key, value);
+                map = map.updated (key, value);
+            }
+        }
+        LongTree.validate (map.root);
+
+        assertEquals (reference, map.asJavaUtilMap ());
+        for (Map.Entry<Long, Long> e: reference.entrySet ()) {
+            assertEquals (e.getValue ().longValue (), map.get (e.getKey (), -1L));
+        }
+        assertEquals (-1L, map.get (Long.MAX_VALUE, -1L));
+
+        long prev = Long.MIN_VALUE;
+        for (AMapEntry<Long, Long> e: map) {
+            assertTrue (e.getKey () > prev);
+            prev = e.getKey ();
+        }
+    }
+
+    @Test
+    public void testEqualsAndKeys() {
+        ALongLongHashMap hashMap = ALongLongHashMap.empty ();
+        ALongLongRedBlackTreeMap treeMap = ALongLongRedBlackTreeMap.empty ();
+        AMap<Long, Long> genericMap = ALongHashMap.empty ();
+
+        for (long i=-100; i<100; i++) {
+            hashMap = hashMap.updated (i*i*i, i);
+            treeMap = treeMap.updated (i*i*i, i);
+            genericMap = genericMap.updated (i*i*i, i);
+        }
+
+        assertEquals (genericMap, hashMap);
+        assertEquals (hashMap, genericMap);
+        assertEquals (genericMap.hashCode (), hashMap.hashCode ());
+        assertEquals (genericMap, treeMap);
+
+        final AMap<Long, Long> wrapped = hashMap.withDefaultValue (-1L);
+        assertEquals (Long.valueOf (0), wrapped.getOrDefault (0L, 5L));
+        assertEquals (Long.valueOf (-1), wrapped.getOrDefault (2L, 5L));
+        assertEquals (Long.valueOf (-1), treeMap.withDefaultValue (-1L).getOrNull (2L));
+        assertEquals (Long.valueOf (1), treeMap.getRequired ((Long) 1L));
+
+        assertEquals (new HashSet<> (genericMap.keys ().asJavaUtilSet ()), new HashSet<> (hashMap.keys ().asJavaUtilSet ()));
+        assertEquals (200, treeMap.keys ().size ());
+        assertTrue (treeMap.keys ().contains (-1000L));
+    }
+
+    /**
+     * mostly small keys so that there are many updates of existing entries, plus arbitrary longs for deep tries
+     */
+    private static long randomKey (Random rand) {
+        return rand.nextBoolean () ? rand.nextInt (5000) : rand.nextLong () >> rand.nextInt (64);
+    }
+}
@@ -0,0 +1,98 @@
+package com.ajjpj.afoundation.collection.immutable;
+
+import com.ajjpj.afoundation.collection.tuples.ATuple2;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * @author arno
+ */
+public class ALongRedBlackTreeMapTest {
+    @Test
+    public void testSplitAndConcat() {
+        ALongRedBlackTreeMap<Integer> map = ALongRedBlackTreeMap.empty ();
+        final TreeMap<Long, Integer> reference = new TreeMap<> ();
+        for (int i=0; i<300; i++) {
+            map = map.updated (3L*i, Integer.valueOf (i));
+            reference.put (3L*i, i);
+        }
+
+        for (long key=-2; key<905; key++) {
+            final ATuple2<ALongRedBlackTreeMap<Integer>, ALongRedBlackTreeMap<Integer>> split = map.split (key);
+            LongTree.validate (split._1.root);
+            LongTree.validate (split._2.root);
+            assertEquals (new ArrayList<> (reference.headMap (key).entrySet ()), toJavaUtilEntries (split._1));
+            assertEquals (new ArrayList<> (reference.tailMap (key).entrySet ()), toJavaUtilEntries (split._2));
+
+            final ALongRedBlackTreeMap<Integer> concatenated = ALongRedBlackTreeMap.concat (split._1, split._2);
+            LongTree.validate (concatenated.root);
+            assertEquals (new ArrayList<> (reference.entrySet ()), toJavaUtilEntries (concatenated));
+        }
+
+        try {
+            ALongRedBlackTreeMap.concat (map, map.split (10)._1);
+            fail ("exception expected");
+        }
+        catch (IllegalArgumentException exc) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testSetOperations() {
+        final ForkJoinPool pool = new ForkJoinPool (4);
+        try {
+            final Random rand = new Random (12345);
+            for (int size: new int[] {0, 1, 10, 1000, 50_000}) {
+                final TreeMap<Long, Integer> ref1 = new TreeMap<> ();
+                final TreeMap<Long, Integer> ref2 = new TreeMap<> ();
+                ALongRedBlackTreeMap<Integer> map1 = ALongRedBlackTreeMap.empty ();
+                ALongRedBlackTreeMap<Integer> map2 = ALongRedBlackTreeMap.empty ();
+                for (int i=0; i<size; i++) {
+                    final long key1 = rand.nextInt (2*size);
+                    final long key2 = rand.nextInt (size + 1) + size/2;
+                    ref1.put (key1, i);
+                    ref2.put (key2, -i);
+                    map1 = map1.updated (key1, Integer.valueOf (i));
+                    map2 = map2.updated (key2, Integer.valueOf (-i));
+                }
+
+                final TreeMap<Long, Integer> union = new TreeMap<> (ref1);
+                union.putAll (ref2);
+                final TreeMap<Long, Integer> intersection = new TreeMap<> (ref1);
+                intersection.keySet ().retainAll (ref2.keySet ());
+                final TreeMap<Long, Integer> difference = new TreeMap<> (ref1);
+                difference.keySet ().removeAll (ref2.keySet ());
+
+                checkEquals (union, map1.union (map2));
+                checkEquals (union, map1.union (map2, pool));
+                checkEquals (intersection, map1.intersection (map2));
+                checkEquals (intersection, map1.intersection (map2, pool));
+                checkEquals (difference, map1.difference (map2));
+                checkEquals (difference, map1.difference (map2, pool));
+            }
+        }
+        finally {
+            pool.shutdown ();
+        }
+    }
+
+    private static void checkEquals (TreeMap<Long, Integer> expected, ALongRedBlackTreeMap<Integer> actual) {
+        LongTree.validate (actual.root);
+        assertEquals (expected.size (), actual.size ());
+        assertEquals (new ArrayList<> (expected.entrySet ()), toJavaUtilEntries (actual));
+    }
+
+    private static List<Map.Entry<Long, Integer>> toJavaUtilEntries (Iterable<AMapEntry<Long, Integer>> entries) {
+        final List<Map.Entry<Long, Integer>> result = new ArrayList<> ();
+        for (AMapEntry<Long, Integer> e: entries) {
+            result.add (new AbstractMap.SimpleEntry<> (e.getKey (), e.getValue ()));
+        }
+        return result;
+    }
+}
@@ -32,7 +32,9 @@ public class AMapTest {
                 new Object[] {ABTreeMap.empty (new ABTreeSpec (8, NATURAL_ORDER))},
                 new Object[] {ABTreeMap.empty (new ABTreeSpec (16, NATURAL_ORDER))},
                 new Object[] {ARedBlackTreeMap.empty (NATURAL_ORDER)},
-                new Object[] {ALongRedBlackTreeMap.empty ()}
+                new Object[] {ALongRedBlackTreeMap.empty ()},
+                new Object[] {ALongBTreeMap.empty (4)},
+                new Object[] {ALongBTreeMap.empty ()}
         );
     }
 
@@ -235,6 +237,100 @@ public class AMapTest {
         }
     }
 
+    @Test
+    public void testSizeConsistency() {
+        final Random rand = new Random(12345);
+
+        final Map<Long, Integer> ju = new HashMap<>();
+        AMap<Long, Integer> a = EMPTY;
+
+        for(int i=0; i<20_000; i++) {
+            final long key = rand.nextInt(2000);
+
+            if(rand.nextInt(3) != 0) {
+                ju.put (key, i);
+                a = a.updated(key, i);
+            }
+            else {
+                ju.remove (key);
+                a = a.removed(key);
+            }
+
+            assertEquals (ju.size (), a.size ());
+            assertEquals (ju.isEmpty (), a.isEmpty ());
+
+            if (i % 1000 == 0) {
+                int numEntries = 0;
+                for (AMapEntry<Long, Integer> ignored: a) {
+                    numEntries += 1;
+                }
+                assertEquals (a.size (), numEntries);
+                assertEquals (a.size (), a.keys ().size ());
+            }
+        }
+
+        final AMap<Long, Integer> cleared = a.clear ();
+        assertNotNull (cleared);
+        assertEquals (0, cleared.size ());
+        assertTrue (cleared.isEmpty ());
+        assertEquals (EMPTY, cleared);
+        assertEquals (1, cleared.updated (1L, 1).size ());
+    }
+
+    @Test
+    public void testGetOrDefault() {
+        final Random rand = new Random(12345);
+
+        final Map<Long, Integer> ju = new HashMap<>();
+        AMap<Long, Integer> a = EMPTY;
+
+        for(int i=0; i<300; i++) {
+            final long key = rand.nextInt(1000);
+            ju.put (key, i);
+            a = a.updated (key, i);
+        }
+
+        for(long k=0; k<1000; k++) {
+            final Integer expected = ju.get (k);
+
+            assertEquals (expected, a.getOrNull (k));
+            assertEquals (expected != null ? expected : Integer.valueOf (-1), a.getOrDefault (k, -1));
+            assertEquals (expected != null, a.containsKey (k));
+
+            if (expected != null) {
+                assertEquals (expected, a.getRequired (k));
+            }
+            else {
+                try {
+                    a.getRequired (k);
+                    fail ();
+                }
+                catch (NoSuchElementException exc) {
+                    // expected
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testGetOrDefaultNullValue() {
+        final AMap<Long, Integer> a = EMPTY.updated (1L, null);
+
+        assertNull (a.getOrDefault (1L, 99));
+        assertNull (a.getOrNull (1L));
+        assertTrue (a.containsKey (1L));
+        assertNull (a.getRequired (1L));
+    }
+
+    @Test
+    public void testGetOrDefaultWithDefaultValue() {
+        final AMap<Long, Integer> a = EMPTY.updated (1L, 1).withDefaultValue (42);
+
+        assertEquals (Integer.valueOf (1), a.getOrDefault (1L, 99));
+        assertEquals (Integer.valueOf (42), a.getOrDefault (2L, 99));
+        assertEquals (Integer.valueOf (42), a.getOrNull (2L));
+    }
+
 //    void validate (RedBlackTree.Tree tree) {
 //        if (tree instanceof RedBlackTree.RedTree) {
 //            if (tree.left() instanceof RedBlackTree.RedTree) throw new IllegalStateException ();
@@ -287,5 +383,68 @@ public class AMapTest {
 //        compare (a.right, b.right ());
 //    }
 
-}
 
+    @SuppressWarnings ("unchecked")
+    @Test
+    public void testDiff() {
+        final Random rand = new Random (12345);
+
+        AMap<Long, Integer> base = EMPTY;
+        for (int i=0; i<200; i++) {
+            base = base.updated ((long) rand.nextInt (1000), i);
+        }
+
+        assertFalse (base.diff (base).iterator ().hasNext ());
+        assertEquals (diffAsSet (base, AHashMap.<Long, Integer>empty ()), expectedDiff (base, AHashMap.<Long, Integer>empty ()));
+        assertEquals (diffAsSet (EMPTY, base), expectedDiff (EMPTY, base));
+
+        for (int numChanges: new int[] {1, 10, 100}) {
+            AMap<Long, Integer> modified = base;
+            for (int i=0; i<numChanges; i++) {
+                final long key = rand.nextInt (1000);
+                if (rand.nextBoolean ()) {
+                    modified = modified.updated (key, rand.nextInt (3));
+                }
+                else {
+                    modified = modified.removed (key);
+                }
+            }
+
+            assertEquals (expectedDiff (base, modified), diffAsSet (base, modified));
+            assertEquals (expectedDiff (modified, base), diffAsSet (modified, base));
+
+            // compare with a map that shares no structure
+            AMap<Long, Integer> copy = AHashMap.empty ();
+            for (AMapEntry<Long, Integer> e: modified) {
+                copy = copy.updated (e.getKey (), e.getValue ());
+            }
+            assertEquals (expectedDiff (base, modified), diffAsSet (base, copy));
+        }
+    }
+
+    private Set<AMapChange<Long, Integer>> diffAsSet (AMap<Long, Integer> m1, AMap<Long, Integer> m2) {
+        final Set<AMapChange<Long, Integer>> result = new HashSet<> ();
+        for (AMapChange<Long, Integer> change: m1.diff (m2)) {
+            assertTrue ("duplicate change " + change, result.add (change));
+        }
+        return result;
+    }
+
+    private Set<AMapChange<Long, Integer>> expectedDiff (AMap<Long, Integer> m1, AMap<Long, Integer> m2) {
+        final Set<AMapChange<Long, Integer>> result = new HashSet<> ();
+        for (AMapEntry<Long, Integer> e: m1) {
+            if (! m2.containsKey (e.getKey ())) {
+                result.add (AMapChange.removed (e.getKey (), e.getValue ()));
+            }
+            else if (! e.getValue ().equals (m2.getRequired (e.getKey ()))) {
+                result.add (AMapChange.changed (e.getKey (), e.getValue (), m2.getRequired (e.getKey ())));
+            }
+        }
+        for (AMapEntry<Long, Integer> e: m2) {
+            if (! m1.containsKey (e.getKey ())) {
+                result.add (AMapChange.added (e.getKey (), e.getValue ()));
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,273 @@
+package com.ajjpj.afoundation.collection.immutable;
+
+import com.ajjpj.afoundation.collection.ACollectionHelper;
+import com.ajjpj.afoundation.collection.AEquality;
+import com.ajjpj.afoundation.concurrent.AThreadPool;
+import com.ajjpj.afoundation.concurrent.AThreadPoolBuilder;
+import com.ajjpj.afoundation.function.AFunction1;
+import com.ajjpj.afoundation.function.AFunction2;
+import com.ajjpj.afoundation.function.APredicate;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * @author arno
+ */
+public class AParallelismTest {
+    private static final Comparator<Integer> NATURAL_ORDER = new Comparator<Integer> () {
+        @Override public int compare (Integer o1, Integer o2) {
+            return o1.compareTo (o2);
+        }
+    };
+
+    private static final AFunction2<Long, Integer, Long, RuntimeException> SUM = new AFunction2<Long, Integer, Long, RuntimeException> () {
+        @Override public Long apply (Long acc, Integer el) {
+            return acc + el;
+        }
+    };
+    private static final AFunction2<Long, Long, Long, RuntimeException> PLUS = new AFunction2<Long, Long, Long, RuntimeException> () {
+        @Override public Long apply (Long a, Long b) {
+            return a + b;
+        }
+    };
+    private static final AFunction1<Integer, Integer, RuntimeException> HALF = new AFunction1<Integer, Integer, RuntimeException> () {
+        @Override public Integer apply (Integer param) {
+            return param / 2;
+        }
+    };
+    private static final APredicate<Integer, RuntimeException> EVEN = new APredicate<Integer, RuntimeException> () {
+        @Override public boolean apply (Integer o) {
+            return o % 2 == 0;
+        }
+    };
+
+    private ForkJoinPool forkJoinPool;
+    private AThreadPool threadPool;
+    private List<AParallelism> parallelisms;
+
+    @Before
+    public void setUp() {
+        forkJoinPool = new ForkJoinPool (4);
+        threadPool = new AThreadPoolBuilder ().buildFixedSize (4);
+        parallelisms = new ArrayList<> ();
+        parallelisms.add (AParallelism.forkJoin (forkJoinPool, 10));
+        parallelisms.add (AParallelism.taskScheduler (threadPool, 16, 10, 10, TimeUnit.SECONDS));
+    }
+
+    @After
+    public void tearDown() {
+        forkJoinPool.shutdown ();
+        threadPool.shutdown ();
+    }
+
+    private static List<Integer> randomElements () {
+        final Random rand = new Random (12345);
+        final List<Integer> result = new ArrayList<> ();
+        for (int i=0; i<10_000; i++) {
+            result.add (rand.nextInt (1_000_000));
+        }
+        return result;
+    }
+
+    @Test
+    public void testAList() {
+        final AList<Integer> list = AList.create (randomElements ());
+        for (AParallelism parallelism: parallelisms) {
+            assertEquals (list.foldLeft (0L, SUM), list.parFold (parallelism, 0L, SUM, PLUS));
+            assertEquals (list.map (HALF), list.parMap (parallelism, HALF));
+            assertEquals (list.filter (EVEN), list.parFilter (parallelism, EVEN));
+        }
+    }
+
+    @Test
+    public void testAHashSet() {
+        final AHashSet<Integer> set = AHashSet.create (randomElements ());
+        for (AParallelism parallelism: parallelisms) {
+            assertEquals (set.foldLeft (0L, SUM), set.parFold (parallelism, 0L, SUM, PLUS));
+
+            final AHashSet<Integer> filtered = set.parFilter (parallelism, EVEN);
+            assertEquals (set.filter (EVEN), filtered);
+            checkValid (filtered);
+
+            final ASet<Integer> mapped = set.parMap (parallelism, HALF);
+            assertTrue (mapped instanceof AHashSet);
+            assertEquals (set.map (HALF).asJavaUtilSet (), mapped.asJavaUtilSet ());
+        }
+    }
+
+    @Test
+    public void testARedBlackTreeSet() {
+        final ARedBlackTreeSet<Integer> set = ARedBlackTreeSet.create (NATURAL_ORDER, randomElements ());
+        for (AParallelism parallelism: parallelisms) {
+            assertEquals (set.foldLeft (0L, SUM), set.parFold (parallelism, 0L, SUM, PLUS));
+
+            final ARedBlackTreeSet<Integer> filtered = set.parFilter (parallelism, EVEN);
+            assertEquals (set.filter (EVEN), filtered);
+            assertEquals (AList.create (set.filter (EVEN)), AList.create (filtered));
+            checkValid (filtered);
+
+            assertEquals (set.map (HALF).asJavaUtilSet (), set.parMap (parallelism, HALF).asJavaUtilSet ());
+        }
+    }
+
+    @Test
+    public void testABTreeSet() {
+        ABTreeSet<Integer> set = ABTreeSet.empty (new ABTreeSpec (8, NATURAL_ORDER));
+        for (Integer el: randomElements ()) {
+            set = set.added (el);
+        }
+        for (AParallelism parallelism: parallelisms) {
+            assertEquals (set.foldLeft (0L, SUM), set.parFold (parallelism, 0L, SUM, PLUS));
+
+            final ABTreeSet<Integer> filtered = set.parFilter (parallelism, EVEN);
+            assertEquals (AList.create (set.filter (EVEN)), AList.create (filtered));
+            checkValid (filtered);
+        }
+    }
+
+    @Test
+    public void testWrappers() {
+        final List<Integer> elements = randomElements ();
+        final ACollection<Integer> wrapper = ACollectionHelper.asACollectionView (elements);
+        AHashMap<Integer, Integer> map = AHashMap.empty ();
+        for (Integer el: elements) {
+            map = map.updated (el, el);
+        }
+        final ACollection<Integer> mapValues = map.values ();
+        for (AParallelism parallelism: parallelisms) {
+            assertEquals (wrapper.foldLeft (0L, SUM), wrapper.parFold (parallelism, 0L, SUM, PLUS));
+            assertEquals (AList.create (wrapper.map (HALF)), AList.create (wrapper.parMap (parallelism, HALF)));
+            assertEquals (AList.create (wrapper.filter (EVEN)), AList.create (wrapper.parFilter (parallelism, EVEN)));
+            assertEquals (mapValues.foldLeft (0L, SUM), mapValues.parFold (parallelism, 0L, SUM, PLUS));
+            assertEquals (AList.create (mapValues.map (HALF)), AList.create (mapValues.parMap (parallelism, HALF)));
+        }
+    }
+
+    @Test
+    public void testAOption() {
+        for (AParallelism parallelism: parallelisms) {
+            assertEquals (Long.valueOf (3), AOption.some (3).parFold (parallelism, 0L, SUM, PLUS));
+            assertEquals (AOption.some (1), AOption.some (3).parMap (parallelism, HALF));
+            assertEquals (AOption.none (), AOption.some (3).parFilter (parallelism, EVEN));
+        }
+    }
+
+    @Test
+    public void testSmallCollectionInCallingThread() {
+        final Thread callingThread = Thread.currentThread ();
+        final AList<Integer> list = AList.create (1, 2, 3);
+        for (AParallelism parallelism: parallelisms) {
+            final AList<Integer> result = list.parMap (parallelism, new AFunction1<Integer, Integer, RuntimeException> () {
+                @Override public Integer apply (Integer param) {
+                    assertSame (callingThread, Thread.currentThread ());
+                    return param;
+                }
+            });
+            assertEquals (list, result);
+        }
+    }
+
+    @Test
+    public void testExceptions() {
+        final AList<Integer> list = AList.create (randomElements ());
+        final IOException exc = new IOException ();
+        for (AParallelism parallelism: parallelisms) {
+            try {
+                list.parFilter (parallelism, new APredicate<Integer, IOException> () {
+                    @Override public boolean apply (Integer o) throws IOException {
+                        if (o % 1000 == 0) {
+                            throw exc;
+                        }
+                        return true;
+                    }
+                });
+                fail ("exception expected");
+            }
+            catch (IOException e) {
+                assertSame (exc, e);
+            }
+        }
+    }
+
+    @Test
+    public void testParMapOnHashSetUsesEqualsLikeMap() {
+        final AFunction1<String, String, RuntimeException> identity = new AFunction1<String, String, RuntimeException> () {
+            @Override public String apply (String param) {
+                return param;
+            }
+        };
+
+        final AHashSet<String> set = AHashSet.create (AEquality.IDENTITY, new String ("a"), new String ("a"), new String ("b"));
+        assertEquals (3, set.size ());
+        for (AParallelism parallelism: parallelisms) {
+            final ASet<String> mapped = set.parMap (parallelism, identity);
+            assertEquals (set.map (identity).asJavaUtilSet (), mapped.asJavaUtilSet ());
+            assertEquals (2, mapped.size ());
+        }
+    }
+
+    @Test
+    public void testFailedPartCancelsRemainingParts() throws Exception {
+        final AThreadPool singleThread = new AThreadPoolBuilder ().buildFixedSize (1);
+        try {
+            final AParallelism parallelism = AParallelism.taskScheduler (singleThread, 10, 10, 10, TimeUnit.SECONDS);
+
+            final List<Integer> elements = new ArrayList<> ();
+            for (int i=0; i<100; i++) {
+                elements.add (i);
+            }
+
+            final AtomicInteger numProcessed = new AtomicInteger ();
+            try {
+                AList.create (elements).parFilter (parallelism, new APredicate<Integer, IOException> () {
+                    @Override public boolean apply (Integer o) throws IOException {
+                        if (o == 0) {
+                            throw new IOException ();
+                        }
+                        numProcessed.incrementAndGet ();
+                        try {
+                            Thread.sleep (10);
+                        }
+                        catch (InterruptedException exc) {
+                            throw new IOException (exc);
+                        }
+                        return true;
+                    }
+                });
+                fail ("exception expected");
+            }
+            catch (IOException exc) {
+                // expected
+            }
+
+            // processing all parts would take about a second
+            Thread.sleep (500);
+            assertTrue (numProcessed.get () < 30);
+        }
+        finally {
+            singleThread.shutdownNow ();
+        }
+    }
+
+    private static void checkValid (ASet<Integer> set) {
+        int count = 0;
+        for (Integer el: set) {
+            assertTrue (set.contains (el));
+            count += 1;
+        }
+        assertEquals (set.size (), count);
+    }
+}
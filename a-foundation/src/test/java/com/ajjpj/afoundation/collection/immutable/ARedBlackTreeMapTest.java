@@ -0,0 +1,197 @@
+package com.ajjpj.afoundation.collection.immutable;
+
+import com.ajjpj.afoundation.collection.tuples.ATuple2;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * @author arno
+ */
+public class ARedBlackTreeMapTest {
+    private static final Comparator<Integer> NATURAL_ORDER = new Comparator<Integer> () {
+        @Override public int compare (Integer o1, Integer o2) {
+            return o1.compareTo (o2);
+        }
+    };
+
+    @Test
+    public void testUpdatedAllAndRemovedAll() {
+        final Random rand = new Random (12345);
+        final TreeMap<Integer, Integer> reference = new TreeMap<> ();
+        ARedBlackTreeMap<Integer, Integer> map = ARedBlackTreeMap.empty (NATURAL_ORDER);
+
+        for (int i=0; i<500; i++) {
+            // batches of clustered keys of varying size
+            final int center = rand.nextInt (5000);
+            final int spread = 1 + rand.nextInt (i % 3 == 0 ? 2000 : 50);
+            final int batchSize = rand.nextInt (i % 10 == 0 ? 500 : 30);
+
+            if (rand.nextInt (3) == 0) {
+                final TreeSet<Integer> keys = new TreeSet<> ();
+                for (int j=0; j<batchSize; j++) {
+                    keys.add (center + rand.nextInt (spread));
+                }
+                map = map.removedAll (keys);
+                reference.keySet ().removeAll (keys);
+            }
+            else {
+                final TreeMap<Integer, Integer> batch = new TreeMap<> ();
+                for (int j=0; j<batchSize; j++) {
+                    batch.put (center + rand.nextInt (spread), i);
+                }
+                map = map.updatedAll (entries (batch));
+                reference.putAll (batch);
+            }
+
+            ARedBlackTreeMap.validate (map.root);
+            assertEquals (reference.size (), map.size ());
+            assertEquals (new ArrayList<> (reference.entrySet ()), toJavaUtilEntries (map));
+        }
+
+        map = map.removedAll (new ArrayList<> (reference.keySet ()));
+        assertTrue (map.isEmpty ());
+    }
+
+    @Test
+    public void testUpdatedAllOnEmptyMap() {
+        for (int size: new int[] {0, 1, 2, 3, 10, 1000}) {
+            final TreeMap<Integer, Integer> batch = new TreeMap<> ();
+            for (int i=0; i<size; i++) {
+                batch.put (i, -i);
+            }
+
+            final ARedBlackTreeMap<Integer, Integer> map = ARedBlackTreeMap.<Integer, Integer>empty (NATURAL_ORDER).updatedAll (entries (batch));
+            ARedBlackTreeMap.validate (map.root);
+            assertEquals (new ArrayList<> (batch.entrySet ()), toJavaUtilEntries (map));
+        }
+    }
+
+    @Test
+    public void testRemovedAllSharesUnaffectedSubtrees() {
+        ARedBlackTreeMap<Integer, Integer> map = ARedBlackTreeMap.empty (NATURAL_ORDER);
+        for (int i=0; i<1000; i++) {
+            map = map.updated (2*i, i);
+        }
+
+        assertTrue (map == map.removedAll (Arrays.asList (1, 3, 5)));
+
+        // Joining the remaining subtrees may rebuild the nodes along the left spine of the root's right subtree, but
+        //  nothing to the right of them. Those subtrees must be part of the new tree, though possibly at a different depth.
+        final ARedBlackTreeMap.Tree<Integer, Integer> right = map.root.right.right;
+        assertTrue (right == ARedBlackTreeMap.lookup (map.removedAll (Arrays.asList (0, 2, 4)).root, right.key, NATURAL_ORDER));
+    }
+
+    @Test (expected = IllegalArgumentException.class)
+    public void testBatchRejectsUnsortedInput() {
+        ARedBlackTreeMap.<Integer, Integer>empty (NATURAL_ORDER).removedAll (Arrays.asList (1, 3, 3));
+    }
+
+    @Test
+    public void testSplitAndConcat() {
+        ARedBlackTreeMap<Integer, Integer> map = ARedBlackTreeMap.empty (NATURAL_ORDER);
+        final TreeMap<Integer, Integer> reference = new TreeMap<> ();
+        for (int i=0; i<300; i++) {
+            map = map.updated (3*i, i);
+            reference.put (3*i, i);
+        }
+
+        for (int key=-2; key<905; key++) {
+            final ATuple2<ARedBlackTreeMap<Integer, Integer>, ARedBlackTreeMap<Integer, Integer>> split = map.split (key);
+            ARedBlackTreeMap.validate (split._1.root);
+            ARedBlackTreeMap.validate (split._2.root);
+            assertEquals (new ArrayList<> (reference.headMap (key).entrySet ()), toJavaUtilEntries (split._1));
+            assertEquals (new ArrayList<> (reference.tailMap (key).entrySet ()), toJavaUtilEntries (split._2));
+
+            final ARedBlackTreeMap<Integer, Integer> concatenated = ARedBlackTreeMap.concat (split._1, split._2);
+            ARedBlackTreeMap.validate (concatenated.root);
+            assertEquals (new ArrayList<> (reference.entrySet ()), toJavaUtilEntries (concatenated));
+        }
+
+        try {
+            ARedBlackTreeMap.concat (map, map.split (10)._1);
+            fail ("exception expected");
+        }
+        catch (IllegalArgumentException exc) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testSetOperations() {
+        final ForkJoinPool pool = new ForkJoinPool (4);
+        try {
+            final Random rand = new Random (12345);
+            for (int size: new int[] {0, 1, 10, 1000, 50_000}) {
+                final TreeMap<Integer, Integer> ref1 = new TreeMap<> ();
+                final TreeMap<Integer, Integer> ref2 = new TreeMap<> ();
+                ARedBlackTreeMap<Integer, Integer> map1 = ARedBlackTreeMap.empty (NATURAL_ORDER);
+                ARedBlackTreeMap<Integer, Integer> map2 = ARedBlackTreeMap.empty (NATURAL_ORDER);
+                for (int i=0; i<size; i++) {
+                    final int key1 = rand.nextInt (2*size);
+                    final int key2 = rand.nextInt (size + 1) + size/2;
+                    ref1.put (key1, i);
+                    ref2.put (key2, -i);
+                    map1 = map1.updated (key1, i);
+                    map2 = map2.updated (key2, -i);
+                }
+
+                final TreeMap<Integer, Integer> union = new TreeMap<> (ref1);
+                union.putAll (ref2);
+                final TreeMap<Integer, Integer> intersection = new TreeMap<> (ref1);
+                intersection.keySet ().retainAll (ref2.keySet ());
+                final TreeMap<Integer, Integer> difference = new TreeMap<> (ref1);
+                difference.keySet ().removeAll (ref2.keySet ());
+
+                checkEquals (union, map1.union (map2));
+                checkEquals (union, map1.union (map2, pool));
+                checkEquals (intersection, map1.intersection (map2));
+                checkEquals (intersection, map1.intersection (map2, pool));
+                checkEquals (difference, map1.difference (map2));
+                checkEquals (difference, map1.difference (map2, pool));
+            }
+        }
+        finally {
+            pool.shutdown ();
+        }
+    }
+
+    @Test (expected = IllegalArgumentException.class)
+    public void testSetOperationsRequireSameComparator() {
+        final Comparator<Integer> reverse = Collections.reverseOrder (NATURAL_ORDER);
+        ARedBlackTreeMap.<Integer, Integer>empty (NATURAL_ORDER).union (ARedBlackTreeMap.<Integer, Integer>empty (reverse));
+    }
+
+    private static void checkEquals (TreeMap<Integer, Integer> expected, ARedBlackTreeMap<Integer, Integer> actual) {
+        ARedBlackTreeMap.validate (actual.root);
+        assertEquals (expected.size (), actual.size ());
+        assertEquals (new ArrayList<> (expected.entrySet ()), toJavaUtilEntries (actual));
+    }
+
+    private static List<AMapEntry<Integer, Integer>> entries (Map<Integer, Integer> map) {
+        final List<AMapEntry<Integer, Integer>> result = new ArrayList<> ();
+        for (final Map.Entry<Integer, Integer> e: map.entrySet ()) {
+            result.add (new AMapEntry<Integer, Integer> () {
+                @Override public Integer getKey () {
+                    return e.getKey ();
+                }
+                @Override public Integer getValue () {
+                    return e.getValue ();
+                }
+            });
+        }
+        return result;
+    }
+
+    private static List<Map.Entry<Integer, Integer>> toJavaUtilEntries (Iterable<AMapEntry<Integer, Integer>> entries) {
+        final List<Map.Entry<Integer, Integer>> result = new ArrayList<> ();
+        for (AMapEntry<Integer, Integer> e: entries) {
+            result.add (new AbstractMap.SimpleEntry<> (e.getKey (), e.getValue ()));
+        }
+        return result;
+    }
+}
@@ -24,11 +24,13 @@ public class ASortedMapTest {
     @Parameterized.Parameters
     public static Collection<Object> emptyMaps () {
         return Arrays.<Object>asList (
-//                new Object[] {ABTreeMap.empty (new ABTreeSpec (4, NATURAL_ORDER))},
-//                new Object[] {ABTreeMap.empty (new ABTreeSpec (8, NATURAL_ORDER))},
-//                new Object[] {ABTreeMap.empty (new ABTreeSpec (16, NATURAL_ORDER))},
-                (Object) new Object[] {ARedBlackTreeMap.empty (NATURAL_ORDER)}
+                new Object[] {ABTreeMap.empty (new ABTreeSpec (4, NATURAL_ORDER))},
+                new Object[] {ABTreeMap.empty (new ABTreeSpec (8, NATURAL_ORDER))},
+                new Object[] {ABTreeMap.empty (new ABTreeSpec (16, NATURAL_ORDER))},
+                new Object[] {ARedBlackTreeMap.empty (NATURAL_ORDER)},
 //                new Object[] {ALongRedBlackTreeMap.empty ()}
+                new Object[] {ALongBTreeMap.empty (4)},
+                new Object[] {ALongBTreeMap.empty ()}
         );
     }
 
@@ -222,4 +224,96 @@ public class ASortedMapTest {
             }
         }
     }
+
+    @Test
+    public void testRandomUpdatesAndRemoves() {
+        final Random rand = new Random (12345);
+        final TreeMap<Long, Integer> reference = new TreeMap<> ();
+        ASortedMap<Long, Integer> map = EMPTY;
+
+        for (int i=0; i<5000; i++) {
+            final long key = rand.nextInt (1000);
+            if (rand.nextInt (3) == 0) {
+                reference.remove (key);
+                map = map.removed (key);
+            }
+            else {
+                reference.put (key, i);
+                map = map.updated (key, i);
+            }
+        }
+
+        assertEquals (new ArrayList<> (reference.keySet ()), keys (map));
+        for (long from=-1; from<1001; from+=13) {
+            assertEquals (reference.ceilingKey (from), key (map.firstGreaterOrEquals (from)));
+            assertEquals (reference.higherKey (from),  key (map.firstGreaterThan (from)));
+            assertEquals (reference.floorKey (from),   key (map.lastSmallerOrEquals (from)));
+            assertEquals (reference.lowerKey (from),   key (map.lastSmallerThan (from)));
+
+            for (long to=from; to<1001; to+=57) {
+                assertEquals (new ArrayList<> (reference.subMap (from, true, to, true).keySet ()),   keys (map.rangeII (from, to)));
+                assertEquals (new ArrayList<> (reference.subMap (from, false, to, false).keySet ()), keys (map.rangeEE (from, to)));
+            }
+        }
+    }
+
+    @Test
+    public void testRankSelectAndCount() {
+        final Random rand = new Random (12345);
+        final TreeMap<Long, Integer> reference = new TreeMap<> ();
+        ASortedMap<Long, Integer> map = EMPTY;
+
+        for (int i=0; i<3000; i++) {
+            final long key = rand.nextInt (2000);
+            if (rand.nextInt (4) == 0) {
+                reference.remove (key);
+                map = map.removed (key);
+            }
+            else {
+                reference.put (key, i);
+                map = map.updated (key, i);
+            }
+        }
+
+        final List<Long> sortedKeys = new ArrayList<> (reference.keySet ());
+        for (int i=0; i<sortedKeys.size (); i++) {
+            assertEquals (sortedKeys.get (i), map.select (i).getKey ());
+            assertEquals (reference.get (sortedKeys.get (i)), map.select (i).getValue ());
+        }
+        for (int illegalIndex: new int[] {-1, sortedKeys.size ()}) {
+            try {
+                map.select (illegalIndex);
+                fail ("exception expected");
+            }
+            catch (IndexOutOfBoundsException exc) {
+                // expected
+            }
+        }
+
+        for (long key=-1; key<=2001; key++) {
+            assertEquals (reference.headMap (key).size (), map.rank (key));
+        }
+
+        for (long from=-1; from<2001; from+=37) {
+            for (long to=from-5; to<2001; to+=53) {
+                final boolean isEmpty = to < from;
+                assertEquals (isEmpty ? 0 : reference.subMap (from, true,  to, true).size (),  map.countInRange (from, true,  to, true));
+                assertEquals (isEmpty ? 0 : reference.subMap (from, true,  to, false).size (), map.countInRange (from, true,  to, false));
+                assertEquals (isEmpty ? 0 : reference.subMap (from, false, to, true).size (),  map.countInRange (from, false, to, true));
+                assertEquals (isEmpty ? 0 : reference.subMap (from, false, to, false).size (), map.countInRange (from, false, to, false));
+            }
+        }
+    }
+
+    private static Long key (AOption<AMapEntry<Long, Integer>> o) {
+        return o.isDefined () ? o.get ().getKey () : null;
+    }
+
+    private static List<Long> keys (Iterable<AMapEntry<Long, Integer>> entries) {
+        final List<Long> result = new ArrayList<> ();
+        for (AMapEntry<Long, Integer> e: entries) {
+            result.add (e.getKey ());
+        }
+        return result;
+    }
 }
@@ -0,0 +1,187 @@
+package com.ajjpj.afoundation.collection.immutable;
+
+import com.ajjpj.afoundation.collection.AEquality;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * @author arno
+ */
+public class ASpliteratorTest {
+    private static final Comparator<Integer> NATURAL_ORDER = new Comparator<Integer> () {
+        @Override public int compare (Integer o1, Integer o2) {
+            return o1.compareTo (o2);
+        }
+    };
+
+    private static final int SIZE = 20_000;
+
+    private static List<Integer> randomKeys () {
+        final Random rand = new Random (12345);
+        final List<Integer> result = new ArrayList<> ();
+        for (int i=0; i<SIZE; i++) {
+            result.add (rand.nextInt ());
+        }
+        return result;
+    }
+
+    @Test
+    public void testAHashMap() {
+        AHashMap<Integer, Integer> map = AHashMap.empty ();
+        for (Integer key: randomKeys ()) {
+            map = map.updated (key, key);
+        }
+        checkSplitting (map, map.aSpliterator (), true);
+        checkSplitting (map.keys (), map.keys ().aSpliterator (), true);
+        checkSplitting (map.values (), map.values ().aSpliterator (), true);
+    }
+
+    @Test
+    public void testAHashMapHashCollisions() {
+        final AEquality weakHash = new AEquality () {
+            @Override public boolean equals (Object o1, Object o2) {
+                return o1.equals (o2);
+            }
+            @Override public int hashCode (Object o) {
+                return ((Integer) o) % 50;
+            }
+        };
+
+        AHashMap<Integer, Integer> map = AHashMap.empty (weakHash);
+        for (int i=0; i<1000; i++) {
+            map = map.updated (i, i);
+        }
+        checkSplitting (map, map.aSpliterator (), true);
+    }
+
+    @Test
+    public void testALongHashMap() {
+        ALongHashMap<Integer> map = ALongHashMap.empty ();
+        for (Integer key: randomKeys ()) {
+            map = map.updated (key.longValue (), key);
+        }
+        checkSplitting (map, map.aSpliterator (), true);
+    }
+
+    @Test
+    public void testARedBlackTreeMap() {
+        ARedBlackTreeMap<Integer, Integer> map = ARedBlackTreeMap.empty (NATURAL_ORDER);
+        for (Integer key: randomKeys ()) {
+            map = map.updated (key, key);
+        }
+        checkSplitting (map, map.aSpliterator (), true);
+
+        final ARedBlackTreeSet<Integer> set = ARedBlackTreeSet.create (map);
+        checkSplitting (set, set.aSpliterator (), true);
+    }
+
+    @Test
+    public void testABTreeMap() {
+        ABTreeMap<Integer, Integer> map = ABTreeMap.empty (new ABTreeSpec (8, NATURAL_ORDER));
+        for (Integer key: randomKeys ()) {
+            map = map.updated (key, key);
+        }
+        checkSplitting (map, map.aSpliterator (), true);
+    }
+
+    @Test
+    public void testAList() {
+        final AList<Integer> list = AList.create (randomKeys ());
+        checkSplitting (list, list.aSpliterator (), true);
+    }
+
+    @Test
+    public void testAVector() {
+        final AVector<Integer> vector = AVector.create (randomKeys ());
+        checkSplitting (vector, vector.aSpliterator (), true);
+
+        final AVector<Integer> slice = vector.slice (100, 10_000);
+        checkSplitting (slice, slice.aSpliterator (), true);
+    }
+
+    @Test
+    public void testWrappedMap() {
+        AHashMap<Integer, Integer> map = AHashMap.empty ();
+        for (Integer key: randomKeys ()) {
+            map = map.updated (key, key);
+        }
+        final AMap<Integer, Integer> withDefault = map.withDefaultValue (0);
+        checkSplitting (withDefault, withDefault.aSpliterator (), true);
+    }
+
+    @Test
+    public void testSmallCollections() {
+        checkSplitting (AHashMap.empty (), AHashMap.empty ().aSpliterator (), false);
+        checkSplitting (ARedBlackTreeMap.empty (NATURAL_ORDER), ARedBlackTreeMap.empty (NATURAL_ORDER).aSpliterator (), false);
+        checkSplitting (AList.nil (), AList.nil ().aSpliterator (), false);
+        checkSplitting (AOption.some (1), AOption.some (1).aSpliterator (), false);
+        checkSplitting (AOption.none (), AOption.none ().aSpliterator (), false);
+
+        final AHashMap<Integer, Integer> single = AHashMap.<Integer, Integer>empty ().updated (1, 1);
+        assertNull (single.aSpliterator ().trySplit ());
+    }
+
+    @Test (expected = IllegalStateException.class)
+    public void testNoSplitAfterIteration() {
+        final AList<Integer> list = AList.create (randomKeys ());
+        final ASpliterator<Integer> spliterator = list.aSpliterator ();
+        spliterator.iterator ();
+        spliterator.trySplit ();
+    }
+
+    /**
+     * Splits a spliterator recursively, checking that the parts' sizes are exact and that their elements - in the
+     *  order of the parts - are the same as the collection's elements in iteration order.
+     */
+    private static void checkSplitting (Iterable<?> collection, ASpliterator<?> spliterator, boolean expectParallelism) {
+        final List<Object> expected = new ArrayList<> ();
+        for (Object o: collection) {
+            expected.add (keyOf (o));
+        }
+        assertEquals (expected.size (), spliterator.size ());
+
+        final List<Object> actual = new ArrayList<> ();
+        final int numParts = split (spliterator, actual);
+        assertEquals (expected, actual);
+
+        if (expectParallelism) {
+            assertTrue ("only " + numParts + " parts", numParts >= expected.size () / 100);
+        }
+    }
+
+    private static int split (ASpliterator<?> spliterator, List<Object> target) {
+        final int size = spliterator.size ();
+        if (size > 20) {
+            final ASpliterator<?> prefix = spliterator.trySplit ();
+            if (prefix != null) {
+                assertTrue (prefix.size () > 0);
+                assertTrue (spliterator.size () > 0);
+                assertEquals (size, prefix.size () + spliterator.size ());
+                return split (prefix, target) + split (spliterator, target);
+            }
+        }
+
+        int count = 0;
+        for (Iterator<?> it = spliterator.iterator (); it.hasNext (); ) {
+            target.add (keyOf (it.next ()));
+            count += 1;
+        }
+        assertEquals (size, count);
+        return 1;
+    }
+
+    /**
+     * some map iterators reuse their entry instances, so entries are reduced to their keys right away
+     */
+    private static Object keyOf (Object o) {
+        return (o instanceof AMapEntry) ? ((AMapEntry<?,?>) o).getKey () : o;
+    }
+}
@@ -0,0 +1,203 @@
+package com.ajjpj.afoundation.collection.immutable;
+
+import com.ajjpj.afoundation.function.AFunction1;
+import com.ajjpj.afoundation.function.APredicate;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * @author arno
+ */
+public class AVectorTest {
+    @Test
+    public void testEmpty() {
+        final AVector<Integer> empty = AVector.empty ();
+        assertEquals (0, empty.size ());
+        assertTrue (empty.isEmpty ());
+        assertFalse (empty.iterator ().hasNext ());
+        assertSame (empty, AVector.create ());
+        assertSame (empty, AVector.<Integer>create (1, 2, 3).clear ());
+        assertEquals (AList.nil (), empty.toList ());
+    }
+
+    @Test
+    public void testAppendAndGet() {
+        final List<Integer> expected = new ArrayList<> ();
+        AVector<Integer> vector = AVector.empty ();
+
+        // enough elements for a trie with three levels below the root
+        for (int i=0; i<40_000; i++) {
+            vector = vector.appended (i);
+            expected.add (i);
+            if (i % 997 == 0 || i < 1100) {
+                assertEquals (expected, vector.asJavaUtilList ());
+            }
+        }
+        assertEquals (expected.size (), vector.size ());
+        for (int i=0; i<expected.size (); i++) {
+            assertEquals (expected.get (i), vector.get (i));
+        }
+        assertEquals (AVector.create (expected), vector);
+    }
+
+    @Test
+    public void testRandomOperations() {
+        final Random rand = new Random (12345);
+        final List<Integer> expected = new ArrayList<> ();
+        AVector<Integer> vector = AVector.empty ();
+
+        for (int i=0; i<100_000; i++) {
+            final int op = rand.nextInt (10);
+            if (op < 6 || expected.isEmpty ()) {
+                final int el = rand.nextInt ();
+                vector = vector.appended (el);
+                expected.add (el);
+            }
+            else if (op < 9) {
+                final int idx = rand.nextInt (expected.size ());
+                final int el = rand.nextInt ();
+                final AVector<Integer> updated = vector.updated (idx, el);
+                assertEquals (expected.get (idx), vector.get (idx));
+                vector = updated;
+                expected.set (idx, el);
+            }
+            else {
+                vector = vector.removedLast ();
+                expected.remove (expected.size () - 1);
+            }
+            assertEquals (expected.size (), vector.size ());
+        }
+        assertEquals (expected, vector.asJavaUtilList ());
+        assertEquals (expected, new ArrayList<> (vector.asJavaUtilList ()));
+    }
+
+    @Test
+    public void testPersistence() {
+        final AVector<Integer> v1 = AVector.create (1, 2, 3);
+        final AVector<Integer> v2 = v1.appended (4);
+        final AVector<Integer> v3 = v1.updated (0, 10);
+        final AVector<Integer> v4 = v1.removedLast ().appended (20);
+
+        assertEquals (Arrays.asList (1, 2, 3), v1.asJavaUtilList ());
+        assertEquals (Arrays.asList (1, 2, 3, 4), v2.asJavaUtilList ());
+        assertEquals (Arrays.asList (10, 2, 3), v3.asJavaUtilList ());
+        assertEquals (Arrays.asList (1, 2, 20), v4.asJavaUtilList ());
+    }
+
+    @Test
+    public void testSlice() {
+        final List<Integer> expected = new ArrayList<> ();
+        for (int i=0; i<5000; i++) {
+            expected.add (i);
+        }
+        final AVector<Integer> vector = AVector.create (expected);
+
+        assertEquals (expected.subList (100, 4000), vector.slice (100, 4000).asJavaUtilList ());
+        assertEquals (expected.subList (100, 200), vector.slice (100, 4000).slice (0, 100).asJavaUtilList ());
+        assertSame (AVector.empty (), vector.slice (10, 10));
+        assertEquals (vector, vector.slice (0, vector.size ()));
+
+        // appending to a slice must not affect the original vector
+        final AVector<Integer> slice = vector.slice (10, 20).appended (-1);
+        assertEquals (Integer.valueOf (-1), slice.get (10));
+        assertEquals (Integer.valueOf (20), vector.get (20));
+
+        try {
+            vector.slice (10, 5001);
+            fail ("exception expected");
+        }
+        catch (IndexOutOfBoundsException exc) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testIndexOutOfBounds() {
+        final AVector<Integer> vector = AVector.create (1, 2, 3).slice (1, 3);
+        for (int idx: new int[] {-1, 2, 3}) {
+            try {
+                vector.get (idx);
+                fail ("exception expected");
+            }
+            catch (IndexOutOfBoundsException exc) {
+                // expected
+            }
+        }
+    }
+
+    @Test (expected = NoSuchElementException.class)
+    public void testRemovedLastEmpty() {
+        AVector.empty ().removedLast ();
+    }
+
+    @Test
+    public void testBuilder() {
+        final AVector.Builder<Integer> builder = AVector.builder ();
+        for (int i=0; i<100; i++) {
+            builder.add (i);
+        }
+        final AVector<Integer> first = builder.build ();
+        builder.add (100);
+        final AVector<Integer> second = builder.build ();
+
+        assertEquals (100, first.size ());
+        assertEquals (101, second.size ());
+        assertEquals (first, second.slice (0, 100));
+    }
+
+    @Test
+    public void testCollectionOperations() {
+        final AVector<Integer> vector = AVector.create (1, 2, 3, 4, 5);
+
+        final AVector<Integer> even = vector.filter (new APredicate<Integer, RuntimeException> () {
+            @Override public boolean apply (Integer o) {
+                return o % 2 == 0;
+            }
+        });
+        assertEquals (AVector.create (2, 4), even);
+
+        final AVector<String> strings = vector.map (new AFunction1<Integer, String, RuntimeException> () {
+            @Override public String apply (Integer param) {
+                return String.valueOf (param);
+            }
+        });
+        assertEquals (AVector.create ("1", "2", "3", "4", "5"), strings);
+
+        assertTrue (vector.contains (3));
+        assertFalse (vector.contains (6));
+        assertEquals ("[1, 2, 3, 4, 5]", vector.toString ());
+        assertEquals (AList.create (1, 2, 3, 4, 5), vector.toList ());
+        assertEquals (2, vector.asJavaUtilList ().indexOf (3));
+    }
+
+    @Test
+    @SuppressWarnings ("unchecked")
+    public void testSerialization() throws Exception {
+        final List<Integer> elements = new ArrayList<> ();
+        for (int i=0; i<2000; i++) {
+            elements.add (i);
+        }
+        final AVector<Integer> slice = AVector.create (elements).slice (500, 600);
+
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream ();
+        try (ObjectOutputStream oos = new ObjectOutputStream (baos)) {
+            oos.writeObject (slice);
+        }
+        final AVector<Integer> deserialized;
+        try (ObjectInputStream ois = new ObjectInputStream (new ByteArrayInputStream (baos.toByteArray ()))) {
+            deserialized = (AVector<Integer>) ois.readObject ();
+        }
+
+        assertEquals (slice, deserialized);
+        assertTrue ("slice serialized with the entire trie", baos.size () < 5000);
+    }
+}
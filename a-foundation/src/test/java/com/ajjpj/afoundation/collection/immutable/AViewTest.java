@@ -0,0 +1,146 @@
+package com.ajjpj.afoundation.collection.immutable;
+
+import com.ajjpj.afoundation.collection.ACollectionHelper;
+import com.ajjpj.afoundation.function.AFunction1;
+import com.ajjpj.afoundation.function.AFunction2;
+import com.ajjpj.afoundation.function.APartialFunction;
+import com.ajjpj.afoundation.function.APredicate;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * @author arno
+ */
+public class AViewTest {
+    private static final APredicate<Integer, RuntimeException> EVEN = new APredicate<Integer, RuntimeException> () {
+        @Override public boolean apply (Integer o) {
+            return o % 2 == 0;
+        }
+    };
+    private static final AFunction1<Integer, String, RuntimeException> TO_STRING = new AFunction1<Integer, String, RuntimeException> () {
+        @Override public String apply (Integer param) {
+            return String.valueOf (param);
+        }
+    };
+
+    private static AFunction1<Integer, Integer, RuntimeException> countingDouble (final AtomicInteger counter) {
+        return new AFunction1<Integer, Integer, RuntimeException> () {
+            @Override public Integer apply (Integer param) {
+                counter.incrementAndGet ();
+                return 2*param;
+            }
+        };
+    }
+
+    @Test
+    public void testSameResultAsEager() {
+        final AList<Integer> list = AList.create (1, 2, 3, 4, 5, 6, 7, 8, 9, 10);
+        final AtomicInteger counter = new AtomicInteger ();
+
+        assertEquals (list.filter (EVEN).map (TO_STRING), list.view ().filter (EVEN).map (TO_STRING).toList ());
+        assertEquals (list.map (countingDouble (counter)).filter (EVEN), list.view ().map (countingDouble (counter)).filter (EVEN).toList ());
+
+        final AFunction1<Integer, Iterable<Integer>, RuntimeException> twice = new AFunction1<Integer, Iterable<Integer>, RuntimeException> () {
+            @Override public Iterable<Integer> apply (Integer param) {
+                return Arrays.asList (param, param);
+            }
+        };
+        assertEquals (list.flatMap (twice), list.view ().flatMap (twice).toList ());
+
+        final APartialFunction<Integer, String, RuntimeException> evenToString = new APartialFunction<Integer, String, RuntimeException> () {
+            @Override public boolean isDefinedAt (Integer param) {
+                return param % 2 == 0;
+            }
+            @Override public String apply (Integer param) {
+                return String.valueOf (param);
+            }
+        };
+        assertEquals (list.collect (evenToString), list.view ().collect (evenToString).toList ());
+
+        final AList<AList<Integer>> nested = AList.create (AList.create (1, 2), AList.<Integer>nil (), AList.create (3));
+        assertEquals (AList.create (1, 2, 3), nested.view ().<Integer>flatten ().toList ());
+
+        final AHashSet<Integer> set = AHashSet.create (1, 2, 3, 4, 5);
+        assertEquals (set.filter (EVEN), set.view ().filter (EVEN).toSet ());
+
+        final ACollection<Integer> wrapper = ACollectionHelper.asACollectionView (Arrays.asList (1, 2, 3, 4));
+        assertEquals (Integer.valueOf (6), wrapper.view ().filter (EVEN).foldLeft (0, new AFunction2<Integer, Integer, Integer, RuntimeException> () {
+            @Override public Integer apply (Integer param1, Integer param2) {
+                return param1 + param2;
+            }
+        }));
+
+        assertEquals (AList.create (1), AOption.some (1).view ().toList ());
+        assertEquals (0, AOption.<Integer>none ().view ().size ());
+    }
+
+    @Test
+    public void testLazyAndShortCircuiting() {
+        final AList<Integer> list = AList.create (1, 2, 3, 4, 5, 6, 7, 8, 9, 10);
+        final AtomicInteger counter = new AtomicInteger ();
+
+        final AView<Integer> view = list.view ().map (countingDouble (counter));
+        assertEquals (0, counter.get ());
+
+        assertEquals (AOption.some (6), view.find (new APredicate<Integer, RuntimeException> () {
+            @Override public boolean apply (Integer o) {
+                return o > 5;
+            }
+        }));
+        assertEquals (3, counter.get ());
+
+        counter.set (0);
+        assertTrue (view.exists (EVEN));
+        assertEquals (1, counter.get ());
+
+        counter.set (0);
+        assertFalse (list.view ().forAll (EVEN));
+        assertTrue (view.forAll (EVEN));
+        assertEquals (10, counter.get ());
+
+        counter.set (0);
+        assertEquals (AList.create (2, 4, 6), view.take (3).toList ());
+        assertEquals (3, counter.get ());
+    }
+
+    @Test
+    public void testTakeAndDrop() {
+        final AList<Integer> list = AList.create (1, 2, 3, 4, 5, 6, 7, 8, 9, 10);
+
+        assertEquals (AList.create (3, 4, 5), list.view ().drop (2).take (3).toList ());
+        assertEquals (AList.create (3), list.view ().take (3).drop (2).toList ());
+        assertEquals (AList.create (2, 4), list.view ().filter (EVEN).take (2).toList ());
+        assertEquals (AList.<Integer>nil (), list.view ().take (0).toList ());
+        assertEquals (AList.<Integer>nil (), list.view ().drop (20).toList ());
+        assertEquals (list, list.view ().take (20).toList ());
+
+        // views can be evaluated repeatedly
+        final AView<Integer> view = list.view ().drop (8);
+        assertEquals (2, view.size ());
+        assertEquals (2, view.size ());
+    }
+
+    @Test
+    public void testExceptionInTerminalOperation() {
+        final IOException exc = new IOException ();
+        final AView<Integer> view = AList.create (1, 2, 3).view ().map (new AFunction1<Integer, Integer, IOException> () {
+            @Override public Integer apply (Integer param) throws IOException {
+                throw exc;
+            }
+        });
+
+        try {
+            view.toList ();
+            fail ("exception expected");
+        }
+        catch (Exception e) {
+            assertSame (exc, e);
+        }
+    }
+}
@@ -2,9 +2,8 @@ package com.ajjpj.afoundation.collection.immutable;
 
 import org.junit.Test;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Random;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.junit.Assert.*;
 
@@ -82,4 +81,232 @@ public class BTreeBlackBoxTest {
             }
         }
     }
+
+    @Test
+    public void testFromSorted() {
+        for (int maxNumEntries: new int[] {4, 5, 8, 16}) {
+            final ABTreeSpec spec = new ABTreeSpec (maxNumEntries, AbstractBTreeTest.naturalOrder);
+
+            for (double fillFactor: new double[] {0.1, 0.5, 0.75, 1.0}) {
+                for (int size=0; size<300; size+=7) {
+                    final List<AMapEntry<Integer, Integer>> entries = sortedEntries (size);
+
+                    final ABTreeMap<Integer, Integer> tree = ABTreeMap.fromSorted (spec, entries.iterator (), fillFactor);
+                    checkStructure (tree, entries);
+
+                    // bulk loaded trees must support regular modifications
+                    ABTreeMap<Integer, Integer> modified = tree;
+                    for (int i=0; i<size; i+=3) {
+                        modified = modified.removed (2*i);
+                    }
+                    modified = modified.updated (1, 1).updated (-1, -1).updated (2*size + 3, 0);
+                    assertEquals (size - (size+2)/3 + 3, modified.size ());
+                    assertEquals (Integer.valueOf (1), modified.getRequired (1));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testFromSortedParallel() {
+        final ForkJoinPool pool = new ForkJoinPool (4);
+        try {
+            for (int maxNumEntries: new int[] {4, 16}) {
+                final ABTreeSpec spec = new ABTreeSpec (maxNumEntries, AbstractBTreeTest.naturalOrder);
+
+                for (int size: new int[] {0, 1, 10, 1000, 100_000}) {
+                    final List<AMapEntry<Integer, Integer>> entries = sortedEntries (size);
+                    checkStructure (ABTreeMap.fromSortedParallel (spec, entries, 0.75, pool), entries);
+                }
+            }
+        }
+        finally {
+            pool.shutdown ();
+        }
+    }
+
+    @Test
+    public void testFromSortedRejectsUnsortedInput() {
+        final ABTreeSpec spec = new ABTreeSpec (4, AbstractBTreeTest.naturalOrder);
+        final List<AMapEntry<Integer, Integer>> entries = new ArrayList<> (sortedEntries (100));
+        entries.set (50, entries.get (49));
+
+        try {
+            ABTreeMap.fromSorted (spec, entries.iterator ());
+            fail ("exception expected");
+        }
+        catch (IllegalArgumentException exc) {
+            // expected
+        }
+
+        final ForkJoinPool pool = new ForkJoinPool (2);
+        try {
+            ABTreeMap.fromSortedParallel (spec, entries, 1.0, pool);
+            fail ("exception expected");
+        }
+        catch (IllegalArgumentException exc) {
+            // expected
+        }
+        finally {
+            pool.shutdown ();
+        }
+    }
+
+    @Test
+    @SuppressWarnings ("unchecked")
+    public void testUpdatedAllAndRemovedAll() {
+        for (int maxNumEntries: new int[] {4, 5, 8, 16}) {
+            final ABTreeSpec spec = new ABTreeSpec (maxNumEntries, AbstractBTreeTest.naturalOrder);
+            final Random rand = new Random (12345);
+            final TreeMap<Integer, Integer> reference = new TreeMap<> ();
+            ABTreeMap<Integer, Integer> tree = ABTreeMap.empty (spec);
+
+            for (int i=0; i<300; i++) {
+                // batches of clustered keys of varying size
+                final int center = rand.nextInt (5000);
+                final int spread = 1 + rand.nextInt (i % 3 == 0 ? 2000 : 50);
+                final int batchSize = rand.nextInt (i % 10 == 0 ? 500 : 30);
+
+                final ABTreeMap<Integer, Integer> before = tree;
+                if (rand.nextInt (3) == 0) {
+                    final TreeSet<Integer> keys = new TreeSet<> ();
+                    for (int j=0; j<batchSize; j++) {
+                        keys.add (center + rand.nextInt (spread));
+                    }
+                    tree = tree.removedAll (keys);
+                    reference.keySet ().removeAll (keys);
+                }
+                else {
+                    ARedBlackTreeMap<Integer, Integer> batch = ARedBlackTreeMap.empty (AbstractBTreeTest.naturalOrder);
+                    for (int j=0; j<batchSize; j++) {
+                        final int key = center + rand.nextInt (spread);
+                        batch = batch.updated (key, i);
+                        reference.put (key, i);
+                    }
+                    tree = tree.updatedAll (batch);
+                }
+
+                checkStructure (tree, reference);
+                if (batchSize == 0) {
+                    assertTrue (before == tree);
+                }
+            }
+
+            // removing everything shrinks the tree to an empty leaf
+            tree = tree.removedAll (new ArrayList<> (reference.keySet ()));
+            assertTrue (tree.isEmpty ());
+            assertTrue (tree instanceof LeafNode);
+        }
+    }
+
+    @Test
+    public void testUpdatedAllSharesUnaffectedSubtrees() {
+        final ABTreeSpec spec = new ABTreeSpec (8, AbstractBTreeTest.naturalOrder);
+        final ABTreeMap<Integer, Integer> tree = ABTreeMap.fromSorted (spec, sortedEntries (10_000).iterator ());
+
+        final List<AMapEntry<Integer, Integer>> batch = new ArrayList<> ();
+        for (AMapEntry<Integer, Integer> e: sortedEntries (20)) {
+            batch.add (e);
+        }
+        final ABTreeMap<Integer, Integer> updated = tree.updatedAll (batch);
+        assertSame (((IndexNode) tree).children[1], ((IndexNode) updated).children[1]);
+        assertTrue (tree == tree.removedAll (Arrays.asList (1, 3, 5)));
+    }
+
+    @Test
+    public void testBatchRejectsUnsortedInput() {
+        final ABTreeMap<Integer, Integer> tree = ABTreeMap.empty (new ABTreeSpec (4, AbstractBTreeTest.naturalOrder));
+        try {
+            tree.removedAll (Arrays.asList (1, 3, 2));
+            fail ("exception expected");
+        }
+        catch (IllegalArgumentException exc) {
+            // expected
+        }
+
+        final List<AMapEntry<Integer, Integer>> entries = new ArrayList<> (sortedEntries (10));
+        entries.set (5, entries.get (4));
+        try {
+            tree.updatedAll (entries);
+            fail ("exception expected");
+        }
+        catch (IllegalArgumentException exc) {
+            // expected
+        }
+    }
+
+    private static List<AMapEntry<Integer, Integer>> sortedEntries (int size) {
+        final List<AMapEntry<Integer, Integer>> result = new ArrayList<> ();
+        for (int i=0; i<size; i++) {
+            final Integer key = 2*i;
+            result.add (new AMapEntry<Integer, Integer> () {
+                @Override public Integer getKey () {
+                    return key;
+                }
+                @Override public Integer getValue () {
+                    return -key;
+                }
+            });
+        }
+        return result;
+    }
+
+    private static void checkStructure (ABTreeMap<Integer, Integer> tree, List<AMapEntry<Integer, Integer>> expected) {
+        assertEquals (expected.size (), tree.size ());
+
+        final Iterator<AMapEntry<Integer, Integer>> it = tree.iterator ();
+        for (AMapEntry<Integer, Integer> e: expected) {
+            final AMapEntry<Integer, Integer> actual = it.next ();
+            assertEquals (e.getKey (), actual.getKey ());
+            assertEquals (e.getValue (), actual.getValue ());
+        }
+        assertFalse (it.hasNext ());
+
+        checkNode (tree, true, null, null);
+    }
+
+    private static void checkStructure (ABTreeMap<Integer, Integer> tree, TreeMap<Integer, Integer> expected) {
+        assertEquals (expected.size (), tree.size ());
+
+        final Iterator<AMapEntry<Integer, Integer>> it = tree.iterator ();
+        for (Map.Entry<Integer, Integer> e: expected.entrySet ()) {
+            final AMapEntry<Integer, Integer> actual = it.next ();
+            assertEquals (e.getKey (), actual.getKey ());
+            assertEquals (e.getValue (), actual.getValue ());
+        }
+        assertFalse (it.hasNext ());
+
+        checkNode (tree, true, null, null);
+    }
+
+    /**
+     * @return the height of the node
+     */
+    private static int checkNode (ABTreeMap node, boolean isRoot, Integer minKey, Integer maxKeyExclusive) {
+        if (node instanceof LeafNode) {
+            final Object[] keys = ((LeafNode) node).keys;
+            assertTrue (keys.length <= node.spec.maxNumEntries);
+            assertTrue (isRoot || keys.length >= node.spec.minNumEntries);
+            for (Object key: keys) {
+                assertTrue (minKey == null || (Integer) key >= minKey);
+                assertTrue (maxKeyExclusive == null || (Integer) key < maxKeyExclusive);
+            }
+            return 0;
+        }
+
+        final IndexNode index = (IndexNode) node;
+        assertTrue (index.children.length <= node.spec.maxNumEntries);
+        assertTrue (index.children.length >= (isRoot ? 2 : node.spec.minNumEntries));
+        assertEquals (index.children.length - 1, index.separators.length);
+
+        int height = -1;
+        for (int i=0; i<index.children.length; i++) {
+            final Integer childMin = i == 0 ? minKey : (Integer) index.separators[i-1];
+            final Integer childMax = i == index.separators.length ? maxKeyExclusive : (Integer) index.separators[i];
+            final int childHeight = checkNode (index.children[i], false, childMin, childMax);
+            assertTrue (height == -1 || height == childHeight);
+            height = childHeight;
+        }
+        return height + 1;
+    }
 }
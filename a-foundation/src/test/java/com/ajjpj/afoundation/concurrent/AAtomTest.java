@@ -0,0 +1,211 @@
+package com.ajjpj.afoundation.concurrent;
+
+import com.ajjpj.afoundation.collection.immutable.AHashMap;
+import com.ajjpj.afoundation.collection.immutable.AMap;
+import com.ajjpj.afoundation.function.AFunction1;
+import com.ajjpj.afoundation.function.AFunction1NoThrow;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * @author arno
+ */
+public class AAtomTest {
+    private static AFunction1NoThrow<AMap<Integer, Integer>, AMap<Integer, Integer>> increment (final Integer key) {
+        return new AFunction1NoThrow<AMap<Integer, Integer>, AMap<Integer, Integer>> () {
+            @Override public AMap<Integer, Integer> apply (AMap<Integer, Integer> param) {
+                return param.updated (key, param.getOrDefault (key, 0) + 1);
+            }
+        };
+    }
+
+    @Test
+    public void testSimple() {
+        final AAtom<AMap<Integer, Integer>> atom = new AAtom<AMap<Integer, Integer>> (AHashMap.<Integer, Integer>empty ());
+
+        final AMap<Integer, Integer> after = atom.update (increment (1));
+        assertSame (after, atom.get ());
+        assertEquals (Integer.valueOf (1), atom.get ().getRequired (1));
+
+        atom.update (increment (1));
+        assertEquals (Integer.valueOf (2), atom.get ().getRequired (1));
+
+        assertFalse (atom.compareAndSet (AHashMap.<Integer, Integer>empty (), AHashMap.<Integer, Integer>empty ()));
+        assertTrue (atom.compareAndSet (atom.get (), AHashMap.<Integer, Integer>empty ()));
+        assertTrue (atom.get ().isEmpty ());
+
+        atom.set (AHashMap.<Integer, Integer>empty ().updated (5, 5));
+        assertEquals (1, atom.get ().size ());
+
+        assertEquals (2, atom.getNumUpdates ());
+        assertEquals (0, atom.getNumRetries ());
+        assertEquals (0, atom.getNumBatches ());
+    }
+
+    @Test
+    public void testException() {
+        final AAtom<String> atom = new AAtom<> ("a");
+        try {
+            atom.update (new AFunction1<String, String, IOException> () {
+                @Override public String apply (String param) throws IOException {
+                    throw new IOException ("failed");
+                }
+            });
+            fail ("exception expected");
+        }
+        catch (IOException exc) {
+            assertEquals ("failed", exc.getMessage ());
+        }
+        assertEquals ("a", atom.get ());
+    }
+
+    @Test
+    public void testUpdatesQueueBehindCombiner() throws Exception {
+        final AAtom<String> atom = new AAtom<> ("");
+        final CountDownLatch combining = new CountDownLatch (1);
+        final CountDownLatch release = new CountDownLatch (1);
+        final AtomicInteger numCalls1 = new AtomicInteger ();
+        final AtomicInteger numCalls2 = new AtomicInteger ();
+
+        final Thread t1 = new Thread () {
+            @Override public void run () {
+                atom.update (new AFunction1NoThrow<String, String> () {
+                    @Override public String apply (String param) {
+                        if (numCalls1.incrementAndGet () == 1) {
+                            // make the direct compareAndSet fail, so this update is queued and this thread becomes the combiner
+                            atom.set ("x");
+                        }
+                        else {
+                            combining.countDown ();
+                            try {
+                                release.await ();
+                            }
+                            catch (InterruptedException exc) {
+                                throw new RuntimeException (exc);
+                            }
+                        }
+                        return param + "1";
+                    }
+                });
+            }
+        };
+        t1.start ();
+        assertTrue (combining.await (5, TimeUnit.SECONDS));
+
+        final Thread t2 = new Thread () {
+            @Override public void run () {
+                atom.update (new AFunction1NoThrow<String, String> () {
+                    @Override public String apply (String param) {
+                        numCalls2.incrementAndGet ();
+                        return param + "2";
+                    }
+                });
+            }
+        };
+        t2.start ();
+
+        // the second update waits for the combiner instead of being applied directly
+        Thread.sleep (50);
+        assertEquals (0, numCalls2.get ());
+
+        release.countDown ();
+        t1.join ();
+        t2.join ();
+
+        assertEquals ("x12", atom.get ());
+        assertEquals (1, numCalls2.get ());
+        assertEquals (1, atom.getNumRetries ());
+    }
+
+    @Test
+    public void testConcurrentUpdates() throws Exception {
+        final int numThreads = 16;
+        final int numUpdatesPerThread = 20_000;
+        final int numKeys = 10;
+
+        final AAtom<AMap<Integer, Integer>> atom = new AAtom<AMap<Integer, Integer>> (AHashMap.<Integer, Integer>empty ());
+        final AtomicInteger numFailed = new AtomicInteger ();
+        final AtomicReference<Throwable> failure = new AtomicReference<> ();
+        final CountDownLatch latch = new CountDownLatch (1);
+
+        // every third update of every thread fails; this must neither affect the other updates nor the atom's value
+        final AFunction1<AMap<Integer, Integer>, AMap<Integer, Integer>, IllegalStateException> failingUpdate = new AFunction1<AMap<Integer, Integer>, AMap<Integer, Integer>, IllegalStateException> () {
+            @Override public AMap<Integer, Integer> apply (AMap<Integer, Integer> param) {
+                throw new IllegalStateException ();
+            }
+        };
+
+        final List<Thread> threads = new ArrayList<> ();
+        for (int t=0; t<numThreads; t++) {
+            threads.add (new Thread () {
+                @Override public void run () {
+                    try {
+                        latch.await ();
+                        for (int i=0; i<numUpdatesPerThread; i++) {
+                            if (i%3 == 0) {
+                                try {
+                                    atom.update (failingUpdate);
+                                    fail ("exception expected");
+                                }
+                                catch (IllegalStateException exc) {
+                                    numFailed.incrementAndGet ();
+                                }
+                            }
+                            else {
+                                final AMap<Integer, Integer> result = atom.update (increment (i % numKeys));
+                                assertTrue (result.containsKey (i % numKeys));
+                            }
+                        }
+                    }
+                    catch (Throwable th) {
+                        failure.set (th);
+                    }
+                }
+            });
+        }
+
+        for (Thread th: threads) {
+            th.start ();
+        }
+        latch.countDown ();
+        for (Thread th: threads) {
+            th.join ();
+        }
+        if (failure.get () != null) {
+            throw new AssertionError (failure.get ());
+        }
+
+        int expectedFailed = 0;
+        final int[] expectedCounts = new int[numKeys];
+        for (int i=0; i<numUpdatesPerThread; i++) {
+            if (i%3 == 0) {
+                expectedFailed += numThreads;
+            }
+            else {
+                expectedCounts[i % numKeys] += numThreads;
+            }
+        }
+
+        assertEquals (expectedFailed, numFailed.get ());
+        for (int key=0; key<numKeys; key++) {
+            assertEquals (Integer.valueOf (expectedCounts[key]), atom.get ().getRequired (key));
+        }
+
+        assertEquals (numThreads * numUpdatesPerThread, atom.getNumUpdates ());
+        assertTrue (atom.getNumBatchedUpdates () <= atom.getNumUpdates ());
+        assertTrue (atom.getMaxBatchSize () <= numThreads);
+        if (atom.getNumBatches () > 0) {
+            assertTrue (atom.getAverageBatchSize () >= 1);
+        }
+    }
+}
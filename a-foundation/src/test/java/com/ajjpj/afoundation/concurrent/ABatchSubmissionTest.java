@@ -0,0 +1,219 @@
+package com.ajjpj.afoundation.concurrent;
+
+import com.ajjpj.afoundation.function.AFunction1;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * @author arno
+ */
+public class ABatchSubmissionTest {
+    private AThreadPool threadPool;
+
+    @After
+    public void shutdown() {
+        if (threadPool == null) {
+            return;
+        }
+        threadPool.shutdown ();
+        threadPool = null;
+    }
+
+    private static List<Integer> range (int n) {
+        final List<Integer> result = new ArrayList<> ();
+        for (int i=0; i<n; i++) {
+            result.add (i);
+        }
+        return result;
+    }
+
+    @Test
+    public void testChunks() throws Exception {
+        for (AThreadPool pool: Arrays.asList (new AThreadPoolBuilder ().setSubmitAllGrainSize (7).buildFixedSize (4), new AThreadPoolBuilder ().setSubmitAllGrainSize (7).buildForkJoin (4))) {
+            threadPool = pool;
+
+            final Thread[] threads = new Thread[100];
+            final List<AFuture<Integer>> futures = threadPool.submitAll (range (100), new AFunction1<Integer, Integer, RuntimeException> () {
+                @Override public Integer apply (Integer param) {
+                    threads[param] = Thread.currentThread ();
+                    return param * 2;
+                }
+            }, 1, TimeUnit.MINUTES);
+
+            assertEquals (100, futures.size ());
+            for (int i=0; i<100; i++) {
+                assertEquals (Integer.valueOf (2*i), futures.get (i).get ());
+            }
+
+            // the parameters of a chunk are processed by the same thread
+            for (int i=0; i<100; i++) {
+                if (i % 7 != 0) {
+                    assertSame (threads[i-1], threads[i]);
+                }
+            }
+
+            shutdown ();
+        }
+    }
+
+    @Test
+    public void testFailureOfSingleParam() throws Exception {
+        threadPool = new AThreadPoolBuilder ().setSubmitAllGrainSize (10).buildFixedSize (2);
+
+        final List<AFuture<Integer>> futures = threadPool.submitAll (range (10), new AFunction1<Integer, Integer, Exception> () {
+            @Override public Integer apply (Integer param) throws Exception {
+                if (param == 3) {
+                    throw new IllegalArgumentException ();
+                }
+                return param;
+            }
+        }, 1, TimeUnit.MINUTES);
+
+        for (int i=0; i<10; i++) {
+            if (i == 3) {
+                try {
+                    futures.get (i).get ();
+                    fail ("exception expected");
+                }
+                catch (ExecutionException exc) {
+                    assertTrue (exc.getCause () instanceof IllegalArgumentException);
+                }
+            }
+            else {
+                assertEquals (Integer.valueOf (i), futures.get (i).get ());
+            }
+        }
+    }
+
+    @Test
+    public void testSharedTimeout() throws Exception {
+        threadPool = new AThreadPoolBuilder ().setSubmitAllGrainSize (5).buildFixedSize (2);
+
+        final AtomicInteger numCalls = new AtomicInteger ();
+        final List<AFuture<Integer>> futures = threadPool.submitAll (range (20), new AFunction1<Integer, Integer, Exception> () {
+            @Override public Integer apply (Integer param) throws Exception {
+                numCalls.incrementAndGet ();
+                Thread.sleep (30);
+                return param;
+            }
+        }, 50, TimeUnit.MILLISECONDS);
+
+        int numTimedOut = 0;
+        for (AFuture<Integer> f: futures) {
+            try {
+                f.get ();
+            }
+            catch (ExecutionException exc) {
+                assertTrue (exc.getCause () instanceof TimeoutException);
+                numTimedOut += 1;
+            }
+        }
+        assertTrue (numTimedOut >= 15);
+
+        // chunks stop after the timeout instead of processing their remaining parameters
+        Thread.sleep (100);
+        assertTrue (numCalls.get () <= 6);
+    }
+
+    @Test
+    public void testCancelSingleFuture() throws Exception {
+        threadPool = new AThreadPoolBuilder ().setSubmitAllGrainSize (3).buildFixedSize (1);
+
+        final CountDownLatch latch = new CountDownLatch (1);
+        final List<Integer> processed = Collections.synchronizedList (new ArrayList<Integer> ());
+        final List<AFuture<Integer>> futures = threadPool.submitAll (range (3), new AFunction1<Integer, Integer, Exception> () {
+            @Override public Integer apply (Integer param) throws Exception {
+                latch.await ();
+                processed.add (param);
+                return param;
+            }
+        }, 1, TimeUnit.MINUTES);
+
+        assertTrue (futures.get (1).cancel (false));
+        latch.countDown ();
+
+        assertEquals (Integer.valueOf (0), futures.get (0).get ());
+        assertEquals (Integer.valueOf (2), futures.get (2).get ());
+        assertTrue (futures.get (1).isCancelled ());
+        assertEquals (Arrays.asList (0, 2), processed);
+    }
+
+    @Test
+    public void testCancelAllFuturesOfChunkInterruptsIt() throws Exception {
+        threadPool = new AThreadPoolBuilder ().setSubmitAllGrainSize (3).buildFixedSize (1);
+
+        final CountDownLatch started = new CountDownLatch (1);
+        final CountDownLatch interrupted = new CountDownLatch (1);
+        final List<AFuture<Integer>> futures = threadPool.submitAll (range (3), new AFunction1<Integer, Integer, Exception> () {
+            @Override public Integer apply (Integer param) throws Exception {
+                started.countDown ();
+                try {
+                    Thread.sleep (10_000);
+                }
+                catch (InterruptedException exc) {
+                    interrupted.countDown ();
+                    throw exc;
+                }
+                return param;
+            }
+        }, 1, TimeUnit.MINUTES);
+        assertTrue (started.await (5, TimeUnit.SECONDS));
+
+        // the chunk's thread is shared by all of its futures, so it is interrupted only when the last of them is cancelled
+        assertTrue (futures.get (0).cancel (true));
+        assertTrue (futures.get (1).cancel (true));
+        assertFalse (interrupted.await (50, TimeUnit.MILLISECONDS));
+
+        assertTrue (futures.get (2).cancel (true));
+        assertTrue (interrupted.await (5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testGrainSizeOneInterruptsOnCancel() throws Exception {
+        for (AThreadPool pool: Arrays.asList (new AThreadPoolBuilder ().buildFixedSize (1), new AThreadPoolBuilder ().buildForkJoin (1))) {
+            threadPool = pool;
+
+            final CountDownLatch started = new CountDownLatch (1);
+            final CountDownLatch interrupted = new CountDownLatch (1);
+            final List<AFuture<Integer>> futures = threadPool.submitAll (range (1), new AFunction1<Integer, Integer, Exception> () {
+                @Override public Integer apply (Integer param) throws Exception {
+                    started.countDown ();
+                    try {
+                        Thread.sleep (10_000);
+                    }
+                    catch (InterruptedException exc) {
+                        interrupted.countDown ();
+                        throw exc;
+                    }
+                    return param;
+                }
+            }, 1, TimeUnit.MINUTES);
+            assertTrue (started.await (5, TimeUnit.SECONDS));
+
+            assertTrue (futures.get (0).cancel (true));
+            assertTrue (interrupted.await (5, TimeUnit.SECONDS));
+
+            shutdown ();
+        }
+    }
+
+    @Test
+    public void testEmpty() {
+        threadPool = new AThreadPoolBuilder ().setSubmitAllGrainSize (3).buildFixedSize (1);
+        assertTrue (threadPool.submitAll (new ArrayList<Integer> (), new AFunction1<Integer, Integer, Exception> () {
+            @Override public Integer apply (Integer param) {
+                return param;
+            }
+        }, 1, TimeUnit.MINUTES).isEmpty ());
+    }
+}
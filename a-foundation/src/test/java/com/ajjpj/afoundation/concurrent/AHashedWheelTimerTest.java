@@ -0,0 +1,211 @@
+package com.ajjpj.afoundation.concurrent;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * @author arno
+ */
+public class AHashedWheelTimerTest {
+    private AHashedWheelTimer timer;
+
+    @After
+    public void shutdown() {
+        if (timer != null) {
+            timer.shutdown ();
+            timer = null;
+        }
+    }
+
+    @Test
+    public void testExpiry() throws InterruptedException {
+        timer = new AHashedWheelTimer ("test", 1, TimeUnit.MILLISECONDS, 8);
+
+        final CountDownLatch latch = new CountDownLatch (1);
+        final long start = System.nanoTime ();
+        final AHashedWheelTimer.Timeout timeout = timer.schedule (new Runnable () {
+            @Override public void run () {
+                latch.countDown ();
+            }
+        }, 50, TimeUnit.MILLISECONDS);
+
+        assertTrue (latch.await (5, TimeUnit.SECONDS));
+        assertTrue (System.nanoTime () - start >= TimeUnit.MILLISECONDS.toNanos (50));
+        assertTrue (timeout.isExpired ());
+        assertFalse (timeout.cancel ());
+        assertEquals (1, timer.getNumExpired ());
+        assertEquals (0, timer.getNumPendingTimeouts ());
+    }
+
+    @Test
+    public void testExpiryAfterIdlePeriod() throws InterruptedException {
+        timer = new AHashedWheelTimer ("test", 1, TimeUnit.MILLISECONDS, 8);
+
+        final CountDownLatch first = new CountDownLatch (1);
+        timer.schedule (new Runnable () {
+            @Override public void run () {
+                first.countDown ();
+            }
+        }, 1, TimeUnit.MILLISECONDS);
+        assertTrue (first.await (5, TimeUnit.SECONDS));
+
+        // the worker thread parks while there are no pending timeouts, and the wheel catches up when it is woken
+        Thread.sleep (50);
+
+        final CountDownLatch second = new CountDownLatch (1);
+        final long start = System.nanoTime ();
+        timer.schedule (new Runnable () {
+            @Override public void run () {
+                second.countDown ();
+            }
+        }, 20, TimeUnit.MILLISECONDS);
+
+        assertTrue (second.await (5, TimeUnit.SECONDS));
+        assertTrue (System.nanoTime () - start >= TimeUnit.MILLISECONDS.toNanos (20));
+        assertEquals (2, timer.getNumExpired ());
+    }
+
+    @Test
+    public void testCancel() throws InterruptedException {
+        timer = new AHashedWheelTimer ("test", 1, TimeUnit.MILLISECONDS, 8);
+
+        final AtomicInteger numRuns = new AtomicInteger ();
+        final Runnable task = new Runnable () {
+            @Override public void run () {
+                numRuns.incrementAndGet ();
+            }
+        };
+
+        final AHashedWheelTimer.Timeout cancelled = timer.schedule (task, 20, TimeUnit.MILLISECONDS);
+        final AHashedWheelTimer.Timeout expiring = timer.schedule (task, 20, TimeUnit.MILLISECONDS);
+        assertEquals (2, timer.getNumPendingTimeouts ());
+
+        assertTrue (cancelled.cancel ());
+        assertFalse (cancelled.cancel ());
+        assertTrue (cancelled.isCancelled ());
+        assertEquals (1, timer.getNumPendingTimeouts ());
+
+        Thread.sleep (200);
+        assertEquals (1, numRuns.get ());
+        assertTrue (expiring.isExpired ());
+        assertFalse (cancelled.isExpired ());
+
+        assertEquals (2, timer.getNumScheduled ());
+        assertEquals (1, timer.getNumCancelled ());
+        assertEquals (1, timer.getNumExpired ());
+        assertEquals (0, timer.getNumPendingTimeouts ());
+    }
+
+    @Test
+    public void testOrderAcrossSeveralRounds() throws InterruptedException {
+        // a wheel of 4 one-millisecond buckets, so most timeouts stay in their bucket for several rounds
+        timer = new AHashedWheelTimer ("test", 1, TimeUnit.MILLISECONDS, 4);
+
+        final List<Integer> expired = new ArrayList<> ();
+        final CountDownLatch latch = new CountDownLatch (5);
+        for (final int delay: new int[] {40, 10, 30, 0, 20}) {
+            timer.schedule (new Runnable () {
+                @Override public void run () {
+                    expired.add (delay); // all tasks run on the timer's worker thread
+                    latch.countDown ();
+                }
+            }, delay * 10, TimeUnit.MILLISECONDS);
+        }
+
+        assertTrue (latch.await (5, TimeUnit.SECONDS));
+        assertEquals (5, expired.size ());
+        for (int i=0; i<5; i++) {
+            assertEquals (Integer.valueOf (10*i), expired.get (i));
+        }
+    }
+
+    @Test
+    public void testManyTimeouts() throws InterruptedException {
+        timer = new AHashedWheelTimer ("test", 1, TimeUnit.MILLISECONDS, 64);
+
+        final int num = 100_000;
+        final AtomicInteger numRuns = new AtomicInteger ();
+        final Runnable task = new Runnable () {
+            @Override public void run () {
+                numRuns.incrementAndGet ();
+            }
+        };
+
+        final List<AHashedWheelTimer.Timeout> timeouts = new ArrayList<> ();
+        for (int i=0; i<num; i++) {
+            timeouts.add (timer.schedule (task, i % 100, TimeUnit.MILLISECONDS));
+        }
+        int numCancelled = 0;
+        for (int i=0; i<num; i+=2) {
+            if (timeouts.get (i).cancel ()) {
+                numCancelled += 1;
+            }
+        }
+
+        final long deadline = System.currentTimeMillis () + 5000;
+        while (timer.getNumPendingTimeouts () > 0 && System.currentTimeMillis () < deadline) {
+            Thread.sleep (10);
+        }
+
+        assertEquals (0, timer.getNumPendingTimeouts ());
+        assertEquals (num - numCancelled, numRuns.get ());
+        assertEquals (numCancelled, timer.getNumCancelled ());
+    }
+
+    @Test
+    public void testFailingTask() throws InterruptedException {
+        timer = new AHashedWheelTimer ("test", 1, TimeUnit.MILLISECONDS, 8);
+
+        final CountDownLatch latch = new CountDownLatch (1);
+        timer.schedule (new Runnable () {
+            @Override public void run () {
+                throw new RuntimeException ("expected by the test");
+            }
+        }, 1, TimeUnit.MILLISECONDS);
+        timer.schedule (new Runnable () {
+            @Override public void run () {
+                latch.countDown ();
+            }
+        }, 10, TimeUnit.MILLISECONDS);
+
+        assertTrue (latch.await (5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testShutdown() {
+        timer = new AHashedWheelTimer ("test");
+        timer.schedule (new Runnable () {
+            @Override public void run () {
+            }
+        }, 1, TimeUnit.MINUTES);
+        timer.shutdown ();
+
+        try {
+            timer.schedule (new Runnable () {
+                @Override public void run () {
+                }
+            }, 1, TimeUnit.MILLISECONDS);
+            fail ("exception expected");
+        }
+        catch (IllegalStateException exc) {
+            // expected
+        }
+
+        try {
+            AHashedWheelTimer.shared ().shutdown ();
+            fail ("exception expected");
+        }
+        catch (IllegalStateException exc) {
+            // expected
+        }
+    }
+}
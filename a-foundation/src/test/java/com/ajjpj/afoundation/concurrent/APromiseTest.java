@@ -0,0 +1,270 @@
+package com.ajjpj.afoundation.concurrent;
+
+import com.ajjpj.afoundation.collection.tuples.ATuple2;
+import com.ajjpj.afoundation.function.AFunction1;
+import com.ajjpj.afoundation.function.AStatement1NoThrow;
+import com.ajjpj.afoundation.function.AStatement2NoThrow;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * @author arno
+ */
+public class APromiseTest {
+    @Test
+    public void testCompletion() throws Exception {
+        final APromise<String> promise = new APromise<> ();
+        assertFalse (promise.isFinished ());
+
+        try {
+            promise.get (10, TimeUnit.MILLISECONDS);
+            fail ("exception expected");
+        }
+        catch (TimeoutException exc) {
+            // expected
+        }
+
+        assertTrue (promise.trySuccess ("a"));
+        assertFalse (promise.trySuccess ("b"));
+        assertFalse (promise.tryFailure (new RuntimeException ()));
+        assertFalse (promise.cancel (true));
+
+        assertTrue (promise.isFinished ());
+        assertFalse (promise.isCancelled ());
+        assertEquals ("a", promise.get ());
+        assertEquals ("a", promise.get (1, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testPollingWithTimeouts() throws Exception {
+        final APromise<String> promise = new APromise<> ();
+
+        final AtomicInteger numListenerCalls = new AtomicInteger ();
+        promise.onFinished (new AStatement2NoThrow<String, Throwable> () {
+            @Override public void apply (String param1, Throwable param2) {
+                numListenerCalls.incrementAndGet ();
+            }
+        });
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor ();
+        final Future<String> blocked = executor.submit (new Callable<String> () {
+            @Override public String call () throws Exception {
+                return promise.get ();
+            }
+        });
+
+        // all blocking calls share a single latch, so polling does not register additional listeners
+        for (int i=0; i<10_000; i++) {
+            try {
+                promise.get (1, TimeUnit.MICROSECONDS);
+                fail ("exception expected");
+            }
+            catch (TimeoutException exc) {
+                // expected
+            }
+        }
+
+        assertTrue (promise.trySuccess ("a"));
+        assertEquals ("a", promise.get (1, TimeUnit.MICROSECONDS));
+        assertEquals ("a", blocked.get (5, TimeUnit.SECONDS));
+        assertEquals (1, numListenerCalls.get ());
+        executor.shutdown ();
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        final APromise<String> promise = new APromise<> ();
+        final RuntimeException cause = new RuntimeException ();
+
+        final List<Throwable> received = new ArrayList<> ();
+        promise.onFinished (new AStatement2NoThrow<String, Throwable> () {
+            @Override public void apply (String param1, Throwable param2) {
+                received.add (param2);
+            }
+        });
+
+        assertTrue (promise.tryFailure (cause));
+        assertFalse (promise.trySuccess ("a"));
+
+        // listeners receive the cause itself, get() wraps it
+        assertEquals (Arrays.<Throwable>asList (cause), received);
+        try {
+            promise.get ();
+            fail ("exception expected");
+        }
+        catch (ExecutionException exc) {
+            assertSame (cause, exc.getCause ());
+        }
+
+        final AFuture<Integer> mapped = promise.mapSync (new AFunction1<String, Integer, RuntimeException> () {
+            @Override public Integer apply (String param) {
+                return param.length ();
+            }
+        });
+        try {
+            mapped.get ();
+            fail ("exception expected");
+        }
+        catch (ExecutionException exc) {
+            assertSame (cause, exc.getCause ());
+        }
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        final APromise<String> promise = new APromise<> ();
+        final List<Throwable> received = new ArrayList<> ();
+        promise.onFailure (new AStatement1NoThrow<Throwable> () {
+            @Override public void apply (Throwable param) {
+                received.add (param);
+            }
+        });
+
+        assertTrue (promise.cancel (false));
+        assertTrue (promise.isCancelled ());
+        assertFalse (promise.trySuccess ("a"));
+        assertEquals (1, received.size ());
+        assertTrue (received.get (0) instanceof CancellationException);
+
+        try {
+            promise.get ();
+            fail ("exception expected");
+        }
+        catch (CancellationException exc) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testListenerOrder() throws Exception {
+        final APromise<Integer> promise = new APromise<> ();
+        final List<Integer> calls = new ArrayList<> ();
+
+        for (int i=0; i<5; i++) {
+            final int num = i;
+            promise.onFinished (new AStatement2NoThrow<Integer, Throwable> () {
+                @Override public void apply (Integer param1, Throwable param2) {
+                    calls.add (num);
+                }
+            });
+        }
+        promise.trySuccess (1);
+        promise.onFinished (new AStatement2NoThrow<Integer, Throwable> () {
+            @Override public void apply (Integer param1, Throwable param2) {
+                calls.add (5);
+            }
+        });
+
+        assertEquals (Arrays.asList (0, 1, 2, 3, 4, 5), calls);
+    }
+
+    @Test
+    public void testFailingListener() throws Exception {
+        final APromise<Integer> promise = new APromise<> ();
+        final AtomicInteger numCalls = new AtomicInteger ();
+
+        final Thread.UncaughtExceptionHandler prevHandler = Thread.currentThread ().getUncaughtExceptionHandler ();
+        final List<Throwable> uncaught = new ArrayList<> ();
+        Thread.currentThread ().setUncaughtExceptionHandler (new Thread.UncaughtExceptionHandler () {
+            @Override public void uncaughtException (Thread t, Throwable e) {
+                uncaught.add (e);
+            }
+        });
+
+        try {
+            promise.onFinished (new AStatement2NoThrow<Integer, Throwable> () {
+                @Override public void apply (Integer param1, Throwable param2) {
+                    throw new IllegalStateException ();
+                }
+            });
+            promise.onFinished (new AStatement2NoThrow<Integer, Throwable> () {
+                @Override public void apply (Integer param1, Throwable param2) {
+                    numCalls.incrementAndGet ();
+                }
+            });
+
+            assertTrue (promise.trySuccess (1));
+        }
+        finally {
+            Thread.currentThread ().setUncaughtExceptionHandler (prevHandler);
+        }
+
+        assertEquals (1, numCalls.get ());
+        assertEquals (1, uncaught.size ());
+        assertTrue (uncaught.get (0) instanceof IllegalStateException);
+    }
+
+    @Test
+    public void testZip() throws Exception {
+        final APromise<Integer> p1 = new APromise<> ();
+        final APromise<String> p2 = new APromise<> ();
+
+        final AFuture<ATuple2<Integer, String>> zipped = p1.zip (p2);
+        p2.trySuccess ("a");
+        assertFalse (zipped.isFinished ());
+        p1.trySuccess (1);
+        assertEquals (new ATuple2<> (1, "a"), zipped.get ());
+    }
+
+    @Test
+    public void testConcurrentCompletionCallsListenersExactlyOnce() throws Exception {
+        final int numListenersPerThread = 1000;
+        final int numThreads = 8;
+
+        for (int round=0; round<20; round++) {
+            final APromise<Integer> promise = new APromise<> ();
+            final AtomicIntegerArray calls = new AtomicIntegerArray (numThreads * numListenersPerThread);
+            final AtomicInteger numWinners = new AtomicInteger ();
+            final CountDownLatch startLatch = new CountDownLatch (1);
+
+            final ExecutorService pool = Executors.newFixedThreadPool (2*numThreads);
+            final List<Future<?>> futures = new ArrayList<> ();
+            for (int t=0; t<numThreads; t++) {
+                final int threadIdx = t;
+                futures.add (pool.submit (new Callable<Object> () {
+                    @Override public Object call () throws Exception {
+                        startLatch.await ();
+                        for (int i=0; i<numListenersPerThread; i++) {
+                            final int idx = threadIdx * numListenersPerThread + i;
+                            promise.onFinished (new AStatement2NoThrow<Integer, Throwable> () {
+                                @Override public void apply (Integer param1, Throwable param2) {
+                                    calls.incrementAndGet (idx);
+                                }
+                            });
+                        }
+                        return null;
+                    }
+                }));
+                futures.add (pool.submit (new Callable<Object> () {
+                    @Override public Object call () throws Exception {
+                        startLatch.await ();
+                        if (promise.trySuccess (threadIdx)) {
+                            numWinners.incrementAndGet ();
+                        }
+                        return null;
+                    }
+                }));
+            }
+
+            startLatch.countDown ();
+            for (Future<?> f: futures) {
+                f.get ();
+            }
+            pool.shutdown ();
+
+            assertEquals (1, numWinners.get ());
+            for (int i=0; i<calls.length (); i++) {
+                assertEquals (1, calls.get (i));
+            }
+        }
+    }
+}
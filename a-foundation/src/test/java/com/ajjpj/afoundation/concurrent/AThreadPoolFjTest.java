@@ -0,0 +1,189 @@
+package com.ajjpj.afoundation.concurrent;
+
+import com.ajjpj.afoundation.function.AFunction1;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * @author arno
+ */
+public class AThreadPoolFjTest {
+    private AThreadPool threadPool;
+
+    @After
+    public void shutdown() {
+        if (threadPool == null) {
+            return;
+        }
+        threadPool.shutdown ();
+        threadPool = null;
+    }
+
+    @Test
+    public void testSimple() throws Exception {
+        threadPool = new AThreadPoolBuilder ().buildForkJoin (4);
+
+        final List<AFuture<Integer>> futures = threadPool.submitAll (Arrays.asList (1, 2, 3, 4, 5), new AFunction1<Integer, Integer, RuntimeException> () {
+            @Override public Integer apply (Integer param) {
+                return 2*param;
+            }
+        }, 1, TimeUnit.MINUTES);
+
+        assertEquals (Arrays.asList (2, 4, 6, 8, 10), AFutureHelper.lift (futures).get ());
+    }
+
+    @Test
+    public void testSubmitFromWorker() throws Exception {
+        threadPool = new AThreadPoolBuilder ().buildForkJoin (4);
+
+        // tasks that submit nested tasks and wait for them must not deadlock, even if they occupy all workers
+        final CyclicBarrier allWorkersBusy = new CyclicBarrier (4);
+        final List<AFuture<Integer>> outer = new ArrayList<> ();
+        for (int i=0; i<4; i++) {
+            outer.add (threadPool.submit (new Callable<Integer> () {
+                @Override public Integer call () throws Exception {
+                    allWorkersBusy.await ();
+
+                    final List<AFuture<Integer>> inner = new ArrayList<> ();
+                    for (int j=0; j<100; j++) {
+                        inner.add (threadPool.submit (new Callable<Integer> () {
+                            @Override public Integer call () {
+                                return 1;
+                            }
+                        }, 1, TimeUnit.MINUTES));
+                    }
+
+                    int result = 0;
+                    for (AFuture<Integer> f: inner) {
+                        result += f.get ();
+                    }
+                    return result;
+                }
+            }, 1, TimeUnit.MINUTES));
+        }
+
+        for (AFuture<Integer> f: outer) {
+            assertEquals (Integer.valueOf (100), f.get (10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        threadPool = new AThreadPoolBuilder ().buildForkJoin (2);
+
+        final AFuture<Integer> f = threadPool.submit (new Callable<Integer> () {
+            @Override public Integer call () {
+                throw new IllegalArgumentException ();
+            }
+        }, 1, TimeUnit.MINUTES);
+
+        try {
+            f.get ();
+            fail ("exception expected");
+        }
+        catch (ExecutionException exc) {
+            assertTrue (exc.getCause () instanceof IllegalArgumentException);
+        }
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        threadPool = new AThreadPoolBuilder ().setInterruptOnTimeout (true).buildForkJoin (2);
+
+        final CountDownLatch interrupted = new CountDownLatch (1);
+        final AFuture<Integer> f = threadPool.submit (new Callable<Integer> () {
+            @Override public Integer call () {
+                try {
+                    Thread.sleep (10_000);
+                }
+                catch (InterruptedException exc) {
+                    interrupted.countDown ();
+                }
+                return 1;
+            }
+        }, 20, TimeUnit.MILLISECONDS);
+
+        try {
+            f.get ();
+            fail ("exception expected");
+        }
+        catch (ExecutionException exc) {
+            assertTrue (exc.getCause () instanceof TimeoutException);
+        }
+        assertTrue (f.isFinished ());
+        assertTrue (interrupted.await (5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testTimeoutInterruptDoesNotLeakToNextTask() throws Exception {
+        threadPool = new AThreadPoolBuilder ().setInterruptOnTimeout (true).buildForkJoin (1);
+
+        // the task ignores the interrupt and finishes normally, leaving the worker's interrupt flag set
+        final AFuture<Integer> f = threadPool.submit (new Callable<Integer> () {
+            @Override public Integer call () {
+                final long deadline = System.nanoTime () + TimeUnit.SECONDS.toNanos (5);
+                while (! Thread.currentThread ().isInterrupted () && System.nanoTime () < deadline) {
+                    Thread.yield ();
+                }
+                return 1;
+            }
+        }, 20, TimeUnit.MILLISECONDS);
+
+        try {
+            f.get ();
+            fail ("exception expected");
+        }
+        catch (ExecutionException exc) {
+            assertTrue (exc.getCause () instanceof TimeoutException);
+        }
+
+        final AFuture<Boolean> next = threadPool.submit (new Callable<Boolean> () {
+            @Override public Boolean call () {
+                return Thread.currentThread ().isInterrupted ();
+            }
+        }, 1, TimeUnit.MINUTES);
+        assertEquals (false, next.get ());
+    }
+
+    @Test
+    public void testShutdownNow() throws Exception {
+        threadPool = new AThreadPoolBuilder ().buildForkJoin (1);
+        threadPool.submit (new Callable<Integer> () {
+            @Override public Integer call () throws Exception {
+                Thread.sleep (10_000);
+                return 1;
+            }
+        }, 1, TimeUnit.MINUTES);
+
+        assertTrue (threadPool.shutdownNow ().isEmpty ());
+        assertTrue (threadPool.awaitTermination (5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testShutdown() throws Exception {
+        threadPool = new AThreadPoolBuilder ().buildForkJoin (2);
+        threadPool.shutdown ();
+        assertTrue (threadPool.isShutdown ());
+        assertTrue (threadPool.awaitTermination (1, TimeUnit.SECONDS));
+
+        try {
+            threadPool.submit (new Callable<Integer> () {
+                @Override public Integer call () {
+                    return 1;
+                }
+            }, 1, TimeUnit.SECONDS);
+            fail ("exception expected");
+        }
+        catch (RejectedExecutionException exc) {
+            // expected
+        }
+    }
+}
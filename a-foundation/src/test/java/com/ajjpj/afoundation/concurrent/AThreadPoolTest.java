@@ -171,6 +171,47 @@ public class AThreadPoolTest {
         }
     }
 
+    @Test
+    public void testSlowTimeoutListenerDoesNotDelayOtherPools() throws InterruptedException {
+        final AThreadPool slowPool = new AThreadPoolBuilder ().buildFixedSize (1);
+        threadPool = new AThreadPoolBuilder ().buildFixedSize (1);
+
+        try {
+            final CountDownLatch listenerStarted = new CountDownLatch (1);
+            final AFuture<Integer> slow = slowPool.submit (new Callable<Integer> () {
+                @Override public Integer call () throws Exception {
+                    Thread.sleep (1000);
+                    return 1;
+                }
+            }, 1, TimeUnit.MILLISECONDS);
+            slow.onFinished (new AStatement2NoThrow<Integer, Throwable> () {
+                @Override public void apply (Integer param1, Throwable param2) {
+                    listenerStarted.countDown ();
+                    try {
+                        Thread.sleep (1000);
+                    }
+                    catch (InterruptedException exc) {
+                        Thread.currentThread ().interrupt ();
+                    }
+                }
+            });
+            assertTrue (listenerStarted.await (5, TimeUnit.SECONDS));
+
+            // the slow listener does not run on the shared timer thread, so other timeouts expire on time
+            final AFuture<Integer> f = threadPool.submit (new Callable<Integer> () {
+                @Override public Integer call () throws Exception {
+                    Thread.sleep (1000);
+                    return 2;
+                }
+            }, 1, TimeUnit.MILLISECONDS);
+            Thread.sleep (100);
+            assertTrue (f.isFinished ());
+        }
+        finally {
+            slowPool.shutdown ();
+        }
+    }
+
     @Test
     public void testCancel() throws InterruptedException, ExecutionException {
         threadPool = new AThreadPoolBuilder ().buildFixedSize (10);
@@ -0,0 +1,225 @@
+package com.ajjpj.afoundation.concurrent;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * These tests run with virtual threads or with the platform thread fallback, depending on the JVM.
+ *
+ * @author arno
+ */
+public class AThreadPoolVirtualTest {
+    private AThreadPool threadPool;
+
+    @After
+    public void shutdown() {
+        if (threadPool == null) {
+            return;
+        }
+        threadPool.shutdownNow ();
+        threadPool = null;
+    }
+
+    @Test
+    public void testManyBlockingTasks() throws Exception {
+        threadPool = new AThreadPoolBuilder ().buildVirtualThreads ();
+
+        // all tasks must run concurrently to get past the barrier
+        final int num = 200;
+        final CyclicBarrier barrier = new CyclicBarrier (num);
+        final List<AFuture<Integer>> futures = new ArrayList<> ();
+        for (int i=0; i<num; i++) {
+            final int n = i;
+            futures.add (threadPool.submit (new Callable<Integer> () {
+                @Override public Integer call () throws Exception {
+                    barrier.await ();
+                    return n;
+                }
+            }, 1, TimeUnit.MINUTES));
+        }
+
+        for (int i=0; i<num; i++) {
+            assertEquals (Integer.valueOf (i), futures.get (i).get (10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testConcurrencyLimit() throws Exception {
+        threadPool = new AThreadPoolBuilder ().buildVirtualThreads (3);
+
+        final AtomicInteger numRunning = new AtomicInteger ();
+        final AtomicInteger maxRunning = new AtomicInteger ();
+
+        final List<AFuture<Object>> futures = new ArrayList<> ();
+        for (int i=0; i<30; i++) {
+            futures.add (threadPool.submit (new Runnable () {
+                @Override public void run () {
+                    final int running = numRunning.incrementAndGet ();
+                    int prevMax;
+                    do {
+                        prevMax = maxRunning.get ();
+                    }
+                    while (running > prevMax && ! maxRunning.compareAndSet (prevMax, running));
+
+                    try {
+                        Thread.sleep (5);
+                    }
+                    catch (InterruptedException exc) {
+                        throw new RuntimeException (exc);
+                    }
+                    finally {
+                        numRunning.decrementAndGet ();
+                    }
+                }
+            }, null, 1, TimeUnit.MINUTES));
+        }
+
+        AFutureHelper.lift (futures).get (10, TimeUnit.SECONDS);
+        assertTrue (maxRunning.get () <= 3);
+        assertTrue (maxRunning.get () >= 1);
+    }
+
+    @Test
+    public void testTimeoutInterrupts() throws Exception {
+        threadPool = new AThreadPoolBuilder ().buildVirtualThreads (1);
+
+        final CountDownLatch interrupted = new CountDownLatch (1);
+        final Callable<Integer> sleeper = new Callable<Integer> () {
+            @Override public Integer call () {
+                try {
+                    Thread.sleep (10_000);
+                }
+                catch (InterruptedException exc) {
+                    interrupted.countDown ();
+                }
+                return 1;
+            }
+        };
+
+        // only one of the tasks gets the permit and is interrupted while sleeping, the other one is interrupted while waiting for the permit
+        final AFuture<Integer> f1 = threadPool.submit (sleeper, 50, TimeUnit.MILLISECONDS);
+        final AFuture<Integer> f2 = threadPool.submit (sleeper, 20, TimeUnit.MILLISECONDS);
+
+        for (AFuture<Integer> f: new AFuture[] {f1, f2}) {
+            try {
+                f.get ();
+                fail ("exception expected");
+            }
+            catch (ExecutionException exc) {
+                assertTrue (exc.getCause () instanceof TimeoutException);
+            }
+        }
+
+        assertTrue (interrupted.await (5, TimeUnit.SECONDS));
+
+        // the permits were released, so the pool is still usable
+        assertEquals (Integer.valueOf (2), threadPool.submit (new Callable<Integer> () {
+            @Override public Integer call () {
+                return 2;
+            }
+        }, 1, TimeUnit.SECONDS).get ());
+    }
+
+    @Test
+    public void testShutdown() throws Exception {
+        threadPool = new AThreadPoolBuilder ().buildVirtualThreads ();
+
+        final CountDownLatch latch = new CountDownLatch (1);
+        final AFuture<Integer> f = threadPool.submit (new Callable<Integer> () {
+            @Override public Integer call () throws Exception {
+                latch.await ();
+                return 1;
+            }
+        }, 1, TimeUnit.MINUTES);
+
+        threadPool.shutdown ();
+        assertTrue (threadPool.isShutdown ());
+        assertFalse (threadPool.isTerminated ());
+        assertFalse (threadPool.awaitTermination (20, TimeUnit.MILLISECONDS));
+
+        try {
+            threadPool.submit (new Callable<Integer> () {
+                @Override public Integer call () {
+                    return 2;
+                }
+            }, 1, TimeUnit.SECONDS);
+            fail ("exception expected");
+        }
+        catch (RejectedExecutionException exc) {
+            // expected
+        }
+
+        latch.countDown ();
+        assertEquals (Integer.valueOf (1), f.get ());
+        assertTrue (threadPool.awaitTermination (5, TimeUnit.SECONDS));
+        assertTrue (threadPool.isTerminated ());
+    }
+
+    @Test
+    public void testShutdownNow() throws Exception {
+        threadPool = new AThreadPoolBuilder ().buildVirtualThreads ();
+
+        final AFuture<Integer> f = threadPool.submit (new Callable<Integer> () {
+            @Override public Integer call () throws Exception {
+                Thread.sleep (10_000);
+                return 1;
+            }
+        }, 1, TimeUnit.MINUTES);
+
+        threadPool.shutdownNow ();
+        assertTrue (f.isCancelled ());
+        assertTrue (threadPool.awaitTermination (5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testShutdownNowWhileSubmitting() throws Exception {
+        threadPool = new AThreadPoolBuilder ().buildVirtualThreads ();
+
+        // every task that is accepted concurrently with shutdownNow() is cancelled, so the pool terminates
+        final List<AFuture<Integer>> futures = new CopyOnWriteArrayList<> ();
+        final CountDownLatch submitting = new CountDownLatch (4);
+        final List<Thread> submitters = new ArrayList<> ();
+        for (int i=0; i<4; i++) {
+            final Thread t = new Thread () {
+                @Override public void run () {
+                    submitting.countDown ();
+                    try {
+                        while (true) {
+                            futures.add (threadPool.submit (new Callable<Integer> () {
+                                @Override public Integer call () throws Exception {
+                                    Thread.sleep (10_000);
+                                    return 1;
+                                }
+                            }, 1, TimeUnit.MINUTES));
+                        }
+                    }
+                    catch (RejectedExecutionException exc) {
+                        // expected after shutdown
+                    }
+                }
+            };
+            t.start ();
+            submitters.add (t);
+        }
+
+        submitting.await ();
+        Thread.sleep (10);
+        threadPool.shutdownNow ();
+        for (Thread t: submitters) {
+            t.join ();
+        }
+
+        assertTrue (threadPool.awaitTermination (5, TimeUnit.SECONDS));
+        for (AFuture<Integer> f: futures) {
+            assertTrue (f.isFinished ());
+        }
+    }
+}